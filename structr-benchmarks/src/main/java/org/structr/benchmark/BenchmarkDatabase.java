@@ -0,0 +1,183 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * A structr instance with an embedded Neo4j store in a temporary directory,
+ * for the benchmarks of this module.
+ *
+ * The service layer is static, so only one instance can be started at a
+ * time. JMH runs every benchmark in a forked JVM by default, each benchmark
+ * class starts its own instance when its trial starts and deletes it when
+ * the trial ends.
+ */
+public class BenchmarkDatabase {
+
+	private static final Logger logger = Logger.getLogger(BenchmarkDatabase.class.getName());
+	private static final int BATCH_SIZE = 1000;
+
+	private Map<String, String> context     = new ConcurrentHashMap<String, String>(20, 0.9f, 8);
+	private SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+	private File basePath                   = null;
+
+	private BenchmarkDatabase() {}
+
+	/**
+	 * Starts a new instance with the given additional configuration.
+	 *
+	 * @param configuration configuration values, may be null
+	 * @return the instance
+	 * @throws IOException
+	 */
+	public static BenchmarkDatabase start(final Map<String, String> configuration) throws IOException {
+
+		BenchmarkDatabase database = new BenchmarkDatabase();
+		File basePath              = File.createTempFile("structr-benchmark-", "");
+		String base                = basePath.getAbsolutePath();
+
+		// replace temporary file with directory
+		basePath.delete();
+		basePath.mkdirs();
+
+		database.basePath = basePath;
+
+		database.context.put(Services.CONFIGURED_SERVICES, "ModuleService NodeService");
+		database.context.put(Services.APPLICATION_TITLE, "structr benchmark");
+		database.context.put(Services.TMP_PATH, base);
+		database.context.put(Services.BASE_PATH, base);
+		database.context.put(Services.DATABASE_PATH, base + "/db");
+		database.context.put(Services.FILES_PATH, base + "/files");
+		database.context.put(Services.LOG_DATABASE_PATH, base + "/logDb.dat");
+		database.context.put(Services.SUPERUSER_USERNAME, "superadmin");
+		database.context.put(Services.SUPERUSER_PASSWORD, "sehrgeheim");
+
+		if (configuration != null) {
+			database.context.putAll(configuration);
+		}
+
+		Services.initialize(database.context);
+
+		// wait for service layer to be initialized
+		while (!Services.isInitialized()) {
+			try { Thread.sleep(10); } catch (Throwable t) {}
+		}
+
+		return database;
+	}
+
+	public static BenchmarkDatabase start() throws IOException {
+		return start(null);
+	}
+
+	/**
+	 * Shuts the service layer down and deletes the store.
+	 */
+	public void stop() {
+
+		Services.shutdown();
+
+		try {
+			FileUtils.deleteDirectory(basePath);
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to delete {0}: {1}", new Object[] { basePath, ioex.getMessage() });
+		}
+	}
+
+	public SecurityContext getSecurityContext() {
+		return securityContext;
+	}
+
+	public <T> T transaction(final StructrTransaction<T> transaction) throws FrameworkException {
+		return Services.command(securityContext, TransactionCommand.class).execute(transaction);
+	}
+
+	/**
+	 * Creates the given number of nodes of the given type, named with their
+	 * index, in transactions of {@link #BATCH_SIZE} nodes.
+	 *
+	 * @param type the type
+	 * @param number the number of nodes
+	 * @return the nodes
+	 * @throws FrameworkException
+	 */
+	public List<AbstractNode> createNodes(final String type, final int number) throws FrameworkException {
+
+		final CreateNodeCommand createNodeCommand = Services.command(securityContext, CreateNodeCommand.class);
+		final List<AbstractNode> nodes            = new LinkedList<AbstractNode>();
+
+		for (int offset = 0; offset < number; offset += BATCH_SIZE) {
+
+			final int start = offset;
+			final int end   = Math.min(offset + BATCH_SIZE, number);
+
+			transaction(new StructrTransaction<Object>() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (int i = start; i < end; i++) {
+
+						PropertyMap properties = new PropertyMap();
+
+						properties.put(AbstractNode.type, type);
+						properties.put(AbstractNode.name, name(i));
+
+						nodes.add(createNodeCommand.execute(properties));
+					}
+
+					return null;
+				}
+			});
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Returns the name of the node with the given index, see
+	 * {@link #createNodes(String, int)}.
+	 *
+	 * @param index the index
+	 * @return the name
+	 */
+	public static String name(final int index) {
+		return "node" + index;
+	}
+}
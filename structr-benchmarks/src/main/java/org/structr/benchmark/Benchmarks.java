@@ -0,0 +1,57 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Runs the benchmarks of this module with the JMH command line.
+ *
+ * Unless a result format is given, results are written as JSON to
+ * {@link #RESULT_FILE}, so that they can be compared between builds.
+ */
+public class Benchmarks {
+
+	public static final String RESULT_FILE = "target/jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException, IOException {
+
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+		if (!arguments.contains("-rf") && !arguments.contains("-h") && !arguments.contains("-l")) {
+
+			arguments.add("-rf");
+			arguments.add("json");
+
+			if (!arguments.contains("-rff")) {
+
+				arguments.add("-rff");
+				arguments.add(RESULT_FILE);
+			}
+		}
+
+		Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+}
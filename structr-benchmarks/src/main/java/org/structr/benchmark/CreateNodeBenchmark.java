@@ -0,0 +1,98 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Creates nodes with {@link CreateNodeCommand}, in transactions of
+ * {@link #batchSize} nodes. The score is the time per transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CreateNodeBenchmark {
+
+	@Param({ "1", "100" })
+	public int batchSize;
+
+	private BenchmarkDatabase database           = null;
+	private CreateNodeCommand createNodeCommand = null;
+	private int count                           = 0;
+
+	@Setup
+	public void setup() throws IOException {
+
+		database          = BenchmarkDatabase.start();
+		createNodeCommand = Services.command(database.getSecurityContext(), CreateNodeCommand.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public AbstractNode createNodes() throws FrameworkException {
+
+		return database.transaction(new StructrTransaction<AbstractNode>() {
+
+			@Override
+			public AbstractNode execute() throws FrameworkException {
+
+				AbstractNode node = null;
+
+				for (int i = 0; i < batchSize; i++) {
+
+					PropertyMap properties = new PropertyMap();
+
+					properties.put(AbstractNode.type, "BenchmarkNode");
+					properties.put(AbstractNode.name, BenchmarkDatabase.name(count++));
+
+					node = createNodeCommand.execute(properties);
+				}
+
+				return node;
+			}
+		});
+	}
+}
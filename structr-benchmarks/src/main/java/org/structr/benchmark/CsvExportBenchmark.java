@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.CsvGraphObjectWriter;
+import org.structr.core.EntityContext;
+import org.structr.core.StaticValue;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.GenericNode;
+
+/**
+ * Exports {@link #nodes} nodes as CSV with {@link CsvGraphObjectWriter}
+ * through a 64k buffer, as the CSV servlet does. Run with
+ * <code>-prof gc</code> to see the allocation rate per export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CsvExportBenchmark {
+
+	private static final String VIEW     = "benchmark";
+	private static final int BUFFER_SIZE = 65536;
+
+	@Param({ "10000" })
+	public int nodes;
+
+	private BenchmarkDatabase database     = null;
+	private CsvGraphObjectWriter csvWriter = null;
+	private List<AbstractNode> list        = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database = BenchmarkDatabase.start();
+
+		EntityContext.registerPropertySet(GenericNode.class, VIEW, AbstractNode.uuid, AbstractNode.type, AbstractNode.name, AbstractNode.createdDate);
+
+		list      = database.createNodes("BenchmarkNode", nodes);
+		csvWriter = new CsvGraphObjectWriter(new StaticValue<String>(VIEW));
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public int export() throws IOException {
+
+		Writer writer = new BufferedWriter(new NullWriter(), BUFFER_SIZE);
+		int rows      = csvWriter.write(writer, list);
+
+		writer.flush();
+
+		return rows;
+	}
+}
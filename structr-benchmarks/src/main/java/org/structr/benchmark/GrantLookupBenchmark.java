@@ -0,0 +1,139 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.ResourceAccess;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.ResourceAccessCache;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Looks up one of {@link #grants} ResourceAccess grants by signature, as
+ * done once per REST request: with an index query, as before the grant
+ * table existed, and with the {@link ResourceAccessCache}, both for the
+ * immutable grant value and for a new ResourceAccess entity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GrantLookupBenchmark {
+
+	@Param({ "100" })
+	public int grants;
+
+	private BenchmarkDatabase database          = null;
+	private SearchNodeCommand searchNodeCommand = null;
+	private ResourceAccessCache cache           = null;
+	private int index                           = 0;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database          = BenchmarkDatabase.start();
+		searchNodeCommand = Services.command(database.getSecurityContext(), SearchNodeCommand.class);
+		cache             = NodeService.getResourceAccessCache();
+
+		final CreateNodeCommand createNodeCommand = Services.command(database.getSecurityContext(), CreateNodeCommand.class);
+
+		database.transaction(new StructrTransaction<Object>() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				for (int i = 0; i < grants; i++) {
+
+					PropertyMap properties = new PropertyMap();
+
+					properties.put(AbstractNode.type, ResourceAccess.class.getSimpleName());
+					properties.put(ResourceAccess.signature, signature(i));
+					properties.put(ResourceAccess.flags, 1L);
+
+					createNodeCommand.execute(properties);
+				}
+
+				return null;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public Object indexQuery() throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(ResourceAccess.class.getSimpleName()));
+		searchAttributes.add(Search.andExactProperty(ResourceAccess.signature, nextSignature()));
+
+		Result result = searchNodeCommand.execute(searchAttributes);
+
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	@Benchmark
+	public Object grantTable() throws FrameworkException {
+		return cache.get(nextSignature());
+	}
+
+	@Benchmark
+	public Object grantTableEntity() throws FrameworkException {
+		return cache.getResourceAccess(nextSignature());
+	}
+
+	// ----- private methods -----
+	private String nextSignature() {
+		return signature(index++ % grants);
+	}
+
+	private static String signature(final int index) {
+		return "/Test" + index;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectGSONAdapter;
+import org.structr.core.StaticValue;
+import org.structr.core.StreamingGraphObjectWriter;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.GenericNode;
+
+/**
+ * Serializes a list of {@link #nodes} nodes to JSON with
+ * {@link GraphObjectGSONAdapter}, as POST and PUT responses of the REST
+ * servlet are rendered, and with {@link StreamingGraphObjectWriter}, as
+ * GET responses are rendered. Run with <code>-prof gc</code> to compare
+ * the allocation rates of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GraphObjectSerializationBenchmark {
+
+	private static final String VIEW = "benchmark";
+
+	@Param({ "100" })
+	public int nodes;
+
+	private BenchmarkDatabase database                 = null;
+	private StreamingGraphObjectWriter streamingWriter = null;
+	private List<AbstractNode> list                    = null;
+	private Gson gson                                  = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database = BenchmarkDatabase.start();
+
+		EntityContext.registerPropertySet(GenericNode.class, VIEW, AbstractNode.uuid, AbstractNode.type, AbstractNode.name, AbstractNode.createdDate,
+			AbstractNode.lastModifiedDate, AbstractNode.visibleToPublicUsers, AbstractNode.visibleToAuthenticatedUsers);
+
+		list = database.createNodes("BenchmarkNode", nodes);
+		gson = new GsonBuilder()
+			.setPrettyPrinting()
+			.serializeNulls()
+			.registerTypeHierarchyAdapter(GraphObject.class, new GraphObjectGSONAdapter(new StaticValue<String>(VIEW), AbstractNode.uuid))
+			.create();
+
+		streamingWriter = new StreamingGraphObjectWriter(new StaticValue<String>(VIEW), AbstractNode.uuid);
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public String serialize() {
+		return gson.toJson(list);
+	}
+
+	@Benchmark
+	public String serializeStreaming() throws IOException {
+
+		StringWriter out  = new StringWriter();
+		JsonWriter writer = StreamingGraphObjectWriter.createJsonWriter(out);
+
+		writer.beginArray();
+
+		for (AbstractNode node : list) {
+			streamingWriter.write(writer, node);
+		}
+
+		writer.endArray();
+		writer.flush();
+
+		return out.toString();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.IndexHits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.graph.NodeFactory;
+
+/**
+ * Creates a page of {@link #pageSize} nodes with {@link NodeFactory} from
+ * the index hits of all {@link #nodes} nodes of a type. Negative pages are
+ * counted from the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodeFactoryPagingBenchmark {
+
+	private static final String TYPE = "BenchmarkNode";
+
+	@Param({ "10000" })
+	public int nodes;
+
+	@Param({ "20" })
+	public int pageSize;
+
+	@Param({ "1", "250", "-1" })
+	public int page;
+
+	private BenchmarkDatabase database            = null;
+	private TypeIndexHitsCommand indexHitsCommand = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database         = BenchmarkDatabase.start();
+		indexHitsCommand = Services.command(database.getSecurityContext(), TypeIndexHitsCommand.class);
+
+		database.createNodes(TYPE, nodes);
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public Result createPage() throws FrameworkException {
+
+		IndexHits<Node> hits = indexHitsCommand.execute(TYPE);
+
+		try {
+			return new NodeFactory(database.getSecurityContext(), pageSize, page, null).createNodes(hits);
+
+		} finally {
+
+			hits.close();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.GetNodeByIdCommand;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Searches {@link #nodes} nodes with {@link SearchNodeCommand}: a single
+ * node by exact name and by UUID, and the first page of all nodes of a
+ * type, sorted by name. UUID searches are compared with the direct lookup
+ * of {@link GetNodeByIdCommand}, and the search for all nodes of a type
+ * with its projection onto the UUID.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SearchNodeBenchmark {
+
+	private static final String TYPE                = "BenchmarkNode";
+	private static final Set<PropertyKey> UUID_ONLY = Collections.<PropertyKey>singleton(AbstractNode.uuid);
+
+	@Param({ "10000" })
+	public int nodes;
+
+	private Random random                         = new Random(42);
+	private BenchmarkDatabase database            = null;
+	private GetNodeByIdCommand getNodeByIdCommand = null;
+	private SearchNodeCommand searchNodeCommand   = null;
+	private String[] uuids                        = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database           = BenchmarkDatabase.start();
+		getNodeByIdCommand = Services.command(database.getSecurityContext(), GetNodeByIdCommand.class);
+		searchNodeCommand  = Services.command(database.getSecurityContext(), SearchNodeCommand.class);
+		uuids              = new String[nodes];
+
+		int i = 0;
+
+		for (AbstractNode node : database.createNodes(TYPE, nodes)) {
+			uuids[i++] = node.getUuid();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public Result searchByName() throws FrameworkException {
+		return searchNodeCommand.execute(Search.andExactType(TYPE), Search.andExactName(BenchmarkDatabase.name(random.nextInt(nodes))));
+	}
+
+	@Benchmark
+	public Result searchByUuid() throws FrameworkException {
+		return searchNodeCommand.execute(Search.andExactUuid(uuids[random.nextInt(nodes)]));
+	}
+
+	@Benchmark
+	public AbstractNode getNodeByUuid() throws FrameworkException {
+		return getNodeByIdCommand.execute(uuids[random.nextInt(nodes)]);
+	}
+
+	@Benchmark
+	public Result searchByTypeSorted() throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(TYPE));
+
+		return searchNodeCommand.execute(false, false, searchAttributes, AbstractNode.name, false, 20, 1);
+	}
+
+	@Benchmark
+	public Result searchAllByType() throws FrameworkException {
+		return searchNodeCommand.execute(false, false, typeAttributes(), null, false, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null, null);
+	}
+
+	@Benchmark
+	public Result searchAllIdsByType() throws FrameworkException {
+		return searchNodeCommand.execute(false, false, typeAttributes(), null, false, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE, null, null, UUID_ONLY);
+	}
+
+	// ----- private methods -----
+	private List<SearchAttribute> typeAttributes() {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(TYPE));
+
+		return searchAttributes;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.AccessMode;
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Person;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Checks the read permission of a user in backend mode with
+ * {@link SecurityContext#isAllowed}, for a node that is owned by the user,
+ * a node the user was granted access to, and a node the user can not
+ * access. The node is checked both as a reused instance, which caches its
+ * owner, and as a new instance, as it would be in a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SecurityContextBenchmark {
+
+	@Param({ "owned", "granted", "denied" })
+	public String access;
+
+	private BenchmarkDatabase database      = null;
+	private SecurityContext securityContext = null;
+	private NodeFactory nodeFactory         = null;
+	private AbstractNode node               = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException {
+
+		database = BenchmarkDatabase.start();
+
+		final Person user = (Person) createNode(database.getSecurityContext(), Person.class.getSimpleName(), "user");
+
+		securityContext = SecurityContext.getInstance(user, AccessMode.Backend);
+		nodeFactory     = new NodeFactory(securityContext);
+
+		if ("owned".equals(access)) {
+
+			// nodes created by a user are owned by the user
+			node = createNode(securityContext, "BenchmarkNode", "owned");
+
+		} else {
+
+			node = createNode(database.getSecurityContext(), "BenchmarkNode", access);
+
+			if ("granted".equals(access)) {
+
+				database.transaction(new StructrTransaction<Object>() {
+
+					@Override
+					public Object execute() throws FrameworkException {
+
+						user.grant(Permission.read, node);
+
+						return null;
+					}
+				});
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public boolean isAllowed() {
+		return securityContext.isAllowed(node, Permission.read);
+	}
+
+	@Benchmark
+	public boolean isAllowedNewInstance() {
+		return securityContext.isAllowed(nodeFactory.createNode(node.getNode()), Permission.read);
+	}
+
+	// ----- private methods -----
+	private AbstractNode createNode(final SecurityContext securityContext, final String type, final String name) throws FrameworkException {
+
+		final CreateNodeCommand createNodeCommand = Services.command(securityContext, CreateNodeCommand.class);
+		final PropertyMap properties              = new PropertyMap();
+
+		properties.put(AbstractNode.type, type);
+		properties.put(AbstractNode.name, name);
+
+		return database.transaction(new StructrTransaction<AbstractNode>() {
+
+			@Override
+			public AbstractNode execute() throws FrameworkException {
+				return createNodeCommand.execute(properties);
+			}
+		});
+	}
+}
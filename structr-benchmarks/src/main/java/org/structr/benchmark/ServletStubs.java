@@ -0,0 +1,167 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Minimal in-memory implementations of the servlet API, so that servlets
+ * can be benchmarked without a servlet container.
+ *
+ * The implementations are dynamic proxies that support attributes,
+ * parameters, headers, the response status and the response writer. All
+ * other methods return null, zero or false.
+ */
+public class ServletStubs {
+
+	private ServletStubs() {}
+
+	public static ServletConfig config(final String servletName, final Map<String, String> initParameters) {
+
+		Stub stub = new Stub();
+
+		stub.values.put("getServletName", servletName);
+		stub.values.put("getServletContext", proxy(ServletContext.class, new Stub()));
+		stub.parameters.putAll(initParameters);
+
+		return proxy(ServletConfig.class, stub);
+	}
+
+	public static HttpServletRequest request(final String pathInfo, final HttpSession session) {
+
+		Stub stub = new Stub();
+
+		stub.values.put("getPathInfo", pathInfo);
+		stub.values.put("getRequestURI", pathInfo);
+		stub.values.put("getMethod", "GET");
+		stub.values.put("getSession", session);
+		stub.values.put("getParameterMap", Collections.emptyMap());
+
+		return proxy(HttpServletRequest.class, stub);
+	}
+
+	public static HttpSession session() {
+		return proxy(HttpSession.class, new Stub());
+	}
+
+	public static HttpServletResponse response(final Writer writer) {
+
+		Stub stub = new Stub();
+
+		stub.values.put("getWriter", new PrintWriter(writer));
+		stub.values.put("getStatus", HttpServletResponse.SC_OK);
+
+		return proxy(HttpServletResponse.class, stub);
+	}
+
+	// ----- private methods -----
+	private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ServletStubs.class.getClassLoader(), new Class[] { type }, handler));
+	}
+
+	// ----- nested classes -----
+	private static class Stub implements InvocationHandler {
+
+		private final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<String, Object>());
+		private final Map<String, String> parameters = new HashMap<String, String>();
+		private final Map<String, Object> values     = Collections.synchronizedMap(new HashMap<String, Object>());
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+			String name = method.getName();
+
+			if ("getAttribute".equals(name)) {
+
+				return attributes.get((String) args[0]);
+
+			} else if ("setAttribute".equals(name)) {
+
+				attributes.put((String) args[0], args[1]);
+
+				return null;
+
+			} else if ("removeAttribute".equals(name)) {
+
+				attributes.remove((String) args[0]);
+
+				return null;
+
+			} else if ("getParameter".equals(name) || "getInitParameter".equals(name)) {
+
+				return parameters.get((String) args[0]);
+
+			} else if ("setStatus".equals(name) || "sendError".equals(name)) {
+
+				values.put("getStatus", args[0]);
+
+				return null;
+
+			} else if ("equals".equals(name)) {
+
+				return proxy == args[0];
+
+			} else if ("hashCode".equals(name)) {
+
+				return System.identityHashCode(proxy);
+
+			} else if ("toString".equals(name)) {
+
+				return "ServletStub" + values;
+
+			} else if (values.containsKey(name)) {
+
+				return values.get(name);
+			}
+
+			return defaultValue(method.getReturnType());
+		}
+
+		private Object defaultValue(final Class type) {
+
+			if (type.equals(Boolean.TYPE)) {
+
+				return Boolean.FALSE;
+
+			} else if (type.equals(Integer.TYPE)) {
+
+				return 0;
+
+			} else if (type.equals(Long.TYPE)) {
+
+				return 0L;
+			}
+
+			return null;
+		}
+	}
+}
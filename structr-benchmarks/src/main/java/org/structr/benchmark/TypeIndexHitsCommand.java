@@ -0,0 +1,41 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.benchmark;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.graph.NodeServiceCommand;
+
+/**
+ * Returns the raw index hits for all nodes of the given type from the
+ * keyword index. The caller must close the hits.
+ */
+public class TypeIndexHitsCommand extends NodeServiceCommand {
+
+	public IndexHits<Node> execute(final String type) {
+
+		Index<Node> index = (Index<Node>) arguments.get(NodeIndex.keyword.name());
+
+		return index.get(AbstractNode.type.dbName(), type);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.rest.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.benchmark.BenchmarkDatabase;
+import org.structr.benchmark.ServletStubs;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.StaticValue;
+import org.structr.core.Value;
+import org.structr.core.entity.AbstractNode;
+import org.structr.rest.resource.Resource;
+import org.structr.web.common.UiResourceProvider;
+
+/**
+ * Parses REST request paths into resource chains with
+ * {@link ResourceHelper#parsePath}, using the resources of structr-ui.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParsePathBenchmark {
+
+	@Param({ "/folders", "/folders/0123456789abcdef0123456789abcdef", "/folders/0123456789abcdef0123456789abcdef/out/ui" })
+	public String path;
+
+	private Map<Pattern, Class<? extends Resource>> resourceMap = null;
+	private BenchmarkDatabase database                          = null;
+	private Value<String> propertyView                          = null;
+
+	@Setup
+	public void setup() throws IOException {
+
+		database     = BenchmarkDatabase.start();
+		resourceMap  = new UiResourceProvider().getResources();
+		propertyView = new StaticValue<String>(PropertyView.Public);
+	}
+
+	@TearDown
+	public void tearDown() {
+		database.stop();
+	}
+
+	@Benchmark
+	public List<Resource> parsePath() throws FrameworkException {
+		return ResourceHelper.parsePath(database.getSecurityContext(), ServletStubs.request(path, null), resourceMap, propertyView, AbstractNode.uuid);
+	}
+}
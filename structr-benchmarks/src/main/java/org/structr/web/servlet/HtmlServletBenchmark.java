@@ -0,0 +1,202 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.servlet;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpSession;
+import org.jsoup.Jsoup;
+import org.neo4j.graphdb.Node;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.benchmark.BenchmarkDatabase;
+import org.structr.benchmark.ServletStubs;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.auth.AuthenticationService;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.CreateNodeCommand;
+import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.Importer;
+import org.structr.web.auth.HttpAuthenticator;
+import org.structr.web.entity.Page;
+
+/**
+ * Renders a public page with {@link HtmlServlet}, with and without the
+ * render cache. The page is imported from an HTML document with
+ * {@link #sections} sections of a heading, a paragraph and a list.
+ *
+ * With {@link #templates}, every text node and some attributes of a
+ * section contain <code>${...}</code> expressions (16 per section, 320
+ * with the default number of sections), with references to the page,
+ * function calls and nested function calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HtmlServletBenchmark {
+
+	private static final String PAGE_NAME = "benchmark";
+
+	@Param({ "20" })
+	public int sections;
+
+	@Param({ "0", "1000" })
+	public int renderCacheSize;
+
+	@Param({ "false", "true" })
+	public boolean templates;
+
+	private BenchmarkDatabase database = null;
+	private HtmlServlet servlet        = null;
+	private HttpSession session        = null;
+
+	@Setup
+	public void setup() throws IOException, FrameworkException, ServletException {
+
+		database = BenchmarkDatabase.start(Collections.singletonMap(Services.HTML_RENDER_CACHE_SIZE, Integer.toString(renderCacheSize)));
+		servlet  = new HtmlServlet();
+		session  = ServletStubs.session();
+
+		importPage();
+
+		servlet.init(ServletStubs.config("HtmlServlet", Collections.singletonMap(AuthenticationService.SERVLET_PARAMETER_AUTHENTICATOR, HttpAuthenticator.class.getName())));
+	}
+
+	@TearDown
+	public void tearDown() {
+
+		servlet.destroy();
+		database.stop();
+	}
+
+	@Benchmark
+	public String render() {
+
+		StringWriter writer = new StringWriter(16384);
+
+		servlet.doGet(ServletStubs.request("/" + PAGE_NAME, session), ServletStubs.response(writer));
+
+		return writer.toString();
+	}
+
+	// ----- private methods -----
+	private void importPage() throws IOException, FrameworkException {
+
+		final SecurityContext securityContext     = database.getSecurityContext();
+		final CreateNodeCommand createNodeCommand = Services.command(securityContext, CreateNodeCommand.class);
+		final Importer importer                   = new Importer(securityContext, "http://localhost/", PAGE_NAME, 0, true, true);
+		final URL baseUrl                         = new URL("http://localhost/");
+		final String html                         = createDocument();
+
+		importer.init();
+
+		database.transaction(new StructrTransaction<Object>() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				PropertyMap properties = new PropertyMap();
+
+				properties.put(AbstractNode.type, Page.class.getSimpleName());
+				properties.put(AbstractNode.name, PAGE_NAME);
+
+				AbstractNode page = createNodeCommand.execute(properties);
+
+				importer.createChildNodes(Jsoup.parse(html), page, page.getUuid(), baseUrl);
+
+				// make the page and all of its elements visible
+				NodeFactory nodeFactory = new NodeFactory(securityContext);
+
+				for (Node node : GlobalGraphOperations.at(Services.command(securityContext, GraphDatabaseCommand.class).execute()).getAllNodes()) {
+
+					if (node.hasProperty(AbstractNode.type.dbName())) {
+
+						nodeFactory.createNode(node).setProperty(AbstractNode.visibleToPublicUsers, true);
+					}
+				}
+
+				return null;
+			}
+		});
+	}
+
+	private String createDocument() {
+
+		StringBuilder buf = new StringBuilder();
+
+		buf.append("<html><head><title>Benchmark</title></head><body><div id=\"content\">");
+
+		for (int i = 0; i < sections; i++) {
+
+			if (templates) {
+
+				buf.append("<div class=\"section\"><h2>Section ").append(i).append(" of ${page.name}</h2>");
+				buf.append("<p>Lorem ipsum ${capitalize(page.name)}, <b>${upper(page.name)}</b> adipisicing ${lower(page.name)}, ");
+				buf.append("<a href=\"#section").append(i).append("\" title='${if(equal(page.name, \"").append(PAGE_NAME).append("\"), \"current\", \"other\")}'>${page.name}</a> eiusmod tempor.</p>");
+				buf.append("<ul>");
+
+				for (int j = 0; j < 5; j++) {
+
+					buf.append("<li title='${if(equal(page.name, \"").append(PAGE_NAME).append("\"), \"active\", \"inactive\")}'>");
+					buf.append("Item ").append(j).append(" of ${upper(page.name)}</li>");
+				}
+
+			} else {
+
+				buf.append("<div class=\"section\"><h2>Section ").append(i).append("</h2>");
+				buf.append("<p>Lorem ipsum dolor sit amet, <b>consectetur</b> adipisicing elit, <a href=\"#section").append(i).append("\">sed do</a> eiusmod tempor.</p>");
+				buf.append("<ul>");
+
+				for (int j = 0; j < 5; j++) {
+					buf.append("<li>Item ").append(j).append("</li>");
+				}
+			}
+
+			buf.append("</ul></div>");
+		}
+
+		buf.append("</div></body></html>");
+
+		return buf.toString();
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded cache with least-recently-used eviction.
+ *
+ * The cache is split into a number of independently locked segments, so
+ * that concurrent readers and writers only contend when they access keys
+ * of the same segment. Hits, misses and evictions are counted and can be
+ * retrieved for monitoring.
+ *
+ * A cache with a maximum size of 0 (or less) is disabled, i.e. it does not
+ * store any entries.
+ */
+public class BoundedCache<K, V> {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final AtomicLong evictions = new AtomicLong(0);
+	private final AtomicLong misses    = new AtomicLong(0);
+	private final AtomicLong hits      = new AtomicLong(0);
+	private Segment<K, V>[] segments   = null;
+	private String name                = null;
+	private int maxSize                = 0;
+
+	public BoundedCache(final String name, final int maxSize) {
+		this(name, maxSize, DEFAULT_SEGMENTS);
+	}
+
+	public BoundedCache(final String name, final int maxSize, final int segmentCount) {
+
+		this.segments = new Segment[segmentCount];
+		this.maxSize  = maxSize;
+		this.name     = name;
+
+		int segmentSize = maxSize > 0 ? Math.max(1, maxSize / segmentCount) : 0;
+
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<K, V>(this, segmentSize);
+		}
+	}
+
+	public V get(final K key) {
+
+		Segment<K, V> segment = segmentFor(key);
+		V value               = null;
+
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+
+		if (value != null) {
+
+			hits.incrementAndGet();
+
+		} else {
+
+			misses.incrementAndGet();
+		}
+
+		return value;
+	}
+
+	public void put(final K key, final V value) {
+
+		if (!isEnabled()) {
+			return;
+		}
+
+		Segment<K, V> segment = segmentFor(key);
+
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	public V remove(final K key) {
+
+		Segment<K, V> segment = segmentFor(key);
+
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
+	public void clear() {
+
+		for (Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+
+		long hitCount = hits.get();
+		long total    = hitCount + misses.get();
+
+		return total > 0 ? (double) hitCount / (double) total : 0.0;
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder buf = new StringBuilder();
+
+		buf.append(name);
+		buf.append(": ");
+		buf.append(size());
+		buf.append("/");
+		buf.append(maxSize);
+		buf.append(" entries, ");
+		buf.append(hits.get());
+		buf.append(" hits, ");
+		buf.append(misses.get());
+		buf.append(" misses, ");
+		buf.append(evictions.get());
+		buf.append(" evictions");
+
+		return buf.toString();
+	}
+
+	/**
+	 * Called when the least recently used entry is evicted to make room
+	 * for a new one. The segment of the entry is locked while this method
+	 * runs, so implementations must not access the cache.
+	 *
+	 * @param key the key of the evicted entry
+	 * @param value the value of the evicted entry
+	 */
+	protected void onEviction(final K key, final V value) {}
+
+	// ----- private methods -----
+	private Segment<K, V> segmentFor(final K key) {
+
+		int hash = key.hashCode();
+
+		// spread bits so that sequential ids are distributed evenly
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+	// ----- nested classes -----
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+		private BoundedCache<K, V> cache = null;
+		private int maxSize              = 0;
+
+		public Segment(final BoundedCache<K, V> cache, final int maxSize) {
+
+			super(16, 0.75f, true);
+
+			this.maxSize = maxSize;
+			this.cache   = cache;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+
+			if (size() > maxSize) {
+
+				cache.evictions.incrementAndGet();
+				cache.onEviction(eldest.getKey(), eldest.getValue());
+
+				return true;
+			}
+
+			return false;
+		}
+	}
+}
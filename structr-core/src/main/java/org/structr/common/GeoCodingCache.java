@@ -0,0 +1,237 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.GeoHelper.GeoCodingResult;
+
+/**
+ * A bounded cache of geocoding results, keyed by normalized address.
+ *
+ * New entries are appended to a file, which is read when the cache is
+ * created, so that addresses are not resolved again after a restart. The
+ * file is compacted when it contains many more lines than the cache can
+ * hold.
+ */
+public class GeoCodingCache {
+
+	private static final Logger logger                 = Logger.getLogger(GeoCodingCache.class.getName());
+	private static final String SEPARATOR              = "\t";
+
+	private BoundedCache<String, GeoCodingResult> cache = null;
+	private File file                                   = null;
+	private int maxSize                                 = 0;
+
+	public GeoCodingCache(final File file, final int maxSize) {
+
+		this.cache   = new BoundedCache<String, GeoCodingResult>("Geocoding cache", maxSize);
+		this.maxSize = maxSize;
+		this.file    = file;
+
+		load();
+	}
+
+	/**
+	 * Normalizes the given address, so that addresses that differ in case
+	 * or whitespace only share a cache entry.
+	 *
+	 * @param address the address
+	 * @return the normalized address
+	 */
+	public static String normalize(final String address) {
+		return address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+	}
+
+	public GeoCodingResult get(final String key) {
+		return cache.get(key);
+	}
+
+	public void put(final String key, final GeoCodingResult result) {
+
+		cache.put(key, result);
+
+		if (file != null) {
+
+			synchronized (this) {
+
+				Writer writer = null;
+
+				try {
+					writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+					writeEntry(writer, key, result);
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to write geocoding cache {0}: {1}", new Object[] { file, ioex.getMessage() });
+
+				} finally {
+
+					close(writer);
+				}
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+
+	// ----- private methods -----
+	private void load() {
+
+		if (file == null || !file.exists()) {
+			return;
+		}
+
+		// keeps the most recent entry of every address in file order
+		Map<String, GeoCodingResult> entries = new LinkedHashMap<String, GeoCodingResult>();
+		BufferedReader reader                = null;
+		int lineCount                        = 0;
+
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+				String[] parts = line.split(SEPARATOR, 3);
+				lineCount++;
+
+				if (parts.length == 3) {
+
+					try {
+						GeoCodingResult result = new GeoCodingResult(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+						result.setAddress(parts[2]);
+
+						entries.remove(parts[2]);
+						entries.put(parts[2], result);
+
+					} catch (NumberFormatException nfex) {}
+				}
+			}
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to read geocoding cache {0}: {1}", new Object[] { file, ioex.getMessage() });
+
+		} finally {
+
+			close(reader);
+		}
+
+		// only the most recent entries fit into the cache
+		int skip = Math.max(0, entries.size() - maxSize);
+
+		for (Entry<String, GeoCodingResult> entry : entries.entrySet()) {
+
+			if (skip-- <= 0) {
+				cache.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		if (lineCount > 2 * maxSize) {
+			compact(entries, entries.size() - maxSize);
+		}
+
+		logger.log(Level.INFO, "Loaded {0} geocoding results from {1}", new Object[] { Math.min(entries.size(), maxSize), file });
+	}
+
+	private void compact(final Map<String, GeoCodingResult> entries, final int skipCount) {
+
+		File tmpFile  = new File(file.getPath() + ".tmp");
+		Writer writer = null;
+		int skip      = skipCount;
+
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+
+			for (Entry<String, GeoCodingResult> entry : entries.entrySet()) {
+
+				if (skip-- <= 0) {
+					writeEntry(writer, entry.getKey(), entry.getValue());
+				}
+			}
+
+			writer.close();
+			writer = null;
+
+			if (!tmpFile.renameTo(file)) {
+
+				file.delete();
+				tmpFile.renameTo(file);
+			}
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to compact geocoding cache {0}: {1}", new Object[] { file, ioex.getMessage() });
+
+		} finally {
+
+			close(writer);
+		}
+	}
+
+	private void writeEntry(final Writer writer, final String key, final GeoCodingResult result) throws IOException {
+
+		writer.write(Double.toString(result.getLatitude()));
+		writer.write(SEPARATOR);
+		writer.write(Double.toString(result.getLongitude()));
+		writer.write(SEPARATOR);
+		writer.write(key);
+		writer.write("\n");
+	}
+
+	private void close(final java.io.Closeable closeable) {
+
+		if (closeable != null) {
+
+			try { closeable.close(); } catch (IOException ignore) {}
+		}
+	}
+}
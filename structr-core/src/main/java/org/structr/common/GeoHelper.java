@@ -36,6 +36,7 @@ import org.structr.core.graph.TransactionCommand;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
@@ -66,7 +67,11 @@ import org.structr.common.GeoHelper.GeoCodingResult.Type;
  */
 public class GeoHelper {
 
-	private static final Logger logger = Logger.getLogger(GeoHelper.class.getName());
+	private static final Logger logger          = Logger.getLogger(GeoHelper.class.getName());
+	private static final String CACHE_FILE      = "geocoding.cache";
+	private static final int DEFAULT_CACHE_SIZE = 10000;
+	private static GeoCodingProvider provider   = null;
+	private static GeoCodingCache cache         = null;
 
 	//~--- methods --------------------------------------------------------
 
@@ -92,72 +97,89 @@ public class GeoHelper {
 		return (Location) Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class).execute(transaction);
 	}
 
+	/**
+	 * Returns the coordinates of the given address. Results are cached
+	 * and persisted in the base directory, so that the geocoding provider
+	 * is only asked for addresses that were never resolved before.
+	 *
+	 * Cached results that were loaded from disk contain the coordinates
+	 * and the address only, without address components.
+	 *
+	 * @param address the address
+	 * @return the coordinates, or null if the address could not be resolved
+	 * @throws FrameworkException
+	 */
 	public static GeoCodingResult geocode(final String address) throws FrameworkException {
 
-		String encodedAddress;
+		if (address == null) {
+			return null;
+		}
 
-		try {
-			encodedAddress = URLEncoder.encode(address, "UTF-8");
-		} catch (UnsupportedEncodingException ex) {
+		GeoCodingCache cache   = getCache();
+		String cacheKey        = GeoCodingCache.normalize(address);
+		GeoCodingResult result = cache.get(cacheKey);
 
-			logger.log(Level.WARNING, "Unsupported Encoding", ex);
+		if (result == null) {
 
-			return null;
+			result = getProvider().geocode(address);
+			if (result != null) {
+
+				cache.put(cacheKey, result);
+			}
 		}
 
-		Document xmlDoc;
+		return result;
+	}
 
-		try {
+	/**
+	 * Returns the geocoding cache, which is (re-)initialized when the base
+	 * path changes.
+	 *
+	 * @return the geocoding cache
+	 */
+	public static GeoCodingCache getCache() {
 
-			String protocol              = "xml";    // "xml" or "json"
-			URL mapsUrl                  = new URL("http://maps.google.com/maps/api/geocode/" + protocol + "?sensor=false&address=" + encodedAddress);
-			HttpURLConnection connection = (HttpURLConnection) mapsUrl.openConnection();
+		String basePath = Services.getBasePath();
+		File cacheFile  = basePath != null ? new File(basePath, CACHE_FILE) : null;
 
-			connection.connect();
+		synchronized (GeoHelper.class) {
 
-			SAXReader reader  = new SAXReader();
-			BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+			if (cache == null || (cacheFile != null && !cacheFile.equals(cache.getFile()))) {
 
-			xmlDoc = reader.read(rd);
+				int size = DEFAULT_CACHE_SIZE;
 
-			connection.disconnect();
-			rd.close();
+				try { size = Integer.parseInt(Services.getConfigurationValue(Services.GEOCODING_CACHE_SIZE, Integer.toString(DEFAULT_CACHE_SIZE))); } catch (NumberFormatException nfex) {}
 
-		} catch (IOException ioe) {
+				cache = new GeoCodingCache(cacheFile, size);
+			}
 
-			logger.log(Level.WARNING, "Connection to geocoding service failed", ioe);
+			return cache;
+		}
+	}
 
-			return null;
+	private static GeoCodingProvider getProvider() {
 
-		} catch (DocumentException de) {
+		String providerClass = Services.getConfigurationValue(Services.GEOCODING_PROVIDER, GoogleGeoCodingProvider.class.getName());
 
-			logger.log(Level.WARNING, "Could not read result document", de);
+		synchronized (GeoHelper.class) {
 
-			return null;
-		}
+			if (provider == null || !provider.getClass().getName().equals(providerClass)) {
 
-		Element root = xmlDoc.getRootElement();
+				try {
+					provider = (GeoCodingProvider) Class.forName(providerClass).newInstance();
 
-		// List<Element> rootChildren = root.elements();
-		String status = root.element("status").getTextTrim();
-		if ("OK".equals(status)) {
-			
-			try {
-				return new GeoCodingResult(address, root);
-				
-			} catch(Throwable t) {
-				
-				logger.log(Level.WARNING, "Unable to find geocoding for address {0}: {1}", new Object[] { address, t.getMessage() });
-			}
+				} catch (Throwable t) {
 
-		} else {
+					logger.log(Level.WARNING, "Unable to instantiate geocoding provider {0}, using default: {1}", new Object[] { providerClass, t.getMessage() });
 
-			logger.log(Level.WARNING, "Status not OK for address {0}: {1}", new Object[] { address, status });
-		}
+					provider = new GoogleGeoCodingProvider();
+				}
+			}
 
-		return null;
+			return provider;
+		}
 	}
-	
+
 	public static void main(String[] args) {
 
 		String address = "Hanauer Landstr. 291a";
@@ -202,6 +224,87 @@ public class GeoHelper {
 
 	//~--- inner classes --------------------------------------------------
 
+	/**
+	 * Resolves addresses to coordinates.
+	 */
+	public interface GeoCodingProvider {
+
+		public GeoCodingResult geocode(final String address);
+	}
+
+	/**
+	 * The default geocoding provider, which uses the Google Maps API.
+	 */
+	public static class GoogleGeoCodingProvider implements GeoCodingProvider {
+
+		@Override
+		public GeoCodingResult geocode(final String address) {
+
+			String encodedAddress;
+
+			try {
+				encodedAddress = URLEncoder.encode(address, "UTF-8");
+			} catch (UnsupportedEncodingException ex) {
+
+				logger.log(Level.WARNING, "Unsupported Encoding", ex);
+
+				return null;
+			}
+
+			Document xmlDoc;
+
+			try {
+
+				String protocol              = "xml";    // "xml" or "json"
+				URL mapsUrl                  = new URL("http://maps.google.com/maps/api/geocode/" + protocol + "?sensor=false&address=" + encodedAddress);
+				HttpURLConnection connection = (HttpURLConnection) mapsUrl.openConnection();
+
+				connection.connect();
+
+				SAXReader reader  = new SAXReader();
+				BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+
+				xmlDoc = reader.read(rd);
+
+				connection.disconnect();
+				rd.close();
+
+			} catch (IOException ioe) {
+
+				logger.log(Level.WARNING, "Connection to geocoding service failed", ioe);
+
+				return null;
+
+			} catch (DocumentException de) {
+
+				logger.log(Level.WARNING, "Could not read result document", de);
+
+				return null;
+			}
+
+			Element root = xmlDoc.getRootElement();
+
+			// List<Element> rootChildren = root.elements();
+			String status = root.element("status").getTextTrim();
+			if ("OK".equals(status)) {
+			
+				try {
+					return new GeoCodingResult(address, root);
+				
+				} catch(Throwable t) {
+				
+					logger.log(Level.WARNING, "Unable to find geocoding for address {0}: {1}", new Object[] { address, t.getMessage() });
+				}
+
+			} else {
+
+				logger.log(Level.WARNING, "Status not OK for address {0}: {1}", new Object[] { address, status });
+			}
+
+			return null;
+		}
+	}
+
 	public static class GeoCodingResult {
 
 		private List<AddressComponent> addressComponents = new LinkedList<AddressComponent>();
@@ -31,6 +31,7 @@ import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.*;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.property.PropertyKey;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -413,8 +414,65 @@ public class SecurityContext {
 
 		return false;
 	}
+
+	/**
+	 * Decides whether the given database node is readable from its raw
+	 * visibility flags, in the same order as {@link #isReadable(AbstractNode, boolean, boolean)},
+	 * without instantiating a structr node.
+	 *
+	 * @param node the database node
+	 * @param includeDeletedAndHidden
+	 * @param publicOnly
+	 * @return true or false, or null if the decision needs the owner and
+	 * the security relationships of the instantiated node
+	 */
+	public Boolean isReadable(final Node node, final boolean includeDeletedAndHidden, final boolean publicOnly) {
+
+		if (!includeDeletedAndHidden && (getFlag(node, AbstractNode.deleted) || getFlag(node, AbstractNode.hidden))) {
+
+			return false;
+		}
+
+		if (getFlag(node, AbstractNode.visibleToPublicUsers)) {
+
+			return true;
+		}
+
+		if (publicOnly) {
+
+			return false;
+		}
+
+		if (getFlag(node, AbstractNode.visibleToAuthenticatedUsers) && getUser() != null) {
+
+			return true;
+		}
+
+		if (isSuperUser()) {
+
+			return true;
+		}
+
+		return null;
+	}
 	
 	// ----- private methods -----
+	private boolean getFlag(final Node node, final PropertyKey<Boolean> key) {
+
+		Object value = node.getProperty(key.dbName(), null);
+
+		if (value instanceof Boolean) {
+
+			return (Boolean) value;
+
+		} else if (value instanceof String) {
+
+			return Boolean.parseBoolean((String) value);
+		}
+
+		return false;
+	}
+
 	private boolean isVisibleInBackend(AccessControllable node) {
 
 		// no node, nothing to see here..
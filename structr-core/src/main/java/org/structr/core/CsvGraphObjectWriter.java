@@ -0,0 +1,147 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Writes graph objects as CSV (comma separated values), one row per
+ * object, preceded by a header row with the database names of the
+ * properties of the first object.
+ *
+ * Rows are pulled from the given {@link Iterable} one by one and written
+ * directly to the target {@link Writer}, without building them in memory
+ * first. This class never flushes the target writer; callers should pass
+ * a buffered writer and flush it when the export is complete.
+ *
+ * All fields are enclosed in double quotes, and double quotes inside a
+ * field are escaped by preceding them with another double quote, as
+ * described in RFC 4180. Null values are written as empty fields.
+ *
+ * Instances of this class can be shared between threads.
+ */
+public class CsvGraphObjectWriter {
+
+	private static final char QUOTE     = '"';
+	private static final char SEPARATOR = ',';
+	private static final char NEWLINE   = '\n';
+
+	private Value<String> propertyView = null;
+
+	public CsvGraphObjectWriter(final Value<String> propertyView) {
+		this.propertyView = propertyView;
+	}
+
+	/**
+	 * Writes the header row and one row for each of the given objects.
+	 *
+	 * @param out the target writer
+	 * @param objects the objects
+	 * @return the number of rows written, not counting the header row
+	 * @throws IOException
+	 */
+	public int write(final Writer out, final Iterable<? extends GraphObject> objects) throws IOException {
+
+		String view = propertyView.get(null);
+		int rows    = 0;
+
+		for (GraphObject obj : objects) {
+
+			Iterable<PropertyKey> keys = obj.getPropertyKeys(view);
+
+			// column headers
+			if (rows == 0) {
+
+				boolean first = true;
+
+				for (PropertyKey key : keys) {
+
+					if (!first) {
+						out.write(SEPARATOR);
+					}
+
+					writeField(out, key.dbName());
+
+					first = false;
+				}
+
+				out.write(NEWLINE);
+			}
+
+			boolean first = true;
+
+			for (PropertyKey key : keys) {
+
+				Object value = obj.getProperty(key);
+
+				if (!first) {
+					out.write(SEPARATOR);
+				}
+
+				writeField(out, value != null ? value.toString() : null);
+
+				first = false;
+			}
+
+			out.write(NEWLINE);
+
+			rows++;
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Writes a single quoted field, doubling all quotes in the given value
+	 * in a single pass.
+	 *
+	 * @param out the target writer
+	 * @param value the value, may be null
+	 * @throws IOException
+	 */
+	public static void writeField(final Writer out, final String value) throws IOException {
+
+		out.write(QUOTE);
+
+		if (value != null) {
+
+			int length = value.length();
+			int start  = 0;
+
+			for (int i = 0; i < length; i++) {
+
+				if (value.charAt(i) == QUOTE) {
+
+					// write everything up to and including the quote, the
+					// quote is then written again with the next chunk
+					out.write(value, start, i - start + 1);
+
+					start = i;
+				}
+			}
+
+			out.write(value, start, length - start);
+		}
+
+		out.write(QUOTE);
+	}
+}
@@ -24,6 +24,7 @@ package org.structr.core;
 import org.structr.core.graph.NewIndexNodeCommand;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.IndexRelationshipCommand;
+import org.structr.core.graph.TransactionCommand;
 import java.lang.reflect.Field;
 import org.apache.commons.lang.StringUtils;
 
@@ -50,6 +51,7 @@ import org.structr.core.graph.RelationshipFactory;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.DynamicRelationshipType;
@@ -93,11 +95,12 @@ public class EntityContext {
 	private static final Set<PropertyKey> globalKnownPropertyKeys                                           = new LinkedHashSet<PropertyKey>();
 	private static final Map<Class, Set<Transformation<GraphObject>>> globalEntityCreationTransformationMap = new LinkedHashMap<Class, Set<Transformation<GraphObject>>>();
 	private static final Map<String, String> normalizedEntityNameCache                                      = new LinkedHashMap<String, String>();
-	private static final Set<StructrTransactionListener> transactionListeners                               = new LinkedHashSet<StructrTransactionListener>();
+	private static final Set<StructrTransactionListener> transactionListeners                               = new CopyOnWriteArraySet<StructrTransactionListener>();
+	private static final PostCommitDispatcher postCommitDispatcher                                          = new PostCommitDispatcher();
 	private static final Map<String, RelationshipMapping> globalRelationshipNameMap                         = new LinkedHashMap<String, RelationshipMapping>();
 	private static final Map<String, Class> globalRelationshipClassMap                                      = new LinkedHashMap<String, Class>();
 	private static final EntityContextModificationListener globalModificationListener                       = new EntityContextModificationListener();
-	private static final Map<Long, FrameworkException> exceptionMap                                         = new LinkedHashMap<Long, FrameworkException>();
+	private static final Map<Long, FrameworkException> exceptionMap                                         = new ConcurrentHashMap<Long, FrameworkException>();
 	private static final Map<Class, Set<Class>> interfaceMap                                                = new LinkedHashMap<Class, Set<Class>>();
 	private static final Map<String, Class> reverseInterfaceMap                                             = new LinkedHashMap<String, Class>();
 	private static Map<String, Class> cachedEntities                                                        = new LinkedHashMap<String, Class>();
@@ -212,7 +215,9 @@ public class EntityContext {
 	 * @param listener the listener to register
 	 */
 	public static void registerTransactionListener(StructrTransactionListener listener) {
+
 		transactionListeners.add(listener);
+		postCommitDispatcher.register(listener);
 	}
 
 	/**
@@ -221,7 +226,20 @@ public class EntityContext {
 	 * @param listener the listener to unregister
 	 */
 	public static void unregisterTransactionListener(StructrTransactionListener listener) {
+
 		transactionListeners.remove(listener);
+		postCommitDispatcher.unregister(listener);
+	}
+
+	/**
+	 * Unregisters all transaction listeners and stops the threads that
+	 * deliver their commit notifications. Called when the database is shut
+	 * down, listeners must register again after the next start.
+	 */
+	public static void unregisterTransactionListeners() {
+
+		transactionListeners.clear();
+		postCommitDispatcher.shutdown();
 	}
 
 	/**
@@ -946,7 +964,7 @@ public class EntityContext {
 		return globalModificationListener;
 	}
 
-	public static synchronized FrameworkException getFrameworkException(Long transactionKey) {
+	public static FrameworkException getFrameworkException(Long transactionKey) {
 		return exceptionMap.get(transactionKey);
 	}
 
@@ -969,22 +987,23 @@ public class EntityContext {
 		genericFactory = factory;
 	}
 
-	public static synchronized TransactionChangeSet getTransactionChangeSet(long transactionKey) {
+	public static TransactionChangeSet getTransactionChangeSet(long transactionKey) {
 		return globalChangeSets.get(transactionKey);
 	}
 	
-	public static synchronized void clearTransactionData(long transactionKey) {
+	public static void clearTransactionData(long transactionKey) {
 
 		securityContextMap.remove();
 		transactionKeyMap.remove();
 		globalChangeSets.remove(transactionKey);
+		exceptionMap.remove(transactionKey);
 	}
 	
-	public static synchronized void setSecurityContext(SecurityContext securityContext) {
+	public static void setSecurityContext(SecurityContext securityContext) {
 		securityContextMap.set(securityContext);
 	}
 
-	public static synchronized void setTransactionKey(Long transactionKey) {
+	public static void setTransactionKey(Long transactionKey) {
 		transactionKeyMap.set(transactionKey);
 	}
 	
@@ -1117,7 +1136,7 @@ public class EntityContext {
 
 				logger.log(Level.WARNING, "Node service is not ready yet.");
 
-				return transactionKey;
+				return -1L;
 
 			}
 
@@ -1184,11 +1203,6 @@ public class EntityContext {
 
 				}
 
-				for (StructrTransactionListener listener : EntityContext.getTransactionListeners()) {
-					listener.commit(securityContext, transactionKey);
-				}
-				
-				
 			} catch (FrameworkException fex) {
 
 				exceptionMap.put(transactionKey, fex);
@@ -1200,7 +1214,24 @@ public class EntityContext {
 		}
 
 		@Override
-		public void afterCommit(TransactionData data, Long transactionKey) {}
+		public void afterCommit(TransactionData data, Long transactionKey) {
+
+			// drop cached node ids of modified UUIDs
+			NodeService.getUuidCache().invalidate(data);
+
+			// drop the grant table if grants were modified
+			NodeService.getResourceAccessCache().invalidate(data);
+
+			// drop cached authentications of modified principals
+			NodeService.getAuthenticationCache().invalidate(data);
+
+			// the transaction is durable now, notify listeners
+			// asynchronously so that the commit does not have
+			// to wait for slow listeners
+			if (transactionKey != null && transactionKey >= 0) {
+				postCommitDispatcher.dispatch(securityContextMap.get(), transactionKey);
+			}
+		}
 
 		@Override
 		public void afterRollback(TransactionData data, Long transactionKey) {
@@ -1212,6 +1243,17 @@ public class EntityContext {
 				// thow
 				throw new IllegalArgumentException(t);
 			}
+
+			// the transaction passed beforeCommit but could not
+			// be committed, listeners must discard their state
+			if (transactionKey != null && transactionKey >= 0) {
+
+				SecurityContext securityContext = securityContextMap.get();
+
+				for (StructrTransactionListener listener : EntityContext.getTransactionListeners()) {
+					listener.rollback(securityContext, transactionKey);
+				}
+			}
 		}
 			
 		private boolean collectRemovedNodeProperties(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, TransactionData data, TransactionChangeSet changeSet,
@@ -1538,6 +1580,10 @@ public class EntityContext {
 		                                       NewIndexNodeCommand indexNodeCommand) throws FrameworkException {
 			
 			boolean hasError = false;
+
+			// make sure no other transaction rewrites the index entries
+			// of these nodes while we are committing
+			TransactionCommand.lockNodesForCommit(changeSet.getModifiedNodes());
 			
 			for (AbstractNode node : changeSet.getModifiedNodes()) {
 
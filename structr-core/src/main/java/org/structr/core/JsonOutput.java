@@ -0,0 +1,233 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Target of the JSON serialization code, so that the same code can write
+ * to a {@link JsonWriter} or build a tree of {@link JsonElement}s for a
+ * Gson type adapter.
+ *
+ * The methods follow {@link JsonWriter}: every value of an object must be
+ * preceded by a call to {@link #name}.
+ */
+public abstract class JsonOutput {
+
+	public abstract void beginObject() throws IOException;
+
+	public abstract void endObject() throws IOException;
+
+	public abstract void beginArray() throws IOException;
+
+	public abstract void endArray() throws IOException;
+
+	public abstract void name(final String name) throws IOException;
+
+	/**
+	 * Writes a primitive value. Numbers and booleans are written as such,
+	 * null as null, and everything else as a string.
+	 *
+	 * @param value the value
+	 * @throws IOException
+	 */
+	public abstract void value(final Object value) throws IOException;
+
+	/**
+	 * Returns an output that writes to the given writer.
+	 *
+	 * @param writer the writer
+	 * @return the output
+	 */
+	public static JsonOutput forWriter(final JsonWriter writer) {
+		return new WriterOutput(writer);
+	}
+
+	/**
+	 * Returns an output that builds a tree of JSON elements, see
+	 * {@link TreeOutput#getResult}.
+	 *
+	 * @return the output
+	 */
+	public static TreeOutput forTree() {
+		return new TreeOutput();
+	}
+
+	// ----- nested classes -----
+	private static class WriterOutput extends JsonOutput {
+
+		private JsonWriter writer = null;
+
+		public WriterOutput(final JsonWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void beginObject() throws IOException {
+			writer.beginObject();
+		}
+
+		@Override
+		public void endObject() throws IOException {
+			writer.endObject();
+		}
+
+		@Override
+		public void beginArray() throws IOException {
+			writer.beginArray();
+		}
+
+		@Override
+		public void endArray() throws IOException {
+			writer.endArray();
+		}
+
+		@Override
+		public void name(final String name) throws IOException {
+			writer.name(name);
+		}
+
+		@Override
+		public void value(final Object value) throws IOException {
+
+			if (value == null) {
+
+				writer.nullValue();
+
+			} else if (value instanceof Number) {
+
+				writer.value((Number) value);
+
+			} else if (value instanceof Boolean) {
+
+				writer.value((Boolean) value);
+
+			} else {
+
+				// strings, characters and everything else
+				writer.value(value.toString());
+			}
+		}
+	}
+
+	/**
+	 * Builds a tree of JSON elements. Null values are added as null, which
+	 * Gson stores as JSON null.
+	 */
+	public static class TreeOutput extends JsonOutput {
+
+		private final LinkedList<JsonElement> parents = new LinkedList<JsonElement>();
+		private JsonElement result                    = null;
+		private String name                           = null;
+
+		/**
+		 * Returns the element that was written first, i.e. the root of the
+		 * tree.
+		 *
+		 * @return the root element
+		 */
+		public JsonElement getResult() {
+			return result;
+		}
+
+		@Override
+		public void beginObject() {
+
+			JsonObject object = new JsonObject();
+
+			add(object);
+			parents.addFirst(object);
+		}
+
+		@Override
+		public void endObject() {
+			parents.removeFirst();
+		}
+
+		@Override
+		public void beginArray() {
+
+			JsonArray array = new JsonArray();
+
+			add(array);
+			parents.addFirst(array);
+		}
+
+		@Override
+		public void endArray() {
+			parents.removeFirst();
+		}
+
+		@Override
+		public void name(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void value(final Object value) {
+
+			if (value == null) {
+
+				add(null);
+
+			} else if (value instanceof Number) {
+
+				add(new JsonPrimitive((Number) value));
+
+			} else if (value instanceof Boolean) {
+
+				add(new JsonPrimitive((Boolean) value));
+
+			} else {
+
+				add(new JsonPrimitive(value.toString()));
+			}
+		}
+
+		// ----- private methods -----
+		private void add(final JsonElement element) {
+
+			JsonElement parent = parents.peek();
+
+			if (parent == null) {
+
+				if (result == null) {
+					result = element;
+				}
+
+			} else if (parent.isJsonObject()) {
+
+				parent.getAsJsonObject().add(name, element);
+
+				name = null;
+
+			} else {
+
+				parent.getAsJsonArray().add(element);
+			}
+		}
+	}
+}
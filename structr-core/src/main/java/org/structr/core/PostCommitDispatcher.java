@@ -0,0 +1,223 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+
+/**
+ * Delivers the commit notifications of successfully committed transactions
+ * to the registered {@link StructrTransactionListener}s asynchronously.
+ *
+ * Every listener gets its own bounded queue and worker thread, so a slow
+ * listener can neither delay the committing thread nor the other listeners,
+ * while the commit order is preserved for each listener. If the queue of a
+ * listener is full, the committing thread waits until there is room again.
+ *
+ * The size of the queues can be set with the configuration key
+ * {@link Services#TRANSACTION_NOTIFICATION_QUEUE_SIZE}.
+ */
+public class PostCommitDispatcher {
+
+	private static final Logger logger         = Logger.getLogger(PostCommitDispatcher.class.getName());
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+	private static final int MAX_BATCH_SIZE     = 100;
+
+	private final Map<StructrTransactionListener, ListenerQueue> queues = new ConcurrentHashMap<StructrTransactionListener, ListenerQueue>();
+
+	public void register(final StructrTransactionListener listener) {
+
+		ListenerQueue queue = new ListenerQueue(listener, getQueueSize());
+		ListenerQueue old   = queues.put(listener, queue);
+
+		if (old != null) {
+			old.shutdown();
+		}
+
+		queue.start();
+	}
+
+	public void unregister(final StructrTransactionListener listener) {
+
+		ListenerQueue queue = queues.remove(listener);
+		if (queue != null) {
+
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Schedules the commit notification for the given transaction. This
+	 * method must only be called after the transaction has been committed.
+	 *
+	 * @param securityContext the security context of the transaction
+	 * @param transactionKey the transaction key
+	 */
+	public void dispatch(final SecurityContext securityContext, final long transactionKey) {
+
+		CommitNotification notification = new CommitNotification(securityContext, transactionKey);
+
+		for (ListenerQueue queue : queues.values()) {
+			queue.add(notification);
+		}
+	}
+
+	/**
+	 * Unregisters all listeners and stops their worker threads.
+	 * Notifications that have not been delivered yet are discarded.
+	 */
+	public void shutdown() {
+
+		List<ListenerQueue> stoppedQueues = new ArrayList<ListenerQueue>(queues.values());
+
+		queues.clear();
+
+		for (ListenerQueue queue : stoppedQueues) {
+			queue.shutdown();
+		}
+
+		for (ListenerQueue queue : stoppedQueues) {
+
+			try {
+				queue.join(1000);
+
+			} catch (InterruptedException iex) {
+
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private int getQueueSize() {
+
+		String value = Services.getConfigurationValue(Services.TRANSACTION_NOTIFICATION_QUEUE_SIZE, Integer.toString(DEFAULT_QUEUE_SIZE));
+
+		try {
+			return Math.max(1, Integer.parseInt(value));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value {0} for {1}, using default of {2}", new Object[] { value, Services.TRANSACTION_NOTIFICATION_QUEUE_SIZE, DEFAULT_QUEUE_SIZE } );
+		}
+
+		return DEFAULT_QUEUE_SIZE;
+	}
+
+	// ----- nested classes -----
+	private static class CommitNotification {
+
+		private SecurityContext securityContext = null;
+		private long transactionKey             = 0L;
+
+		public CommitNotification(final SecurityContext securityContext, final long transactionKey) {
+			this.securityContext = securityContext;
+			this.transactionKey  = transactionKey;
+		}
+	}
+
+	private static class ListenerQueue extends Thread {
+
+		private BlockingQueue<CommitNotification> queue = null;
+		private StructrTransactionListener listener     = null;
+		private volatile boolean running                = true;
+
+		public ListenerQueue(final StructrTransactionListener listener, final int size) {
+
+			super("PostCommitDispatcher " + listener.getClass().getSimpleName());
+
+			this.queue    = new ArrayBlockingQueue<CommitNotification>(size);
+			this.listener = listener;
+
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			List<CommitNotification> batch = new ArrayList<CommitNotification>(MAX_BATCH_SIZE);
+
+			while (running) {
+
+				try {
+
+					// wait for the next notification and take
+					// everything else that has piled up meanwhile
+					batch.add(queue.take());
+					queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+					for (CommitNotification notification : batch) {
+
+						try {
+							listener.commit(notification.securityContext, notification.transactionKey);
+
+						} catch (Throwable t) {
+
+							logger.log(Level.WARNING, "Error in transaction listener {0}: {1}", new Object[] { listener.getClass().getName(), t.getMessage() } );
+						}
+					}
+
+				} catch (InterruptedException iex) {
+
+					// shutdown() was called
+
+				} finally {
+
+					batch.clear();
+				}
+			}
+		}
+
+		public void add(final CommitNotification notification) {
+
+			try {
+
+				while (running) {
+
+					if (queue.offer(notification, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+
+			} catch (InterruptedException iex) {
+
+				logger.log(Level.WARNING, "Interrupted while waiting for transaction listener {0}, notification for transaction {1} discarded.",
+					new Object[] { listener.getClass().getName(), notification.transactionKey } );
+
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void shutdown() {
+
+			running = false;
+
+			interrupt();
+		}
+	}
+}
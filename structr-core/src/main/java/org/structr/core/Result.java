@@ -39,6 +39,7 @@ public class Result<T extends GraphObject> {
 	private String queryTime = null;
 	private String sortOrder = null;
 	private String sortKey = null;
+	private String nextPageCursor = null;
 
 	private Integer resultCount = null;
 	private Integer pageCount = null;
@@ -83,6 +84,14 @@ public class Result<T extends GraphObject> {
 		this.searchString = searchString;
 	}
 
+	public String getNextPageCursor() {
+		return nextPageCursor;
+	}
+
+	public void setNextPageCursor(final String nextPageCursor) {
+		this.nextPageCursor = nextPageCursor;
+	}
+
 	public String getSortKey() {
 		return sortKey;
 	}
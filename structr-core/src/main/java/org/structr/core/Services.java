@@ -92,6 +92,40 @@ public class Services {
 	public static final String UDP_PORT           = "udp.port";
 	
 	public static final String JSON_OUTPUT_DEPTH  = "json.depth";
+
+	// Size of the queue of pending commit notifications per transaction listener
+	public static final String TRANSACTION_NOTIFICATION_QUEUE_SIZE = "transaction.notification.queue.size";
+
+	// Maximum number of UUID to node id mappings in the process-wide UUID cache
+	public static final String UUID_CACHE_SIZE = "uuid.cache.size";
+
+	// Whether type and subtype searches use the indexed type ancestry (default false). Only nodes that were
+	// indexed after the ancestry was introduced carry it, so existing databases must run the rebuildIndex
+	// maintenance command before enabling it, or type and subtype searches will miss the older nodes.
+	public static final String TYPE_ANCESTRY_SEARCH = "search.type.ancestry";
+
+	// Number of worker threads and number of entities per transaction of the index rebuild
+	public static final String REBUILD_INDEX_THREADS    = "rebuild.index.threads";
+	public static final String REBUILD_INDEX_BATCH_SIZE = "rebuild.index.batch.size";
+
+	// Number of worker threads of bulk maintenance commands that can run in parallel (default 1), and number of times a failed batch is retried
+	public static final String BULK_OPERATION_THREADS = "bulk.operation.threads";
+	public static final String BULK_OPERATION_RETRIES = "bulk.operation.retries";
+
+	// Class name of the geocoding provider, and maximum number of cached geocoding results
+	public static final String GEOCODING_PROVIDER   = "geocoding.provider";
+	public static final String GEOCODING_CACHE_SIZE = "geocoding.cache.size";
+
+	// Maximum number of cached authentications, and the time in seconds after which they expire
+	public static final String AUTH_CACHE_SIZE    = "auth.cache.size";
+	public static final String AUTH_CACHE_TIMEOUT = "auth.cache.timeout";
+
+	// Maximum number of cached page and component renderings, 0 disables the render cache
+	public static final String HTML_RENDER_CACHE_SIZE = "html.render.cache.size";
+
+	// Maximum number of queued outgoing messages per websocket client, and what happens when the queue is full (drop, coalesce or disconnect)
+	public static final String WEBSOCKET_QUEUE_SIZE      = "websocket.queue.size";
+	public static final String WEBSOCKET_OVERFLOW_POLICY = "websocket.overflow.policy";
 	
 	private static Map<String, String> context    = null;
 	private static final Logger logger            = Logger.getLogger(Services.class.getName());
@@ -0,0 +1,412 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+import org.structr.core.converter.PropertyConverter;
+import org.structr.core.property.Property;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+import org.structr.core.property.StringProperty;
+
+/**
+ * Serializes graph objects to JSON. This is the only implementation of the
+ * JSON format of graph objects: it writes them directly to a
+ * {@link JsonWriter}, so the memory needed to render a result does not
+ * depend on its size, and it builds the JSON trees returned by
+ * {@link GraphObjectGSONAdapter}.
+ *
+ * Instances of this class can be shared between threads.
+ */
+public class StreamingGraphObjectWriter {
+
+	private static final Logger logger = Logger.getLogger(StreamingGraphObjectWriter.class.getName());
+
+	private final Map<Class, Serializer> serializerCache = new ConcurrentHashMap<Class, Serializer>();
+	private final Map<Class, Serializer> serializers     = new LinkedHashMap<Class, Serializer>();
+	private final Set<Class> nonSerializerClasses        = new LinkedHashSet<Class>();
+	private final Property<String> id                    = new StringProperty("id");
+	private final int outputNestingDepth                 = Services.getOutputNestingDepth();
+	private final Serializer<GraphObject> root           = new RootSerializer();
+	private PropertyKey idProperty                       = null;
+	private SecurityContext securityContext              = null;
+	private Value<String> propertyView                   = null;
+
+	public StreamingGraphObjectWriter(final Value<String> propertyView, final PropertyKey idProperty) {
+
+		this.securityContext = SecurityContext.getSuperUserInstance();
+		this.propertyView    = propertyView;
+		this.idProperty      = idProperty;
+
+		serializers.put(GraphObject.class, root);
+		serializers.put(PropertyMap.class, new PropertyMapSerializer());
+		serializers.put(Iterable.class,    new IterableSerializer());
+		serializers.put(Map.class,         new MapSerializer());
+
+		nonSerializerClasses.add(Object.class);
+		nonSerializerClasses.add(String.class);
+		nonSerializerClasses.add(Integer.class);
+		nonSerializerClasses.add(Long.class);
+		nonSerializerClasses.add(Double.class);
+		nonSerializerClasses.add(Float.class);
+		nonSerializerClasses.add(Byte.class);
+		nonSerializerClasses.add(Character.class);
+		nonSerializerClasses.add(StringBuffer.class);
+		nonSerializerClasses.add(Boolean.class);
+	}
+
+	/**
+	 * Writes the given graph object to the given writer, using the
+	 * current property view.
+	 *
+	 * @param writer the writer
+	 * @param src the graph object
+	 * @throws IOException
+	 */
+	public void write(final JsonWriter writer, final GraphObject src) throws IOException {
+
+		write(JsonOutput.forWriter(writer), src);
+	}
+
+	/**
+	 * Writes the given graph object to the given output, using the
+	 * current property view.
+	 *
+	 * @param output the output
+	 * @param src the graph object
+	 * @throws IOException
+	 */
+	public void write(final JsonOutput output, final GraphObject src) throws IOException {
+
+		String localPropertyView = propertyView.get(null);
+
+		root.serialize(output, src, localPropertyView, 0);
+	}
+
+	/**
+	 * Returns the given graph object as a tree of JSON elements, using the
+	 * current property view.
+	 *
+	 * @param src the graph object
+	 * @return the JSON element
+	 */
+	public JsonElement toJsonTree(final GraphObject src) {
+
+		JsonOutput.TreeOutput output = JsonOutput.forTree();
+
+		try {
+			write(output, src);
+
+		} catch (IOException ioex) {
+
+			// can not happen, the tree output does no I/O
+			throw new IllegalStateException(ioex);
+		}
+
+		return output.getResult();
+	}
+
+	/**
+	 * Creates a JsonWriter with the settings of the pretty-printing Gson
+	 * instances used by the servlets: two spaces of indentation, and HTML
+	 * characters (&lt; &gt; &amp; = ') are escaped as unicode sequences.
+	 *
+	 * @param out the underlying writer
+	 * @return the JSON writer
+	 */
+	public static JsonWriter createJsonWriter(final Writer out) {
+
+		JsonWriter writer = new JsonWriter(out);
+
+		writer.setIndent("  ");
+		writer.setHtmlSafe(true);
+
+		return writer;
+	}
+
+	// ----- private methods -----
+	private Serializer getSerializerForType(final Class type) {
+
+		Class localType       = type;
+		Serializer serializer = serializerCache.get(type);
+
+		if (serializer == null && !nonSerializerClasses.contains(type)) {
+
+			do {
+				serializer = serializers.get(localType);
+
+				if (serializer == null) {
+
+					Set<Class> interfaces = new LinkedHashSet<Class>();
+					collectAllInterfaces(localType, interfaces);
+
+					for (Class interfaceType : interfaces) {
+
+						serializer = serializers.get(interfaceType);
+
+						if (serializer != null) {
+							break;
+						}
+					}
+				}
+
+				localType = localType.getSuperclass();
+
+			} while (serializer == null && !localType.equals(Object.class));
+
+
+			// cache found serializer
+			if (serializer != null) {
+				serializerCache.put(type, serializer);
+			}
+		}
+
+		return serializer;
+	}
+
+	private void collectAllInterfaces(final Class type, final Set<Class> interfaces) {
+
+		if (interfaces.contains(type)) {
+			return;
+		}
+
+		for (Class iface : type.getInterfaces()) {
+
+			collectAllInterfaces(iface, interfaces);
+			interfaces.add(iface);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Writes exactly one JSON value for the given object.
+	 */
+	public abstract class Serializer<T> {
+
+		public abstract void serialize(JsonOutput output, T value, String localPropertyView, int depth) throws IOException;
+
+		public void serializeRoot(final JsonOutput output, final Object value, final String localPropertyView, final int depth) throws IOException {
+
+			if (value != null) {
+
+				Serializer serializer = getSerializerForType(value.getClass());
+				if (serializer != null) {
+
+					serializer.serialize(output, value, localPropertyView, depth+1);
+
+					return;
+				}
+			}
+
+			output.value(value);
+		}
+
+		public void serializeProperty(final JsonOutput output, final PropertyKey key, final Object value, final String localPropertyView, final int depth) throws IOException {
+
+			Object convertedValue = null;
+
+			// conversion errors must be handled before anything
+			// is written, the value is rendered as null then
+			try {
+				PropertyConverter converter = key.inputConverter(securityContext);
+
+				if (converter != null) {
+
+					convertedValue = converter.revert(value);
+
+				} else {
+
+					convertedValue = value;
+				}
+
+			} catch(Throwable t) {
+
+				logger.log(Level.WARNING, "Exception while serializing property {0} ({1}, {2}) of entity {3} (value {4}) : {5}", new Object[] {
+					key.jsonName(),
+					key.getClass(),
+					key.getClass().getDeclaringClass(),
+					value.getClass().getName(),
+					value,
+					t.getMessage()
+				});
+
+				output.value(null);
+
+				return;
+			}
+
+			serializeRoot(output, convertedValue, localPropertyView, depth);
+		}
+	}
+
+	public class RootSerializer extends Serializer<GraphObject> {
+
+		@Override
+		public void serialize(final JsonOutput output, final GraphObject source, final String localPropertyView, final int depth) throws IOException {
+
+			// prevent endless recursion by pruning at depth n
+			if (depth > outputNestingDepth) {
+
+				output.value(null);
+
+				return;
+			}
+
+			boolean hasId = false;
+
+			output.beginObject();
+
+			// id (only if idProperty is not set)
+			if (idProperty == null) {
+
+				output.name("id");
+				output.value(source.getId());
+				hasId = true;
+
+			} else {
+
+				Object idPropertyValue = source.getProperty(idProperty);
+
+				if (idPropertyValue != null) {
+
+					output.name("id");
+					output.value(idPropertyValue.toString());
+					hasId = true;
+				}
+
+			}
+
+			// property keys
+			Iterable<PropertyKey> keys = source.getPropertyKeys(localPropertyView);
+			if(keys != null) {
+				for (PropertyKey key : keys) {
+
+					PropertyKey localKey = key;
+
+					if (localKey.equals(idProperty)) {
+
+						// the value of "id" was already written above
+						if (hasId) {
+							continue;
+						}
+
+						localKey = id;
+						hasId    = true;
+					}
+
+					Object value = source.getProperty(key);
+
+					output.name(localKey.jsonName());
+
+					if (value != null) {
+
+						serializeProperty(output, key, value, localPropertyView, depth);
+
+					} else {
+
+						output.value(null);
+
+					}
+
+				}
+			}
+
+			output.endObject();
+		}
+	}
+
+	public class IterableSerializer extends Serializer<Iterable> {
+
+		@Override
+		public void serialize(final JsonOutput output, final Iterable value, final String localPropertyView, final int depth) throws IOException {
+
+			output.beginArray();
+
+			for (Object o : value) {
+
+				serializeRoot(output, o, localPropertyView, depth);
+			}
+
+			output.endArray();
+		}
+	}
+
+	public class MapSerializer extends Serializer {
+
+		@Override
+		public void serialize(final JsonOutput output, final Object source, final String localPropertyView, final int depth) throws IOException {
+
+			output.beginObject();
+
+			for (Entry<String, Object> entry : ((Map<String, Object>)source).entrySet()) {
+
+				String key = entry.getKey();
+				Object value = entry.getValue();
+
+				// id property mapping again..
+				if (idProperty != null && idProperty.jsonName().equals(key)) {
+					key = "id";
+				}
+
+				output.name(key);
+				serializeRoot(output, value, localPropertyView, depth);
+			}
+
+			output.endObject();
+		}
+	}
+
+	public class PropertyMapSerializer extends Serializer<PropertyMap> {
+
+		@Override
+		public void serialize(final JsonOutput output, final PropertyMap source, final String localPropertyView, final int depth) throws IOException {
+
+			output.beginObject();
+
+			for (Entry<PropertyKey, Object> entry : source.entrySet()) {
+
+				PropertyKey key = entry.getKey();
+				if (key.equals(idProperty)) {
+
+					key = id;
+				}
+
+				Object value = entry.getValue();
+
+				output.name(key.jsonName());
+				serializeProperty(output, key, value, localPropertyView, depth);
+			}
+
+			output.endObject();
+		}
+	}
+}
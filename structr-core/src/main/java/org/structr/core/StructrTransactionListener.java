@@ -44,7 +44,10 @@ public interface StructrTransactionListener {
 	public void begin(SecurityContext securityContext, long transactionKey);
 	
 	/**
-	 * Called when the transaction is about to be committed.
+	 * Called after the transaction has been committed successfully. This
+	 * method is called asynchronously by a {@link PostCommitDispatcher}
+	 * thread, in commit order, so implementations must not rely on being
+	 * called from the committing thread.
 	 * 
 	 * @param securityContext the security context
 	 * @param transactionKey the transaction key
@@ -52,7 +55,9 @@ public interface StructrTransactionListener {
 	public void commit(SecurityContext securityContext, long transactionKey);
 	
 	/**
-	 * Called when the transaction is about to be rolled back.
+	 * Called when the transaction is about to be rolled back, or when it
+	 * could not be committed. This method may be called more than once
+	 * for the same transaction.
 	 * 
 	 * @param securityContext the security context
 	 * @param transactionKey the transaction key
@@ -26,8 +26,6 @@ package org.structr.core.agent;
 
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -37,6 +35,10 @@ import java.util.logging.Logger;
 /**
  * Abstract base class for all agents.
  *
+ * Agents are the worker threads of an {@link AgentPool}. An agent takes
+ * the tasks of its type from the queue of the pool, blocking while the
+ * queue is empty, and stops when it has been idle for some time.
+ *
  * @author Christian Morgner
  */
 public abstract class Agent extends Thread implements StatusInfo {
@@ -49,14 +51,11 @@ public abstract class Agent extends Thread implements StatusInfo {
 	//~--- fields ---------------------------------------------------------
 
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
-	private AgentService agentService          = null;
-	private long averageExecutionTime          = 0;
-	private Task currentTask                   = null;
-	private long lastStartTime                 = 0;
-	private int maxAgents                      = 4;
-	private int maxQueueSize                   = 10;
 	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task> taskQueue        = new ConcurrentLinkedQueue<Task>();
+	private AgentService agentService          = null;
+	private AgentPool agentPool                = null;
+	private volatile long averageExecutionTime = 0;
+	private volatile Task currentTask          = null;
 
 	//~--- methods --------------------------------------------------------
 
@@ -65,24 +64,26 @@ public abstract class Agent extends Thread implements StatusInfo {
 
 		agentService.notifyAgentStart(this);
 
-		do {
-
-			while (suspended.get()) {
-
-				Thread.yield();
+		try {
 
-			}
+			while (true) {
 
-			synchronized (taskQueue) {
+				waitWhileSuspended();
 
-				currentTask = taskQueue.poll();
+				if (!acceptingTasks.get()) {
+					break;
+				}
 
-			}
+				currentTask = agentPool.take(this);
 
-			if (currentTask != null) {
+				if (currentTask == null) {
 
-				lastStartTime = System.nanoTime();
+					// idle timeout, quit.
+					break;
+				}
 
+				long startTime  = System.nanoTime();
+				boolean failed  = false;
 				ReturnValue ret = null;
 
 				try {
@@ -93,6 +94,8 @@ public abstract class Agent extends Thread implements StatusInfo {
 					// Log this!!
 					logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
 					t.printStackTrace();
+
+					failed = true;
 				}
 
 				if (ret != null) {
@@ -114,35 +117,38 @@ public abstract class Agent extends Thread implements StatusInfo {
 					}
 				}
 
-				long endTime = System.nanoTime();
+				long executionTime = System.nanoTime() - startTime;
 
 				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
+				averageExecutionTime = averageExecutionTime == 0 ? executionTime : (averageExecutionTime + executionTime) / 2;
 
-			} else {
+				agentPool.finished(executionTime, failed);
 
-				// queue is empty, quit.
-				acceptingTasks.set(false);
+				currentTask = null;
 			}
 
-		} while (acceptingTasks.get());
+		} catch (InterruptedException iex) {
+
+			// agent was killed while waiting
+		}
 
 		// call beforeShutdown to allow agents to clean up
 		beforeShutdown();
 		agentService.notifyAgentStop(this);
+		agentPool.stopped(this);
 	}
 
+	/**
+	 * Adds the given task to the queue of this agent's pool.
+	 *
+	 * @param task the task
+	 * @return whether the task was accepted
+	 */
 	public final boolean assignTask(Task task) {
 
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
+		if (acceptingTasks.get() && agentPool != null && getSupportedTaskType().equals(task.getClass())) {
 
-			synchronized (taskQueue) {
-
-				taskQueue.add(task);
-
-			}
+			agentPool.add(task);
 
 			return (true);
 
@@ -156,8 +162,8 @@ public abstract class Agent extends Thread implements StatusInfo {
 		// stop accepting tasks
 		acceptingTasks.set(false);
 
-		// clear queue
-		taskQueue.clear();
+		// wake up if suspended
+		resumeSuspended();
 
 		// interrupt running process..
 		// not sure if this works... see Thread.interrupt()'s description!
@@ -174,7 +180,7 @@ public abstract class Agent extends Thread implements StatusInfo {
 	public final void resumeAgent() {
 
 		acceptingTasks.set(true);
-		suspended.set(false);
+		resumeSuspended();
 	}
 
 	protected void beforeShutdown() {
@@ -185,47 +191,25 @@ public abstract class Agent extends Thread implements StatusInfo {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private boolean canHandleMore() {
+	private void waitWhileSuspended() throws InterruptedException {
 
-//              return (taskQueue.isEmpty());
-		int size = 0;
+		synchronized (suspended) {
 
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
+			while (suspended.get()) {
 
-			return (true);
+				suspended.wait();
 
+			}
 		}
+	}
 
-		long actualExecutionTime = System.nanoTime() - lastStartTime;
-
-		// calculate thresholds for queue size adaption
-		long upperThreshold = averageExecutionTime + (averageExecutionTime / 2);
-		long lowerThreshold = averageExecutionTime - (averageExecutionTime / 2);
-
-		if ((actualExecutionTime > upperThreshold) && (maxQueueSize > 2)) {
-
-			// FIXME
-			maxQueueSize -= 2;
-
-			// do not take the next task
-			return (false);
-		} else if ((actualExecutionTime < lowerThreshold) && (maxQueueSize < 200)) {
+	private void resumeSuspended() {
 
-			// FIXME
-			maxQueueSize += 2;
+		synchronized (suspended) {
 
-			// can take the next task
-			return (true);
+			suspended.set(false);
+			suspended.notifyAll();
 		}
-
-		return (size < maxQueueSize);
 	}
 
 	// </editor-fold>
@@ -242,25 +226,43 @@ public abstract class Agent extends Thread implements StatusInfo {
 		return (currentTask);
 	}
 
+	/**
+	 * Returns the tasks that are waiting for an agent of this type.
+	 *
+	 * @return the queued tasks
+	 */
 	public final List<Task> getTaskQueue() {
 
-		List<Task> ret = new LinkedList<Task>();
+		if (agentPool != null) {
 
-		ret.addAll(taskQueue);
+			return agentPool.getQueuedTasks();
+		}
 
-		return (ret);
+		return (new LinkedList<Task>());
 	}
 
+	/**
+	 * Returns the maximum number of tasks that were waiting for an agent
+	 * of this type at the same time.
+	 *
+	 * @return the maximum queue size
+	 */
 	public final int getMaxQueueSize() {
-		return (maxQueueSize);
+		return (agentPool != null ? (int) agentPool.getMaxQueueSize() : 0);
 	}
 
+	/**
+	 * Returns the average execution time of the tasks processed by this
+	 * agent, in nanoseconds.
+	 *
+	 * @return the average execution time
+	 */
 	public final long getAverageExecutionTime() {
 		return (averageExecutionTime);
 	}
 
 	public int getMaxAgents() {
-		return (maxAgents);
+		return (agentPool != null ? agentPool.getMaxAgents() : 0);
 	}
 
 	// ----- interface StatusInfo -----
@@ -311,9 +313,10 @@ public abstract class Agent extends Thread implements StatusInfo {
 		this.setDaemon(false);
 
 		this.agentService = service;
+	}
 
-		// initialize lastStartTime
-		lastStartTime = System.nanoTime();
+	final void setAgentPool(AgentPool pool) {
+		this.agentPool = pool;
 	}
 
 	// </editor-fold>
@@ -0,0 +1,367 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.agent;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The agents and the queue of pending tasks of a single task type.
+ *
+ * Tasks are added to a blocking queue from which the agents of the pool
+ * take them. A new agent is started when a task is added and there are
+ * fewer idle agents than pending tasks, up to the maximum number of agents
+ * of the pool. Agents that have been idle for {@link #IDLE_TIMEOUT}
+ * milliseconds stop.
+ *
+ * The pool records the number of processed and failed tasks, the time
+ * tasks spent in the queue and the time it took to process them. These
+ * metrics are available through {@link StatusInfo}; times are reported
+ * in milliseconds.
+ */
+public class AgentPool implements StatusInfo {
+
+	public static final String QUEUE_SIZE             = "queue_size";
+	public static final String MAX_QUEUE_SIZE         = Agent.MAX_QUEUE_SIZE;
+	public static final String RUNNING_AGENTS         = "running_agents";
+	public static final String PROCESSED_TASKS        = "processed_tasks";
+	public static final String FAILED_TASKS           = "failed_tasks";
+	public static final String AVERAGE_WAIT_TIME      = "average_wait_time";
+	public static final String MAX_WAIT_TIME          = "max_wait_time";
+	public static final String AVERAGE_EXECUTION_TIME = Agent.AVERAGE_EXECUTION_TIME;
+	public static final String MAX_EXECUTION_TIME     = "max_execution_time";
+	public static final long IDLE_TIMEOUT             = 60000;
+
+	private static final Logger logger = Logger.getLogger(AgentPool.class.getName());
+
+	private final BlockingQueue<Entry> queue     = new LinkedBlockingQueue<Entry>();
+	private final List<Agent> agents             = new LinkedList<Agent>();
+	private final AtomicLong processedTasks      = new AtomicLong(0);
+	private final AtomicLong failedTasks         = new AtomicLong(0);
+	private final AtomicLong totalWaitTime       = new AtomicLong(0);
+	private final AtomicLong maxWaitTime         = new AtomicLong(0);
+	private final AtomicLong totalExecutionTime  = new AtomicLong(0);
+	private final AtomicLong maxExecutionTime    = new AtomicLong(0);
+	private final AtomicLong maxQueueSize        = new AtomicLong(0);
+	private Class<? extends Agent> agentClass    = null;
+	private AgentService agentService            = null;
+	private Class taskType                       = null;
+	private int maxAgents                        = 0;
+	private int idleAgents                       = 0;
+
+	public AgentPool(final AgentService agentService, final Class taskType, final Class<? extends Agent> agentClass, final int maxAgents) {
+
+		this.agentService = agentService;
+		this.agentClass   = agentClass;
+		this.maxAgents    = Math.max(1, maxAgents);
+		this.taskType     = taskType;
+	}
+
+	/**
+	 * Adds the given task to the queue and starts a new agent if needed.
+	 *
+	 * @param task the task
+	 */
+	public void add(final Task task) {
+
+		queue.add(new Entry(task));
+
+		updateMax(maxQueueSize, queue.size());
+
+		synchronized (this) {
+
+			if (agents.size() < maxAgents && queue.size() > idleAgents) {
+
+				Agent agent = createAgent();
+
+				if (agent != null) {
+
+					agents.add(agent);
+					agent.start();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops all agents of this pool and drops the pending tasks.
+	 */
+	public void stop() {
+
+		queue.clear();
+
+		synchronized (this) {
+
+			for (Agent agent : agents) {
+				agent.killAgent();
+			}
+		}
+	}
+
+	public List<Task> getQueuedTasks() {
+
+		List<Task> tasks = new LinkedList<Task>();
+
+		for (Entry entry : queue) {
+			tasks.add(entry.task);
+		}
+
+		return tasks;
+	}
+
+	public Class getTaskType() {
+		return taskType;
+	}
+
+	public int getMaxAgents() {
+		return maxAgents;
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public synchronized int getRunningAgents() {
+		return agents.size();
+	}
+
+	public long getProcessedTasks() {
+		return processedTasks.get();
+	}
+
+	public long getFailedTasks() {
+		return failedTasks.get();
+	}
+
+	public long getMaxQueueSize() {
+		return maxQueueSize.get();
+	}
+
+	public long getAverageWaitTime() {
+
+		long count = processedTasks.get();
+
+		return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get() / count) : 0L;
+	}
+
+	public long getMaxWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+	}
+
+	public long getAverageExecutionTime() {
+
+		long count = processedTasks.get();
+
+		return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalExecutionTime.get() / count) : 0L;
+	}
+
+	public long getMaxExecutionTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxExecutionTime.get());
+	}
+
+	@Override
+	public String toString() {
+
+		return taskType.getSimpleName() + ": " + getRunningAgents() + "/" + maxAgents + " agents, " + queue.size() + " queued, "
+			+ processedTasks.get() + " processed, " + failedTasks.get() + " failed, average wait " + getAverageWaitTime()
+			+ " ms, average execution " + getAverageExecutionTime() + " ms";
+	}
+
+	// ----- interface StatusInfo -----
+	@Override
+	public Object getStatusProperty(final String key) {
+
+		if (QUEUE_SIZE.equals(key)) {
+
+			return getQueueSize();
+
+		} else if (MAX_QUEUE_SIZE.equals(key)) {
+
+			return getMaxQueueSize();
+
+		} else if (RUNNING_AGENTS.equals(key)) {
+
+			return getRunningAgents();
+
+		} else if (PROCESSED_TASKS.equals(key)) {
+
+			return getProcessedTasks();
+
+		} else if (FAILED_TASKS.equals(key)) {
+
+			return getFailedTasks();
+
+		} else if (AVERAGE_WAIT_TIME.equals(key)) {
+
+			return getAverageWaitTime();
+
+		} else if (MAX_WAIT_TIME.equals(key)) {
+
+			return getMaxWaitTime();
+
+		} else if (AVERAGE_EXECUTION_TIME.equals(key)) {
+
+			return getAverageExecutionTime();
+
+		} else if (MAX_EXECUTION_TIME.equals(key)) {
+
+			return getMaxExecutionTime();
+		}
+
+		return null;
+	}
+
+	// ----- package-private methods -----
+	/**
+	 * Waits for the next task. Returns null if no task arrived within the
+	 * idle timeout, in which case the agent has been removed from the pool
+	 * and must stop.
+	 *
+	 * @param agent the calling agent
+	 * @return the next task, or null
+	 * @throws InterruptedException
+	 */
+	Task take(final Agent agent) throws InterruptedException {
+
+		while (true) {
+
+			Entry entry = null;
+
+			synchronized (this) {
+				idleAgents++;
+			}
+
+			try {
+				entry = queue.poll(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+
+			} finally {
+
+				synchronized (this) {
+					idleAgents--;
+				}
+			}
+
+			if (entry != null) {
+
+				long waitTime = System.nanoTime() - entry.queued;
+
+				totalWaitTime.addAndGet(waitTime);
+				updateMax(maxWaitTime, waitTime);
+
+				return entry.task;
+			}
+
+			synchronized (this) {
+
+				// a task may have been added after the poll timed out
+				if (queue.isEmpty()) {
+
+					agents.remove(agent);
+
+					return null;
+				}
+			}
+		}
+	}
+
+	void finished(final long executionTime, final boolean failed) {
+
+		processedTasks.incrementAndGet();
+		totalExecutionTime.addAndGet(executionTime);
+		updateMax(maxExecutionTime, executionTime);
+
+		if (failed) {
+			failedTasks.incrementAndGet();
+		}
+	}
+
+	void stopped(final Agent agent) {
+
+		synchronized (this) {
+			agents.remove(agent);
+		}
+
+		// start a replacement if the agent was killed with tasks pending
+		if (!queue.isEmpty() && agentService.isRunning()) {
+
+			synchronized (this) {
+
+				if (agents.isEmpty()) {
+
+					Agent replacement = createAgent();
+
+					if (replacement != null) {
+
+						agents.add(replacement);
+						replacement.start();
+					}
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private Agent createAgent() {
+
+		try {
+
+			Agent agent = agentClass.newInstance();
+
+			agent.setAgentService(agentService);
+			agent.setAgentPool(this);
+
+			return agent;
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to create agent {0} for task type {1}: {2}", new Object[] { agentClass.getName(), taskType.getName(), t.getMessage() });
+		}
+
+		return null;
+	}
+
+	private void updateMax(final AtomicLong max, final long value) {
+
+		long current = max.get();
+
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private long queued = 0L;
+		private Task task   = null;
+
+		public Entry(final Task task) {
+
+			this.queued = System.nanoTime();
+			this.task   = task;
+		}
+	}
+}
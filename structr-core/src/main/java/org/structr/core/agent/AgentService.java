@@ -30,57 +30,84 @@ import org.structr.core.module.GetAgentsCommand;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.SecurityContext;
-import org.structr.common.error.FrameworkException;
 
 //~--- classes ----------------------------------------------------------------
 
 /**
  * The agent service main class.
- * 
+ *
+ * Tasks are dispatched to the {@link AgentPool} of their type as soon as
+ * they are submitted, tasks with a delay are dispatched by a scheduler when
+ * their delay has expired. The maximum number of agents of a pool is set
+ * with {@link #WORKERS}, and can be overridden for a single task type with
+ * the name of the task class followed by {@link #WORKERS_SUFFIX}.
+ *
  * @author Christian Morgner
  */
-public class AgentService extends Thread implements RunnableService {
+public class AgentService implements RunnableService {
+
+	public static final String WORKERS        = "AgentService.workers";
+	public static final String WORKERS_SUFFIX = ".workers";
+	public static final int DEFAULT_WORKERS   = 4;
 
 	private static final Logger logger = Logger.getLogger(AgentService.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
-	private int maxAgents                               = 4;    // TODO: make configurable
 	private final Map<Class, List<Agent>> runningAgents = new ConcurrentHashMap<Class, List<Agent>>(10, 0.9f, 8);
 	private final Map<Class, Class> agentClassCache     = new ConcurrentHashMap<Class, Class>(10, 0.9f, 8);
+	private final Map<Class, AgentPool> agentPools      = new ConcurrentHashMap<Class, AgentPool>(10, 0.9f, 8);
+	private Map<String, String> workers                 = new HashMap<String, String>();
+	private ScheduledExecutorService scheduler          = null;
 	private Set<Class> supportedCommands                = null;
-	private final Queue<Task> taskQueue                 = new ConcurrentLinkedQueue<Task>();
-	private boolean run                                 = false;
+	private int maxAgents                               = DEFAULT_WORKERS;
+	private volatile boolean run                        = false;
 
 	//~--- constructors ---------------------------------------------------
 
 	public AgentService() {
 
-		super("AgentService");
 		supportedCommands = new LinkedHashSet<Class>();
 		supportedCommands.add(ProcessTaskCommand.class);
 	}
 
 	//~--- methods --------------------------------------------------------
 
-	public void processTask(Task task) {
+	public void processTask(final Task task) {
 
-		synchronized (taskQueue) {
+		long delay = task.getDelay(TimeUnit.MILLISECONDS);
 
-			taskQueue.add(task);
-			logger.log(Level.FINE, "Task {0} added to task queue", task);
+		if (delay > 0 && scheduler != null) {
+
+			scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					dispatch(task);
+				}
+
+			}, delay, TimeUnit.MILLISECONDS);
+
+			logger.log(Level.FINE, "Task {0} scheduled in {1} ms", new Object[] { task, delay });
+
+		} else {
+
+			dispatch(task);
 		}
 	}
 
@@ -92,7 +119,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (task.equals(agent.getCurrentTask())) {
 					return (agent);
 				}
 			}
@@ -101,29 +128,6 @@ public class AgentService extends Thread implements RunnableService {
 		return (null);
 	}
 
-	@Override
-	public void run() {
-
-		logger.log(Level.INFO, "AgentService started");
-
-		while (run) {
-
-			Task nextTask = null;
-
-			synchronized (taskQueue) {
-
-				nextTask = taskQueue.poll();
-
-				if (nextTask != null) {
-					assignNextAgentForTask(nextTask);
-				}
-			}
-
-			// let others act
-			try { Thread.sleep(1); } catch(Throwable ignore) {}
-		}
-	}
-
 	public void notifyAgentStart(Agent agent) {
 
 		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
@@ -149,21 +153,59 @@ public class AgentService extends Thread implements RunnableService {
 	}
 
 	@Override
-	public void initialize(Map<String, String> context) {}
+	public void initialize(Map<String, String> context) {
+
+		maxAgents = parseInt(Services.getConfigValue(context, WORKERS, Integer.toString(DEFAULT_WORKERS)), DEFAULT_WORKERS);
+
+		// per-type worker counts
+		for (Entry<String, String> entry : context.entrySet()) {
+
+			String key = entry.getKey();
+
+			if (key != null && key.endsWith(WORKERS_SUFFIX) && !key.equals(WORKERS)) {
+				workers.put(key.substring(0, key.length() - WORKERS_SUFFIX.length()), entry.getValue());
+			}
+		}
+	}
 
 	@Override
-	public void shutdown() {}
+	public void shutdown() {
+		stopService();
+	}
 
 	@Override
 	public void startService() {
 
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "AgentService");
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
 		run = true;
-		this.start();
+
+		logger.log(Level.INFO, "AgentService started");
 	}
 
 	@Override
 	public void stopService() {
+
 		run = false;
+
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+
+		for (AgentPool pool : agentPools.values()) {
+			pool.stop();
+		}
 	}
 
 	@Override
@@ -174,91 +216,60 @@ public class AgentService extends Thread implements RunnableService {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
-
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+	private void dispatch(Task task) {
 
-		// need to synchronize on agents
-		synchronized (agents) {
-
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+		if (!run) {
 
-				if (agent.assignTask(nextTask)) {
+			logger.log(Level.FINE, "AgentService not running, dropping task {0}", task);
 
-					// ok, task is assigned
-					logger.log(Level.FINE, "Task assigned to agent {0}", agent.getName());
-
-					return;
-				}
-			}
+			return;
 		}
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+		AgentPool pool = getAgentPool(task.getClass());
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+		if (pool != null) {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+			pool.add(task);
+			logger.log(Level.FINE, "Task {0} added to task queue", task);
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
-				}
-			}
 		} else {
 
-			logger.log(Level.FINE, "Overall agents limit reached, re-queueing task");
-
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
-			}
+			logger.log(Level.WARNING, "No agent found for task type {0}, dropping task", task.getClass().getName());
 		}
 	}
 
-	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
-	 * started manually after creation.
-	 *
-	 * @param forTask
-	 * @return a new agent for the given task
-	 */
-	private Agent createAgent(Task forTask) {
+	private AgentPool getAgentPool(Class taskClass) {
 
-		Agent agent = null;
+		AgentPool pool = agentPools.get(taskClass);
 
-		try {
+		if (pool == null) {
 
-			agent = lookupAgent(forTask);
+			synchronized (agentPools) {
 
-			if (agent != null) {
+				pool = agentPools.get(taskClass);
 
-				// register us in agent..
-				agent.setAgentService(this);
-			}
+				if (pool == null) {
 
-		} catch (Exception ex) {
+					Class agentClass = lookupAgentClass(taskClass);
 
-			// TODO: handle exception etc..
+					if (agentClass != null) {
+
+						pool = new AgentPool(this, taskClass, agentClass, getMaxAgents(taskClass));
+
+						agentPools.put(taskClass, pool);
+					}
+				}
+			}
 		}
 
-		return (agent);
+		return pool;
 	}
 
-	private Agent lookupAgent(Task task) {
+	private Class lookupAgentClass(Class taskClass) {
 
 		// FIXME: superuser security context
 		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
-		Class taskClass  = task.getClass();
-		Agent agent      = null;
-		Class agentClass = agentClassCache.get(taskClass);
+		Class agentClass                      = agentClassCache.get(taskClass);
 
 		// cache miss
 		if (agentClass == null) {
@@ -285,15 +296,31 @@ public class AgentService extends Thread implements RunnableService {
 			}
 		}
 
-		if (agentClass != null) {
+		return (agentClass);
+	}
+
+	private int getMaxAgents(Class taskClass) {
+
+		String value = workers.get(taskClass.getName());
+
+		if (value == null) {
+			value = workers.get(taskClass.getSimpleName());
+		}
+
+		return value != null ? parseInt(value, maxAgents) : maxAgents;
+	}
+
+	private int parseInt(String value, int defaultValue) {
+
+		try {
+			return Integer.parseInt(value.trim());
+
+		} catch (Throwable t) {
 
-			try {
-				agent = (Agent) agentClass.newInstance();
-			} catch (IllegalAccessException iaex) {}
-			catch (InstantiationException itex) {}
+			logger.log(Level.WARNING, "Invalid number of workers {0}, using {1}", new Object[] { value, defaultValue });
 		}
 
-		return (agent);
+		return defaultValue;
 	}
 
 	// </editor-fold>
@@ -305,7 +332,14 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		List<Task> tasks = new LinkedList<Task>();
+
+		for (AgentPool pool : agentPools.values()) {
+			tasks.addAll(pool.getQueuedTasks());
+		}
+
+		return (tasks);
 	}
 
 	/**
@@ -316,21 +350,42 @@ public class AgentService extends Thread implements RunnableService {
 		return (runningAgents);
 	}
 
+	/**
+	 * Returns the agent pools, keyed by task type. The pools expose the
+	 * queue size, wait time and execution time of their tasks.
+	 * @return
+	 */
+	public Map<Class, AgentPool> getAgentPools() {
+		return (Collections.unmodifiableMap(agentPools));
+	}
+
 	private List<Agent> getRunningAgentsForTask(Class taskClass) {
 
 		List<Agent> agents = runningAgents.get(taskClass);
 
 		if (agents == null) {
 
-			agents = Collections.synchronizedList(new LinkedList<Agent>());
+			synchronized (runningAgents) {
+
+				agents = runningAgents.get(taskClass);
+
+				if (agents == null) {
 
-			// Hashtable is synchronized
-			runningAgents.put(taskClass, agents);
+					agents = Collections.synchronizedList(new LinkedList<Agent>());
+
+					runningAgents.put(taskClass, agents);
+				}
+			}
 		}
 
 		return (agents);
 	}
 
+	@Override
+	public String getName() {
+		return (AgentService.class.getSimpleName());
+	}
+
 	@Override
 	public boolean isRunning() {
 		return (this.run);
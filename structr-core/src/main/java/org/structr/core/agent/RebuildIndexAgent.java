@@ -27,7 +27,6 @@ import org.structr.core.graph.IndexRelationshipCommand;
 import org.structr.core.graph.GraphDatabaseCommand;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.TransactionCommand;
-import java.util.Iterator;
 import org.neo4j.graphdb.GraphDatabaseService;
 
 import org.structr.common.SecurityContext;
@@ -36,12 +35,30 @@ import org.structr.core.Services;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.tooling.GlobalGraphOperations;
+import org.neo4j.kernel.GraphDatabaseAPI;
 import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.NewIndexNodeCommand;
 
 //~--- classes ----------------------------------------------------------------
@@ -49,12 +66,30 @@ import org.structr.core.graph.NewIndexNodeCommand;
 /**
  * The agent class that acts on {@link RebuildIndexTask}, rebuilding the Lucene
  * index in structr.
- * 
+ *
+ * The id space of nodes and relationships is split into batches which are
+ * indexed by a pool of worker threads, one transaction per batch. The
+ * index entries of a batch are written together at the end of its
+ * transaction. The position up to which all batches have been committed
+ * is written to a checkpoint file in the database directory, so that an
+ * interrupted rebuild continues from there when the next
+ * {@link RebuildIndexTask} is processed. A batch whose transaction fails
+ * is not skipped: the checkpoint stays in front of it, and the rebuild
+ * stops after the current phase so that it can be repeated from there.
+ *
  * @author Axel Morgner
  */
 public class RebuildIndexAgent extends Agent {
 
-	private static final Logger logger = Logger.getLogger(RebuildIndexAgent.class.getName());
+	private static final Logger logger            = Logger.getLogger(RebuildIndexAgent.class.getName());
+	private static final String CHECKPOINT_FILE   = "rebuildIndex.checkpoint";
+	private static final String PHASE_NODES       = "nodes";
+	private static final String PHASE_RELS        = "relationships";
+	private static final long REPORT_INTERVAL     = 10000;
+	private static final int MAX_LOGGED_FAILURES  = 100;
+	private static final int DEFAULT_BATCH_SIZE   = 1000;
+
+	private final AtomicBoolean stopped           = new AtomicBoolean(false);
 
 	//~--- constructors ---------------------------------------------------
 
@@ -71,127 +106,351 @@ public class RebuildIndexAgent extends Agent {
 
 			long t0 = System.currentTimeMillis();
 
-			logger.log(Level.INFO, "Starting rebuilding index ...");
+			Properties checkpoint = readCheckpoint();
+			String phase          = checkpoint.getProperty("phase", PHASE_NODES);
+			long position         = Long.parseLong(checkpoint.getProperty("position", "0"));
+
+			if (position > 0) {
+
+				logger.log(Level.INFO, "Resuming rebuilding index, {0} from id {1} ...", new Object[] { phase, position });
+
+			} else {
+
+				logger.log(Level.INFO, "Starting rebuilding index ...");
+			}
+
+			stopped.set(false);
+
+			if (PHASE_NODES.equals(phase)) {
+
+				Progress progress = rebuildNodeIndex(position);
+				long nodes        = progress.getIndexed();
+				long t1           = System.currentTimeMillis();
 
-			long nodes = rebuildNodeIndex();
-			long t1    = System.currentTimeMillis();
+				if (stopped.get() || progress.hasFailedBatches()) {
+					return ReturnValue.Abort;
+				}
+
+				logger.log(Level.INFO, "Re-indexing nodes finished, {0} nodes processed in {1} s", new Object[] { nodes, (t1 - t0) / 1000 });
+
+				writeCheckpoint(PHASE_RELS, 0);
 
-			logger.log(Level.INFO, "Re-indexing nodes finished, {0} nodes processed in {1} s", new Object[] { nodes, (t1 - t0) / 1000 });
+				position = 0;
+			}
 
-			long rels = rebuildRelationshipIndex();
-			long t2   = System.currentTimeMillis();
+			long t1           = System.currentTimeMillis();
+			Progress progress = rebuildRelationshipIndex(position);
+			long rels         = progress.getIndexed();
+			long t2           = System.currentTimeMillis();
+
+			if (stopped.get() || progress.hasFailedBatches()) {
+				return ReturnValue.Abort;
+			}
 
 			logger.log(Level.INFO, "Re-indexing relationships finished, {0} relationships processed in {1} s", new Object[] { rels, (t2 - t1) / 1000 });
 
+			getCheckpointFile().delete();
 		}
 
 		return (ReturnValue.Success);
 	}
 
-	private long rebuildNodeIndex() throws FrameworkException {
+	/**
+	 * Returns the file in which the position of an unfinished rebuild is
+	 * stored.
+	 *
+	 * @return the checkpoint file
+	 */
+	public static File getCheckpointFile() {
+		return new File(Services.getDatabasePath(), CHECKPOINT_FILE);
+	}
+
+	private Progress rebuildNodeIndex(final long startId) throws FrameworkException {
 
 		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
 		final GraphDatabaseService graphDb    = Services.command(securityContext, GraphDatabaseCommand.class).execute();
-		final NodeFactory nodeFactory         = new NodeFactory(securityContext);
+		final long highestId                  = ((GraphDatabaseAPI) graphDb).getNodeManager().getHighestPossibleIdInUse(Node.class);
 
-		final Iterable<Node> allNodes         = GlobalGraphOperations.at(graphDb).getAllNodes();
-		final NewIndexNodeCommand indexer     = Services.command(securityContext, NewIndexNodeCommand.class);
-		long nodeCount                        = 0L;
-	
 		logger.log(Level.INFO, "Start indexing of nodes.");
-		
-		final Iterator<Node> nodeIterator = allNodes.iterator();
-		while (nodeIterator.hasNext()) {
 
-			nodeCount += Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>() {
+		return rebuild(PHASE_NODES, startId, highestId, new EntityIndexerFactory() {
 
-				@Override
-				public Integer execute() throws FrameworkException {
+			@Override
+			public EntityIndexer createIndexer() {
 
-					int count = 0;
+				final NodeFactory nodeFactory     = new NodeFactory(securityContext);
+				final NewIndexNodeCommand indexer = Services.command(securityContext, NewIndexNodeCommand.class);
+				final List<AbstractNode> batch    = new LinkedList<AbstractNode>();
+
+				return new EntityIndexer() {
 
-					while (nodeIterator.hasNext()) {
+					@Override
+					public boolean add(final long id) throws FrameworkException {
+
+						Node dbNode = graphDb.getNodeById(id);
+
+						if (dbNode.hasProperty(GraphObject.uuid.dbName())) {
+
+							AbstractNode node = nodeFactory.createNode(dbNode);
+							if (node != null) {
+
+								batch.add(node);
+
+								return true;
+							}
+						}
+
+						return false;
+					}
+
+					@Override
+					public void flush() throws FrameworkException {
 
 						try {
-							Node dbNode = nodeIterator.next();
+							indexer.updateNodes(batch);
+
+						} finally {
+
+							batch.clear();
+						}
+					}
+				};
+			}
+		});
+	}
+
+	private Progress rebuildRelationshipIndex(final long startId) throws FrameworkException {
+
+		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+		final GraphDatabaseService graphDb    = Services.command(securityContext, GraphDatabaseCommand.class).execute();
+		final long highestId                  = ((GraphDatabaseAPI) graphDb).getNodeManager().getHighestPossibleIdInUse(Relationship.class);
+
+		logger.log(Level.INFO, "Start indexing of relationships.");
 
-							if (dbNode.hasProperty(GraphObject.uuid.dbName())) {
+		return rebuild(PHASE_RELS, startId, highestId, new EntityIndexerFactory() {
 
-								indexer.updateNode(nodeFactory.createNode(dbNode));
+			@Override
+			public EntityIndexer createIndexer() {
 
-								// restart transaction after 1000 iterations
-								if (++count == 1000) {
-									break;
-								}
+				final RelationshipFactory relFactory   = new RelationshipFactory(securityContext);
+				final IndexRelationshipCommand indexer = Services.command(securityContext, IndexRelationshipCommand.class);
+				final List<AbstractRelationship> batch = new LinkedList<AbstractRelationship>();
+
+				return new EntityIndexer() {
+
+					@Override
+					public boolean add(final long id) throws FrameworkException {
+
+						Relationship dbRelationship = graphDb.getRelationshipById(id);
+
+						if (dbRelationship.hasProperty(GraphObject.uuid.dbName())) {
+
+							AbstractRelationship rel = relFactory.instantiateRelationship(securityContext, dbRelationship);
+							if (rel != null) {
+
+								batch.add(rel);
+
+								return true;
 							}
-							
-						} catch(Throwable t) {}
+						}
+
+						return false;
 					}
 
-					return count;
-				}
+					@Override
+					public void flush() throws FrameworkException {
+
+						try {
+							indexer.execute(batch);
+
+						} finally {
+
+							batch.clear();
+						}
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Indexes all entities with ids from startId to highestId in batches,
+	 * using a pool of worker threads.
+	 */
+	private Progress rebuild(final String phase, final long startId, final long highestId, final EntityIndexerFactory indexerFactory) throws FrameworkException {
+
+		final int threadCount    = Math.max(1, parseInt(Services.REBUILD_INDEX_THREADS, Runtime.getRuntime().availableProcessors()));
+		final int batchSize      = Math.max(1, parseInt(Services.REBUILD_INDEX_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+		final Progress progress  = new Progress(phase, startId, highestId, batchSize);
+		final AtomicLong nextId  = new AtomicLong(startId);
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+		for (int i = 0; i < threadCount; i++) {
 
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					EntityIndexer indexer = indexerFactory.createIndexer();
+
+					while (!stopped.get()) {
+
+						long fromId = nextId.getAndAdd(batchSize);
+						if (fromId > highestId) {
+							break;
+						}
+
+						indexBatch(indexer, fromId, Math.min(fromId + batchSize, highestId + 1), progress);
+					}
+				}
 			});
+		}
+
+		executor.shutdown();
 
-			logger.log(Level.INFO, "Indexed {0} nodes ...", nodeCount);
+		try {
+			while (!executor.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+
+				progress.report(false);
+			}
+
+		} catch (InterruptedException iex) {
+
+			// the agent was killed, let the workers finish their current batch
+			stopped.set(true);
+
+			try { executor.awaitTermination(1, TimeUnit.MINUTES); } catch (InterruptedException ignore) {}
 		}
 
-		logger.log(Level.INFO, "Done");
+		progress.report(true);
+
+		if (stopped.get() || progress.hasFailedBatches()) {
 
-		return nodeCount;
+			logger.log(Level.INFO, "Rebuilding index stopped, {0} will be resumed from id {1}", new Object[] { phase, progress.getPosition() });
+		}
+
+		return progress;
 	}
 
-	private long rebuildRelationshipIndex() throws FrameworkException {
+	private void indexBatch(final EntityIndexer indexer, final long fromId, final long toId, final Progress progress) {
 
-		final SecurityContext securityContext         = SecurityContext.getSuperUserInstance();
-		final GraphDatabaseService graphDb            = Services.command(securityContext, GraphDatabaseCommand.class).execute();
-		final RelationshipFactory relFactory          = new RelationshipFactory(securityContext);
+		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+		int count                             = 0;
 
-		final Iterable<Relationship> allRelationships = GlobalGraphOperations.at(graphDb).getAllRelationships();
-		final IndexRelationshipCommand indexer        = Services.command(securityContext, IndexRelationshipCommand.class);
-		long relationshipCount                        = 0L;
-	
-		logger.log(Level.INFO, "Start indexing of relationships.");
-		
-		final Iterator<Relationship> relationshipIterator = allRelationships.iterator();
-		while (relationshipIterator.hasNext()) {
+		try {
 
-			relationshipCount += Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>() {
+			count = Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>() {
 
 				@Override
 				public Integer execute() throws FrameworkException {
 
 					int count = 0;
 
-					while (relationshipIterator.hasNext()) {
+					for (long id = fromId; id < toId; id++) {
 
 						try {
-							Relationship dbRelationship = relationshipIterator.next();
+							if (indexer.add(id)) {
+								count++;
+							}
 
-							if (dbRelationship.hasProperty(GraphObject.uuid.dbName())) {
+						} catch (NotFoundException nfex) {
 
-								indexer.execute(relFactory.instantiateRelationship(securityContext, dbRelationship));
+							// id not in use
 
-								// restart transaction after 1000 iterations
-								if (++count == 1000) {
-									break;
-								}
-							}
-							
-						} catch(Throwable t) {}
+						} catch (Throwable t) {
+
+							progress.failed(id, t);
+						}
 					}
 
+					// write the index entries of the whole batch
+					indexer.flush();
+
 					return count;
 				}
 
 			});
 
-			logger.log(Level.INFO, "Indexed {0} relationships ...", relationshipCount);
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to index ids {0} to {1}: {2}", new Object[] { fromId, toId - 1, t.getMessage() });
+
+			// the batch was rolled back, the checkpoint must not pass it
+			progress.batchFailed(fromId, toId - fromId);
+
+			return;
 		}
 
-		logger.log(Level.INFO, "Done");
+		progress.done(fromId, count);
+	}
+
+	private Properties readCheckpoint() {
+
+		Properties checkpoint = new Properties();
+		File file             = getCheckpointFile();
 
-		return relationshipCount;
+		if (file.exists()) {
+
+			InputStream in = null;
+
+			try {
+				in = new FileInputStream(file);
+				checkpoint.load(in);
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read index rebuild checkpoint {0}: {1}", new Object[] { file, ioex.getMessage() });
+
+			} finally {
+
+				if (in != null) {
+					try { in.close(); } catch (IOException ignore) {}
+				}
+			}
+		}
+
+		return checkpoint;
+	}
+
+	private void writeCheckpoint(final String phase, final long position) {
+
+		Properties checkpoint = new Properties();
+		File file             = getCheckpointFile();
+		OutputStream out      = null;
+
+		checkpoint.setProperty("phase", phase);
+		checkpoint.setProperty("position", Long.toString(position));
+
+		try {
+			out = new FileOutputStream(file);
+			checkpoint.store(out, "structr index rebuild");
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to write index rebuild checkpoint {0}: {1}", new Object[] { file, ioex.getMessage() });
+
+		} finally {
+
+			if (out != null) {
+				try { out.close(); } catch (IOException ignore) {}
+			}
+		}
+	}
+
+	private int parseInt(final String key, final int defaultValue) {
+
+		String value = Services.getConfigurationValue(key, Integer.toString(defaultValue));
+
+		try {
+			return Integer.parseInt(value);
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value {0} for {1}, using default of {2}", new Object[] { value, key, defaultValue } );
+		}
+
+		return defaultValue;
 	}
 
 	//~--- get methods ----------------------------------------------------
@@ -200,4 +459,135 @@ public class RebuildIndexAgent extends Agent {
 	public Class getSupportedTaskType() {
 		return (RebuildIndexTask.class);
 	}
+
+	// ----- nested classes -----
+	private interface EntityIndexer {
+
+		/**
+		 * Adds the entity with the given id to the current batch.
+		 *
+		 * @return false if the entity is not a structr entity
+		 * @throws NotFoundException if the id is not in use
+		 */
+		public boolean add(final long id) throws FrameworkException;
+
+		/**
+		 * Writes the index entries of the current batch and starts a
+		 * new one.
+		 */
+		public void flush() throws FrameworkException;
+	}
+
+	/**
+	 * Creates one indexer per worker thread.
+	 */
+	private interface EntityIndexerFactory {
+
+		public EntityIndexer createIndexer();
+	}
+
+	/**
+	 * Tracks committed batches, reports progress and throughput, and writes
+	 * the checkpoint. Batches finish out of order, so the checkpoint is the
+	 * start of the lowest batch that has not been committed yet. A failed
+	 * batch is never marked as finished, so the checkpoint can not pass it.
+	 */
+	private class Progress {
+
+		private final TreeSet<Long> finishedBatches = new TreeSet<Long>();
+		private final AtomicLong indexed            = new AtomicLong(0);
+		private final AtomicLong failed             = new AtomicLong(0);
+		private final AtomicLong failedBatches      = new AtomicLong(0);
+		private final long startTime                = System.currentTimeMillis();
+		private volatile long lastReport            = startTime;
+		private String phase                        = null;
+		private long startId                        = 0;
+		private long highestId                      = 0;
+		private long position                       = 0;
+		private int batchSize                       = 0;
+
+		public Progress(final String phase, final long startId, final long highestId, final int batchSize) {
+
+			this.batchSize = batchSize;
+			this.highestId = highestId;
+			this.position  = startId;
+			this.startId   = startId;
+			this.phase     = phase;
+		}
+
+		public void done(final long fromId, final int count) {
+
+			indexed.addAndGet(count);
+
+			synchronized (this) {
+
+				finishedBatches.add(fromId);
+
+				while (!finishedBatches.isEmpty() && finishedBatches.first() == position) {
+
+					finishedBatches.pollFirst();
+					position += batchSize;
+				}
+			}
+
+			if (System.currentTimeMillis() - lastReport > REPORT_INTERVAL) {
+				report(false);
+			}
+		}
+
+		public void failed(final long id, final Throwable t) {
+
+			long count = failed.incrementAndGet();
+
+			if (count <= MAX_LOGGED_FAILURES) {
+
+				logger.log(Level.WARNING, "Unable to index {0} id {1}: {2}", new Object[] { phase, id, t.getMessage() });
+
+				if (count == MAX_LOGGED_FAILURES) {
+					logger.log(Level.WARNING, "Further {0} indexing failures will not be logged", phase);
+				}
+			}
+		}
+
+		public void batchFailed(final long fromId, final long count) {
+
+			failedBatches.incrementAndGet();
+			failed.addAndGet(count);
+		}
+
+		public boolean hasFailedBatches() {
+			return failedBatches.get() > 0;
+		}
+
+		public synchronized void report(final boolean finished) {
+
+			long now       = System.currentTimeMillis();
+			long total     = Math.max(1, highestId + 1 - startId);
+			long scanned   = Math.min(total, position - startId);
+			double seconds = Math.max(1, now - startTime) / 1000.0;
+
+			lastReport = now;
+
+			// a finished phase is checkpointed by the caller
+			if (!finished || stopped.get() || hasFailedBatches()) {
+				writeCheckpoint(phase, Math.min(position, highestId + 1));
+			}
+
+			logger.log(Level.INFO, "Indexed {0} {1} ({2}% of id space), {3} per second, {4} failed", new Object[] {
+				indexed.get(),
+				phase,
+				(scanned * 100) / total,
+				Math.round(indexed.get() / seconds),
+				failed.get()
+			});
+		}
+
+		public synchronized long getPosition() {
+			return position;
+		}
+
+		public long getIndexed() {
+			return indexed.get();
+		}
+	}
 }
@@ -29,6 +29,7 @@ import org.structr.core.Services;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.NodeService;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SearchNodeCommand;
@@ -68,6 +69,19 @@ public class AuthHelper {
 
 		} else {
 
+			AuthenticationCache cache = getCache();
+			long generation           = cache.getGeneration();
+
+			// credentials verified before
+			if (password != null) {
+
+				user = cache.getPrincipalForCredentials(securityContext, userName, DigestUtils.sha512Hex(password));
+				if (user != null) {
+
+					return user;
+				}
+			}
+
 			try {
 
 				SearchNodeCommand searchNode = Services.command(securityContext, SearchNodeCommand.class);
@@ -118,6 +132,11 @@ public class AuthHelper {
 
 					}
 
+					if (errorMsg == null) {
+
+						cache.putPrincipalForCredentials(userName, encryptedPasswordValue, user, generation);
+					}
+
 				}
 
 			} catch (FrameworkException fex) {
@@ -139,7 +158,15 @@ public class AuthHelper {
 
 	public static Principal getUserForToken(final String messageToken) {
 
-		Principal user              = null;
+		SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+		AuthenticationCache cache        = getCache();
+		long generation                  = cache.getGeneration();
+		Principal user                   = cache.getPrincipalForToken(superUserContext, messageToken);
+
+		if (user != null) {
+			return user;
+		}
+
 		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
 
 		attrs.add(Search.andExactProperty(Principal.sessionId, messageToken));
@@ -148,7 +175,7 @@ public class AuthHelper {
 		try {
 
 			// we need to search with a super user security context here..
-			Result results = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attrs);
+			Result results = Services.command(superUserContext, SearchNodeCommand.class).execute(attrs);
 
 			if (!results.isEmpty()) {
 
@@ -156,6 +183,8 @@ public class AuthHelper {
 
 				if ((user != null) && messageToken.equals(user.getProperty(Principal.sessionId))) {
 
+					cache.putPrincipalForToken(messageToken, user, generation);
+
 					return user;
 				}
 
@@ -170,4 +199,8 @@ public class AuthHelper {
 
 	}
 
+	private static AuthenticationCache getCache() {
+		return NodeService.getAuthenticationCache();
+	}
+
 }
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.auth;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.structr.common.BoundedCache;
+import org.structr.common.SecurityContext;
+import org.structr.core.EntityContext;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.NodeFactory;
+
+/**
+ * Bounded, expiring caches for the results of successful authentications,
+ * used by {@link AuthHelper}.
+ *
+ * The session token cache maps a session token to the id of its principal,
+ * the credentials cache maps a user name and password digest to the id of
+ * the principal whose credentials were verified. Entries expire after a
+ * configurable time, and all entries of a principal become invalid when its
+ * name, password, session id or blocked flag is modified (see
+ * {@link EntityContext}). Modifications of other nodes are ignored.
+ *
+ * The generation of the last invalidation is kept for a bounded number of
+ * principals. When one of these records is evicted, entries created before
+ * the evicted invalidation are treated as invalid for all principals.
+ *
+ * Only node ids are cached. Principals are instantiated for every lookup,
+ * so that they carry the security context of the caller.
+ */
+public class AuthenticationCache {
+
+	private static final Set<String> invalidatingKeys = new HashSet<String>(Arrays.asList(new String[] {
+		AbstractNode.name.dbName(), Person.password.dbName(), Principal.sessionId.dbName(), Principal.blocked.dbName()
+	}));
+
+	private final AtomicLong invalidationFloor      = new AtomicLong(0);
+	private final AtomicLong generation             = new AtomicLong(0);
+	private BoundedCache<Long, Long> invalidations  = null;
+	private BoundedCache<String, Entry> credentials = null;
+	private BoundedCache<String, Entry> tokens      = null;
+	private long timeout                            = 0L;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maxSize the maximum number of entries of each cache
+	 * @param timeout the time in milliseconds after which entries expire
+	 */
+	public AuthenticationCache(final int maxSize, final long timeout) {
+
+		this.credentials   = new BoundedCache<String, Entry>("Credentials cache", maxSize);
+		this.tokens        = new BoundedCache<String, Entry>("Session token cache", maxSize);
+		this.timeout       = timeout;
+		this.invalidations = new BoundedCache<Long, Long>("Principal invalidations", maxSize) {
+
+			@Override
+			protected void onEviction(final Long nodeId, final Long invalidated) {
+				raiseInvalidationFloor(invalidated);
+			}
+		};
+	}
+
+	public Principal getPrincipalForCredentials(final SecurityContext securityContext, final String userName, final String passwordDigest) {
+		return get(credentials, credentialsKey(userName, passwordDigest), securityContext);
+	}
+
+	public void putPrincipalForCredentials(final String userName, final String passwordDigest, final Principal principal, final long expectedGeneration) {
+		put(credentials, credentialsKey(userName, passwordDigest), principal, expectedGeneration);
+	}
+
+	public Principal getPrincipalForToken(final SecurityContext securityContext, final String token) {
+		return get(tokens, token, securityContext);
+	}
+
+	public void putPrincipalForToken(final String token, final Principal principal, final long expectedGeneration) {
+		put(tokens, token, principal, expectedGeneration);
+	}
+
+	/**
+	 * Returns the current invalidation generation. Callers must obtain the
+	 * generation <b>before</b> they look up the principal they want to
+	 * cache, and pass it to the put methods, so that a principal that was
+	 * read before a concurrent invalidation is not stored.
+	 *
+	 * @return the current generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Invalidates the entries of all principals whose name, password,
+	 * session id or blocked flag was modified in the given transaction.
+	 *
+	 * @param data the transaction data
+	 */
+	public void invalidate(final TransactionData data) {
+
+		if (data == null) {
+			return;
+		}
+
+		Map<Long, Node> nodes = new LinkedHashMap<Long, Node>();
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+
+			if (invalidatingKeys.contains(entry.key())) {
+				nodes.put(entry.entity().getId(), entry.entity());
+			}
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+
+			Node node = entry.entity();
+
+			// deleted principals are detected by the lookup, and the
+			// properties of deleted nodes can not be read
+			if (invalidatingKeys.contains(entry.key()) && !data.isDeleted(node)) {
+				nodes.put(node.getId(), node);
+			}
+		}
+
+		for (Node node : nodes.values()) {
+
+			if (isPrincipal(node)) {
+				invalidate(node.getId());
+			}
+		}
+	}
+
+	public void invalidate(final long nodeId) {
+
+		// entries store the generation at the time they were created and
+		// are ignored when their principal was invalidated afterwards
+		synchronized (invalidations) {
+
+			invalidations.put(nodeId, generation.incrementAndGet());
+		}
+	}
+
+	public void clear() {
+
+		generation.incrementAndGet();
+
+		credentials.clear();
+		tokens.clear();
+		invalidations.clear();
+	}
+
+	@Override
+	public String toString() {
+		return credentials.toString() + ", " + tokens.toString();
+	}
+
+	// ----- private methods -----
+	private Principal get(final BoundedCache<String, Entry> cache, final String key, final SecurityContext securityContext) {
+
+		if (key == null) {
+			return null;
+		}
+
+		Entry entry = cache.get(key);
+
+		if (entry != null) {
+
+			if (entry.expires < System.currentTimeMillis() || entry.generation < getInvalidation(entry.nodeId)) {
+
+				cache.remove(key);
+				return null;
+			}
+
+			try {
+
+				Node node              = Services.command(securityContext, GraphDatabaseCommand.class).execute().getNodeById(entry.nodeId);
+				AbstractNode principal = new NodeFactory<AbstractNode>(securityContext).createNode(node);
+
+				if (principal instanceof Principal) {
+					return (Principal) principal;
+				}
+
+			} catch (NotFoundException nfex) {}
+
+			// principal was deleted
+			cache.remove(key);
+		}
+
+		return null;
+	}
+
+	private void put(final BoundedCache<String, Entry> cache, final String key, final Principal principal, final long expectedGeneration) {
+
+		if (key != null && principal instanceof AbstractNode && generation.get() == expectedGeneration) {
+
+			long nodeId = ((AbstractNode) principal).getId();
+
+			cache.put(key, new Entry(nodeId, expectedGeneration, System.currentTimeMillis() + timeout));
+
+			// re-check, invalidation may have happened in between
+			if (generation.get() != expectedGeneration) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	private long getInvalidation(final long nodeId) {
+
+		Long invalidated = invalidations.get(nodeId);
+		long floor       = invalidationFloor.get();
+
+		return invalidated != null ? Math.max(invalidated.longValue(), floor) : floor;
+	}
+
+	private void raiseInvalidationFloor(final long invalidated) {
+
+		long floor = invalidationFloor.get();
+
+		while (floor < invalidated && !invalidationFloor.compareAndSet(floor, invalidated)) {
+			floor = invalidationFloor.get();
+		}
+	}
+
+	private boolean isPrincipal(final Node node) {
+
+		Object type = node.getProperty(AbstractNode.type.dbName(), null);
+
+		if (type != null) {
+
+			Class entityClass = EntityContext.getEntityClassForRawType(type.toString());
+
+			return entityClass != null && Principal.class.isAssignableFrom(entityClass);
+		}
+
+		return false;
+	}
+
+	private String credentialsKey(final String userName, final String passwordDigest) {
+
+		if (userName == null || passwordDigest == null) {
+			return null;
+		}
+
+		return userName + "\n" + passwordDigest;
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private long generation = 0L;
+		private long expires    = 0L;
+		private long nodeId     = 0L;
+
+		public Entry(final long nodeId, final long generation, final long expires) {
+
+			this.generation = generation;
+			this.expires    = expires;
+			this.nodeId     = nodeId;
+		}
+	}
+}
@@ -23,15 +23,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.neo4j.cypher.javacompat.ExecutionEngine;
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
+import org.structr.core.cypher.CypherExecutionEngine;
 import org.structr.core.cypher.CypherQueryHandler;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.NodeService;
 
 /**
  * Executes the given {@link CypherQueryConverter} on the current node and
@@ -43,8 +42,6 @@ public class CypherQueryConverter extends PropertyConverter {
 
 	private static final Logger logger = Logger.getLogger(CypherQueryConverter.class.getName());
 	
-	private GraphDatabaseService graphDb    = null;
-	private ExecutionEngine engine          = null;
 	private CypherQueryHandler handler      = null;
 
 	public CypherQueryConverter(SecurityContext securityContext, GraphObject entity, CypherQueryHandler handler) {
@@ -52,15 +49,6 @@ public class CypherQueryConverter extends PropertyConverter {
 		super(securityContext, entity);
 		
 		this.handler = handler;
-		
-		try {
-			graphDb = (GraphDatabaseService)Services.command(SecurityContext.getSuperUserInstance(), GraphDatabaseCommand.class).execute();
-			engine  = new ExecutionEngine(graphDb);
-
-		} catch(Throwable t) {
-			
-			logger.log(Level.WARNING, "Unable to create cypher execution engine.");
-		}
 	}
 	
 	@Override
@@ -71,6 +59,18 @@ public class CypherQueryConverter extends PropertyConverter {
 	@Override
 	public Object revert(Object source) {
 		
+		// use the shared engine of the node service, a new engine
+		// would have to parse and plan the query again
+		NodeService nodeService      = Services.getService(NodeService.class);
+		CypherExecutionEngine engine = nodeService != null ? nodeService.getCypherEngine() : null;
+
+		if (engine == null) {
+
+			logger.log(Level.WARNING, "No cypher execution engine available.");
+
+			return null;
+		}
+
 		if (currentObject != null) {
 
 			Map<String, Object> parameters = new LinkedHashMap<String, Object>();
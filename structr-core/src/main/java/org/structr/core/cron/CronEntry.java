@@ -299,7 +299,24 @@ public class CronEntry implements Delayed {
 
 	public long getDelayToNextExecutionInMillis() {
 
+		long currentTime = System.currentTimeMillis();
+
+		return getNextExecutionTime(currentTime) - currentTime;
+	}
+
+	/**
+	 * Returns the first point in time at or after the given time that
+	 * matches this entry.
+	 *
+	 * @param from the time in milliseconds to start from
+	 * @return the time of the next execution in milliseconds
+	 */
+	public long getNextExecutionTime(long from) {
+
 		Calendar now       = GregorianCalendar.getInstance();
+
+		now.setTimeInMillis(from);
+
 		int nowSeconds     = now.get(Calendar.SECOND);
 		int nowMinutes     = now.get(Calendar.MINUTE);
 		int nowHours       = now.get(Calendar.HOUR_OF_DAY);
@@ -369,7 +386,7 @@ public class CronEntry implements Delayed {
 			throw new IllegalArgumentException("Unable to determine next cron date for task " + name + ", aborting.");
 		}
 		
-		return now.getTimeInMillis() - System.currentTimeMillis();
+		return now.getTimeInMillis();
 	}
 
 	public CronField getSeconds() {
@@ -19,9 +19,11 @@
 
 package org.structr.core.cron;
 
-import java.text.SimpleDateFormat;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,9 +38,13 @@ import org.structr.core.agent.Task;
  * A service that keeps track of registered tasks and runs
  * them at their scheduled time.
  *
+ * Task classes are resolved when the service is initialized. Each
+ * entry is scheduled for its next execution time, so the service
+ * does not need to wake up in between.
+ *
  * @author Christian Morgner
  */
-public class CronService extends Thread implements RunnableService {
+public class CronService implements RunnableService {
 
 	private static final Logger logger           = Logger.getLogger(CronService.class.getName());
 
@@ -47,62 +53,64 @@ public class CronService extends Thread implements RunnableService {
 	public static final TimeUnit GRANULARITY_UNIT  = TimeUnit.SECONDS;
 	public static final long     GRANULARITY       = 1;
 	public static final int      NUM_FIELDS        = 6;
+	public static final long     STARTUP_DELAY     = 5000;
 
-	private SecurityContext securityContext   = SecurityContext.getSuperUserInstance();
-	private LinkedList<CronEntry> cronEntries = new LinkedList<CronEntry>();
-	private boolean doRun = false;
-
-	public CronService() {
-		super("CronService");
-	}
+	private SecurityContext securityContext     = SecurityContext.getSuperUserInstance();
+	private LinkedList<ScheduledEntry> entries  = new LinkedList<ScheduledEntry>();
+	private ScheduledExecutorService scheduler  = null;
+	private volatile boolean doRun              = false;
 
+	// ----- interface RunnableService -----
 	@Override
-	public void run() {
+	public void startService() {
 
-		// wait for service layer to be initialized
-		while(!Services.isInitialized()) {
-			try { Thread.sleep(1000); } catch(InterruptedException iex) { }
-		}
+		this.doRun     = true;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
 
-		// sleep 5 seconds more
-		try { Thread.sleep(5000); } catch(InterruptedException iex) { }
+				Thread thread = new Thread(runnable, "CronService");
 
-		while(doRun) {
+				thread.setDaemon(true);
 
-			// sleep for some time
-			try { Thread.sleep(GRANULARITY_UNIT.toMillis(GRANULARITY)); } catch(InterruptedException iex) { }
+				return thread;
+			}
+		});
 
-			for(CronEntry entry : cronEntries) {
+		// wait for service layer to be initialized
+		scheduler.schedule(new Runnable() {
 
-				if(entry.getDelayToNextExecutionInMillis() < GRANULARITY_UNIT.toMillis(GRANULARITY)) {
-					
-					String taskClassName = entry.getName();
+			@Override
+			public void run() {
 
-					try {
-						Class taskClass = Class.forName(taskClassName);
-						Task task = (Task)taskClass.newInstance();
+				if (!doRun) {
+					return;
+				}
 
-						logger.log(Level.FINE, "Starting task {0}", taskClassName);
-						Services.command(securityContext, ProcessTaskCommand.class).execute(task);
+				if (Services.isInitialized()) {
 
-					} catch(Throwable t) {
-						logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskClassName, t.getMessage() } );
+					for (ScheduledEntry entry : entries) {
+						schedule(entry, System.currentTimeMillis());
 					}
+
+				} else {
+
+					scheduler.schedule(this, GRANULARITY, GRANULARITY_UNIT);
 				}
 			}
-		}
-	}
-	
-	// ----- interface RunnableService -----
-	@Override
-	public void startService() {
-		this.doRun = true;
-		this.start();
+
+		}, STARTUP_DELAY, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
 	public void stopService() {
+
 		this.doRun = false;
+
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
 	}
 
 	@Override
@@ -110,6 +118,11 @@ public class CronService extends Thread implements RunnableService {
 		return true;
 	}
 
+	@Override
+	public String getName() {
+		return CronService.class.getSimpleName();
+	}
+
 	@Override
 	public boolean isRunning() {
 		return doRun;
@@ -127,15 +140,32 @@ public class CronService extends Thread implements RunnableService {
 			
 			for(String task : taskList.split("[ \\t]+")) {
 
+				if (task.isEmpty()) {
+					continue;
+				}
+
 				String expression = (String)context.get(task.concat(EXPRESSION_SUFFIX));
 				if(expression != null) {
 
 					CronEntry entry = CronEntry.parse(task, expression);
 					if(entry != null) {
 
-						logger.log(Level.INFO, "Adding cron entry {0} for {1}", new Object[]{ entry, task });
+						try {
+							Class taskClass = Class.forName(task);
+
+							if (Task.class.isAssignableFrom(taskClass)) {
+
+								logger.log(Level.INFO, "Adding cron entry {0} for {1}", new Object[]{ entry, task });
+
+								entries.add(new ScheduledEntry(entry, taskClass));
 
-						cronEntries.add(entry);
+							} else {
+								logger.log(Level.WARNING, "Class {0} is not a task, ignoring.", task);
+							}
+
+						} catch(Throwable t) {
+							logger.log(Level.WARNING, "Unable to load task class {0}, ignoring: {1}", new Object[] { task, t.getMessage() } );
+						}
 
 					} else {
 						logger.log(Level.WARNING, "Unable to parse cron expression for taks {0}, ignoring.", task);
@@ -150,6 +180,70 @@ public class CronService extends Thread implements RunnableService {
 
 	@Override
 	public void shutdown() {
-		this.doRun = false;
+		stopService();
+	}
+
+	// ----- private methods -----
+	private void schedule(final ScheduledEntry entry, final long from) {
+
+		if (!doRun) {
+			return;
+		}
+
+		try {
+			// cron entries have a granularity of one second
+			long granularity   = GRANULARITY_UNIT.toMillis(GRANULARITY);
+			long executionTime = entry.cronEntry.getNextExecutionTime(from - (from % granularity));
+
+			entry.executionTime = executionTime;
+
+			scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					execute(entry);
+				}
+
+			}, Math.max(0, executionTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+		} catch(Throwable t) {
+			logger.log(Level.WARNING, "Could not schedule task {0}: {1}", new Object[] { entry.cronEntry.getName(), t.getMessage() } );
+		}
+	}
+
+	private void execute(final ScheduledEntry entry) {
+
+		if (!doRun) {
+			return;
+		}
+
+		String taskClassName = entry.cronEntry.getName();
+
+		try {
+			Task task = (Task)entry.taskClass.newInstance();
+
+			logger.log(Level.FINE, "Starting task {0}", taskClassName);
+			Services.command(securityContext, ProcessTaskCommand.class).execute(task);
+
+		} catch(Throwable t) {
+			logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskClassName, t.getMessage() } );
+		}
+
+		// schedule next execution, never run twice in the same second
+		schedule(entry, Math.max(entry.executionTime + GRANULARITY_UNIT.toMillis(GRANULARITY), System.currentTimeMillis()));
+	}
+
+	// ----- nested classes -----
+	private static class ScheduledEntry {
+
+		private CronEntry cronEntry = null;
+		private Class taskClass     = null;
+		private long executionTime  = 0L;
+
+		public ScheduledEntry(final CronEntry cronEntry, final Class taskClass) {
+
+			this.cronEntry = cronEntry;
+			this.taskClass = taskClass;
+		}
 	}
 }
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.cypher;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.cypher.ExecutionEngine;
+import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Executes cypher queries like the neo4j javacompat ExecutionEngine, and
+ * counts how often the execution plan of a query was found in the plan
+ * cache of the engine.
+ *
+ * The plan cache itself is owned by neo4j, its size is set by the
+ * query_cache_size setting of the database.
+ */
+public class CypherExecutionEngine {
+
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong hits   = new AtomicLong(0);
+	private ExecutionEngine engine  = null;
+
+	public CypherExecutionEngine(final GraphDatabaseService graphDb) {
+		this.engine = new ExecutionEngine(graphDb, StringLogger.DEV_NULL);
+	}
+
+	public ExecutionResult execute(final String query) {
+
+		count(query);
+
+		return new ExecutionResult(engine.execute(query));
+	}
+
+	public ExecutionResult execute(final String query, final Map<String, Object> parameters) {
+
+		count(query);
+
+		return new ExecutionResult(engine.execute(query, parameters));
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+
+		long hitCount = hits.get();
+		long total    = hitCount + misses.get();
+
+		return total > 0 ? (double) hitCount / (double) total : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "Cypher plan cache: " + hits.get() + " hits, " + misses.get() + " misses";
+	}
+
+	// ----- private methods -----
+	private void count(final String query) {
+
+		// a concurrent eviction can make a hit a miss, that's fine for statistics
+		if (engine.isPrepared(query)) {
+
+			hits.incrementAndGet();
+
+		} else {
+
+			misses.incrementAndGet();
+		}
+	}
+}
@@ -19,14 +19,15 @@
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.error.FrameworkException;
+import org.structr.core.IterableAdapter;
 import org.structr.core.entity.AbstractNode;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,7 +64,7 @@ public class BulkCopyRelationshipPropertyCommand extends NodeServiceCommand impl
 		
 		if(graphDb != null) {
 
-			List<AbstractRelationship> rels = relFactory.instantiateRelationships(securityContext, GlobalGraphOperations.at(graphDb).getAllRelationships());
+			Iterable<AbstractRelationship> rels = new IterableAdapter<Relationship, AbstractRelationship>(GlobalGraphOperations.at(graphDb).getAllRelationships(), relFactory);
 
 			long count = bulkGraphOperation(securityContext, rels, 1000, "CopyRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
 
@@ -18,23 +18,21 @@
  */
 package org.structr.core.graph;
 
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.EntityContext;
-import org.structr.core.Result;
-import org.structr.core.Services;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.search.Search;
-import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.graph.NodeService.NodeIndex;
 
 /**
  * Tries to fix properties in the database that have been stored there with the
@@ -57,99 +55,110 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 			final Class type = EntityContext.getEntityClassForRawType(entityTypeName);
 			if (type != null) {
 				
-				final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-				final List<AbstractNode> nodes    = result.getResults();
+				// exact type lookup, iterated lazily
+				final Index<Node> keywordIndex     = (Index<Node>) arguments.get(NodeIndex.keyword.name());
+				final IndexHits<Node> hits         = keywordIndex.get(AbstractNode.type.dbName(), type.getSimpleName());
+				final Iterable<AbstractNode> nodes = new NodeFactory<AbstractNode>(securityContext).createNodesLazily(hits);
 
 				if (type != null) {
 
-					logger.log(Level.INFO, "Trying to fix properties of {0} {1} nodes", new Object[] { nodes.size(), type.getSimpleName() } );
+					logger.log(Level.INFO, "Trying to fix properties of {0} nodes", new Object[] { type.getSimpleName() } );
 
-					long nodeCount = bulkGraphOperation(securityContext, nodes, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
+					long nodeCount = 0;
 
-						private void fixProperty(AbstractNode node, Property propertyToFix) {
-							
-							Node databaseNode = node.getNode();
+					try {
+
+						nodeCount = bulkGraphOperation(securityContext, nodes, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
 
-							if (databaseNode.hasProperty(propertyToFix.dbName())) {
+							private void fixProperty(AbstractNode node, Property propertyToFix) {
+								
+								Node databaseNode = node.getNode();
 
-								// check value with property converter
-								PropertyConverter converter = propertyToFix.databaseConverter(securityContext, node);
-								if (converter != null) {
+								if (databaseNode.hasProperty(propertyToFix.dbName())) {
 
-									try {
-										Object value = databaseNode.getProperty(propertyToFix.dbName());
-										converter.revert(value);
+									// check value with property converter
+									PropertyConverter converter = propertyToFix.databaseConverter(securityContext, node);
+									if (converter != null) {
 
-									} catch (ClassCastException cce) {
+										try {
+											Object value = databaseNode.getProperty(propertyToFix.dbName());
+											converter.revert(value);
 
-										// exception, needs fix
-										String databaseName   = propertyToFix.dbName();
-										Object databaseValue  = databaseNode.getProperty(databaseName);
-										Object correctedValue = propertyToFix.fixDatabaseProperty(databaseValue);
+										} catch (ClassCastException cce) {
 
-										if (databaseValue != null && correctedValue != null) {
+											// exception, needs fix
+											String databaseName   = propertyToFix.dbName();
+											Object databaseValue  = databaseNode.getProperty(databaseName);
+											Object correctedValue = propertyToFix.fixDatabaseProperty(databaseValue);
 
-											try {
-												// try to set database value to corrected value
-												databaseNode.setProperty(databaseName, correctedValue);
+											if (databaseValue != null && correctedValue != null) {
 
-											} catch (Throwable t) {
+												try {
+													// try to set database value to corrected value
+													databaseNode.setProperty(databaseName, correctedValue);
 
-												logger.log(Level.WARNING, "Unable to fix property {0} of {1} with UUID {2} which is of type {3}", new Object[] {
-													propertyToFix.dbName(),
-													type.getSimpleName(),
-													node.getUuid(),
-													databaseValue != null ? databaseValue.getClass() : "null"
-												});
+												} catch (Throwable t) {
 
+													logger.log(Level.WARNING, "Unable to fix property {0} of {1} with UUID {2} which is of type {3}", new Object[] {
+														propertyToFix.dbName(),
+														type.getSimpleName(),
+														node.getUuid(),
+														databaseValue != null ? databaseValue.getClass() : "null"
+													});
+
+												}
 											}
-										}
 
-									} catch (Throwable t) {
+										} catch (Throwable t) {
 
-										// log exceptions of other types
-										t.printStackTrace();
+											// log exceptions of other types
+											t.printStackTrace();
+										}
 									}
 								}
 							}
-						}
-						
-						@Override
-						public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
+							
+							@Override
+							public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
 
-							if (propertyName != null) {
-								
-								PropertyKey key = EntityContext.getPropertyKeyForDatabaseName(type, propertyName);
-								if (key != null) {
+								if (propertyName != null) {
 									
-									// needs type cast to Property to use fixDatabaseProperty method
-									if (key instanceof Property) {
-										fixProperty(node, (Property)key);
+									PropertyKey key = EntityContext.getPropertyKeyForDatabaseName(type, propertyName);
+									if (key != null) {
+										
+										// needs type cast to Property to use fixDatabaseProperty method
+										if (key instanceof Property) {
+											fixProperty(node, (Property)key);
+										}
 									}
-								}
-								
-							} else {
-								
-								for(PropertyKey key : node.getPropertyKeys(PropertyView.All)) {
 									
-									// needs type cast to Property to use fixDatabaseProperty method
-									if (key instanceof Property) {
-										fixProperty(node, (Property)key);
+								} else {
+									
+									for(PropertyKey key : node.getPropertyKeys(PropertyView.All)) {
+										
+										// needs type cast to Property to use fixDatabaseProperty method
+										if (key instanceof Property) {
+											fixProperty(node, (Property)key);
+										}
 									}
 								}
 							}
-						}
-
-						@Override
-						public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode currentObject) {
-							t.printStackTrace();
-						}
-
-						@Override
-						public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
-							t.printStackTrace();
-						}
-					});
+
+							@Override
+							public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode currentObject) {
+								t.printStackTrace();
+							}
+
+							@Override
+							public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+								t.printStackTrace();
+							}
+						});
+
+					} finally {
+
+						hits.close();
+					}
 					
 					logger.log(Level.INFO, "Fixed {0} nodes", nodeCount);
 					
@@ -0,0 +1,307 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+
+/**
+ * Applies a {@link BulkGraphOperation} to all objects of a source, one
+ * transaction per batch.
+ *
+ * The source is iterated lazily on the calling thread, which collects the
+ * objects into disjoint batches and hands them to a pool of worker threads.
+ * At most two batches per worker are pending at any time, so the memory
+ * needed does not depend on the size of the source. A batch whose
+ * transaction fails is retried a configurable number of times before it is
+ * passed to {@link BulkGraphOperation#handleTransactionFailure}. Progress
+ * and throughput are logged every 10 seconds.
+ *
+ * If the calling thread already runs a transaction, the batches are
+ * processed on the calling thread (and thereby in the enclosing transaction)
+ * without retries, as before.
+ *
+ * The operation must be thread-safe if more than one thread is used.
+ */
+public class BulkOperationExecutor<T extends GraphObject> {
+
+	private static final Logger logger           = Logger.getLogger(BulkOperationExecutor.class.getName());
+	private static final long REPORT_INTERVAL    = 10000;
+	private static final long RETRY_DELAY        = 100;
+	private static final AtomicInteger poolCount = new AtomicInteger(0);
+
+	private final AtomicLong processed       = new AtomicLong(0);
+	private final AtomicLong failedBatches   = new AtomicLong(0);
+	private final AtomicLong retriedBatches  = new AtomicLong(0);
+	private BulkGraphOperation<T> operation  = null;
+	private SecurityContext securityContext  = null;
+	private String description               = null;
+	private volatile long lastReport         = 0L;
+	private long startTime                   = 0L;
+	private int batchSize                    = 0;
+	private int threadCount                  = 0;
+	private int maxRetries                   = 0;
+
+	/**
+	 * Creates a new executor.
+	 *
+	 * @param securityContext the security context of the transactions
+	 * @param description the name under which progress is logged
+	 * @param batchSize the number of objects per transaction
+	 * @param threadCount the number of worker threads
+	 * @param maxRetries the number of times a failed batch is retried
+	 * @param operation the operation
+	 */
+	public BulkOperationExecutor(final SecurityContext securityContext, final String description, final int batchSize, final int threadCount, final int maxRetries, final BulkGraphOperation<T> operation) {
+
+		this.securityContext = securityContext;
+		this.description     = description;
+		this.batchSize       = Math.max(1, batchSize);
+		this.threadCount     = Math.max(1, threadCount);
+		this.maxRetries      = Math.max(0, maxRetries);
+		this.operation       = operation;
+	}
+
+	/**
+	 * Applies the operation to all objects of the given source. Null
+	 * elements (e.g. objects that could not be instantiated) are skipped.
+	 *
+	 * @param source the objects
+	 * @return the number of objects in batches that were committed
+	 * @throws FrameworkException
+	 */
+	public long execute(final Iterable<T> source) throws FrameworkException {
+
+		final Iterator<T> iterator = source.iterator();
+
+		startTime  = System.currentTimeMillis();
+		lastReport = startTime;
+
+		if (threadCount == 1 || TransactionCommand.isInTransaction()) {
+
+			int retries = TransactionCommand.isInTransaction() ? 0 : maxRetries;
+
+			for (List<T> batch = nextBatch(iterator); !batch.isEmpty(); batch = nextBatch(iterator)) {
+				processBatch(batch, retries);
+			}
+
+		} else {
+
+			processInParallel(iterator);
+		}
+
+		report(true);
+
+		return processed.get();
+	}
+
+	// ----- private methods -----
+	private void processInParallel(final Iterator<T> iterator) {
+
+		final Semaphore pendingBatches = new Semaphore(threadCount * 2);
+		final String threadName        = description + "-" + poolCount.incrementAndGet() + "-";
+		ExecutorService executor       = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+
+			private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				Thread thread = new Thread(runnable, threadName + threadCounter.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		boolean interrupted = false;
+
+		try {
+
+			for (List<T> batch = nextBatch(iterator); !batch.isEmpty(); batch = nextBatch(iterator)) {
+
+				final List<T> currentBatch = batch;
+
+				pendingBatches.acquire();
+
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+							processBatch(currentBatch, maxRetries);
+
+						} finally {
+
+							pendingBatches.release();
+						}
+					}
+				});
+			}
+
+		} catch (InterruptedException iex) {
+
+			// stop reading the source, the pending batches are finished below
+			logger.log(Level.INFO, "{0}: interrupted, waiting for pending batches", description);
+
+			interrupted = true;
+
+		} finally {
+
+			executor.shutdown();
+
+			while (!executor.isTerminated()) {
+
+				try {
+					if (!executor.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+						report(false);
+					}
+
+				} catch (InterruptedException iex) {
+
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private List<T> nextBatch(final Iterator<T> iterator) {
+
+		List<T> batch = new ArrayList<T>(batchSize);
+
+		while (batch.size() < batchSize && iterator.hasNext()) {
+
+			T obj = iterator.next();
+
+			if (obj != null) {
+				batch.add(obj);
+			}
+		}
+
+		return batch;
+	}
+
+	private void processBatch(final List<T> batch, final int retries) {
+
+		for (int attempt = 0; ; attempt++) {
+
+			try {
+
+				int count = Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>() {
+
+					@Override
+					public Integer execute() throws FrameworkException {
+
+						int count = 0;
+
+						for (T obj : batch) {
+
+							try {
+
+								operation.handleGraphObject(securityContext, obj);
+
+							} catch (Throwable t) {
+
+								operation.handleThrowable(securityContext, t, obj);
+							}
+
+							count++;
+						}
+
+						return count;
+					}
+				});
+
+				processed.addAndGet(count);
+
+				break;
+
+			} catch (Throwable t) {
+
+				if (attempt < retries && sleep(RETRY_DELAY * (attempt + 1))) {
+
+					logger.log(Level.INFO, "{0}: transaction failed, retrying batch of {1} objects ({2}/{3}): {4}", new Object[] { description, batch.size(), attempt + 1, retries, t.getMessage() });
+
+					retriedBatches.incrementAndGet();
+
+					continue;
+				}
+
+				failedBatches.incrementAndGet();
+
+				operation.handleTransactionFailure(securityContext, t);
+
+				break;
+			}
+		}
+
+		if (System.currentTimeMillis() - lastReport > REPORT_INTERVAL) {
+			report(false);
+		}
+	}
+
+	private boolean sleep(final long millis) {
+
+		try {
+			Thread.sleep(millis);
+
+			return true;
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+		}
+
+		return false;
+	}
+
+	private synchronized void report(final boolean finished) {
+
+		long now       = System.currentTimeMillis();
+		double seconds = Math.max(1, now - startTime) / 1000.0;
+		long count     = processed.get();
+
+		lastReport = now;
+
+		logger.log(Level.INFO, "{0}: {1} objects processed{2} in {3} s ({4} per s), {5} batches retried, {6} batches failed", new Object[] {
+			description, count, finished ? "" : " so far", Math.round(seconds), Math.round(count / seconds), retriedBatches.get(), failedBatches.get()
+		});
+	}
+}
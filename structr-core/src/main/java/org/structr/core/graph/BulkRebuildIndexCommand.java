@@ -22,20 +22,19 @@
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.EntityContext;
-import org.structr.core.Result;
+import org.structr.core.IterableAdapter;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,20 +70,8 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 			if (type != null) {
 
-				final NewIndexNodeCommand indexNode = Services.command(securityContext, NewIndexNodeCommand.class);
-
 				// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-				final Result<AbstractNode> result = nodeFactory.createAllNodes(GlobalGraphOperations.at(graphDb).getAllNodes());
-				final List<AbstractNode> nodes    = new ArrayList<AbstractNode>();
-
-				for (AbstractNode node : result.getResults()) {
-
-					if (node.getClass().equals(type)) {
-
-						nodes.add(node);
-					}
-
-				}
+				final Iterable<AbstractNode> nodes = nodeFactory.createNodesLazily(GlobalGraphOperations.at(graphDb).getAllNodes());
 
 				logger.log(Level.INFO, "Start (re-)indexing all nodes of type {0}", new Object[] { type.getSimpleName() });
 
@@ -93,7 +80,11 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 					@Override
 					public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
 
-						indexNode.updateNode(node);
+						if (node.getClass().equals(type)) {
+
+							// index commands are not thread-safe
+							Services.command(securityContext, NewIndexNodeCommand.class).updateNode(node);
+						}
 
 					}
 					@Override
@@ -119,20 +110,8 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 		} else if (relType != null) {
 
-			final IndexRelationshipCommand indexRel = Services.command(securityContext, IndexRelationshipCommand.class);
-
 			// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-			final List<AbstractRelationship> unfilteredRels = relFactory.instantiateRelationships(superUserContext, GlobalGraphOperations.at(graphDb).getAllRelationships());
-			final List<AbstractRelationship> rels           = new ArrayList<AbstractRelationship>();
-
-			for (AbstractRelationship rel : unfilteredRels) {
-
-				if (!rel.getType().equals(relType)) {
-
-					rels.add(rel);
-				}
-
-			}
+			final Iterable<AbstractRelationship> rels = new IterableAdapter<Relationship, AbstractRelationship>(GlobalGraphOperations.at(graphDb).getAllRelationships(), relFactory);
 
 			logger.log(Level.INFO, "Start setting UUID on all rels of type {0}", new Object[] { relType });
 
@@ -141,9 +120,15 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
 
+					if (rel.getType().equals(relType)) {
+
+						return;
+					}
+
 					try {
 
-						indexRel.execute(rel);
+						// index commands are not thread-safe
+						Services.command(securityContext, IndexRelationshipCommand.class).execute(rel);
 
 					} catch (FrameworkException fex) {
 
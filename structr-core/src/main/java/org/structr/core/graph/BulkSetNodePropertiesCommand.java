@@ -22,20 +22,20 @@
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.Result;
-import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.search.Search;
-import org.structr.core.graph.search.SearchAttribute;
-import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.graph.NodeService.NodeIndex;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -63,30 +63,42 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 
 		final GraphDatabaseService graphDb     = (GraphDatabaseService) arguments.get("graphDb");
 		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
-		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
-		final SearchNodeCommand searchNode     = Services.command(superUserContext, SearchNodeCommand.class);
+		final NodeFactory<AbstractNode> nodeFactory = new NodeFactory<AbstractNode>(superUserContext);
+		final Index<Node> keywordIndex              = (Index<Node>) arguments.get(NodeIndex.keyword.name());
 
 		if (graphDb != null) {
 
-			Result<AbstractNode> nodes = null;
+			Iterable<Node> dbNodes = null;
 
 			if (properties.containsKey(AbstractNode.type.dbName())) {
 
-				List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
+				// exact type lookup. The ids are collected before any node
+				// is modified, so that the index hits are not read while
+				// the worker threads write to the index.
+				IndexHits<Node> hits = keywordIndex.get(AbstractNode.type.dbName(), properties.get(AbstractNode.type.dbName()));
+				List<Long> ids       = new ArrayList<Long>();
 
-				attrs.add(Search.andExactType((String) properties.get(AbstractNode.type.dbName())));
+				try {
 
-				nodes = searchNode.execute(attrs);
+					for (Node node : hits) {
+						ids.add(node.getId());
+					}
+
+				} finally {
+
+					hits.close();
+				}
+
+				dbNodes = getNodesById(graphDb, ids);
 
 				properties.remove(AbstractNode.type.dbName());
 
 			} else {
 
-				nodes = nodeFactory.createAllNodes(GlobalGraphOperations.at(graphDb).getAllNodes());
+				dbNodes = GlobalGraphOperations.at(graphDb).getAllNodes();
 			}
 
-
-			long nodeCount = bulkGraphOperation(securityContext, nodes.getResults(), 1000, "SetNodeProperties", new BulkGraphOperation<AbstractNode>() {
+			long nodeCount = bulkGraphOperation(securityContext, nodeFactory.createNodesLazily(dbNodes), 1000, "SetNodeProperties", getBulkOperationThreads(), new BulkGraphOperation<AbstractNode>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -129,11 +141,40 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 				}
 			});
 
-
 			logger.log(Level.INFO, "Fixed {0} nodes ...", nodeCount);
 		}
 
 		logger.log(Level.INFO, "Done");
 	}
 
+	// ----- private methods -----
+	private Iterable<Node> getNodesById(final GraphDatabaseService graphDb, final List<Long> ids) {
+
+		return new Iterable<Node>() {
+
+			@Override
+			public Iterator<Node> iterator() {
+
+				final Iterator<Long> idIterator = ids.iterator();
+
+				return new Iterator<Node>() {
+
+					@Override
+					public boolean hasNext() {
+						return idIterator.hasNext();
+					}
+
+					@Override
+					public Node next() {
+						return graphDb.getNodeById(idIterator.next());
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
 }
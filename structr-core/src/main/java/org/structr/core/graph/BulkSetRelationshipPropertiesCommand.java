@@ -23,9 +23,11 @@ package org.structr.core.graph;
 
 import java.util.LinkedList;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.error.FrameworkException;
+import org.structr.core.IterableAdapter;
 import org.structr.core.Services;
 
 //~--- JDK imports ------------------------------------------------------------
@@ -66,7 +68,7 @@ public class BulkSetRelationshipPropertiesCommand extends NodeServiceCommand imp
                 
 		if (graphDb != null) {
 
-			List<AbstractRelationship> rels = null;
+			Iterable<AbstractRelationship> rels = null;
 
 			if (properties.containsKey(AbstractRelationship.combinedType.dbName())) {
 
@@ -78,7 +80,7 @@ public class BulkSetRelationshipPropertiesCommand extends NodeServiceCommand imp
 
 			} else {
 
-				rels = (List<AbstractRelationship>) relationshipFactory.instantiateRelationships(securityContext, GlobalGraphOperations.at(graphDb).getAllRelationships());
+				rels = new IterableAdapter<Relationship, AbstractRelationship>(GlobalGraphOperations.at(graphDb).getAllRelationships(), relationshipFactory);
 			}
 
 			long count = NodeServiceCommand.bulkGraphOperation(securityContext, rels, 1000, "SetRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
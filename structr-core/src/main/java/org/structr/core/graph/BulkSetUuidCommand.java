@@ -22,18 +22,18 @@
 package org.structr.core.graph;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.EntityContext;
-import org.structr.core.Result;
+import org.structr.core.IterableAdapter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -70,12 +70,11 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 			if (type != null) {
 
 				// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-				final Result<AbstractNode> result = nodeFactory.createAllNodes(GlobalGraphOperations.at(graphDb).getAllNodes());
-				final List<AbstractNode> nodes    = result.getResults();
+				final Iterable<AbstractNode> nodes = nodeFactory.createNodesLazily(GlobalGraphOperations.at(graphDb).getAllNodes());
 
 				logger.log(Level.INFO, "Start setting UUID on all nodes of type {0}", new Object[] { type.getSimpleName() });
 
-				long count = bulkGraphOperation(securityContext, nodes, 1000, "SetNodeProperties", new BulkGraphOperation<AbstractNode>() {
+				long count = bulkGraphOperation(securityContext, nodes, 1000, "SetNodeProperties", getBulkOperationThreads(), new BulkGraphOperation<AbstractNode>() {
 
 					@Override
 					public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -119,7 +118,7 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 		} else if (relType != null) {
 
 			// final Result<AbstractNode> result = Services.command(securityContext, SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
-			final List<AbstractRelationship> rels = relFactory.instantiateRelationships(superUserContext, GlobalGraphOperations.at(graphDb).getAllRelationships());
+			final Iterable<AbstractRelationship> rels = new IterableAdapter<Relationship, AbstractRelationship>(GlobalGraphOperations.at(graphDb).getAllRelationships(), relFactory);
 
 			logger.log(Level.INFO, "Start setting UUID on all rels of type {0}", new Object[] { relType });
 
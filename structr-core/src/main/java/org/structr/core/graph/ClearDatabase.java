@@ -60,7 +60,8 @@ public class ClearDatabase extends NodeServiceCommand {
 			final DeleteNodeCommand delNode   = Services.command(securityContext, DeleteNodeCommand.class);
 			final Result<AbstractNode> result = nodeFactory.createAllNodes(GlobalGraphOperations.at(graphDb).getAllNodes());
 			
-			long deletedNodes = bulkGraphOperation(securityContext, result.getResults(), 1000, "ClearDatabase", new BulkGraphOperation<AbstractNode>() {
+			// DeleteNodeCommand is not thread-safe, so nodes are deleted on a single thread
+			long deletedNodes = bulkGraphOperation(securityContext, result.getResults(), 1000, "ClearDatabase", 1, new BulkGraphOperation<AbstractNode>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -21,14 +21,13 @@
 
 package org.structr.core.graph;
 
-import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.cypher.CypherExecutionEngine;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 
@@ -38,8 +37,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
-import org.structr.common.SecurityContext;
-import org.structr.core.Services;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -53,8 +50,6 @@ public class CypherQueryCommand extends NodeServiceCommand {
 
 	private static final Logger logger = Logger.getLogger(CypherQueryCommand.class.getName());
 	
-	protected static final ThreadLocalExecutionEngine engine = new ThreadLocalExecutionEngine();
-	
 	//~--- methods --------------------------------------------------------
 
 	public List<GraphObject> execute(String query) throws FrameworkException {
@@ -72,7 +67,7 @@ public class CypherQueryCommand extends NodeServiceCommand {
 	public List<GraphObject> execute(String query, Map<String, Object> parameters, boolean includeHiddenAndDeleted, boolean publicOnly) throws FrameworkException {
 
 		RelationshipFactory relFactory  = (RelationshipFactory) arguments.get("relationshipFactory");
-		//GraphDatabaseService graphDb    = (GraphDatabaseService) arguments.get("graphDb");
+		CypherExecutionEngine engine    = (CypherExecutionEngine) arguments.get("cypherEngine");
 		NodeFactory nodeFactory         = new NodeFactory(securityContext);
 
 		List<GraphObject> resultList = new LinkedList<GraphObject>();
@@ -80,11 +75,11 @@ public class CypherQueryCommand extends NodeServiceCommand {
 
 		if (parameters != null) {
 
-			result = engine.get().execute(query, parameters);
+			result = engine.execute(query, parameters);
 			
 		} else {
 
-			result = engine.get().execute(query);
+			result = engine.execute(query);
 		}
 
 		for (Map<String, Object> row : result) {
@@ -117,23 +112,5 @@ public class CypherQueryCommand extends NodeServiceCommand {
 
 		return resultList;
 	}
-	
-	/**
-	 * A thread local version of the neo4j cypher execution engine.
-	 */
-	protected static class ThreadLocalExecutionEngine extends ThreadLocal<ExecutionEngine> {
-		
-		@Override
-		protected ExecutionEngine initialValue() {
-			
-			try {
-		
-				return new ExecutionEngine((GraphDatabaseService)Services.command(SecurityContext.getSuperUserInstance(), GraphDatabaseCommand.class).execute());
-				
-			} catch (Throwable t) {}
-			
-			return null;
-		}
-	}	
 
 }
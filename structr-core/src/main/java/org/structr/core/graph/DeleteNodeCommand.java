@@ -21,6 +21,9 @@
 
 package org.structr.core.graph;
 
+import org.neo4j.graphdb.NotFoundException;
+
+import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
@@ -29,19 +32,32 @@ import org.structr.core.entity.Relation;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.structr.common.error.ErrorBuffer;
 
 //~--- classes ----------------------------------------------------------------
 
 /**
  * Deletes a node.
  *
+ * With cascade, the nodes to delete are collected with a work queue: end
+ * nodes of relationships marked with DELETE_OUTGOING and start nodes of
+ * relationships marked with DELETE_INCOMING are deleted along with the
+ * node, and nodes connected by relationships marked with
+ * DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED are deleted afterwards if they
+ * are no longer valid. The collected nodes and their relationships are
+ * deleted in batches, with one index removal per batch.
+ *
+ * All state is local to an invocation, so that concurrent and nested
+ * deletions don't interfere.
+ *
  * @param node the node, a Long nodeId or a String nodeId
  * @return null
  *
@@ -49,8 +65,8 @@ import org.structr.common.error.ErrorBuffer;
  */
 public class DeleteNodeCommand extends NodeServiceCommand {
 
-	private static final Logger logger            = Logger.getLogger(DeleteNodeCommand.class.getName());
-	private static Set<AbstractNode> deletedNodes = new LinkedHashSet<AbstractNode>();
+	private static final Logger logger  = Logger.getLogger(DeleteNodeCommand.class.getName());
+	private static final int BATCH_SIZE = 1000;
 
 	//~--- methods --------------------------------------------------------
 
@@ -58,29 +74,16 @@ public class DeleteNodeCommand extends NodeServiceCommand {
 		execute(node, false);
 	}
 
-	public void execute(AbstractNode node, boolean cascade) throws FrameworkException {
-
-		doDeleteNode(node, cascade);
-		deletedNodes.clear();
-
-	}
-
-	private AbstractNode doDeleteNode(final AbstractNode node, final Boolean cascade) throws FrameworkException {
-
-		deletedNodes.add(node);
+	public void execute(final AbstractNode node, final boolean cascade) throws FrameworkException {
 
 		if (node.getProperty(AbstractNode.uuid) == null) {
 
 			logger.log(Level.WARNING, "Will not delete node which has no UUID");
 
-			return null;
+			return;
 
 		}
 
-		// final Node node                  = graphDb.getNodeById(structrNode.getId());
-		final RemoveNodeFromIndex removeNodeFromIndex = Services.command(securityContext, RemoveNodeFromIndex.class);
-		final DeleteRelationshipCommand deleteRel     = Services.command(securityContext, DeleteRelationshipCommand.class);
-
 		Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction() {
 
 			@Override
@@ -88,107 +91,197 @@ public class DeleteNodeCommand extends NodeServiceCommand {
 
 				try {
 
-					List<AbstractNode> nodesToCheckAfterDeletion = new LinkedList<AbstractNode>();
+					doDeleteNodes(node, cascade);
 
-					if (cascade) {
+				} catch (Throwable t) {
 
-						// Delete all end nodes of outgoing relationships which are connected
-						// by relationships which are marked with DELETE_OUTGOING
-						List<AbstractRelationship> outgoingRels = node.getOutgoingRelationships();
+					logger.log(Level.WARNING, "Exception while deleting node: {0}", t);
 
-						for (AbstractRelationship rel : outgoingRels) {
+				}
+
+				return null;
 
-							int cascadeDelete    = rel.cascadeDelete();
-							AbstractNode endNode = rel.getEndNode();
+			}
 
-							if ((cascadeDelete & Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) == Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) {
+		});
 
-								nodesToCheckAfterDeletion.add(endNode);
-							}
+	}
 
-							if (!deletedNodes.contains(endNode) && ((cascadeDelete & Relation.DELETE_OUTGOING) == Relation.DELETE_OUTGOING)) {
+	// ----- private methods -----
+	private void doDeleteNodes(final AbstractNode node, final boolean cascade) throws FrameworkException {
 
-								// remove end node from index
-								removeNodeFromIndex.execute(endNode);
-								doDeleteNode(endNode, cascade);
-							}
+		final Set<Long> visited                    = new HashSet<Long>();
+		final LinkedList<AbstractNode> queue       = new LinkedList<AbstractNode>();
+		final List<AbstractNode> nodesToDelete     = new ArrayList<AbstractNode>();
+		final Map<Long, AbstractNode> nodesToCheck = new LinkedHashMap<Long, AbstractNode>();
 
-						}
+		visited.add(node.getId());
+		queue.add(node);
 
-						// Delete all start nodes of incoming relationships which are connected
-						// by relationships which are marked with DELETE_INCOMING
-						List<AbstractRelationship> incomingRels = node.getIncomingRelationships();
+		while (!queue.isEmpty()) {
 
-						for (AbstractRelationship rel : incomingRels) {
+			// collect the delete set
+			while (!queue.isEmpty()) {
 
-							int cascadeDelete      = rel.cascadeDelete();
-							AbstractNode startNode = rel.getStartNode();
+				AbstractNode current = queue.removeFirst();
 
-							if ((cascadeDelete & Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) == Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) {
+				if (current.getProperty(AbstractNode.uuid) == null) {
 
-								nodesToCheckAfterDeletion.add(startNode);
-							}
+					logger.log(Level.WARNING, "Will not delete node which has no UUID");
 
-							if (!deletedNodes.contains(startNode) && ((cascadeDelete & Relation.DELETE_INCOMING) == Relation.DELETE_INCOMING)) {
+					continue;
 
-								// remove start node from index
-								removeNodeFromIndex.execute(startNode);
-								doDeleteNode(startNode, cascade);
-							}
+				}
 
-						}
-					}
+				nodesToDelete.add(current);
 
-					// deletion callback, must not prevent node deletion!
-					node.onNodeDeletion();
+				if (cascade) {
 
-					// Delete any relationship
-					List<AbstractRelationship> rels = node.getRelationships();
+					// Delete all end nodes of outgoing relationships which are connected
+					// by relationships which are marked with DELETE_OUTGOING
+					for (AbstractRelationship rel : current.getOutgoingRelationships()) {
 
-					for (AbstractRelationship r : rels) {
+						collect(rel.getEndNode(), rel.cascadeDelete(), Relation.DELETE_OUTGOING, visited, queue, nodesToCheck);
+					}
+
+					// Delete all start nodes of incoming relationships which are connected
+					// by relationships which are marked with DELETE_INCOMING
+					for (AbstractRelationship rel : current.getIncomingRelationships()) {
 
-						deleteRel.execute(r);
+						collect(rel.getStartNode(), rel.cascadeDelete(), Relation.DELETE_INCOMING, visited, queue, nodesToCheck);
 					}
+				}
+			}
+
+			for (int i = 0; i < nodesToDelete.size(); i += BATCH_SIZE) {
 
-					// remove node from index
-					removeNodeFromIndex.execute(node);
+				deleteBatch(nodesToDelete.subList(i, Math.min(nodesToDelete.size(), i + BATCH_SIZE)));
+			}
 
-					// delete node in database
-					node.getNode().delete();
+			nodesToDelete.clear();
 
-					// now check again the deletion cascade for violated constraints
-					if (cascade) {
+			// now check the remaining nodes for violated constraints,
+			// invalid nodes start the next round of the cascade
+			for (AbstractNode nodeToCheck : nodesToCheck.values()) {
 
-						// Check all end nodes of outgoing relationships which are connected if they are
-						// still valid after node deletion
-						for (AbstractNode nodeToCheck : nodesToCheckAfterDeletion) {
+				if (!visited.contains(nodeToCheck.getId())) {
 
-							ErrorBuffer errorBuffer = new ErrorBuffer();
-							
-							if (!nodeToCheck.isValid(errorBuffer)) {
+					ErrorBuffer errorBuffer = new ErrorBuffer();
 
-								// remove end node from index
-								removeNodeFromIndex.execute(nodeToCheck);
-								doDeleteNode(nodeToCheck, cascade);
-							}
+					if (!nodeToCheck.isValid(errorBuffer)) {
 
-						}
+						visited.add(nodeToCheck.getId());
+						queue.add(nodeToCheck);
 					}
+				}
+			}
 
-				} catch (Throwable t) {
+			nodesToCheck.clear();
+		}
+	}
 
-					logger.log(Level.WARNING, "Exception while deleting node: {0}", t);
+	private void collect(final AbstractNode node, final int cascadeDelete, final int flag, final Set<Long> visited, final List<AbstractNode> queue, final Map<Long, AbstractNode> nodesToCheck) {
+
+		if (node == null) {
+
+			return;
+
+		}
 
+		if ((cascadeDelete & Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) == Relation.DELETE_IF_CONSTRAINT_WOULD_BE_VIOLATED) {
+
+			nodesToCheck.put(node.getId(), node);
+		}
+
+		if (((cascadeDelete & flag) == flag) && visited.add(node.getId())) {
+
+			queue.add(node);
+		}
+	}
+
+	private void deleteBatch(final List<AbstractNode> nodes) throws FrameworkException {
+
+		final RemoveNodeFromIndex removeNodeFromIndex                = Services.command(securityContext, RemoveNodeFromIndex.class);
+		final RemoveRelationshipFromIndex removeRelationshipFromIndex = Services.command(securityContext, RemoveRelationshipFromIndex.class);
+		final Map<Long, AbstractRelationship> rels                   = new LinkedHashMap<Long, AbstractRelationship>();
+		final List<AbstractNode> existingNodes                       = new ArrayList<AbstractNode>(nodes.size());
+
+		// deletion callbacks, must not prevent node deletion!
+		for (AbstractNode node : nodes) {
+
+			node.onNodeDeletion();
+		}
+
+		for (AbstractNode node : nodes) {
+
+			try {
+
+				// relationships between two deleted nodes are deleted once
+				for (AbstractRelationship rel : node.getRelationships()) {
+
+					if (rel.getProperty(AbstractRelationship.uuid) == null) {
+
+						logger.log(Level.WARNING, "Will not delete relationship which has no UUID: {0} --[:{1}]-->{2}", new Object[] { rel.getStartNode(), rel.getType(), rel.getEndNode() });
+
+						continue;
+
+					}
+
+					rels.put(rel.getId(), rel);
 				}
 
-				return null;
+				existingNodes.add(node);
+
+			} catch (NotFoundException nfex) {
+
+				// node was deleted by a deletion callback
+				logger.log(Level.FINE, "Node {0} was already deleted", node.getId());
+
+			} catch (IllegalStateException isex) {
+
+				logger.log(Level.FINE, "Node {0} was already deleted", node.getId());
 
 			}
+		}
 
-		});
+		removeRelationshipFromIndex.execute(new ArrayList<AbstractRelationship>(rels.values()));
+
+		for (AbstractRelationship rel : rels.values()) {
+
+			try {
+
+				rel.getRelationship().delete();
+
+			} catch (NotFoundException nfex) {
+
+				logger.log(Level.FINE, "Relationship {0} was already deleted", rel.getId());
+
+			} catch (IllegalStateException isex) {
+
+				logger.log(Level.FINE, "Relationship {0} was already deleted", rel.getId());
+
+			}
+		}
+
+		removeNodeFromIndex.execute(existingNodes);
+
+		for (AbstractNode node : existingNodes) {
+
+			try {
+
+				// delete node in database
+				node.getNode().delete();
 
-		return null;
+			} catch (NotFoundException nfex) {
 
+				logger.log(Level.FINE, "Node {0} was already deleted", node.getId());
+
+			} catch (IllegalStateException isex) {
+
+				logger.log(Level.FINE, "Node {0} was already deleted", node.getId());
+
+			}
+		}
 	}
 
 }
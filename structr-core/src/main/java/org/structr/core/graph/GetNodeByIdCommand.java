@@ -18,22 +18,39 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.GraphObject;
-import org.structr.core.Result;
-import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.graph.search.Search;
-import org.structr.core.graph.search.SearchAttribute;
-import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.graph.NodeService.NodeIndex;
 
 /**
- * Fetches a node by its UUID. This is just a convenience wrapper around the
- * {@link SearchNodeCommand}.
+ * Fetches nodes by their UUIDs.
+ *
+ * Node ids are taken from the process-wide {@link UuidCache} if possible,
+ * otherwise the UUIDs are resolved with exact lookups in the UUID index.
+ * Nodes are returned if they are readable in the security context of this
+ * command, including deleted and hidden nodes, like a UUID search with the
+ * {@link org.structr.core.graph.search.SearchNodeCommand} would do.
  * 
  * @author Christian Morgner
  */
@@ -43,32 +60,232 @@ public class GetNodeByIdCommand extends NodeServiceCommand {
 	
 	public AbstractNode execute(String uuid) throws FrameworkException {
 
-		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
-		attrs.add(Search.andExactUuid(uuid));
+		if (uuid == null || uuid.isEmpty()) {
+			return null;
+		}
 
-		Result results = Services.command(securityContext, SearchNodeCommand.class).execute(attrs);
-		int size       = results.size();
+		NodeFactory<AbstractNode> nodeFactory = new NodeFactory<AbstractNode>(securityContext, true, false);
+		UuidCache uuidCache                   = NodeService.getUuidCache();
 
-		if (size == 0) {
-			return null;
+		// the UUID cache reflects committed state only
+		boolean cacheable = !TransactionCommand.isInTransaction();
+
+		if (cacheable) {
+
+			Node node = getCachedNode(uuid);
+			if (node != null) {
+
+				return nodeFactory.createNode(node);
+			}
+		}
+
+		long generation      = uuidCache.getGeneration();
+		Index<Node> index    = (Index<Node>) arguments.get(NodeIndex.uuid.name());
+		IndexHits<Node> hits = index.get(AbstractNode.uuid.dbName(), uuid);
+		AbstractNode result  = null;
+
+		try {
+
+			int size = hits.size();
+
+			if (size > 1) {
+
+				logger.log(Level.WARNING, "Got more than one result for UUID {0}, this is very likely to be a UUID collision!", uuid);
+			}
+
+			// first readable node wins
+			for (Node node : hits) {
+
+				// colliding UUIDs are not cached
+				if (cacheable && size == 1) {
+
+					uuidCache.put(uuid, node.getId(), generation);
+				}
+
+				result = nodeFactory.createNode(node);
+				if (result != null) {
+
+					break;
+				}
+			}
+
+		} finally {
+
+			hits.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fetches the nodes with the given UUIDs. UUIDs that are not in the
+	 * {@link UuidCache} are resolved with a single query, so the cost of
+	 * resolving a selection of nodes does not grow with one index search
+	 * per node.
+	 *
+	 * @param uuids the UUIDs
+	 * @return the readable nodes, keyed by UUID, in the order of the given
+	 * UUIDs. UUIDs that were not found or whose node is not readable are
+	 * left out.
+	 *
+	 * @throws FrameworkException
+	 */
+	public Map<String, AbstractNode> execute(final Collection<String> uuids) throws FrameworkException {
+
+		NodeFactory<AbstractNode> nodeFactory = new NodeFactory<AbstractNode>(securityContext, true, false);
+		Map<String, AbstractNode> result      = new LinkedHashMap<String, AbstractNode>();
+		Map<String, List<Node>> candidates    = new HashMap<String, List<Node>>();
+		Set<String> missing                   = new TreeSet<String>();
+		boolean cacheable                     = !TransactionCommand.isInTransaction();
+
+		for (String uuid : uuids) {
+
+			if (uuid == null || uuid.isEmpty() || candidates.containsKey(uuid) || missing.contains(uuid)) {
+				continue;
+			}
+
+			Node node = cacheable ? getCachedNode(uuid) : null;
+			if (node != null) {
+
+				List<Node> nodes = new LinkedList<Node>();
+
+				nodes.add(node);
+				candidates.put(uuid, nodes);
+
+			} else {
+
+				missing.add(uuid);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			lookup(missing, candidates, cacheable);
+		}
+
+		for (String uuid : uuids) {
+
+			List<Node> nodes = candidates.get(uuid);
+			if (nodes != null && !result.containsKey(uuid)) {
+
+				// first readable node wins
+				for (Node node : nodes) {
+
+					AbstractNode entity = nodeFactory.createNode(node);
+					if (entity != null) {
+
+						result.put(uuid, entity);
+						break;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Resolves the given (sorted) UUIDs with one OR'ed term query per
+	 * {@link BooleanQuery#getMaxClauseCount()} UUIDs, and maps the hits
+	 * back to their UUIDs.
+	 */
+	private void lookup(final Set<String> uuids, final Map<String, List<Node>> candidates, final boolean cacheable) {
+
+		UuidCache uuidCache   = NodeService.getUuidCache();
+		Index<Node> index     = (Index<Node>) arguments.get(NodeIndex.uuid.name());
+		String uuidKey        = AbstractNode.uuid.dbName();
+		long generation       = uuidCache.getGeneration();
+		Iterator<String> it   = uuids.iterator();
+		int maxClauses        = BooleanQuery.getMaxClauseCount();
+		List<String> found    = new ArrayList<String>();
+
+		while (it.hasNext()) {
+
+			BooleanQuery query = new BooleanQuery();
+
+			for (int i = 0; i < maxClauses && it.hasNext(); i++) {
+
+				query.add(new TermQuery(new Term(uuidKey, it.next())), Occur.SHOULD);
+			}
+
+			IndexHits<Node> hits = index.query(query);
+
+			try {
+
+				for (Node node : hits) {
+
+					Object uuid = node.getProperty(uuidKey, null);
+
+					if (uuid instanceof String && uuids.contains(uuid)) {
+
+						List<Node> nodes = candidates.get(uuid);
+						if (nodes == null) {
+
+							nodes = new LinkedList<Node>();
+							candidates.put((String) uuid, nodes);
+							found.add((String) uuid);
+
+						} else {
+
+							logger.log(Level.WARNING, "Got more than one result for UUID {0}, this is very likely to be a UUID collision!", uuid);
+						}
+
+						nodes.add(node);
+					}
+				}
+
+			} finally {
+
+				hits.close();
+			}
 		}
 
-		if (size > 1) {
-		
-			logger.log(Level.WARNING, "Got more than one result for UUID {0}, this is very likely to be a UUID collision!", uuid);
+		if (cacheable) {
+
+			for (String uuid : found) {
+
+				List<Node> nodes = candidates.get(uuid);
+
+				// colliding UUIDs are not cached
+				if (nodes.size() == 1) {
+
+					uuidCache.put(uuid, nodes.get(0).getId(), generation);
+				}
+			}
 		}
+	}
+
+	/**
+	 * Returns the node for the given UUID from the {@link UuidCache}, or
+	 * null if the UUID is not cached. Node ids are re-used, so the UUID of
+	 * the cached node is verified.
+	 */
+	private Node getCachedNode(final String uuid) {
+
+		UuidCache uuidCache = NodeService.getUuidCache();
+		Long nodeId         = uuidCache.get(uuid);
 
-		// finally return node
-		GraphObject result = results.get(0);
-		if (result instanceof AbstractNode) {
-				
-			return (AbstractNode)result;
-				
-		} else {
-		
-			logger.log(Level.WARNING, "Node with UUID {0} is not of type AbstractNode!", uuid);
+		if (nodeId != null) {
+
+			GraphDatabaseService graphDb = (GraphDatabaseService) arguments.get("graphDb");
+
+			try {
+
+				Node node = graphDb.getNodeById(nodeId);
+
+				if (uuid.equals(node.getProperty(AbstractNode.uuid.dbName(), null))) {
+
+					return node;
+				}
+
+			} catch (NotFoundException nfex) {
+
+				// node was deleted
+			}
+
+			uuidCache.invalidate(uuid);
 		}
-		
+
 		return null;
 	}
 }
@@ -18,7 +18,11 @@
  */
 package org.structr.core.graph;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -31,11 +35,13 @@ import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.index.lucene.ValueContext;
 import org.structr.core.EntityContext;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Location;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.Principal;
 import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.module.ModuleService;
 import org.structr.core.property.PropertyKey;
 
 /**
@@ -47,8 +53,9 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 
 	private static final Logger logger = Logger.getLogger(NewIndexNodeCommand.class.getName());
 	
-	private Map<String, Index> indices = new HashMap<String, Index>();
-	private boolean initialized        = false;
+	private Map<String, Index> indices  = new HashMap<String, Index>();
+	private ModuleService moduleService = null;
+	private boolean initialized         = false;
 	
 	public void updateNode(AbstractNode node) {
 		
@@ -58,96 +65,70 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		addNode(node);
 		
 	}
-	
-	public void addNode(AbstractNode node) {
-		
-		init();
-		
-		try {
-
-			String uuid = node.getProperty(AbstractNode.uuid);
-			Node dbNode = node.getNode();
-			long id     = node.getId();
-
 
-			// Don't touch non-structr node
-			if (uuid == null) {
+	/**
+	 * Re-indexes the given nodes. The index entries of all nodes are
+	 * collected first and then written with one lock acquisition per
+	 * index, instead of one per entry. Unlike {@link #updateNode}, errors
+	 * while writing to the index are not caught, so that the transaction
+	 * of the caller fails.
+	 * 
+	 * @param nodes the nodes to re-index
+	 */
+	public void updateNodes(final Collection<AbstractNode> nodes) {
 
-				return;
+		init();
 
-			}
+		Map<String, List<Node>> removals        = new LinkedHashMap<String, List<Node>>();
+		Map<String, List<IndexEntry>> additions = new LinkedHashMap<String, List<IndexEntry>>();
 
-			Map<String, Set<PropertyKey>> searchablePropertyIndexMap = EntityContext.getSearchablePropertyMapForType(node.getClass());
-			for (Entry<String, Set<PropertyKey>> entry : searchablePropertyIndexMap.entrySet()) {
-				
-				Set<PropertyKey> searchableProperties = entry.getValue();
-				String indexName = entry.getKey();
-				
-				for (PropertyKey key : searchableProperties) {
-					
-					boolean emptyKey = StringUtils.isEmpty(key.dbName());
+		for (AbstractNode node : nodes) {
 
-					if (emptyKey) {
+			for (String indexName : EntityContext.getSearchablePropertyMapForType(node.getClass()).keySet()) {
 
-						logger.log(Level.SEVERE, "Node {0} has empty, not-null key, removing property", new Object[] { id });
-						dbNode.removeProperty(key.dbName());
+				List<Node> nodesToRemove = removals.get(indexName);
+				if (nodesToRemove == null) {
 
-						return;
-					}
+					nodesToRemove = new LinkedList<Node>();
+					removals.put(indexName, nodesToRemove);
+				}
 
-					Object valueForIndexing = node.getPropertyForIndexing(key);
-					Object value            = node.getProperty(key);
+				nodesToRemove.add(node.getNode());
+			}
 
-					if ((value == null && key.databaseConverter(securityContext, null) == null) || (value != null && value instanceof String && StringUtils.isEmpty((String) value))) {
-						valueForIndexing = SearchNodeCommand.IMPROBABLE_SEARCH_VALUE;
-					}
+			collectIndexEntries(node, additions);
+		}
 
-					if (valueForIndexing != null) {
+		for (Entry<String, List<Node>> entry : removals.entrySet()) {
 
-						addNodePropertyToIndex(dbNode, key, valueForIndexing, indexName);
-						
-						if ((node instanceof Principal) && (key.equals(AbstractNode.name) || key.equals(Person.email))) {
-							addNodePropertyToIndex(dbNode, key, valueForIndexing, NodeService.NodeIndex.user.name());
-						}
+			Index<Node> index = indices.get(entry.getKey());
+			synchronized(index) {
 
-						if (key.equals(AbstractNode.uuid)) {
-							addNodePropertyToIndex(dbNode, key, valueForIndexing, NodeService.NodeIndex.uuid.name());
-						}
-					}
+				for (Node node : entry.getValue()) {
+					index.remove(node);
 				}
 			}
-			
-			if ((dbNode.hasProperty(Location.latitude.dbName())) && (dbNode.hasProperty(Location.longitude.dbName()))) {
-				
-				// Before indexing, check properties for correct type
-				Object lat = dbNode.getProperty(Location.latitude.dbName());
-				Object lon = dbNode.getProperty(Location.longitude.dbName());
-				
-				if (lat instanceof Double && lon instanceof Double && !((Double) lat).isNaN() && !((Double) lon).isNaN()) {
-
-					LayerNodeIndex layerIndex = (LayerNodeIndex) indices.get(NodeService.NodeIndex.layer.name());
-
-					try {
-
-						synchronized (layerIndex) {
-
-							layerIndex.add(dbNode, "", "");
-						}
+		}
 
-						// If an exception is thrown here, the index was deleted
-						// and has to be recreated.
-					} catch (NotFoundException nfe) {
+		writeIndexEntries(additions);
 
-						logger.log(Level.SEVERE, "Could not add node to layer index because the db could not find the node", nfe);
+		for (AbstractNode node : nodes) {
+			addToLayerIndex(node.getNode());
+		}
+	}
+	
+	public void addNode(AbstractNode node) {
+		
+		init();
+		
+		try {
 
-					} catch (Throwable t) {
+			Map<String, List<IndexEntry>> entries = new LinkedHashMap<String, List<IndexEntry>>();
 
-						logger.log(Level.SEVERE, "Could not add node to layer index", t);
-					}
-				
-				}
+			collectIndexEntries(node, entries);
+			writeIndexEntries(entries);
 
-			}
+			addToLayerIndex(node.getNode());
 			
 		} catch(Throwable t) {
 			
@@ -179,6 +160,8 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 
 		if (!initialized) {
 
+			moduleService = Services.getService(ModuleService.class);
+
 			for (Enum indexName : (NodeService.NodeIndex[]) arguments.get("indices")) {
 				indices.put(indexName.name(), (Index<Node>) arguments.get(indexName.name()));
 
@@ -188,23 +171,159 @@ public class NewIndexNodeCommand extends NodeServiceCommand {
 		}
 	}
 	
-	private void addNodePropertyToIndex(final Node node, final PropertyKey key, final Object value, final String indexName) {
+	/**
+	 * Collects the index entries of the given node, grouped by index name.
+	 */
+	private void collectIndexEntries(final AbstractNode node, final Map<String, List<IndexEntry>> entries) {
+
+		String uuid = node.getProperty(AbstractNode.uuid);
+		Node dbNode = node.getNode();
+		long id     = node.getId();
+
+		// Don't touch non-structr node
+		if (uuid == null) {
+
+			return;
+
+		}
+
+		Map<String, Set<PropertyKey>> searchablePropertyIndexMap = EntityContext.getSearchablePropertyMapForType(node.getClass());
+		for (Entry<String, Set<PropertyKey>> entry : searchablePropertyIndexMap.entrySet()) {
+
+			Set<PropertyKey> searchableProperties = entry.getValue();
+			String indexName = entry.getKey();
+
+			for (PropertyKey key : searchableProperties) {
+
+				boolean emptyKey = StringUtils.isEmpty(key.dbName());
+
+				if (emptyKey) {
+
+					logger.log(Level.SEVERE, "Node {0} has empty, not-null key, removing property", new Object[] { id });
+					dbNode.removeProperty(key.dbName());
+
+					return;
+				}
+
+				Object valueForIndexing = node.getPropertyForIndexing(key);
+				Object value            = node.getProperty(key);
+
+				if ((value == null && key.databaseConverter(securityContext, null) == null) || (value != null && value instanceof String && StringUtils.isEmpty((String) value))) {
+					valueForIndexing = SearchNodeCommand.IMPROBABLE_SEARCH_VALUE;
+				}
+
+				if (valueForIndexing != null) {
+
+					addIndexEntry(entries, dbNode, key, valueForIndexing, indexName);
+
+					if ((node instanceof Principal) && (key.equals(AbstractNode.name) || key.equals(Person.email))) {
+						addIndexEntry(entries, dbNode, key, valueForIndexing, NodeService.NodeIndex.user.name());
+					}
+
+					if (key.equals(AbstractNode.uuid)) {
+						addIndexEntry(entries, dbNode, key, valueForIndexing, NodeService.NodeIndex.uuid.name());
+					}
+
+					// index type ancestry wherever the type is indexed, based on the
+					// stored type because the node may be a GenericNode instance
+					if (key.equals(AbstractNode.type) && value != null) {
+
+						for (String ancestor : moduleService.getTypeAncestry(value.toString())) {
+
+							addIndexEntry(entries, dbNode, SearchNodeCommand.typeAncestry, ancestor, indexName);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void addIndexEntry(final Map<String, List<IndexEntry>> entries, final Node node, final PropertyKey key, final Object value, final String indexName) {
 		
 		if (value == null) {
 			return;
 		}
-		Index<Node> index = indices.get(indexName);
-		synchronized(index) {
 
-			if (value instanceof Number) {
-				
-				index.add(node, key.dbName(), ValueContext.numeric((Number) value));
-				
-			} else {
-				
-				index.add(node, key.dbName(), value);
-				
+		List<IndexEntry> indexEntries = entries.get(indexName);
+		if (indexEntries == null) {
+
+			indexEntries = new LinkedList<IndexEntry>();
+			entries.put(indexName, indexEntries);
+		}
+
+		indexEntries.add(new IndexEntry(node, key, value));
+	}
+
+	private void writeIndexEntries(final Map<String, List<IndexEntry>> entries) {
+
+		for (Entry<String, List<IndexEntry>> entry : entries.entrySet()) {
+
+			Index<Node> index = indices.get(entry.getKey());
+			synchronized(index) {
+
+				for (IndexEntry indexEntry : entry.getValue()) {
+
+					if (indexEntry.value instanceof Number) {
+
+						index.add(indexEntry.node, indexEntry.key.dbName(), ValueContext.numeric((Number) indexEntry.value));
+
+					} else {
+
+						index.add(indexEntry.node, indexEntry.key.dbName(), indexEntry.value);
+
+					}
+				}
+			}
+		}
+	}
+
+	private void addToLayerIndex(final Node dbNode) {
+
+		if ((dbNode.hasProperty(Location.latitude.dbName())) && (dbNode.hasProperty(Location.longitude.dbName()))) {
+
+			// Before indexing, check properties for correct type
+			Object lat = dbNode.getProperty(Location.latitude.dbName());
+			Object lon = dbNode.getProperty(Location.longitude.dbName());
+
+			if (lat instanceof Double && lon instanceof Double && !((Double) lat).isNaN() && !((Double) lon).isNaN()) {
+
+				LayerNodeIndex layerIndex = (LayerNodeIndex) indices.get(NodeService.NodeIndex.layer.name());
+
+				try {
+
+					synchronized (layerIndex) {
+
+						layerIndex.add(dbNode, "", "");
+					}
+
+					// If an exception is thrown here, the index was deleted
+					// and has to be recreated.
+				} catch (NotFoundException nfe) {
+
+					logger.log(Level.SEVERE, "Could not add node to layer index because the db could not find the node", nfe);
+
+				} catch (Throwable t) {
+
+					logger.log(Level.SEVERE, "Could not add node to layer index", t);
+				}
+
 			}
+
+		}
+	}
+
+	// ----- nested classes -----
+	private static class IndexEntry {
+
+		private PropertyKey key = null;
+		private Object value    = null;
+		private Node node       = null;
+
+		public IndexEntry(final Node node, final PropertyKey key, final Object value) {
+
+			this.value = value;
+			this.node  = node;
+			this.key   = key;
 		}
 	}
 }
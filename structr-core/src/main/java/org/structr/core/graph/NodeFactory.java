@@ -43,10 +43,15 @@ import java.lang.reflect.Constructor;
 
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
 import org.structr.core.module.ModuleService;
+import org.structr.core.property.AbstractPrimitiveProperty;
+import org.structr.core.property.PropertyKey;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -64,7 +69,7 @@ public class NodeFactory<T extends AbstractNode> {
 
 	//~--- fields ---------------------------------------------------------
 
-	private Map<Class, Constructor<T>> constructors = new LinkedHashMap<Class, Constructor<T>>();
+	private static final Map<Class, Constructor> constructors = new ConcurrentHashMap<Class, Constructor>();
 
 	// encapsulates all criteria for node creation
 	private FactoryProfile factoryProfile;
@@ -126,17 +131,7 @@ public class NodeFactory<T extends AbstractNode> {
 
 				try {
 
-					Constructor<T> constructor = constructors.get(nodeClass);
-					if (constructor == null) {
-
-						constructor = nodeClass.getConstructor();
-
-						constructors.put(nodeClass, constructor);
-
-					}
-
-					// newNode = (AbstractNode) nodeClass.newInstance();
-					newNode = constructor.newInstance();
+					newNode = getConstructor(nodeClass).newInstance();
 
 				} catch (Throwable t) {
 
@@ -226,35 +221,131 @@ public class NodeFactory<T extends AbstractNode> {
 	}
 
 	/**
-	 * Create structr nodes from all given underlying database nodes
-	 * No paging, but security check
+	 * Creates a projection of the given database nodes onto the given
+	 * property keys, with the same paging and access rules as
+	 * {@link #createNodes(IndexHits)}.
 	 *
-	 * @param securityContext
-	 * @param input
-	 * @return
+	 * If all keys are primitive properties without database converter,
+	 * the values are read from the database nodes directly, and a structr
+	 * node is only instantiated when the access check needs it (see
+	 * {@link SecurityContext#isReadable(Node, boolean, boolean)}). Other
+	 * keys, offset ids, negative pages and spatial results are projected
+	 * from the result of {@link #createNodes(IndexHits)}.
+	 *
+	 * @param input the database nodes
+	 * @param keys the property keys
+	 * @return a result of {@link GraphObjectMap}s
+	 * @throws FrameworkException
 	 */
-	public Result createAllNodes(final Iterable<Node> input) throws FrameworkException {
+	public Result createProjection(final IndexHits<Node> input, final Set<PropertyKey> keys) throws FrameworkException {
 
-		List<AbstractNode> nodes = new LinkedList<AbstractNode>();
+		if (input == null) {
 
-		if ((input != null) && input.iterator().hasNext()) {
+			return Result.EMPTY_RESULT;
+		}
 
-			for (Node node : input) {
+		if (input instanceof SpatialRecordHits || factoryProfile.getOffsetId() != null || factoryProfile.getPage() < 0 || !isRawProjection(keys)) {
+
+			return project(createNodes(input), keys);
+		}
+
+		final SecurityContext securityContext = factoryProfile.getSecurityContext();
+		final boolean includeDeletedAndHidden = factoryProfile.includeDeletedAndHidden();
+		final boolean publicOnly              = factoryProfile.publicOnly();
+		final int pageSize                    = factoryProfile.getPageSize();
+		final int page                        = factoryProfile.getPage();
+		final int offset                      = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
+		final List<GraphObject> objects       = new LinkedList<GraphObject>();
+		int position                          = 0;
+		int rawCount                          = 0;
+		int count                             = 0;
+
+		for (Node node : input) {
+
+			Boolean readable  = securityContext.isReadable(node, includeDeletedAndHidden, publicOnly);
+			GraphObject obj   = null;
+
+			rawCount++;
+
+			if (readable == null) {
+
+				AbstractNode entity = createNode(node);
+				if (entity != null) {
+
+					obj = project(entity, keys);
+				}
+
+			} else if (readable) {
+
+				GraphObjectMap map = new GraphObjectMap();
 
-				AbstractNode n = createNode(node);
+				for (PropertyKey key : keys) {
 
-				if (n != null) {
+					Object value = node.getProperty(key.dbName(), null);
 
-					nodes.add(n);
+					map.put(key, value != null ? value : key.defaultValue());
 				}
 
+				obj = map;
 			}
 
+			if (obj != null && ++position > offset) {
+
+				// stop if we got enough nodes
+				if (++count > pageSize) {
+
+					// The overall count may be inaccurate
+					return new Result(objects, input.size(), true, false);
+				}
+
+				objects.add(obj);
+			}
 		}
 
-		return new Result(nodes, nodes.size(), true, false);
+		// We've run completely through the iterator,
+		// so the overall count from here is accurate.
+		return new Result(objects, rawCount, true, false);
 
 	}
+
+	/**
+	 * Projects the given result onto the given property keys. Counts and
+	 * page cursor of the result are kept.
+	 *
+	 * @param result the result
+	 * @param keys the property keys
+	 * @return a result of {@link GraphObjectMap}s
+	 */
+	public static Result project(final Result result, final Set<PropertyKey> keys) {
+
+		List<GraphObject> objects = new LinkedList<GraphObject>();
+
+		for (GraphObject obj : (List<GraphObject>) result.getResults()) {
+
+			objects.add(project(obj, keys));
+		}
+
+		Result projection = new Result(objects, result.getRawResultCount(), result.isCollection(), result.isPrimitiveArray());
+
+		projection.setNextPageCursor(result.getNextPageCursor());
+
+		return projection;
+
+	}
+
+	public static GraphObject project(final GraphObject obj, final Set<PropertyKey> keys) {
+
+		GraphObjectMap map = new GraphObjectMap();
+
+		for (PropertyKey key : keys) {
+
+			map.put(key, obj.getProperty(key));
+		}
+
+		return map;
+
+	}
+
 	/**
 	 * Create structr nodes from all given underlying database nodes
 	 * No paging, but security check
@@ -263,21 +354,30 @@ public class NodeFactory<T extends AbstractNode> {
 	 * @param input
 	 * @return
 	 */
-	public List<AbstractNode> bulkCreateNodes(final Iterable<Node> input) throws FrameworkException {
+	public Result createAllNodes(final Iterable<Node> input) throws FrameworkException {
 
-		List<AbstractNode> nodes = new LinkedList<AbstractNode>();
+		List<AbstractNode> nodes = bulkCreateNodes(input);
 
-		if ((input != null) && input.iterator().hasNext()) {
+		return new Result(nodes, nodes.size(), true, false);
 
-			for (Node node : input) {
+	}
+	/**
+	 * Create structr nodes from all given underlying database nodes
+	 * No paging, but security check
+	 *
+	 * @param securityContext
+	 * @param input
+	 * @return
+	 */
+	public List<AbstractNode> bulkCreateNodes(final Iterable<Node> input) throws FrameworkException {
 
-				AbstractNode n = createNode(node);
+		List<AbstractNode> nodes = new ArrayList<AbstractNode>();
 
-				if (n != null) {
+		if (input != null) {
 
-					nodes.add(n);
-				}
+			for (AbstractNode node : createNodesLazily(input)) {
 
+				nodes.add(node);
 			}
 
 		}
@@ -286,6 +386,26 @@ public class NodeFactory<T extends AbstractNode> {
 
 	}
 
+	/**
+	 * Returns a view of the given database nodes that creates the
+	 * structr nodes one by one while it is being iterated. Nodes that
+	 * are not readable in the security context of this factory are
+	 * skipped, and no database node is read before it is needed.
+	 *
+	 * @param input the database nodes
+	 * @return the readable structr nodes
+	 */
+	public Iterable<T> createNodesLazily(final Iterable<Node> input) {
+
+		return new Iterable<T>() {
+
+			@Override
+			public Iterator<T> iterator() {
+				return new NodeIterator(input.iterator());
+			}
+		};
+	}
+
 	/**
 	 * Create a dummy node (useful when you need an instance
 	 * of an {@see AbstractNode} for a db node which was deleted
@@ -304,18 +424,7 @@ public class NodeFactory<T extends AbstractNode> {
 
 			try {
 
-				Constructor<T> constructor = constructors.get(nodeClass);
-
-				if (constructor == null) {
-
-					constructor = nodeClass.getConstructor();
-
-					constructors.put(nodeClass, constructor);
-
-				}
-
-				// newNode = (AbstractNode) nodeClass.newInstance();
-				newNode = constructor.newInstance();
+				newNode = getConstructor(nodeClass).newInstance();
 
 			} catch (Throwable t) {
 
@@ -330,17 +439,32 @@ public class NodeFactory<T extends AbstractNode> {
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private List<Node> read(final Iterable<Node> it) {
+	private boolean isRawProjection(final Set<PropertyKey> keys) {
+
+		SecurityContext securityContext = factoryProfile.getSecurityContext();
 
-		List<Node> nodes = new LinkedList();
+		for (PropertyKey key : keys) {
 
-		while (it.iterator().hasNext()) {
+			if (!(key instanceof AbstractPrimitiveProperty) || key.databaseConverter(securityContext, null) != null) {
 
-			nodes.add(it.iterator().next());
+				return false;
+			}
 		}
 
-		return nodes;
+		return true;
+	}
+
+	private Constructor<T> getConstructor(final Class<T> nodeClass) throws NoSuchMethodException {
+
+		Constructor<T> constructor = constructors.get(nodeClass);
+		if (constructor == null) {
+
+			constructor = nodeClass.getConstructor();
 
+			constructors.put(nodeClass, constructor);
+		}
+
+		return constructor;
 	}
 
 	private Result resultWithOffsetId(final IndexHits<Node> input) throws FrameworkException {
@@ -349,97 +473,77 @@ public class NodeFactory<T extends AbstractNode> {
 		final int pageSize       = Math.min(size, factoryProfile.getPageSize());
 		final int page           = factoryProfile.getPage();
 		final String offsetId    = factoryProfile.getOffsetId();
+		final NodeIterator it    = new NodeIterator(input.iterator());
 		List<AbstractNode> nodes = new LinkedList<AbstractNode>();
-		int position             = 0;
 		int count                = 0;
-		int offset               = 0;
-
-		// We have an offsetId, so first we need to
-		// find the node with this uuid to get the offset
-		List<AbstractNode> nodesUpToOffset = new LinkedList();
-		int i                       = 0;
-		boolean gotOffset           = false;
-
-		for (Node node : input) {
+		int i                    = 0;
+		boolean gotOffset        = false;
 
-			AbstractNode n = createNode(node);
+		// We have an offsetId, so first we need to find the node with this
+		// uuid. Only the nodes that can end up in the requested page are
+		// kept: the offset node itself for positive pages, the offset node
+		// and its -(page * pageSize) predecessors for negative pages.
+		long bufferSize                = page > 0 ? 1L : 1L - ((long) page * (long) pageSize);
+		ArrayDeque<AbstractNode> buffer = new ArrayDeque<AbstractNode>();
 
-			nodesUpToOffset.add(n);
+		while (it.hasNext()) {
 
-			if (!gotOffset) {
+			AbstractNode n = it.next();
 
-				if (!offsetId.equals(n.getUuid())) {
+			buffer.addLast(n);
 
-					i++;
-
-					continue;
+			if (buffer.size() > bufferSize) {
+				buffer.removeFirst();
+			}
 
-				}
+			if (offsetId.equals(n.getUuid())) {
 
 				gotOffset = true;
-				offset    = page > 0
-					    ? i
-					    : i + (page * pageSize);
 
 				break;
-
 			}
 
+			i++;
 		}
 
 		if (!gotOffset) {
 
 			throw new FrameworkException("offsetId", new IdNotFoundToken(offsetId));
 		}
-		
+
+		int offset = page > 0
+			     ? i
+			     : i + (page * pageSize);
+
 		if (offset < 0) {
 			
-			// Remove last item
-			nodesUpToOffset.remove(nodesUpToOffset.size()-1);
+			// all nodes before the offset node
+			buffer.removeLast();
 			
-			return new Result(nodesUpToOffset, size, true, false);
+			return new Result(new LinkedList<AbstractNode>(buffer), size, true, false);
 		}
 
-		for (AbstractNode node : nodesUpToOffset) {
-
-			if (node != null) {
-
-				if (++position > offset) {
-
-					// stop if we got enough nodes
-					if (++count > pageSize) {
+		// skip buffered nodes before the offset
+		while (buffer.size() > i - offset + 1) {
+			buffer.removeFirst();
+		}
 
-						return new Result(nodes, size, true, false);
-					}
+		for (AbstractNode node : buffer) {
 
-					nodes.add(node);
-				}
+			if (++count > pageSize) {
 
+				return new Result(nodes, size, true, false);
 			}
 
+			nodes.add(node);
 		}
 
-		// If we get here, the result was not complete, so we need to iterate
-		// through the index result (input) to get more items.
-		for (Node node : input) {
-
-			AbstractNode n = createNode(node);
-
-			if (n != null) {
-
-				if (++position > offset) {
-
-					// stop if we got enough nodes
-					if (++count > pageSize) {
-
-						return new Result(nodes, size, true, false);
-					}
-
-					nodes.add(n);
-				}
-
-			}
+		// If we get here, the result was not complete, so we need to
+		// pull more items from the index result.
+		while (count < pageSize && it.hasNext()) {
 
+			nodes.add(it.next());
+			count++;
 		}
 
 		return new Result(nodes, size, true, false);
@@ -454,17 +558,41 @@ public class NodeFactory<T extends AbstractNode> {
 
 		if (page < 0) {
 
-			List<Node> rawNodes = read(input);
-			int size            = rawNodes.size();
+			// Negative pages are counted from the end, so we have to run
+			// through the whole iterator, but only the last -(page * pageSize)
+			// raw nodes can end up in the page and need to be kept.
+			long bufferSize         = -((long) page * (long) pageSize);
+			ArrayDeque<Node> buffer = new ArrayDeque<Node>();
+			int size                = 0;
+
+			for (Node node : input) {
+
+				buffer.addLast(node);
+				size++;
+
+				if (buffer.size() > bufferSize) {
+					buffer.removeFirst();
+				}
+			}
 
 			fromIndex = Math.max(0, size + (page * pageSize));
 
 			final List<AbstractNode> nodes = new LinkedList<AbstractNode>();
 			int toIndex                    = Math.min(size, fromIndex + pageSize);
+			int index                      = size - buffer.size();
+
+			for (Node n : buffer) {
+
+				if (index >= fromIndex && index < toIndex) {
+
+					AbstractNode node = createNode(n);
+					if (node != null) {
 
-			for (Node n : rawNodes.subList(fromIndex, toIndex)) {
+						nodes.add(node);
+					}
+				}
 
-				nodes.add(createNode(n));
+				index++;
 			}
 
 			// We've run completely through the iterator,
@@ -488,37 +616,31 @@ public class NodeFactory<T extends AbstractNode> {
 	private Result page(final IndexHits<Node> input, final int overallResultCount, final int offset, final int pageSize) throws FrameworkException {
 
 		final List<AbstractNode> nodes = new LinkedList<AbstractNode>();
+		final NodeIterator it          = new NodeIterator(input.iterator());
 		int position                   = 0;
 		int count                      = 0;
-		int overallCount               = 0;
-
-		for (Node node : input) {
-
-			AbstractNode n = createNode(node);
 
-			overallCount++;
+		while (it.hasNext()) {
 
-			if (n != null) {
+			AbstractNode n = it.next();
 
-				if (++position > offset) {
+			if (++position > offset) {
 
-					// stop if we got enough nodes
-					if (++count > pageSize) {
+				// stop if we got enough nodes
+				if (++count > pageSize) {
 
-						// The overall count may be inaccurate
-						return new Result(nodes, overallResultCount, true, false);
-					}
-
-					nodes.add(n);
+					// The overall count may be inaccurate
+					return new Result(nodes, overallResultCount, true, false);
 				}
 
+				nodes.add(n);
 			}
 
 		}
 
 		// We've run completely through the iterator,
 		// so the overall count from here is accurate.
-		return new Result(nodes, overallCount, true, false);
+		return new Result(nodes, it.getRawCount(), true, false);
 
 	}
 
@@ -629,6 +751,58 @@ public class NodeFactory<T extends AbstractNode> {
 
 	//~--- inner classes --------------------------------------------------
 
+	/**
+	 * Creates structr nodes from database nodes on demand and skips
+	 * the nodes that are not readable.
+	 */
+	private class NodeIterator implements Iterator<T> {
+
+		private Iterator<Node> source = null;
+		private T next                = null;
+		private int rawCount          = 0;
+
+		public NodeIterator(final Iterator<Node> source) {
+			this.source = source;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			while (next == null && source.hasNext()) {
+
+				next = createNode(source.next());
+				rawCount++;
+			}
+
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			T current = next;
+			next      = null;
+
+			return current;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Not supported.");
+		}
+
+		/**
+		 * @return the number of database nodes read so far
+		 */
+		public int getRawCount() {
+			return rawCount;
+		}
+	}
+
 	private class FactoryProfile {
 
 		private boolean includeDeletedAndHidden = true;
@@ -21,7 +21,6 @@
 
 package org.structr.core.graph;
 
-import org.apache.commons.collections.map.LRUMap;
 
 import org.neo4j.gis.spatial.indexprovider.LayerNodeIndex;
 import org.neo4j.gis.spatial.indexprovider.SpatialIndexProvider;
@@ -33,12 +32,15 @@ import org.neo4j.graphdb.index.Index;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.GraphDatabaseAPI;
 
 import org.structr.core.Command;
 import org.structr.core.EntityContext;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
 import org.structr.core.SingletonService;
+import org.structr.core.auth.AuthenticationCache;
+import org.structr.core.cypher.CypherExecutionEngine;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Location;
 
@@ -49,6 +51,8 @@ import java.io.File;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.transaction.SystemException;
+import javax.transaction.TransactionManager;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -60,11 +64,19 @@ import java.util.logging.Logger;
  */
 public class NodeService implements SingletonService {
 
-	private static final Logger logger                       = Logger.getLogger(NodeService.class.getName());
-	private static final Map<String, AbstractNode> nodeCache = (Map<String, AbstractNode>) Collections.synchronizedMap(new LRUMap(100000));
+	private static final Logger logger                     = Logger.getLogger(NodeService.class.getName());
+	private static final int UUID_CACHE_SIZE               = 100000;
+	private static final int AUTH_CACHE_SIZE               = 10000;
+	private static final int AUTH_CACHE_TIMEOUT            = 300;
+	private static UuidCache uuidCache                     = new UuidCache(UUID_CACHE_SIZE);
+	private static ResourceAccessCache resourceAccessCache = new ResourceAccessCache();
+	private static AuthenticationCache authenticationCache = new AuthenticationCache(AUTH_CACHE_SIZE, AUTH_CACHE_TIMEOUT * 1000L);
+	private static UniqueKeyIndexer uniqueKeyIndexer       = new UniqueKeyIndexer();
+	private static volatile TransactionManager txManager   = null;
 
 	//~--- fields ---------------------------------------------------------
 
+	private CypherExecutionEngine cypherEngine      = null;
 	private Index<Node> fulltextIndex               = null;
 	private GraphDatabaseService graphDb            = null;
 	private Index<Node> keywordIndex                = null;
@@ -76,6 +88,7 @@ public class NodeService implements SingletonService {
 	private Index<Node> userIndex                   = null;
 	private Index<Node> caseInsensitiveUserIndex               = null;
 	private Index<Node> uuidIndex                   = null;
+	private Index<Node> uniqueIndex                 = null;
 
 	/** Dependent services */
 	private Set<RunnableService> registeredServices = new HashSet<RunnableService>();
@@ -102,12 +115,14 @@ public class NodeService implements SingletonService {
 		if (command != null) {
 
 			command.setArgument("graphDb", graphDb);
+			command.setArgument("cypherEngine", cypherEngine);
 			command.setArgument(NodeIndex.uuid.name(), uuidIndex);
 			command.setArgument(NodeIndex.fulltext.name(), fulltextIndex);
 			command.setArgument(NodeIndex.user.name(), userIndex);
 			command.setArgument(NodeIndex.caseInsensitiveUser.name(), caseInsensitiveUserIndex);
 			command.setArgument(NodeIndex.keyword.name(), keywordIndex);
 			command.setArgument(NodeIndex.layer.name(), layerIndex);
+			command.setArgument(UniqueKeyCommand.UNIQUE_INDEX, uniqueIndex);
 			command.setArgument(RelationshipIndex.rel_uuid.name(), relUuidIndex);
 			command.setArgument(RelationshipIndex.rel_fulltext.name(), relFulltextIndex);
 			command.setArgument(RelationshipIndex.rel_keyword.name(), relKeywordIndex);
@@ -154,6 +169,11 @@ public class NodeService implements SingletonService {
 			graphDb.registerTransactionEventHandler(EntityContext.getTransactionEventHandler());
 		}
 
+		if (graphDb instanceof GraphDatabaseAPI) {
+
+			txManager = ((GraphDatabaseAPI)graphDb).getTxManager();
+		}
+
 		if (graphDb == null) {
 
 			logger.log(Level.SEVERE, "Database could not be started ({0}) ...", dbPath);
@@ -198,6 +218,13 @@ public class NodeService implements SingletonService {
 		keywordIndex = graphDb.index().forNodes("keywordAllNodes", LuceneIndexImplementation.EXACT_CONFIG);
 
 		logger.log(Level.FINE, "Keyword node index ready.");
+		logger.log(Level.FINE, "Initializing unique key index...");
+
+		uniqueIndex = graphDb.index().forNodes("uniqueKeysAllNodes", LuceneIndexImplementation.EXACT_CONFIG);
+
+		uniqueKeyIndexer = new UniqueKeyIndexer();
+
+		logger.log(Level.FINE, "Unique key index ready.");
 		logger.log(Level.FINE, "Initializing layer index...");
 
 		final Map<String, String> config = new HashMap<String, String>();
@@ -234,6 +261,21 @@ public class NodeService implements SingletonService {
 		relationshipFactory = new RelationshipFactory();
 
 		logger.log(Level.FINE, "Relationship factory ready.");
+		logger.log(Level.FINE, "Initializing UUID cache...");
+
+		uuidCache = new UuidCache(parseInt(Services.UUID_CACHE_SIZE, UUID_CACHE_SIZE));
+
+		logger.log(Level.FINE, "UUID cache ready.");
+		logger.log(Level.FINE, "Initializing authentication cache...");
+
+		authenticationCache = new AuthenticationCache(parseInt(Services.AUTH_CACHE_SIZE, AUTH_CACHE_SIZE), parseInt(Services.AUTH_CACHE_TIMEOUT, AUTH_CACHE_TIMEOUT) * 1000L);
+
+		logger.log(Level.FINE, "Authentication cache ready.");
+		logger.log(Level.FINE, "Initializing cypher execution engine...");
+
+		cypherEngine = new CypherExecutionEngine(graphDb);
+
+		logger.log(Level.FINE, "Cypher execution engine ready.");
 
 		isInitialized = true;
 	}
@@ -250,8 +292,23 @@ public class NodeService implements SingletonService {
 
 			// Wait for all registered services to end
 			waitFor(registeredServices.isEmpty());
+			EntityContext.unregisterTransactionListeners();
+			uniqueKeyIndexer.shutdown();
 			graphDb.shutdown();
 
+			logger.log(Level.INFO, "{0}", uuidCache);
+			uuidCache.clear();
+
+			logger.log(Level.INFO, "{0}", resourceAccessCache);
+			resourceAccessCache.invalidate();
+
+			logger.log(Level.INFO, "{0}", authenticationCache);
+			authenticationCache.clear();
+
+			logger.log(Level.INFO, "{0}", cypherEngine);
+
+			txManager     = null;
+			cypherEngine  = null;
 			graphDb       = null;
 			isInitialized = false;
 
@@ -285,16 +342,19 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static void addNodeToCache(String uuid, AbstractNode node) {
+	private int parseInt(final String key, final int defaultValue) {
 
-		nodeCache.put(uuid, node);
+		String value = Services.getConfigurationValue(key, Integer.toString(defaultValue));
 
-	}
+		try {
+			return Integer.parseInt(value);
 
-	public static void removeNodeFromCache(String uuid) {
+		} catch (NumberFormatException nfex) {
 
-		nodeCache.remove(uuid);
+			logger.log(Level.WARNING, "Invalid value {0} for {1}, using default of {2}", new Object[] { value, key, defaultValue } );
+		}
 
+		return defaultValue;
 	}
 
 	//~--- get methods ----------------------------------------------------
@@ -306,9 +366,76 @@ public class NodeService implements SingletonService {
 
 	}
 
-	public static AbstractNode getNodeFromCache(String uuid) {
+	/**
+	 * Indicates whether the calling thread is associated with an open
+	 * database transaction, including transactions that were started
+	 * directly on the database instead of through {@link TransactionCommand}.
+	 * 
+	 * @return whether the database has a transaction for this thread
+	 */
+	public static boolean hasOpenTransaction() {
+
+		TransactionManager tm = txManager;
+		if (tm != null) {
+
+			try {
+				return tm.getTransaction() != null;
+
+			} catch (SystemException sex) {
+
+				logger.log(Level.WARNING, "Unable to determine transaction state: {0}", sex.getMessage());
+
+				// assume the worst, callers use this to decide whether committed state can be trusted
+				return true;
+			}
+		}
 
-		return nodeCache.get(uuid);
+		return false;
+
+	}
+
+	/**
+	 * Returns the process-wide cache of UUID to node id mappings.
+	 * 
+	 * @return the UUID cache
+	 */
+	public static UuidCache getUuidCache() {
+
+		return uuidCache;
+
+	}
+
+	/**
+	 * Returns the process-wide table of resource access grants.
+	 * 
+	 * @return the resource access cache
+	 */
+	public static ResourceAccessCache getResourceAccessCache() {
+
+		return resourceAccessCache;
+
+	}
+
+	/**
+	 * Returns the process-wide cache of successful authentications.
+	 * 
+	 * @return the authentication cache
+	 */
+	public static AuthenticationCache getAuthenticationCache() {
+
+		return authenticationCache;
+
+	}
+
+	/**
+	 * Returns the indexer that reserves the values of existing nodes in
+	 * the unique key index.
+	 * 
+	 * @return the unique key indexer
+	 */
+	public static UniqueKeyIndexer getUniqueKeyIndexer() {
+
+		return uniqueKeyIndexer;
 
 	}
 
@@ -317,6 +444,16 @@ public class NodeService implements SingletonService {
 	public GraphDatabaseService getGraphDb() {
 		return graphDb;
 	}
+
+	/**
+	 * Returns the cypher execution engine that is shared by all users
+	 * of this database.
+	 * 
+	 * @return the cypher execution engine
+	 */
+	public CypherExecutionEngine getCypherEngine() {
+		return cypherEngine;
+	}
 	
 	@Override
 	public boolean isRunning() {
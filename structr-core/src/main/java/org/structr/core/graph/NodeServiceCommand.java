@@ -19,8 +19,6 @@
 
 package org.structr.core.graph;
 
-import java.util.Iterator;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.SecurityContext;
@@ -36,7 +34,8 @@ import org.structr.core.Services;
  */
 public abstract class NodeServiceCommand extends Command {
 	
-	private static final Logger logger = Logger.getLogger(NodeServiceCommand.class.getName());
+	private static final Logger logger       = Logger.getLogger(NodeServiceCommand.class.getName());
+	private static final int DEFAULT_RETRIES = 3;
 	
 	@Override
 	public Class getServiceClass()	{
@@ -44,62 +43,72 @@ public abstract class NodeServiceCommand extends Command {
 	}
 	
 	/**
+	 * Applies the given operation to all objects of the given source in
+	 * transactions of commitCount objects, on a single worker thread and
+	 * with the number of retries configured in
+	 * {@link Services#BULK_OPERATION_RETRIES}. See
+	 * {@link BulkOperationExecutor}.
 	 * 
 	 * @param <T>
 	 * @param securityContext
-	 * @param nodes
+	 * @param nodes the objects, iterated lazily
+	 * @param commitCount the number of objects per transaction
+	 * @param description the name under which progress is logged
 	 * @param operation
-	 * @return
+	 * @return the number of objects processed
 	 * @throws FrameworkException 
 	 */
-	public static <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final List<T> nodes, final long commitCount, String description, final BulkGraphOperation<T> operation) throws FrameworkException {
-
-		final Iterator<T> iterator = nodes.iterator();
-		long objectCount           = 0L;
-		
-		while (iterator.hasNext()) {
-
-			try {
-
-				objectCount += Services.command(securityContext, TransactionCommand.class).execute(new StructrTransaction<Integer>() {
-
-					@Override
-					public Integer execute() throws FrameworkException {
-
-						int count = 0;
+	public static <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final Iterable<T> nodes, final long commitCount, String description, final BulkGraphOperation<T> operation) throws FrameworkException {
+		return bulkGraphOperation(securityContext, nodes, commitCount, description, 1, operation);
+	}
 
-						while (iterator.hasNext()) {
+	/**
+	 * Applies the given operation to all objects of the given source in
+	 * transactions of commitCount objects, using the given number of worker
+	 * threads. Operations that are not thread-safe must use one thread,
+	 * commands with thread-safe operations can pass
+	 * {@link #getBulkOperationThreads()}.
+	 * 
+	 * @param <T>
+	 * @param securityContext
+	 * @param nodes the objects, iterated lazily
+	 * @param commitCount the number of objects per transaction
+	 * @param description the name under which progress is logged
+	 * @param threadCount the number of worker threads
+	 * @param operation
+	 * @return the number of objects processed
+	 * @throws FrameworkException 
+	 */
+	public static <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final Iterable<T> nodes, final long commitCount, String description, final int threadCount, final BulkGraphOperation<T> operation) throws FrameworkException {
 
-							T node = iterator.next();
+		int retries = parseInt(Services.BULK_OPERATION_RETRIES, DEFAULT_RETRIES);
 
-							try {
+		return new BulkOperationExecutor<T>(securityContext, description, (int) commitCount, threadCount, retries, operation).execute(nodes);
+	}
 
-								operation.handleGraphObject(securityContext, node);
+	/**
+	 * Returns the number of worker threads configured in
+	 * {@link Services#BULK_OPERATION_THREADS}, 1 by default.
+	 *
+	 * @return the number of worker threads
+	 */
+	protected static int getBulkOperationThreads() {
+		return parseInt(Services.BULK_OPERATION_THREADS, 1);
+	}
 
-							} catch (Throwable t) {
+	// ----- private methods -----
+	private static int parseInt(final String key, final int defaultValue) {
 
-								operation.handleThrowable(securityContext, t, node);
-							}
+		String value = Services.getConfigurationValue(key, Integer.toString(defaultValue));
 
-							// commit transaction after commitCount
-							if (++count >= commitCount) {
-								break;
-							}
-						}
+		try {
+			return Integer.parseInt(value);
 
-						return count;
-					}
-				});
+		} catch (NumberFormatException nfex) {
 
-			} catch (Throwable t) {
-				
-				// bulk transaction failed, what to do?
-				operation.handleTransactionFailure(securityContext, t);
-			}
-			
-			logger.log(Level.INFO, "{0}: {1} objects processed", new Object[] { description, objectCount } );
+			logger.log(Level.WARNING, "Invalid value {0} for {1}, using default of {2}", new Object[] { value, key, defaultValue } );
 		}
-		
-		return objectCount;
+
+		return defaultValue;
 	}
 }
@@ -30,6 +30,7 @@ import org.structr.core.graph.NodeService.NodeIndex;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -77,9 +78,31 @@ public class RemoveNodeFromIndex extends NodeServiceCommand {
 	
 	private void removeNodesFromAllIndices(final List<AbstractNode> nodes) {
 
+		List<Node> dbNodes = new ArrayList<Node>(nodes.size());
+
 		for (AbstractNode node : nodes) {
 
-			removeNodeFromAllIndices(node);
+			if (node.getProperty(AbstractNode.uuid) == null) {
+
+				logger.log(Level.WARNING, "Will not remove node from indices which has no UUID");
+
+				continue;
+
+			}
+
+			dbNodes.add(node.getNode());
+		}
+
+		// lock each index once for all nodes
+		for (Enum indexName : (NodeIndex[]) arguments.get("indices")) {
+
+			Index<Node> index = indices.get(indexName);
+			synchronized(index) {
+
+				for (Node dbNode : dbNodes) {
+					index.remove(dbNode);
+				}
+			}
 
 		}
 	}
@@ -29,6 +29,7 @@ import org.structr.core.entity.AbstractRelationship;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -73,10 +74,31 @@ public class RemoveRelationshipFromIndex extends NodeServiceCommand {
 	
 	private void removeRelationshipsFromAllIndices(final List<AbstractRelationship> rels) {
 
+		List<Relationship> dbRelationships = new ArrayList<Relationship>(rels.size());
+
 		for (AbstractRelationship rel : rels) {
 
-			removeRelationshipFromAllIndices(rel);
+			if (rel.getProperty(AbstractRelationship.uuid) == null) {
+
+				logger.log(Level.WARNING, "Will not remove relationship from indices which has no UUID");
+
+				continue;
+
+			}
+
+			dbRelationships.add(rel.getRelationship());
+		}
 
+		// lock each index once for all relationships
+		for (Enum indexName : indices.keySet()) {
+
+			Index<Relationship> index = indices.get(indexName);
+			synchronized(index) {
+
+				for (Relationship dbRelationship : dbRelationships) {
+					index.remove(dbRelationship);
+				}
+			}
 		}
 	}
 
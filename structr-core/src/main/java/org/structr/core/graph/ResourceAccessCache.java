@@ -0,0 +1,306 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.ResourceAccess;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+
+/**
+ * Process-wide table of all {@link ResourceAccess} grants, keyed by
+ * resource signature.
+ *
+ * The table is loaded with a single index query on first use and then
+ * answers every grant lookup from memory. It is dropped when a transaction
+ * creates, modifies or deletes a ResourceAccess node (see
+ * {@link EntityContext}), and loaded again on the next lookup.
+ *
+ * The table holds immutable {@link Grant} values only. ResourceAccess
+ * entities cache their properties lazily and are not thread-safe, so
+ * {@link #getResourceAccess(String)} instantiates a new entity for every
+ * call.
+ */
+public class ResourceAccessCache {
+
+	private static final Logger logger = Logger.getLogger(ResourceAccessCache.class.getName());
+
+	private volatile Map<String, Grant> grants = null;
+	private volatile Set<Long> nodeIds         = Collections.emptySet();
+	private final AtomicLong generation        = new AtomicLong(0);
+	private final AtomicLong loads             = new AtomicLong(0);
+
+	/**
+	 * Returns the grant for the given (normalized) resource signature.
+	 *
+	 * @param signature the resource signature
+	 * @return the grant, or null if there is no grant for the signature
+	 * @throws FrameworkException
+	 */
+	public Grant get(final String signature) throws FrameworkException {
+
+		Map<String, Grant> table = grants;
+
+		if (table == null) {
+			table = load();
+		}
+
+		return table.get(signature);
+	}
+
+	/**
+	 * Returns a new ResourceAccess entity for the grant with the given
+	 * (normalized) resource signature.
+	 *
+	 * @param signature the resource signature
+	 * @return the entity, or null if there is no grant for the signature
+	 * @throws FrameworkException
+	 */
+	public ResourceAccess getResourceAccess(final String signature) throws FrameworkException {
+
+		Grant grant = get(signature);
+
+		if (grant != null) {
+
+			SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+
+			try {
+
+				Node node           = Services.command(superUserContext, GraphDatabaseCommand.class).execute().getNodeById(grant.getNodeId());
+				AbstractNode entity = new NodeFactory<AbstractNode>(superUserContext).createNode(node);
+
+				if (entity instanceof ResourceAccess) {
+					return (ResourceAccess) entity;
+				}
+
+			} catch (NotFoundException nfex) {}
+
+			// grant was deleted after the table was loaded
+			invalidate();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Drops the table if the given transaction created, modified or deleted
+	 * a ResourceAccess node.
+	 *
+	 * @param data the transaction data
+	 */
+	public void invalidate(final TransactionData data) {
+
+		if (data == null) {
+			return;
+		}
+
+		Set<Long> knownIds = nodeIds;
+		String grantType   = ResourceAccess.class.getSimpleName();
+		String typeKey     = AbstractNode.type.dbName();
+
+		for (Node node : data.deletedNodes()) {
+
+			if (knownIds.contains(node.getId())) {
+
+				invalidate();
+				return;
+			}
+		}
+
+		for (Node node : data.createdNodes()) {
+
+			if (grantType.equals(node.getProperty(typeKey, null))) {
+
+				invalidate();
+				return;
+			}
+		}
+
+		List<PropertyEntry<Node>> entries = new LinkedList<PropertyEntry<Node>>();
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+			entries.add(entry);
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+			entries.add(entry);
+		}
+
+		for (PropertyEntry<Node> entry : entries) {
+
+			Node node = entry.entity();
+
+			if (knownIds.contains(node.getId()) || (!data.isDeleted(node) && grantType.equals(node.getProperty(typeKey, null)))) {
+
+				invalidate();
+				return;
+			}
+		}
+	}
+
+	public void invalidate() {
+
+		generation.incrementAndGet();
+
+		grants  = null;
+		nodeIds = Collections.emptySet();
+	}
+
+	/**
+	 * Returns the number of times the table was loaded.
+	 *
+	 * @return the number of loads
+	 */
+	public long getLoads() {
+		return loads.get();
+	}
+
+	public int size() {
+
+		Map<String, Grant> table = grants;
+
+		return table != null ? table.size() : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Resource access cache: " + size() + " grants, " + loads.get() + " loads";
+	}
+
+	// ----- private methods -----
+	private Map<String, Grant> load() throws FrameworkException {
+
+		// obtain generation before reading, so that a concurrent
+		// invalidation can not be overwritten with stale grants
+		long expectedGeneration                = generation.get();
+		SecurityContext superUserContext       = SecurityContext.getSuperUserInstance();
+		SearchNodeCommand search               = Services.command(superUserContext, SearchNodeCommand.class);
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+		Map<String, Grant> table               = new HashMap<String, Grant>();
+		Set<Long> ids                          = new HashSet<Long>();
+
+		searchAttributes.add(Search.andExactType(ResourceAccess.class.getSimpleName()));
+
+		Result result = search.execute(searchAttributes);
+
+		for (GraphObject obj : (List<GraphObject>) result.getResults()) {
+
+			if (obj instanceof ResourceAccess) {
+
+				ResourceAccess grant = (ResourceAccess) obj;
+				String signature     = grant.getResourceSignature();
+
+				ids.add(grant.getId());
+
+				if (signature != null) {
+
+					if (table.containsKey(signature)) {
+
+						logger.log(Level.SEVERE, "Found more than one grant for URI {0}!", signature);
+
+					} else {
+
+						table.put(signature, new Grant(signature, grant.getFlags(), grant.getId()));
+					}
+				}
+
+			} else {
+
+				logger.log(Level.SEVERE, "Grant {0} has wrong type {1}!", new Object[] { obj.getUuid(), obj.getClass().getName() });
+			}
+		}
+
+		loads.incrementAndGet();
+
+		// don't publish a table that was read before a concurrent invalidation
+		if (generation.get() == expectedGeneration) {
+
+			nodeIds = ids;
+			grants  = table;
+
+			// re-check, invalidation may have happened in between
+			if (generation.get() != expectedGeneration) {
+				invalidate();
+			}
+		}
+
+		return table;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Immutable snapshot of a ResourceAccess node.
+	 */
+	public static class Grant {
+
+		private final String signature;
+		private final long flags;
+		private final long nodeId;
+
+		public Grant(final String signature, final long flags, final long nodeId) {
+
+			this.signature = signature;
+			this.flags     = flags;
+			this.nodeId    = nodeId;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+
+		public long getFlags() {
+			return flags;
+		}
+
+		public boolean hasFlag(final long flag) {
+			return (flags & flag) == flag;
+		}
+
+		public long getNodeId() {
+			return nodeId;
+		}
+
+		@Override
+		public String toString() {
+			return "('" + signature + "', flags: " + flags + ")";
+		}
+	}
+}
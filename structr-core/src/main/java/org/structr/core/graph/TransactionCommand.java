@@ -22,9 +22,15 @@
 package org.structr.core.graph;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Queue;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.Set;
@@ -71,6 +77,65 @@ public class TransactionCommand extends NodeServiceCommand {
 	private static final ThreadLocal<Transaction> transactions = new ThreadLocal<Transaction>();
 	private static final ThreadLocal<Long> transactionKeys     = new ThreadLocal<Long>();
 	private static final ThreadLocal<Long> depths              = new ThreadLocal<Long>();
+
+	private static final ThreadLocal<Transaction> committingTransactions = new ThreadLocal<Transaction>();
+
+	/**
+	 * Indicates whether the calling thread is currently executing or
+	 * committing a transaction. Transactions that were opened directly on
+	 * the database (i.e. with <code>graphDb.beginTx()</code>) are detected
+	 * as well.
+	 * 
+	 * @return whether a transaction is open
+	 */
+	public static boolean isInTransaction() {
+		return transactions.get() != null || committingTransactions.get() != null || NodeService.hasOpenTransaction();
+	}
+
+	/**
+	 * Acquires neo4j write locks on the given nodes in the transaction that
+	 * is currently being committed by the calling thread. This method is
+	 * meant to be called from the transaction event handler for all nodes
+	 * whose index entries are rewritten by the commit, so that two
+	 * concurrent commits can not interleave their index updates for the
+	 * same node. Nodes with modified properties are already locked by neo4j,
+	 * the other nodes (e.g. relationship endpoints) are not.
+	 * 
+	 * The locks are acquired in ascending node id order to keep the lock
+	 * order stable across transactions, and they are released by neo4j when
+	 * the transaction finishes.
+	 * 
+	 * @param nodes the nodes to lock
+	 */
+	public static void lockNodesForCommit(final Collection<AbstractNode> nodes) {
+
+		final Transaction tx = committingTransactions.get();
+		if (tx != null && nodes != null && !nodes.isEmpty()) {
+
+			List<Node> sortedNodes = new ArrayList<Node>(nodes.size());
+			for (AbstractNode node : nodes) {
+
+				Node dbNode = node.getNode();
+				if (dbNode != null) {
+					sortedNodes.add(dbNode);
+				}
+			}
+
+			Collections.sort(sortedNodes, new Comparator<Node>() {
+
+				@Override
+				public int compare(Node o1, Node o2) {
+					Long id1 = o1.getId();
+					Long id2 = o2.getId();
+					return id1.compareTo(id2);
+				}
+			});
+
+			for (Node dbNode : sortedNodes) {
+				tx.acquireWriteLock(dbNode);
+			}
+		}
+	}
 	
 	public <T> T execute(StructrTransaction<T> transaction) throws FrameworkException {
 
@@ -113,22 +178,40 @@ public class TransactionCommand extends NodeServiceCommand {
 				transactions.remove();
 				transactionKeys.remove();
 
-				synchronized(TransactionCommand.class) {
+				// No global lock here: independent transactions are allowed to
+				// commit in parallel. Conflicting writes are serialized by the
+				// write locks neo4j holds on modified entities, plus the locks
+				// acquired in lockNodesForCommit() for nodes that are re-indexed
+				// without being modified directly.
+				committingTransactions.set(tx);
 
-					try {
+				try {
 
-						tx.finish();
+					tx.finish();
 
 
-					} catch (Throwable t) {
+				} catch (Throwable t) {
 
-						if (debug || logExceptions) {
-							t.printStackTrace();
-						}
+					if (debug || logExceptions) {
+						t.printStackTrace();
+					}
+
+					// transaction failed, look for "real" cause..
+					FrameworkException cause = EntityContext.getFrameworkException(transactionKey);
+					if (cause != null) {
+
+						exception = cause;
 
-						// transaction failed, look for "real" cause..
-						exception = EntityContext.getFrameworkException(transactionKey);
+					} else if (exception == null) {
+
+						// no structr exception available (e.g. deadlock detected
+						// by neo4j), report the original failure
+						exception = t;
 					}
+
+				} finally {
+
+					committingTransactions.remove();
 				}
 			}
 
@@ -149,7 +232,8 @@ public class TransactionCommand extends NodeServiceCommand {
 				} else {
 					
 					exception.printStackTrace();
-					
+
+					EntityContext.clearTransactionData(transactionKey);
 					throw new RuntimeException(exception);
 				}
 			}
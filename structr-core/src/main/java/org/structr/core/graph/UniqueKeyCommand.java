@@ -0,0 +1,154 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ * 
+ *  This file is part of structr <http://structr.org>.
+ * 
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph;
+
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.WildcardQuery;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Reserves unique property values in a dedicated index.
+ *
+ * Every entry maps a scope (e.g. a type and a property key) and a value to
+ * the node that holds the value. Reservations use
+ * {@link Index#putIfAbsent}, which locks the scope and value until the
+ * transaction is finished, so that two concurrent transactions can not
+ * reserve the same value.
+ *
+ * Entries are not removed when a node changes its value, callers must
+ * verify that the returned node still holds the value, and release the
+ * entry otherwise. Entries of deleted nodes are ignored by the index.
+ *
+ * The values of the nodes that exist before the first reservation in a
+ * scope are reserved by the {@link UniqueKeyIndexer}.
+ */
+public class UniqueKeyCommand extends NodeServiceCommand {
+
+	public static final String UNIQUE_INDEX        = "uniqueIndex";
+	private static final Logger logger             = Logger.getLogger(UniqueKeyCommand.class.getName());
+	private static final String INITIALIZED_PREFIX = "initialized.";
+
+	/**
+	 * Reserves the given value in the given scope for the given node.
+	 *
+	 * @param node the node
+	 * @param scope the scope
+	 * @param value the value
+	 * @return null if the value was reserved for the node, or the node
+	 * that already holds the value
+	 * @throws FrameworkException
+	 */
+	public Node reserve(final Node node, final String scope, final String value) throws FrameworkException {
+
+		try {
+
+			Node owner = getIndex().putIfAbsent(node, scope, value);
+
+			if (owner != null && owner.getId() != node.getId()) {
+
+				return owner;
+			}
+
+		} catch (NoSuchElementException nseex) {
+
+			// more than one entry, can only be caused by an inconsistent index
+			logger.log(Level.WARNING, "Value {0} of {1} is reserved more than once", new Object[] { value, scope });
+
+			for (Node owner : getIndex().get(scope, value)) {
+
+				if (owner.getId() != node.getId()) {
+
+					return owner;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Releases the given value in the given scope.
+	 *
+	 * @param node the node that holds the value
+	 * @param scope the scope
+	 * @param value the value
+	 */
+	public void release(final Node node, final String scope, final String value) {
+
+		getIndex().remove(node, scope, value);
+	}
+
+	/**
+	 * Indicates whether the values of all existing nodes of the given
+	 * scope are reserved. The marker is stored in the configuration of the
+	 * unique key index.
+	 *
+	 * @param scope the scope
+	 * @return whether the scope is initialized
+	 */
+	public boolean isInitialized(final String scope) {
+
+		return getGraphDb().index().getConfiguration(getIndex()).containsKey(INITIALIZED_PREFIX + scope);
+	}
+
+	/**
+	 * Marks the given scope as initialized.
+	 *
+	 * @param scope the scope
+	 */
+	public void markInitialized(final String scope) {
+
+		getGraphDb().index().setConfiguration(getIndex(), INITIALIZED_PREFIX + scope, Boolean.TRUE.toString());
+	}
+
+	/**
+	 * Returns the nodes that have a value for the given key in the given
+	 * node index.
+	 *
+	 * @param nodeIndex the node index
+	 * @param key the property key
+	 * @return the nodes
+	 */
+	public Iterable<Node> getIndexedNodes(final NodeService.NodeIndex nodeIndex, final PropertyKey key) {
+
+		Index<Node> index = (Index<Node>) arguments.get(nodeIndex.name());
+
+		synchronized (index) {
+
+			return index.query(new WildcardQuery(new Term(key.dbName(), "*")));
+		}
+	}
+
+	// ----- private methods -----
+	private GraphDatabaseService getGraphDb() {
+		return (GraphDatabaseService) arguments.get("graphDb");
+	}
+
+	private Index<Node> getIndex() {
+		return (Index<Node>) arguments.get(UNIQUE_INDEX);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+
+/**
+ * Reserves the values of existing nodes in the unique key index of the
+ * {@link UniqueKeyCommand}.
+ *
+ * Scopes are initialized by a single background thread, in batches of
+ * {@value #BATCH_SIZE} nodes per transaction, so that the transaction that
+ * requests the initialization does not scan the database. When all values
+ * are reserved, the scope is marked as initialized in the unique key index.
+ * Until then, callers must check the values of existing nodes themselves.
+ */
+public class UniqueKeyIndexer {
+
+	private static final Logger logger  = Logger.getLogger(UniqueKeyIndexer.class.getName());
+	private static final int BATCH_SIZE = 1000;
+
+	//~--- fields ---------------------------------------------------------
+
+	private final Set<String> initializedScopes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Set<String> pendingScopes     = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ExecutorService executor      = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "UniqueKeyIndexer");
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	});
+
+	//~--- methods --------------------------------------------------------
+
+	/**
+	 * Indicates whether the values of all existing nodes of the given scope
+	 * are reserved.
+	 *
+	 * @param scope the scope
+	 * @return whether the scope is initialized
+	 */
+	public boolean isInitialized(final String scope) {
+
+		if (initializedScopes.contains(scope)) {
+
+			return true;
+		}
+
+		if (!pendingScopes.contains(scope) && getUniqueKeys().isInitialized(scope)) {
+
+			initializedScopes.add(scope);
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Starts the initialization of the given scope, unless it is already
+	 * running.
+	 *
+	 * @param scope the scope
+	 * @param initializer the source of the existing nodes and their values
+	 */
+	public void initialize(final String scope, final ScopeInitializer initializer) {
+
+		if (!pendingScopes.add(scope)) {
+
+			return;
+		}
+
+		try {
+
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+
+						reserveExistingValues(scope, initializer);
+
+					} finally {
+
+						pendingScopes.remove(scope);
+					}
+				}
+			});
+
+		} catch (RejectedExecutionException rex) {
+
+			// shutting down
+			pendingScopes.remove(scope);
+		}
+	}
+
+	/**
+	 * Stops running initializations. Interrupted scopes are initialized
+	 * again after the next start.
+	 */
+	public void shutdown() {
+
+		executor.shutdownNow();
+
+		try {
+
+			if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+
+				logger.log(Level.WARNING, "Unique key index initialization did not stop");
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// ----- private methods -----
+	private void reserveExistingValues(final String scope, final ScopeInitializer initializer) {
+
+		final UniqueKeyCommand uniqueKeys           = getUniqueKeys();
+		final TransactionCommand transactionCommand = Services.command(SecurityContext.getSuperUserInstance(), TransactionCommand.class);
+		int reserved                                = 0;
+		int duplicates                              = 0;
+
+		logger.log(Level.INFO, "Reserving existing values of {0} in unique key index", scope);
+
+		try {
+
+			Iterator<Node> nodes = initializer.getExistingNodes().iterator();
+
+			while (nodes.hasNext()) {
+
+				if (Thread.currentThread().isInterrupted()) {
+
+					return;
+				}
+
+				final List<Node> batch = new LinkedList<Node>();
+
+				while (nodes.hasNext() && batch.size() < BATCH_SIZE) {
+
+					batch.add(nodes.next());
+				}
+
+				duplicates += (Integer) transactionCommand.execute(new StructrTransaction() {
+
+					@Override
+					public Object execute() throws FrameworkException {
+
+						int count = 0;
+
+						for (Node node : batch) {
+
+							try {
+
+								String value = initializer.getValue(node);
+
+								if (value != null && uniqueKeys.reserve(node, scope, value) != null) {
+
+									count++;
+								}
+
+							} catch (NotFoundException nfex) {
+
+								// node was deleted in the meantime
+							}
+						}
+
+						return count;
+					}
+
+				});
+
+				reserved += batch.size();
+			}
+
+			uniqueKeys.markInitialized(scope);
+			initializedScopes.add(scope);
+
+			logger.log(Level.INFO, "Reserved values of {0} nodes for {1}, {2} values are not unique", new Object[] { reserved, scope, duplicates });
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "Unable to reserve existing values of {0}: {1}", new Object[] { scope, fex.getMessage() });
+
+		} catch (RuntimeException rex) {
+
+			// e.g. a deadlock with a concurrent reservation, retried with the next validation
+			logger.log(Level.WARNING, "Unable to reserve existing values of " + scope, rex);
+		}
+	}
+
+	private UniqueKeyCommand getUniqueKeys() {
+		return Services.command(SecurityContext.getSuperUserInstance(), UniqueKeyCommand.class);
+	}
+
+	//~--- inner interfaces -----------------------------------------------
+
+	/**
+	 * The source of the existing nodes of a scope and their values.
+	 */
+	public interface ScopeInitializer {
+
+		/**
+		 * Returns the existing nodes that can hold a value in the scope.
+		 *
+		 * @return the nodes
+		 * @throws FrameworkException
+		 */
+		public Iterable<Node> getExistingNodes() throws FrameworkException;
+
+		/**
+		 * Returns the value of the given node that must be unique, or null
+		 * if the node does not hold a value.
+		 *
+		 * @param node the node
+		 * @return the value
+		 */
+		public String getValue(final Node node);
+	}
+}
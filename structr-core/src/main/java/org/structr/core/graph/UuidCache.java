@@ -0,0 +1,144 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.structr.common.BoundedCache;
+import org.structr.core.EntityContext;
+import org.structr.core.entity.AbstractNode;
+
+/**
+ * Process-wide cache that maps node UUIDs to node ids, used by
+ * {@link GetNodeByIdCommand}.
+ *
+ * The cache reflects committed state only.
+ * Entries are dropped when the UUID of a node is modified or removed in a
+ * finished transaction (see {@link EntityContext}). Node ids of deleted
+ * nodes are re-used by neo4j, so callers must verify that the node they
+ * load for a cached id still has the requested UUID.
+ */
+public class UuidCache {
+
+	private final AtomicLong generation      = new AtomicLong(0);
+	private BoundedCache<String, Long> cache = null;
+
+	public UuidCache(final int maxSize) {
+		this.cache = new BoundedCache<String, Long>("UUID cache", maxSize);
+	}
+
+	public Long get(final String uuid) {
+		return cache.get(uuid);
+	}
+
+	/**
+	 * Returns the current invalidation generation. Callers must obtain the
+	 * generation <b>before</b> they look up the node they want to cache,
+	 * and pass it to {@link #put}.
+	 *
+	 * @return the current generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	public void put(final String uuid, final long nodeId, final long expectedGeneration) {
+
+		if (generation.get() == expectedGeneration) {
+
+			cache.put(uuid, nodeId);
+
+			// re-check, invalidation may have happened in between
+			if (generation.get() != expectedGeneration) {
+				cache.remove(uuid);
+			}
+		}
+	}
+
+	public void invalidate(final String uuid) {
+
+		generation.incrementAndGet();
+		cache.remove(uuid);
+	}
+
+	/**
+	 * Invalidates all UUIDs that were assigned or removed in the given
+	 * transaction.
+	 *
+	 * @param data the transaction data
+	 */
+	public void invalidate(final TransactionData data) {
+
+		if (data == null) {
+			return;
+		}
+
+		String uuidKey = AbstractNode.uuid.dbName();
+
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+
+			if (uuidKey.equals(entry.key())) {
+
+				invalidate(entry.previouslyCommitedValue());
+				invalidate(entry.value());
+			}
+		}
+
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+
+			if (uuidKey.equals(entry.key())) {
+				invalidate(entry.previouslyCommitedValue());
+			}
+		}
+	}
+
+	public void clear() {
+
+		generation.incrementAndGet();
+		cache.clear();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+
+	// ----- private methods -----
+	private void invalidate(final Object value) {
+
+		if (value instanceof String) {
+			invalidate((String) value);
+		}
+	}
+}
@@ -26,7 +26,8 @@ import org.structr.core.graph.NodeAttribute;
  * Represents a distance search.
  *
  * Here, the key is a search string to be passed to geocoding, and value is
- * a distance in km.
+ * a distance in km. Alternatively, the coordinates of the center can be
+ * given directly, which skips geocoding.
  *
  * <p>
  * Used in {@see SearchNodeCommand}.
@@ -36,12 +37,20 @@ import org.structr.core.graph.NodeAttribute;
 public class DistanceSearchAttribute extends SearchAttribute {
 
     private NodeAttribute nodeAttribute;
+    private Double latitude  = null;
+    private Double longitude = null;
 
     public DistanceSearchAttribute(final String searchString, final Double distance, final SearchOperator searchOp) {
         nodeAttribute = new NodeAttribute(new StringProperty(searchString), distance);
         setSearchOperator(searchOp);
     }
 
+    public DistanceSearchAttribute(final Double latitude, final Double longitude, final Double distance, final SearchOperator searchOp) {
+        this(latitude + "," + longitude, distance, searchOp);
+        this.latitude  = latitude;
+        this.longitude = longitude;
+    }
+
     @Override
     public Object getAttribute() {
         return nodeAttribute;
@@ -60,4 +69,19 @@ public class DistanceSearchAttribute extends SearchAttribute {
         return (Double) nodeAttribute.getValue();
     }
 
+    /**
+     * Returns the coordinates of the center, or null if the center is
+     * given as an address.
+     *
+     * @return latitude and longitude, or null
+     */
+    public Double[] getCoordinates() {
+
+        if (latitude != null && longitude != null) {
+            return new Double[] { latitude, longitude };
+        }
+
+        return null;
+    }
+
 }
@@ -0,0 +1,244 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.graph.search;
+
+import java.io.UnsupportedEncodingException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * An opaque position in a sorted search result, used for keyset (seek)
+ * pagination.
+ *
+ * A cursor stores the sort key value and the UUID of the last object of a
+ * page. {@link SearchNodeCommand} turns it into a lucene range query that
+ * only matches the objects after that position, so that every page costs
+ * the same, no matter how deep into the result it is. Objects with the
+ * same sort key value are ordered by their UUID.
+ *
+ * Cursors are passed in place of the offset id and can be distinguished
+ * from UUIDs by their prefix. The cursor {@link #START} starts keyset
+ * pagination at the beginning of the result.
+ */
+public class PageCursor {
+
+	public static final String PREFIX     = "~";
+	public static final String START      = PREFIX;
+
+	private static final String SEPARATOR = "\n";
+	private static final String MIN_TERM  = "\u0001";
+	private static final String MAX_TERM  = "\uffff";
+
+	private boolean descending = false;
+	private String sortValue   = null;
+	private String sortKey     = null;
+	private String uuid        = null;
+
+	private PageCursor(final String sortKey, final boolean descending, final String uuid, final String sortValue) {
+
+		this.descending = descending;
+		this.sortValue  = sortValue;
+		this.sortKey    = sortKey;
+		this.uuid       = uuid;
+	}
+
+	/**
+	 * Indicates whether the given offset id is a cursor.
+	 *
+	 * @param offsetId the offset id
+	 * @return whether the given string is a cursor
+	 */
+	public static boolean isCursor(final String offsetId) {
+		return offsetId != null && offsetId.startsWith(PREFIX);
+	}
+
+	/**
+	 * Creates a cursor that points behind the given object.
+	 *
+	 * @param obj the last object of the current page
+	 * @param sortKey the sort key, or null
+	 * @param descending the sort order
+	 * @return the cursor
+	 */
+	public static PageCursor after(final GraphObject obj, final PropertyKey sortKey, final boolean descending) {
+
+		String value = null;
+
+		if (sortKey != null) {
+
+			Object rawValue = obj.getProperty(sortKey);
+			value           = rawValue != null && StringUtils.isNotEmpty(rawValue.toString()) ? rawValue.toString() : SearchNodeCommand.IMPROBABLE_SEARCH_VALUE;
+		}
+
+		return new PageCursor(sortKey != null ? sortKey.dbName() : "", descending, obj.getUuid(), value);
+	}
+
+	/**
+	 * Decodes the given cursor and checks that it was created for the
+	 * given sort key and order.
+	 *
+	 * @param cursor the encoded cursor
+	 * @param sortKey the sort key of the request
+	 * @param descending the sort order of the request
+	 * @return the cursor
+	 * @throws FrameworkException if the cursor is invalid or does not match the request
+	 */
+	public static PageCursor decode(final String cursor, final PropertyKey sortKey, final boolean descending) throws FrameworkException {
+
+		String sortKeyName = sortKey != null ? sortKey.dbName() : "";
+
+		if (START.equals(cursor)) {
+
+			return new PageCursor(sortKeyName, descending, null, null);
+		}
+
+		try {
+
+			String[] parts = new String(Base64.decodeBase64(cursor.substring(PREFIX.length())), "UTF-8").split(SEPARATOR, 4);
+			if (parts.length >= 3) {
+
+				PageCursor pageCursor = new PageCursor(parts[0], "1".equals(parts[1]), parts[2], parts.length > 3 ? parts[3] : null);
+
+				if (!sortKeyName.equals(pageCursor.sortKey) || descending != pageCursor.descending) {
+
+					throw new FrameworkException(400, "Page cursor does not match sort key and order of the request");
+				}
+
+				return pageCursor;
+			}
+
+		} catch (UnsupportedEncodingException ueex) {}
+
+		throw new FrameworkException(400, "Invalid page cursor " + cursor);
+	}
+
+	/**
+	 * Returns the encoded form of this cursor.
+	 *
+	 * @return the encoded cursor
+	 */
+	public String encode() {
+
+		if (uuid == null) {
+			return START;
+		}
+
+		StringBuilder buf = new StringBuilder();
+
+		buf.append(sortKey);
+		buf.append(SEPARATOR);
+		buf.append(descending ? "1" : "0");
+		buf.append(SEPARATOR);
+		buf.append(uuid);
+
+		if (sortValue != null) {
+
+			buf.append(SEPARATOR);
+			buf.append(sortValue);
+		}
+
+		try {
+			return PREFIX + Base64.encodeBase64URLSafeString(buf.toString().getBytes("UTF-8"));
+
+		} catch (UnsupportedEncodingException ueex) {}
+
+		return START;
+	}
+
+	/**
+	 * Returns the lucene query that matches all objects after (or, if
+	 * reverse is set, before) this cursor, or null if the cursor is at
+	 * the start of the result.
+	 *
+	 * The cursor position lies between the object it was created from
+	 * and the next one, so that object is included in reverse direction
+	 * only. Hence page -1 from a cursor is the page the cursor was
+	 * created from.
+	 *
+	 * @param reverse whether to match the objects before this cursor
+	 * @return the query string, or null
+	 */
+	public String getQueryString(final boolean reverse) {
+
+		if (uuid == null) {
+			return null;
+		}
+
+		// after the cursor in ascending order means greater than
+		boolean greater  = descending == reverse;
+		String uuidKey   = AbstractNode.uuid.dbName();
+		String uuidRange = range(uuidKey, uuid, greater, reverse);
+
+		if (StringUtils.isEmpty(sortKey)) {
+
+			return uuidRange;
+		}
+
+		String exactValue = "\"" + Search.escapeForLuceneExact(sortValue) + "\"";
+
+		return "(" + range(sortKey, sortValue, greater, false) + " OR (" + Search.escapeForLucene(sortKey) + ":" + exactValue + " AND " + uuidRange + "))";
+	}
+
+	/**
+	 * Returns the sort order that the range query of this cursor is
+	 * based on: lexicographic term order of the sort key, then the UUID.
+	 *
+	 * @param reverse whether to reverse the sort order
+	 * @return the sort order
+	 */
+	public Sort getSort(final boolean reverse) {
+
+		boolean sortDescending = descending != reverse;
+		SortField uuidField    = new SortField(AbstractNode.uuid.dbName(), SortField.STRING, sortDescending);
+
+		if (StringUtils.isEmpty(sortKey)) {
+
+			return new Sort(uuidField);
+		}
+
+		return new Sort(new SortField(sortKey, SortField.STRING, sortDescending), uuidField);
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+
+	// ----- private methods -----
+	private String range(final String key, final String value, final boolean greater, final boolean inclusive) {
+
+		String escapedValue = Search.escapeForLuceneExact(value);
+		String lower        = greater ? escapedValue : MIN_TERM;
+		String upper        = greater ? MAX_TERM : escapedValue;
+
+		// lucene 3 can not mix inclusive and exclusive bounds, which
+		// does not matter for the artificial MIN_TERM / MAX_TERM bound
+		String open         = inclusive ? "[" : "{";
+		String close        = inclusive ? "]" : "}";
+
+		return Search.escapeForLucene(key) + ":" + open + "\"" + lower + "\" TO \"" + upper + "\"" + close;
+	}
+}
@@ -42,7 +42,6 @@ import java.text.Normalizer;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,6 +56,8 @@ import org.structr.core.Result;
 public abstract class Search {
 
 	public static final String DISTANCE_SEARCH_KEYWORD    = "distance";
+	public static final String LATITUDE_SEARCH_KEYWORD    = "lat";
+	public static final String LONGITUDE_SEARCH_KEYWORD   = "lon";
 	private static final Logger logger                    = Logger.getLogger(Search.class.getName());
 	private static final Set<Character> specialCharsExact = new LinkedHashSet<Character>();
 	private static final Set<Character> specialChars      = new LinkedHashSet<Character>();
@@ -96,39 +97,36 @@ public abstract class Search {
 	private static List<SearchAttribute> getExactTypeAndSubtypesInternal(final String searchString) {
 
 		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
+		ModuleService moduleService = Services.getService(ModuleService.class);
+		String typeName             = searchString;
+		Set<String> subtypes        = moduleService.getSubtypes(typeName);
 
-		// attrs.add(Search.orExactType(searchString));
-		ModuleService moduleService      = Services.getService(ModuleService.class);
-		Map<String, Class> entities      = moduleService.getCachedNodeEntities();
-		Class parentClass                = entities.get(searchString);
+		if (subtypes == null) {
 
-		if (parentClass == null) {
-
-			// no entity class for the given type found,
-			// examine interface types and subclasses
-			Set<Class> classesForInterface = moduleService.getClassesForInterface(EntityContext.normalizeEntityName(searchString));
-
-			if (classesForInterface != null) {
-
-				for (Class clazz : classesForInterface) {
-
-					attrs.addAll(getExactTypeAndSubtypesInternal(clazz.getSimpleName()));
-				}
+			// interface names may need to be normalized
+			typeName = EntityContext.normalizeEntityName(searchString);
+			subtypes = moduleService.getSubtypes(typeName);
+		}
 
-			}
+		if (subtypes == null || subtypes.isEmpty()) {
 
 			return attrs;
 		}
 
-		for (Map.Entry<String, Class> entity : entities.entrySet()) {
+		// the ancestry is only present for nodes that were indexed after
+		// it was introduced, so it must be enabled explicitly after the
+		// index of an existing database has been rebuilt
+		if (Boolean.parseBoolean(Services.getConfigurationValue(Services.TYPE_ANCESTRY_SEARCH, "false"))) {
 
-			Class entityClass = entity.getValue();
+			// every node is indexed with the names of all of its supertypes
+			attrs.add(new TextualSearchAttribute(SearchNodeCommand.typeAncestry, exactMatch(typeName), SearchOperator.OR));
 
-			if (parentClass.isAssignableFrom(entityClass)) {
+		} else {
 
-				attrs.add(Search.orExactType(entity.getKey()));
-			}
+			for (String subtype : subtypes) {
 
+				attrs.add(Search.orExactType(subtype));
+			}
 		}
 
 		return attrs;
@@ -34,7 +34,9 @@ import org.neo4j.index.lucene.QueryContext;
 
 import org.structr.common.GeoHelper;
 import org.structr.common.GeoHelper.GeoCodingResult;
+import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
+import org.structr.core.property.StringProperty;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
@@ -72,6 +74,14 @@ import java.util.logging.Logger;
 public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand {
 
 	public static String IMPROBABLE_SEARCH_VALUE = "×¦÷þ·";
+
+	/**
+	 * Index-only key that holds the names of the type, the supertypes and
+	 * the interfaces of a node, so that a search for a type including all
+	 * of its subtypes is a single term query.
+	 */
+	public static final Property<String> typeAncestry = new StringProperty("typeAncestry");
+
 	private static final Logger logger           = Logger.getLogger(SearchNodeCommand.class.getName());
 	
 	private static final boolean INCLUDE_DELETED_AND_HIDDEN = true;
@@ -132,14 +142,26 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 	public Result<T> execute(final boolean includeDeletedAndHidden, final boolean publicOnly,
 			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId) throws FrameworkException {
 		
-		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, null);
+		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, null, null);
 	}
 
 	public Result<T> execute(final boolean includeDeletedAndHidden, final boolean publicOnly,
 			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId,
 			      final Integer sortType) throws FrameworkException {
 		
-		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, sortType);
+		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, sortType, null);
+	}
+
+	/**
+	 * Like {@link #execute(boolean, boolean, List, PropertyKey, boolean, int, int, String, Integer)},
+	 * but returns only the values of the given property keys, see
+	 * {@link NodeFactory#createProjection(IndexHits, Set)}.
+	 */
+	public Result<T> execute(final boolean includeDeletedAndHidden, final boolean publicOnly,
+			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId,
+			      final Integer sortType, final Set<PropertyKey> projection) throws FrameworkException {
+		
+		return search(includeDeletedAndHidden, publicOnly, searchAttrs, sortKey, sortDescending, pageSize, page, offsetId, sortType, projection);
 	}
 	
 	/**
@@ -156,11 +178,12 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 	 * @param page                          Return the page of the result set with this page size
 	 * @param offsetId                      If given, start pagination at the object with this UUID
 	 * @param sortType                      The entity type to sort the results (needed for lucene)
+	 * @param projection                    If set, return only the values of these keys
 	 * @return
 	 */
 	private Result<T> search(final boolean includeDeletedAndHidden, final boolean publicOnly,
 			      final List<SearchAttribute> searchAttrs, final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final int page, final String offsetId,
-			      final Integer sortType)
+			      final Integer sortType, final Set<PropertyKey> projection)
 		throws FrameworkException {
 
 		if (page == 0 || pageSize <= 0) {
@@ -168,10 +191,32 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 			return Result.EMPTY_RESULT;
 		}
 
+		// keyset pagination: the cursor replaces the offset id and the
+		// page is counted from the cursor position
+		PageCursor pageCursor        = null;
+		String nextPageCursor        = null;
+		boolean reverse              = false;
+		String offsetIdOrNull        = offsetId;
+		int pageOrCursorPage         = page;
+
+		if (PageCursor.isCursor(offsetId)) {
+
+			if (sortType != null && sortType.intValue() != SortField.STRING) {
+
+				throw new FrameworkException(400, "Page cursors can only be used with string sort keys");
+			}
+
+			pageCursor       = PageCursor.decode(offsetId, sortKey, sortDescending);
+			reverse          = page < 0;
+			pageOrCursorPage = Math.abs(page);
+			offsetIdOrNull   = null;
+		}
+
 		GraphDatabaseService graphDb = (GraphDatabaseService) arguments.get("graphDb");
-		NodeFactory nodeFactory      = new NodeFactory(securityContext, includeDeletedAndHidden, publicOnly, pageSize, page, offsetId);
+		NodeFactory nodeFactory      = new NodeFactory(securityContext, includeDeletedAndHidden, publicOnly, pageSize, pageOrCursorPage, offsetIdOrNull);
 		Result finalResult           = new Result(new ArrayList<AbstractNode>(), null, true, false);
 		boolean allExactMatch        = true;
+		boolean projected            = false;
 		final Index<Node> index;
 
 		// boolean allFulltext = false;
@@ -195,9 +240,18 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 				} else if (attr instanceof DistanceSearchAttribute) {
 
 					distanceSearch = (DistanceSearchAttribute) attr;
-					coords         = GeoHelper.geocode(distanceSearch.getKey().dbName());
 					dist           = distanceSearch.getValue();
 
+					Double[] center = distanceSearch.getCoordinates();
+					if (center != null) {
+
+						coords = new GeoCodingResult(center[0], center[1]);
+
+					} else {
+
+						coords = GeoHelper.geocode(distanceSearch.getKey().dbName());
+					}
+
 				} else if (attr instanceof SearchAttributeGroup) {
 
 					SearchAttributeGroup attributeGroup = (SearchAttributeGroup) attr;
@@ -245,11 +299,30 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 				logger.log(Level.FINEST, "Textual Query String: {0}", queryString);
 
 				String query = queryString.toString();
+
+				if (pageCursor != null) {
+
+					if (distanceSearch != null || !allExactMatch) {
+
+						throw new FrameworkException(400, "Page cursors can only be used with exact search attributes");
+					}
+
+					String cursorQuery = pageCursor.getQueryString(reverse);
+					if (cursorQuery != null) {
+
+						query = "(" + query + ") AND " + cursorQuery;
+					}
+				}
 				
 				QueryContext queryContext = new QueryContext(query);
 				IndexHits hits            = null;
 
-				if (sortKey != null) {
+				if (pageCursor != null) {
+
+					// the range query relies on term order, not on the collation order
+					queryContext.sort(pageCursor.getSort(reverse));
+
+				} else if (sortKey != null) {
 
 					if (sortType != null) {
 
@@ -328,12 +401,36 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 					: 0 });
 
 //                              IndexHits hits = index.query(new QueryContext(query.toString()));//.sort("name"));
-				intermediateResult = nodeFactory.createNodes(hits);
+				if (projection != null && filters.isEmpty() && pageCursor == null) {
+
+					// filters and page cursors need the structr nodes
+					intermediateResult = nodeFactory.createProjection(hits, projection);
+					projected          = true;
+
+				} else {
+
+					intermediateResult = nodeFactory.createNodes(hits);
+				}
 
 				if (hits != null) {
 					hits.close();
 				}
 
+				if (pageCursor != null) {
+
+					List<GraphObject> nodes = intermediateResult.getResults();
+
+					if (reverse) {
+						Collections.reverse(nodes);
+					}
+
+					// a full page may be followed by another one
+					if (!nodes.isEmpty() && nodes.size() == pageSize) {
+
+						nextPageCursor = PageCursor.after(nodes.get(nodes.size() - 1), sortKey, sortDescending).encode();
+					}
+				}
+
 				long t2 = System.nanoTime();
 
 				logger.log(Level.FINE, "Creating structr nodes took {0} ns, {1} nodes made.", new Object[] { t2 - t1, intermediateResult.getResults().size() });
@@ -405,8 +502,16 @@ public class SearchNodeCommand<T extends GraphObject> extends NodeServiceCommand
 			// eventually filter by distance from a given point
 			if (coords != null) {}
 
+			// keep the cursor of the unfiltered page
+			intermediateResult.setNextPageCursor(nextPageCursor);
+
 			finalResult = intermediateResult;
 
+			if (projection != null && !projected) {
+
+				finalResult = NodeFactory.project(finalResult, projection);
+			}
+
 			long t3 = System.nanoTime();
 
 			logger.log(Level.FINE, "Filtering nodes took {0} ns. Result size now {1}.", new Object[] { t3 - t2, finalResult.getResults().size() });
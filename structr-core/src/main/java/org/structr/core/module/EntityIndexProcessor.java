@@ -0,0 +1,231 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.module;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that writes the names of all node entity,
+ * relationship, service and agent classes of a compilation into the class
+ * index {@link #INDEX_RESOURCE}, which is read by {@link ModuleService}
+ * instead of scanning the classes of a jar or classes directory.
+ *
+ * The processor is registered in META-INF/services of structr-core, so it
+ * runs for every module that is compiled against structr-core. Names are
+ * merged with an existing index, so that incremental compilations keep the
+ * classes that were not recompiled. Names from an existing index are
+ * dropped when the compiler can no longer find their class, or when the
+ * class is no longer a non-abstract subtype of one of the indexed types.
+ */
+@SupportedAnnotationTypes("*")
+public class EntityIndexProcessor extends AbstractProcessor {
+
+	public static final String INDEX_RESOURCE = "META-INF/structr/classes.index";
+
+	private static final String[] indexedTypes = new String[] {
+		"org.structr.core.entity.AbstractNode",
+		"org.structr.core.entity.AbstractRelationship",
+		"org.structr.core.Service",
+		"org.structr.core.agent.Agent"
+	};
+
+	private Set<String> classNames     = new TreeSet<String>();
+	private List<TypeMirror> baseTypes = null;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+
+		if (roundEnv.processingOver()) {
+
+			writeIndex();
+
+		} else if (!getBaseTypes().isEmpty()) {
+
+			for (Element element : roundEnv.getRootElements()) {
+				collect(element);
+			}
+		}
+
+		// do not claim any annotations
+		return false;
+	}
+
+	// ----- private methods -----
+	private List<TypeMirror> getBaseTypes() {
+
+		if (baseTypes == null) {
+
+			baseTypes = new LinkedList<TypeMirror>();
+
+			for (String name : indexedTypes) {
+
+				TypeElement baseType = processingEnv.getElementUtils().getTypeElement(name);
+
+				if (baseType != null) {
+					baseTypes.add(processingEnv.getTypeUtils().erasure(baseType.asType()));
+				}
+			}
+		}
+
+		return baseTypes;
+	}
+
+	private void collect(final Element element) {
+
+		if (element.getKind() != ElementKind.CLASS) {
+			return;
+		}
+
+		TypeElement type = (TypeElement) element;
+
+		if (isIndexed(type)) {
+			classNames.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+		}
+
+		for (Element enclosed : type.getEnclosedElements()) {
+			collect(enclosed);
+		}
+	}
+
+	private boolean isIndexed(final TypeElement type) {
+
+		if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+
+			TypeMirror erasure = processingEnv.getTypeUtils().erasure(type.asType());
+
+			for (TypeMirror baseType : getBaseTypes()) {
+
+				if (processingEnv.getTypeUtils().isSubtype(erasure, baseType)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the class with the given binary name from an existing
+	 * index still exists and is still indexed. Classes are looked up by
+	 * their canonical name, i.e. nested classes with '.' instead of '$'.
+	 */
+	private boolean isStillIndexed(final String binaryName) {
+
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+
+		return type != null && isIndexed(type);
+	}
+
+	private void writeIndex() {
+
+		Set<String> names = new TreeSet<String>(classNames);
+		boolean existed   = false;
+
+		try {
+
+			FileObject existing   = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), "UTF-8"));
+
+			existed = true;
+
+			try {
+
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+					line = line.trim();
+
+					if (!line.isEmpty() && !line.startsWith("#") && !names.contains(line)) {
+
+						if (isStillIndexed(line)) {
+
+							names.add(line);
+
+						} else {
+
+							processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Removing " + line + " from class index " + INDEX_RESOURCE);
+						}
+					}
+				}
+
+			} finally {
+
+				reader.close();
+			}
+
+		} catch (IOException ioex) {
+
+			// no index yet
+		}
+
+		if (names.isEmpty() && !existed) {
+			return;
+		}
+
+		try {
+
+			FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+			Writer writer    = new OutputStreamWriter(index.openOutputStream(), "UTF-8");
+
+			try {
+
+				writer.write("# structr class index, generated by " + EntityIndexProcessor.class.getName() + "\n");
+
+				for (String name : names) {
+
+					writer.write(name);
+					writer.write("\n");
+				}
+
+			} finally {
+
+				writer.close();
+			}
+
+		} catch (IOException ioex) {
+
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write class index " + INDEX_RESOURCE + ": " + ioex.getMessage());
+		}
+	}
+}
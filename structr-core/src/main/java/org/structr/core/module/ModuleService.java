@@ -28,16 +28,22 @@ import org.structr.core.entity.GenericNode;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import java.lang.reflect.Modifier;
 
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -51,6 +57,11 @@ import org.structr.core.*;
 
 /**
  * The module service main class.
+ *
+ * Registers the node entity, relationship, service and agent classes of all
+ * structr jars and classes directories on the class path. Resources that
+ * contain a class index (see {@link EntityIndexProcessor}) are read from the
+ * index, all other resources are scanned class by class.
  * 
  * @author Christian Morgner
  */
@@ -63,6 +74,8 @@ public class ModuleService implements SingletonService {
 	private static final Map<String, Class> relationshipClassCache           = new ConcurrentHashMap<String, Class>(10, 0.9f, 8);
 	private static final Map<String, Class> nodeEntityClassCache             = new ConcurrentHashMap<String, Class>(100, 0.9f, 8);
 	private static final Map<String, Set<Class>> interfaceCache              = new ConcurrentHashMap<String, Set<Class>>(10, 0.9f, 8);
+	private static final ConcurrentMap<String, Set<String>> subtypeCache     = new ConcurrentHashMap<String, Set<String>>(100, 0.9f, 8);
+	private static final Map<Class, Set<String>> typeAncestryCache           = new ConcurrentHashMap<Class, Set<String>>(100, 0.9f, 8);
 	private static final Set<String> agentPackages                           = new LinkedHashSet<String>();
 	private static final String fileSep                                      = System.getProperty("file.separator");
 	private static final String fileSepEscaped                               = fileSep.replaceAll("\\\\", "\\\\\\\\");	// ....
@@ -70,6 +83,9 @@ public class ModuleService implements SingletonService {
 	private static final String testClassesDir                               = fileSep.concat("test-classes");
 	private static final String classesDir                                   = fileSep.concat("classes");
 
+	private final Set<String> indexedClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private int indexedResources             = 0;
+
 	//~--- methods --------------------------------------------------------
 
 	/**
@@ -124,19 +140,26 @@ public class ModuleService implements SingletonService {
 		nodeEntityClassCache.clear();
 		relationshipClassCache.clear();
 		agentClassCache.clear();
+		typeAncestryCache.clear();
+		subtypeCache.clear();
 
 	}
 
 	private void scanResources() {
 
+		long start                = System.currentTimeMillis();
 		Set<String> resourcePaths = getResourcesToScan();
 
+		indexedResources = 0;
+
 		for (String resourcePath : resourcePaths) {
 
 			scanResource(resourcePath);
 		}
 
-		logger.log(Level.INFO, "{0} JARs scanned", resourcePaths.size());
+		logger.log(Level.INFO, "{0} JARs processed in {1} ms, {2} read from class index, {3} scanned", new Object[] {
+			resourcePaths.size(), System.currentTimeMillis() - start, indexedResources, resourcePaths.size() - indexedResources
+		});
 
 	}
 
@@ -179,6 +202,7 @@ public class ModuleService implements SingletonService {
 
 						nodeEntityClassCache.put(simpleName, clazz);
 						nodeEntityPackages.add(fullName.substring(0, fullName.lastIndexOf(".")));
+						registerSubtype(clazz);
 
 						for (Class interfaceClass : clazz.getInterfaces()) {
 
@@ -249,13 +273,21 @@ public class ModuleService implements SingletonService {
 					}
 				}
 				
-			} catch (Throwable t) {}
+			} catch (Throwable t) {
+
+				// scanned resources contain many classes that can not be
+				// loaded, but every class from an index should be there
+				if (indexedClasses.contains(name)) {
+
+					logger.log(Level.WARNING, "Class {0} from class index of {1} could not be loaded: {2}", new Object[] { className, module.getModulePath(), t.toString() });
+				}
+			}
 
 		}
 
 	}
 
-	private Module loadResource(String resource) throws IOException {
+	Module loadResource(String resource) throws IOException {
 
 		// create module
 		DefaultModule ret   = new DefaultModule(resource);
@@ -264,6 +296,15 @@ public class ModuleService implements SingletonService {
 		if (resource.endsWith(".jar") || resource.endsWith(".war")) {
 
 			ZipFile zipFile = new ZipFile(new File(resource), ZipFile.OPEN_READ);
+			ZipEntry index  = zipFile.getEntry(EntityIndexProcessor.INDEX_RESOURCE);
+
+			if (index != null) {
+
+				readIndex(zipFile.getInputStream(index), classes);
+				zipFile.close();
+
+				return ret;
+			}
 
 			// conventions that might be useful here:
 			// ignore entries beginning with meta-inf/
@@ -291,18 +332,56 @@ public class ModuleService implements SingletonService {
 
 			zipFile.close();
 
-		} else if (resource.endsWith(classesDir)) {
+		} else if (resource.endsWith(classesDir) || resource.endsWith(testClassesDir)) {
+
+			File index = new File(resource, EntityIndexProcessor.INDEX_RESOURCE);
 
-			addClassesRecursively(new File(resource), classesDir, classes);
+			if (index.isFile()) {
 
-		} else if (resource.endsWith(testClassesDir)) {
+				readIndex(new FileInputStream(index), classes);
 
-			addClassesRecursively(new File(resource), testClassesDir, classes);
+			} else {
+
+				addClassesRecursively(new File(resource), resource.endsWith(classesDir) ? classesDir : testClassesDir, classes);
+			}
 		}
 
 		return ret;
 	}
 
+	/**
+	 * Reads the class names from a class index that was written by
+	 * {@link EntityIndexProcessor}, and closes the given stream.
+	 *
+	 * @param source the index
+	 * @param classes the set to add the class names to
+	 *
+	 * @throws IOException
+	 */
+	private void readIndex(final InputStream source, final Set<String> classes) throws IOException {
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(source, "UTF-8"));
+
+		try {
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+				line = line.trim();
+
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					classes.add(line);
+					indexedClasses.add(line);
+				}
+			}
+
+			indexedResources++;
+
+		} finally {
+
+			reader.close();
+		}
+	}
+
 	private void addClassesRecursively(File dir, String prefix, Set<String> classes) {
 
 		int prefixLen = prefix.length();
@@ -341,6 +420,46 @@ public class ModuleService implements SingletonService {
 
 	}
 
+	/**
+	 * Adds the given node entity class to the subtype sets of all of its
+	 * ancestors, so that type and subtype searches do not need to examine
+	 * all entity classes on every query.
+	 *
+	 * @param type the node entity class
+	 */
+	private void registerSubtype(final Class type) {
+
+		String simpleName = type.getSimpleName();
+
+		for (String ancestor : getTypeAncestry(type)) {
+
+			Set<String> subtypes = subtypeCache.get(ancestor);
+			if (subtypes == null) {
+
+				subtypes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+				Set<String> existingSubtypes = subtypeCache.putIfAbsent(ancestor, subtypes);
+				if (existingSubtypes != null) {
+
+					subtypes = existingSubtypes;
+				}
+			}
+
+			subtypes.add(simpleName);
+		}
+	}
+
+	private void collectInterfaces(final Class type, final Set<String> names) {
+
+		for (Class interfaceClass : type.getInterfaces()) {
+
+			if (names.add(interfaceClass.getSimpleName())) {
+
+				collectInterfaces(interfaceClass, names);
+			}
+		}
+	}
+
 	//~--- get methods ----------------------------------------------------
 
 	public Set<String> getNodeEntityPackages() {
@@ -373,6 +492,69 @@ public class ModuleService implements SingletonService {
 
 	}
 
+	/**
+	 * Returns the simple names of all node entity classes that are, extend
+	 * or implement the type with the given simple name, or null if there
+	 * is no such node entity class.
+	 *
+	 * @param simpleName the simple name of a class or an interface
+	 * @return the simple names of the subtypes, or null
+	 */
+	public Set<String> getSubtypes(final String simpleName) {
+
+		return subtypeCache.get(simpleName);
+
+	}
+
+	/**
+	 * Returns the simple names of the given class, all of its superclasses
+	 * that are node entities and all of the interfaces it implements.
+	 *
+	 * @param type the node entity class
+	 * @return the type ancestry
+	 */
+	public Set<String> getTypeAncestry(final Class type) {
+
+		Set<String> ancestry = typeAncestryCache.get(type);
+		if (ancestry == null) {
+
+			ancestry = new LinkedHashSet<String>();
+
+			for (Class localType = type; localType != null && AbstractNode.class.isAssignableFrom(localType); localType = localType.getSuperclass()) {
+
+				ancestry.add(localType.getSimpleName());
+				collectInterfaces(localType, ancestry);
+			}
+
+			ancestry = Collections.unmodifiableSet(ancestry);
+
+			typeAncestryCache.put(type, ancestry);
+		}
+
+		return ancestry;
+
+	}
+
+	/**
+	 * Returns the type ancestry of the node entity class with the given
+	 * simple name, or only the given name if there is no such class.
+	 *
+	 * @param typeName the value of the type property of a node
+	 * @return the type ancestry
+	 */
+	public Set<String> getTypeAncestry(final String typeName) {
+
+		Class type = getNodeEntityClass(typeName);
+
+		if (type == null || (GenericNode.class.equals(type) && !GenericNode.class.getSimpleName().equals(typeName))) {
+
+			return Collections.singleton(typeName);
+		}
+
+		return getTypeAncestry(type);
+
+	}
+
 	public Map<String, Class> getCachedNodeEntities() {
 
 		return nodeEntityClassCache;
@@ -424,6 +606,7 @@ public class ModuleService implements SingletonService {
 							if (!Modifier.isAbstract(nodeClass.getModifiers())) {
 
 								nodeEntityClassCache.put(name, nodeClass);
+								registerSubtype(nodeClass);
 
 								// first match wins
 								break;
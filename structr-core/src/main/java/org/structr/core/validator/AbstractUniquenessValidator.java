@@ -0,0 +1,209 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ * 
+ *  This file is part of structr <http://structr.org>.
+ * 
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.core.validator;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.PropertyValidator;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.UniqueKeyCommand;
+import org.structr.core.graph.UniqueKeyIndexer;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Base class for validators that ensure the uniqueness of a property
+ * value within a scope.
+ *
+ * Values of nodes are reserved in the unique key index of the
+ * {@link UniqueKeyCommand} during the commit of the transaction that sets
+ * them, which is a single index lookup and prevents concurrent
+ * transactions from committing the same value. The first validation in a
+ * scope starts the {@link UniqueKeyIndexer}, which reserves the values of
+ * all existing nodes of the scope in the background. Until it is finished,
+ * values are also checked with a search. Values of relationships are
+ * always checked with a search.
+ */
+public abstract class AbstractUniquenessValidator extends PropertyValidator<String> {
+
+	private static final Logger logger = Logger.getLogger(AbstractUniquenessValidator.class.getName());
+
+	/**
+	 * Returns the name of the scope in which the values of the given key
+	 * must be unique.
+	 *
+	 * @param key the property key
+	 * @return the scope
+	 */
+	protected abstract String getScope(final PropertyKey key);
+
+	/**
+	 * Indicates whether the given node belongs to the scope of this validator.
+	 *
+	 * @param node the node
+	 * @return whether the node belongs to the scope
+	 */
+	protected abstract boolean isInScope(final Node node);
+
+	/**
+	 * Returns the existing nodes that can hold a value of the given key in
+	 * the scope of this validator.
+	 *
+	 * @param key the property key
+	 * @return the nodes
+	 * @throws FrameworkException
+	 */
+	protected abstract Iterable<Node> getExistingNodes(final PropertyKey key) throws FrameworkException;
+
+	/**
+	 * Searches for a node that holds the given value.
+	 *
+	 * @param key the property key
+	 * @param value the value
+	 * @return the node, or null
+	 * @throws FrameworkException
+	 */
+	protected abstract AbstractNode search(final PropertyKey key, final String value) throws FrameworkException;
+
+	/**
+	 * Returns the form of the given value that must be unique.
+	 *
+	 * @param value the value
+	 * @return the normalized value
+	 */
+	protected String normalize(final String value) {
+		return value;
+	}
+
+	/**
+	 * Reserves the given value for the given object.
+	 *
+	 * @param object the object
+	 * @param key the property key
+	 * @param value the value
+	 * @return null if the value is unique, or the node that already holds the value
+	 */
+	protected AbstractNode getConflictingNode(final GraphObject object, final PropertyKey key, final String value) {
+
+		try {
+
+			PropertyContainer propertyContainer = object.getPropertyContainer();
+
+			if (!(propertyContainer instanceof Node) || !TransactionCommand.isInTransaction()) {
+
+				return search(key, value);
+			}
+
+			SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+			UniqueKeyCommand uniqueKeys      = Services.command(superUserContext, UniqueKeyCommand.class);
+			Node node                        = (Node) propertyContainer;
+			String scope                     = getScope(key);
+			String normalizedValue           = normalize(value);
+
+			UniqueKeyIndexer indexer = NodeService.getUniqueKeyIndexer();
+			boolean initialized      = indexer.isInitialized(scope);
+
+			if (!initialized) {
+
+				indexer.initialize(scope, getScopeInitializer(key));
+			}
+
+			Node owner = uniqueKeys.reserve(node, scope, normalizedValue);
+
+			if (owner != null && !holdsValue(owner, key, normalizedValue)) {
+
+				// stale entry, the value of the owner was modified
+				uniqueKeys.release(owner, scope, normalizedValue);
+
+				owner = uniqueKeys.reserve(node, scope, normalizedValue);
+			}
+
+			if (owner != null) {
+
+				return new NodeFactory<AbstractNode>(superUserContext).createNode(owner);
+			}
+
+			if (!initialized) {
+
+				// existing nodes may not be reserved yet
+				AbstractNode existingNode = search(key, value);
+
+				if (existingNode != null && existingNode.getId() != node.getId()) {
+
+					return existingNode;
+				}
+			}
+
+		} catch (FrameworkException fex) {
+
+			logger.log(Level.WARNING, "Unable to check uniqueness of {0}: {1}", new Object[] { key.dbName(), fex.getMessage() });
+		}
+
+		return null;
+	}
+
+	// ----- private methods -----
+	private UniqueKeyIndexer.ScopeInitializer getScopeInitializer(final PropertyKey key) {
+
+		return new UniqueKeyIndexer.ScopeInitializer() {
+
+			@Override
+			public Iterable<Node> getExistingNodes() throws FrameworkException {
+				return AbstractUniquenessValidator.this.getExistingNodes(key);
+			}
+
+			@Override
+			public String getValue(final Node node) {
+
+				Object value = node.getProperty(key.dbName(), null);
+
+				return value instanceof String ? normalize((String) value) : null;
+			}
+		};
+	}
+
+	private boolean holdsValue(final Node owner, final PropertyKey key, final String normalizedValue) {
+
+		try {
+
+			Object ownerValue = owner.getProperty(key.dbName(), null);
+
+			return ownerValue instanceof String && normalizedValue.equals(normalize((String) ownerValue)) && isInScope(owner);
+
+		} catch (NotFoundException nfex) {
+
+			// owner was deleted in this transaction
+			return false;
+
+		} catch (IllegalStateException isex) {
+
+			return false;
+		}
+	}
+}
@@ -19,19 +19,21 @@
 
 package org.structr.core.validator;
 
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.tooling.GlobalGraphOperations;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.EmptyPropertyToken;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UniqueToken;
 import org.structr.core.GraphObject;
-import org.structr.core.PropertyValidator;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.GraphDatabaseCommand;
+import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SearchNodeCommand;
-import org.structr.core.graph.search.SearchOperator;
-import org.structr.core.graph.search.TextualSearchAttribute;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -45,11 +47,12 @@ import org.structr.core.Result;
 
 /**
  * A validator that ensures global uniqueness of a given property value,
- * regardless of the entity's type.
+ * regardless of the entity's type. Values are compared exactly, i.e. case
+ * sensitive and without analyzing them.
  *
  * @author Christian Morgner
  */
-public class GlobalPropertyUniquenessValidator extends PropertyValidator<String> {
+public class GlobalPropertyUniquenessValidator extends AbstractUniquenessValidator {
 
 	private static final Logger logger = Logger.getLogger(GlobalPropertyUniquenessValidator.class.getName());
 
@@ -68,41 +71,61 @@ public class GlobalPropertyUniquenessValidator extends PropertyValidator<String>
 
 		if ((key != null) && (value != null)) {
 
-			// String type = EntityContext.GLOBAL_UNIQUENESS;
-			boolean nodeExists               = false;
-			List<SearchAttribute> attributes = new LinkedList<SearchAttribute>();
-			String id                        = null;
+			AbstractNode existingNode = getConflictingNode(object, key, value);
 
-			attributes.add(new TextualSearchAttribute(key, value, SearchOperator.AND));
+			if (existingNode != null) {
 
-			Result resultList = null;
+				errorBuffer.add(object.getType(), new UniqueToken(existingNode.getUuid(), key, value));
 
-			try {
-
-				resultList = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attributes);
-				nodeExists = !resultList.isEmpty();
+				return false;
 
-			} catch (FrameworkException fex) {
+			} else {
 
-				// handle error
+				return true;
 			}
+		}
 
-			if (nodeExists) {
+		return false;
 
-				id = ((AbstractNode) resultList.get(0)).getUuid();
+	}
 
-				errorBuffer.add(object.getType(), new UniqueToken(id, key, value));
+	@Override
+	protected String getScope(final PropertyKey key) {
+		return key.dbName();
+	}
 
-				return false;
+	@Override
+	protected boolean isInScope(final Node node) {
+		return true;
+	}
 
-			} else {
+	@Override
+	protected Iterable<Node> getExistingNodes(final PropertyKey key) throws FrameworkException {
 
-				return true;
+		GraphDatabaseService graphDb = Services.command(SecurityContext.getSuperUserInstance(), GraphDatabaseCommand.class).execute();
+		List<Node> nodes             = new LinkedList<Node>();
+
+		for (Node node : GlobalGraphOperations.at(graphDb).getAllNodes()) {
+
+			if (node.hasProperty(key.dbName())) {
+
+				nodes.add(node);
 			}
 		}
 
-		return false;
+		return nodes;
+	}
+
+	@Override
+	protected AbstractNode search(final PropertyKey key, final String value) throws FrameworkException {
+
+		List<SearchAttribute> attributes = new LinkedList<SearchAttribute>();
+
+		attributes.add(Search.andExactProperty(key, value));
+
+		Result resultList = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attributes);
 
+		return resultList.isEmpty() ? null : (AbstractNode) resultList.get(0);
 	}
 
 }
@@ -19,16 +19,17 @@
 
 package org.structr.core.validator;
 
+import org.neo4j.graphdb.Node;
 import org.structr.core.property.PropertyKey;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.LowercaseUniqueToken;
 import org.structr.core.GraphObject;
-import org.structr.core.PropertyValidator;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.graph.UniqueKeyCommand;
 import org.structr.core.graph.search.SearchUserCommand;
 
 
@@ -38,7 +39,7 @@ import org.structr.core.graph.search.SearchUserCommand;
  *
  * @author Bastian Knerr
  */
-public class LowercaseTypeUniquenessValidator extends PropertyValidator<String> {
+public class LowercaseTypeUniquenessValidator extends AbstractUniquenessValidator {
 
 
 	private final PropertyKey propertyKey;
@@ -54,7 +55,11 @@ public class LowercaseTypeUniquenessValidator extends PropertyValidator<String>
 	@Override
 	public boolean isValid(final GraphObject object, final PropertyKey<String> key, final String value, final ErrorBuffer errorBuffer) {
 
-		final AbstractNode result = lookup(nodeIndex, propertyKey, value);
+		if (value == null) {
+			return true;
+		}
+
+		final AbstractNode result = getConflictingNode(object, propertyKey, value);
 		if (result == null) {
 			return true;
 		}
@@ -65,15 +70,28 @@ public class LowercaseTypeUniquenessValidator extends PropertyValidator<String>
 		return false;
 	}
 
+	@Override
+	protected String getScope(final PropertyKey key) {
+		return nodeIndex.name() + "." + key.dbName();
+	}
 
-	private static AbstractNode lookup(final NodeIndex index, final PropertyKey key, final String value) {
-		try {
-			return
-				(AbstractNode) Services.command(SecurityContext.getSuperUserInstance(), SearchUserCommand.class).execute(value, key, index);
+	@Override
+	protected boolean isInScope(final Node node) {
+		return true;
+	}
 
-		} catch (final FrameworkException fex) {
-			fex.printStackTrace();
-		}
-		return null;
+	@Override
+	protected String normalize(final String value) {
+		return value.toLowerCase();
+	}
+
+	@Override
+	protected Iterable<Node> getExistingNodes(final PropertyKey key) throws FrameworkException {
+		return Services.command(SecurityContext.getSuperUserInstance(), UniqueKeyCommand.class).getIndexedNodes(nodeIndex, key);
+	}
+
+	@Override
+	protected AbstractNode search(final PropertyKey key, final String value) throws FrameworkException {
+		return (AbstractNode) Services.command(SecurityContext.getSuperUserInstance(), SearchUserCommand.class).execute(value, key, nodeIndex);
 	}
 }
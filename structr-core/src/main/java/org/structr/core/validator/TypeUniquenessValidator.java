@@ -20,13 +20,13 @@
 
 package org.structr.core.validator;
 
+import org.neo4j.graphdb.Node;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.EmptyPropertyToken;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UniqueToken;
 import org.structr.core.GraphObject;
-import org.structr.core.PropertyValidator;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.search.Search;
@@ -48,7 +48,7 @@ import org.structr.core.Result;
  *
  * @author Christian Morgner
  */
-public class TypeUniquenessValidator extends PropertyValidator<String> {
+public class TypeUniquenessValidator extends AbstractUniquenessValidator {
 
 	private static final Logger logger = Logger.getLogger(TypeUniquenessValidator.class.getName());
 
@@ -79,43 +79,64 @@ public class TypeUniquenessValidator extends PropertyValidator<String> {
 
 		if ((key != null) && (value != null)) {
 
-			List<SearchAttribute> attributes = new LinkedList<SearchAttribute>();
-			boolean nodeExists               = false;
-			String id                        = null;
+			AbstractNode existingNode = getConflictingNode(object, key, value);
 
-			attributes.add(Search.andExactType(type));
-			attributes.add(Search.andExactProperty(key, value));
+			if (existingNode != null) {
 
-			Result resultList = null;
+				errorBuffer.add(object.getType(), new UniqueToken(existingNode.getUuid(), key, value));
 
-			try {
+				return false;
 
-				resultList = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attributes);
-				nodeExists = !resultList.isEmpty();
+			} else {
 
-			} catch (FrameworkException fex) {
+				return true;
+			}
 
-				fex.printStackTrace();
+		}
 
-			}
+		return false;
 
-			if (nodeExists) {
+	}
 
-				id = ((AbstractNode) resultList.get(0)).getUuid();
+	@Override
+	protected String getScope(final PropertyKey key) {
+		return type + "." + key.dbName();
+	}
 
-				errorBuffer.add(object.getType(), new UniqueToken(id, key, value));
+	@Override
+	protected boolean isInScope(final Node node) {
+		return type.equals(node.getProperty(AbstractNode.type.dbName(), null));
+	}
 
-				return false;
+	@Override
+	protected Iterable<Node> getExistingNodes(final PropertyKey key) throws FrameworkException {
 
-			} else {
+		List<SearchAttribute> attributes = new LinkedList<SearchAttribute>();
+		List<Node> nodes                 = new LinkedList<Node>();
 
-				return true;
-			}
+		attributes.add(Search.andExactType(type));
 
+		Result resultList = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attributes);
+
+		for (AbstractNode node : (List<AbstractNode>) resultList.getResults()) {
+
+			nodes.add(node.getNode());
 		}
 
-		return false;
+		return nodes;
+	}
+
+	@Override
+	protected AbstractNode search(final PropertyKey key, final String value) throws FrameworkException {
+
+		List<SearchAttribute> attributes = new LinkedList<SearchAttribute>();
+
+		attributes.add(Search.andExactType(type));
+		attributes.add(Search.andExactProperty(key, value));
+
+		Result resultList = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attributes);
 
+		return resultList.isEmpty() ? null : (AbstractNode) resultList.get(0);
 	}
 
 }
@@ -27,12 +27,14 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.Result;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.TestOne;
+import org.structr.core.graph.search.PageCursor;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -353,4 +355,91 @@ public class AdvancedPagingTest extends PagingTest {
 
 	}
 
+	/**
+	 * Test keyset pagination with page cursors, including duplicate sort
+	 * key values, descending order and backwards paging
+	 */
+	public void test06KeysetPaging() {
+
+		try {
+
+			boolean includeDeletedAndHidden = false;
+			boolean publicOnly              = false;
+			String type                     = TestOne.class.getSimpleName();
+			int number                      = 23;
+			int pageSize                    = 5;
+			List<AbstractNode> nodes        = this.createTestNodes(type, number);
+			int i                           = 0;
+
+			for (AbstractNode node : nodes) {
+
+				// duplicate names with whitespace
+				node.setName("Keyset node " + (i++ % 7));
+			}
+
+			List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+			searchAttributes.add(Search.andExactTypeAndSubtypes(type));
+
+			// expected order: name, then uuid
+			List<AbstractNode> expected = new LinkedList<AbstractNode>(nodes);
+			Collections.sort(expected, new Comparator<AbstractNode>() {
+
+				@Override
+				public int compare(AbstractNode o1, AbstractNode o2) {
+
+					int result = o1.getName().compareTo(o2.getName());
+
+					return result != 0 ? result : o1.getUuid().compareTo(o2.getUuid());
+				}
+			});
+
+			assertEquals(expected, collectPages(searchAttributes, false, pageSize));
+
+			Collections.reverse(expected);
+			assertEquals(expected, collectPages(searchAttributes, true, pageSize));
+			Collections.reverse(expected);
+
+			// page -1 from a cursor is the page the cursor was created from
+			Result first  = searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, false, pageSize, 1, PageCursor.START);
+			Result second = searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, false, pageSize, 1, first.getNextPageCursor());
+			Result back   = searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, false, pageSize, -2, second.getNextPageCursor());
+
+			assertEquals(first.getResults(), back.getResults());
+
+			// cursors must not be used with a different sort order
+			try {
+				searchNodeCommand.execute(includeDeletedAndHidden, publicOnly, searchAttributes, AbstractNode.name, true, pageSize, 1, first.getNextPageCursor());
+
+				fail("Should have failed with a FrameworkException");
+
+			} catch (FrameworkException fex) {
+				logger.log(Level.INFO, "Exception logged", fex);
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private List<AbstractNode> collectPages(final List<SearchAttribute> searchAttributes, final boolean sortDesc, final int pageSize) throws FrameworkException {
+
+		List<AbstractNode> collected = new LinkedList<AbstractNode>();
+		String cursor                = PageCursor.START;
+
+		while (cursor != null) {
+
+			Result result = searchNodeCommand.execute(false, false, searchAttributes, AbstractNode.name, sortDesc, pageSize, 1, cursor);
+
+			assertTrue(result.size() <= pageSize);
+
+			collected.addAll(result.getResults());
+			cursor = result.getNextPageCursor();
+		}
+
+		return collected;
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package org.structr.common;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.core.agent.AgentPool;
+import org.structr.core.agent.AgentService;
+import org.structr.core.cron.CronTestTask;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the {@link AgentService}
+ *
+ * All tests are executed in superuser context
+ */
+public class AgentServiceTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(AgentServiceTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01ProcessTasks() {
+
+		AgentService agentService = new AgentService();
+		int number                = 100;
+
+		context.put(CronTestTask.class.getName() + AgentService.WORKERS_SUFFIX, "2");
+
+		agentService.initialize(context);
+		agentService.startService();
+
+		try {
+
+			for (int i = 0; i < number; i++) {
+
+				agentService.processTask(new CronTestTask());
+			}
+
+			AgentPool pool = agentService.getAgentPools().get(CronTestTask.class);
+			long timeout   = System.currentTimeMillis() + 10000;
+
+			assertNotNull(pool);
+
+			while (pool.getProcessedTasks() < number && System.currentTimeMillis() < timeout) {
+
+				Thread.sleep(10);
+			}
+
+			logger.log(Level.INFO, "{0}", pool);
+
+			assertEquals(number, pool.getProcessedTasks());
+			assertEquals(0, pool.getFailedTasks());
+			assertEquals(0, pool.getQueueSize());
+			assertEquals(2, pool.getMaxAgents());
+			assertTrue(pool.getRunningAgents() <= 2);
+			assertTrue(pool.getMaxQueueSize() > 0);
+
+		} catch (InterruptedException iex) {
+
+			fail("Interrupted while waiting for tasks");
+
+		} finally {
+
+			agentService.stopService();
+		}
+	}
+}
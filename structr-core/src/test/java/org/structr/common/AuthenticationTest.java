@@ -0,0 +1,249 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.auth.AuthHelper;
+import org.structr.core.auth.AuthenticationCache;
+import org.structr.core.auth.exception.AuthenticationException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Test authentication with cached credentials and session tokens.
+ *
+ * All tests are executed in superuser context
+ */
+public class AuthenticationTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(AuthenticationTest.class.getName());
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01CachedCredentials() {
+
+		try {
+
+			final Person person = createPerson("tester", "secret");
+
+			assertEquals(person, AuthHelper.getUserForUsernameAndPassword(securityContext, "tester", "secret"));
+
+			// served from the credentials cache
+			assertEquals(person, AuthHelper.getUserForUsernameAndPassword(securityContext, "tester", "secret"));
+			assertAuthenticationFails("tester", "wrong");
+
+			// changing the password invalidates the cached credentials
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(Person.password, "changed");
+					return null;
+				}
+
+			});
+
+			assertAuthenticationFails("tester", "secret");
+			assertEquals(person, AuthHelper.getUserForUsernameAndPassword(securityContext, "tester", "changed"));
+
+			// blocking the user invalidates the cached credentials
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(Principal.blocked, true);
+					return null;
+				}
+
+			});
+
+			assertAuthenticationFails("tester", "changed");
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test02CachedSessionToken() {
+
+		try {
+
+			final Person person       = createPerson("tester", "secret");
+			AuthenticationCache cache = NodeService.getAuthenticationCache();
+
+			cache.putPrincipalForToken("token", person, cache.getGeneration());
+
+			Principal principal = cache.getPrincipalForToken(securityContext, "token");
+
+			assertEquals(person, principal);
+
+			// changing the session id invalidates the cached token
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(Principal.sessionId, "otherToken");
+					return null;
+				}
+
+			});
+
+			assertNull(cache.getPrincipalForToken(securityContext, "token"));
+
+			// a principal read before an invalidation is not cached
+			long generation = cache.getGeneration();
+
+			cache.invalidate(person.getId());
+			cache.putPrincipalForToken("otherToken", person, generation);
+
+			assertNull(cache.getPrincipalForToken(securityContext, "otherToken"));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test03InvalidationIgnoresOtherNodes() {
+
+		try {
+
+			final Person person       = createPerson("tester", "secret");
+			final AbstractNode other  = createTestNode(TestOne.class.getSimpleName());
+			AuthenticationCache cache = NodeService.getAuthenticationCache();
+
+			cache.putPrincipalForToken("token", person, cache.getGeneration());
+
+			long generation = cache.getGeneration();
+
+			// renaming a node that is not a principal does not affect the cache
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					other.setProperty(AbstractNode.name, "renamed");
+					return null;
+				}
+
+			});
+
+			assertEquals(generation, cache.getGeneration());
+			assertEquals(person, cache.getPrincipalForToken(securityContext, "token"));
+
+			// renaming the principal does
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					person.setProperty(AbstractNode.name, "renamed");
+					return null;
+				}
+
+			});
+
+			assertTrue(cache.getGeneration() > generation);
+			assertNull(cache.getPrincipalForToken(securityContext, "token"));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test04BoundedInvalidations() {
+
+		try {
+
+			final Person person       = createPerson("tester", "secret");
+			AuthenticationCache cache = new AuthenticationCache(16, 60000L);
+
+			cache.putPrincipalForToken("token", person, cache.getGeneration());
+
+			// invalidations of other principals evict the oldest records,
+			// which must not make the entries they covered valid again
+			cache.invalidate(person.getId());
+
+			for (long id = person.getId() + 1; id < person.getId() + 1000; id++) {
+				cache.invalidate(id);
+			}
+
+			assertNull(cache.getPrincipalForToken(securityContext, "token"));
+
+			// entries created after the evicted invalidations are valid
+			cache.putPrincipalForToken("token", person, cache.getGeneration());
+
+			assertEquals(person, cache.getPrincipalForToken(securityContext, "token"));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private Person createPerson(final String name, final String password) throws FrameworkException {
+
+		PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.name, name);
+		props.put(Person.password, password);
+
+		return (Person) createTestNode(Person.class.getSimpleName(), props);
+	}
+
+	private void assertAuthenticationFails(final String name, final String password) {
+
+		try {
+
+			AuthHelper.getUserForUsernameAndPassword(securityContext, name, password);
+			fail("Authentication should have failed");
+
+		} catch (AuthenticationException expected) {}
+	}
+}
@@ -18,10 +18,19 @@
  */
 package org.structr.common;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.property.PropertyMap;
+import org.structr.core.EntityContext;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.property.PropertyKey;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.TestFive;
 import org.structr.core.graph.CreateNodeCommand;
@@ -55,6 +64,116 @@ public class CallbackTest extends StructrTest {
 		}
 	}
 	
+	public void testTransactionListenerIsNotifiedAfterCommit() {
+
+		final Set<Long> committedTransactions = Collections.synchronizedSet(new LinkedHashSet<Long>());
+		final Set<Long> begunTransactions     = Collections.synchronizedSet(new LinkedHashSet<Long>());
+		final Set<Thread> notificationThreads = Collections.synchronizedSet(new LinkedHashSet<Thread>());
+		final CountDownLatch commitLatch      = new CountDownLatch(1);
+
+		StructrTransactionListener listener = new StructrTransactionListener() {
+
+			@Override
+			public void begin(SecurityContext securityContext, long transactionKey) {
+				begunTransactions.add(transactionKey);
+			}
+
+			@Override
+			public void commit(SecurityContext securityContext, long transactionKey) {
+
+				committedTransactions.add(transactionKey);
+				notificationThreads.add(Thread.currentThread());
+				commitLatch.countDown();
+			}
+
+			@Override
+			public void rollback(SecurityContext securityContext, long transactionKey) {}
+
+			@Override
+			public boolean propertyModified(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject, PropertyKey key, Object oldValue, Object newValue) {
+				return true;
+			}
+
+			@Override
+			public boolean propertyRemoved(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject, PropertyKey key, Object oldValue) {
+				return true;
+			}
+
+			@Override
+			public boolean graphObjectCreated(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject) throws FrameworkException {
+				return true;
+			}
+
+			@Override
+			public boolean graphObjectModified(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject) throws FrameworkException {
+				return true;
+			}
+
+			@Override
+			public boolean graphObjectDeleted(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject, PropertyMap properties) throws FrameworkException {
+				return true;
+			}
+		};
+
+		EntityContext.registerTransactionListener(listener);
+
+		try {
+
+			// a failing transaction must not be reported as committed
+			try {
+				transactionCommand.execute(new StructrTransaction() {
+
+					@Override
+					public Object execute() throws FrameworkException {
+
+						PropertyMap properties = new PropertyMap();
+						properties.put(GraphObject.type, TestFive.class.getSimpleName());
+
+						createNodeCommand.execute(properties);
+
+						throw new FrameworkException(422, new ErrorBuffer());
+					}
+				});
+
+				fail("Transaction should have failed");
+
+			} catch (FrameworkException expected) {}
+
+			createTestNode(TestFive.class);
+
+			assertTrue("Listener should have been notified", commitLatch.await(10, TimeUnit.SECONDS));
+
+			// creating a node commits a follow-up transaction for the
+			// change set notifications, wait until that is reported too
+			for (int i = 0; i < 100 && committedTransactions.size() < begunTransactions.size(); i++) {
+				Thread.sleep(100);
+			}
+
+			// the failing transaction never reaches beforeCommit, so it
+			// would show up as a committed transaction that was not begun
+			assertEquals("Only the successful transactions should be reported", begunTransactions, committedTransactions);
+			assertFalse("Notification should be delivered asynchronously", notificationThreads.contains(Thread.currentThread()));
+
+			// the notification threads end with the service layer
+			Services.shutdown();
+
+			for (Thread thread : notificationThreads) {
+				assertFalse("Notification thread should have been stopped", thread.isAlive());
+			}
+
+			assertTrue("Listener should have been unregistered", EntityContext.getTransactionListeners().isEmpty());
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			EntityContext.unregisterTransactionListener(listener);
+		}
+	}
+	
 	private void testCallbacks(final SecurityContext securityContext) {
 		
 		final PropertyMap properties = new PropertyMap();
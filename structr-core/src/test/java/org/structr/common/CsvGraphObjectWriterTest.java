@@ -0,0 +1,197 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.CsvGraphObjectWriter;
+import org.structr.core.StaticValue;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestNine;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the CSV export of graph objects.
+ *
+ * All tests are executed in superuser context
+ */
+public class CsvGraphObjectWriterTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(CsvGraphObjectWriterTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	/**
+	 * Exports nodes with the {@link CsvGraphObjectWriter} through a
+	 * buffered writer, reading the nodes lazily from their ids, and checks
+	 * the quoting and that the buffer is not flushed per row.
+	 */
+	public void test01CsvExport() {
+
+		try {
+
+			int number                  = 20;
+			long[] ids                  = new long[number];
+			CsvGraphObjectWriter writer = new CsvGraphObjectWriter(new StaticValue<String>(PropertyView.Public));
+			StringBuilder expected      = new StringBuilder("\"name\",\"anInt\"\n");
+			int j                       = 0;
+
+			for (AbstractNode node : createQuotedTestNodes(0, number)) {
+				ids[j++] = node.getId();
+			}
+
+			for (int i = 0; i < number; i++) {
+				expected.append("\"Node \"\"").append(i).append("\"\", a\"\"b\",\"").append(i).append("\"\n");
+			}
+
+			StringWriter sample = new StringWriter();
+
+			assertEquals(number, writer.write(sample, lazily(ids)));
+			assertEquals(expected.toString(), sample.toString());
+
+			// the buffer is written when it is full, not after each row
+			CountingWriter counter = new CountingWriter();
+			Writer out             = new BufferedWriter(counter, 65536);
+
+			assertEquals(number, writer.write(out, lazily(ids)));
+			assertEquals(0, counter.writes);
+
+			out.flush();
+
+			assertEquals(1, counter.writes);
+			assertEquals(expected.length(), counter.chars);
+
+			// no rows, no header
+			StringWriter empty = new StringWriter();
+
+			assertEquals(0, writer.write(empty, lazily(new long[0])));
+			assertEquals("", empty.toString());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	// ----- private methods -----
+	private List<AbstractNode> createQuotedTestNodes(final int offset, final int number) throws FrameworkException {
+
+		return transactionCommand.execute(new StructrTransaction<List<AbstractNode>>() {
+
+			@Override
+			public List<AbstractNode> execute() throws FrameworkException {
+
+				List<AbstractNode> nodes = new LinkedList<AbstractNode>();
+
+				for (int i = offset; i < offset + number; i++) {
+
+					PropertyMap props = new PropertyMap();
+
+					props.put(AbstractNode.type, TestNine.class.getSimpleName());
+					props.put(AbstractNode.name, "Node \"" + i + "\", a\"b");
+					props.put(TestNine.anInt, i);
+
+					nodes.add(createNodeCommand.execute(props));
+				}
+
+				return nodes;
+			}
+
+		});
+	}
+
+	private Iterable<AbstractNode> lazily(final long[] ids) {
+
+		final GraphDatabaseService graphDb = graphDbCommand.execute();
+
+		return new NodeFactory<AbstractNode>(securityContext).createNodesLazily(new Iterable<Node>() {
+
+			@Override
+			public Iterator<Node> iterator() {
+
+				return new Iterator<Node>() {
+
+					private int index = 0;
+
+					@Override
+					public boolean hasNext() {
+						return index < ids.length;
+					}
+
+					@Override
+					public Node next() {
+						return graphDb.getNodeById(ids[index++]);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Discards its input and counts the number of characters and write calls.
+	 */
+	private static class CountingWriter extends Writer {
+
+		private long chars = 0L;
+		private int writes = 0;
+
+		@Override
+		public void write(char[] buf, int offset, int length) {
+
+			chars += length;
+			writes++;
+		}
+
+		@Override
+		public void flush() {}
+
+		@Override
+		public void close() {}
+	}
+}
@@ -352,6 +352,100 @@ public class DeleteGraphObjectsTest extends StructrTest {
 
 	}
 
+	/**
+	 * A long DELETE_OUTGOING chain must be deleted completely, also by
+	 * concurrent deletions.
+	 */
+	public void test07CascadeDeleteChains() {
+
+		try {
+
+			deleteCascade(cascadeChain(5000));
+
+			// All nodes should be deleted
+			assertEquals(0, searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName())).size());
+
+			final List<AbstractNode> roots = new LinkedList<AbstractNode>();
+			final List<Thread> threads     = new LinkedList<Thread>();
+			final List<Throwable> errors   = new LinkedList<Throwable>();
+
+			for (int i = 0; i < 4; i++) {
+
+				roots.add(cascadeChain(200));
+			}
+
+			for (final AbstractNode root : roots) {
+
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+
+							deleteCascade(root);
+
+						} catch (Throwable t) {
+
+							synchronized (errors) {
+								errors.add(t);
+							}
+						}
+					}
+
+				});
+
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+
+				thread.join();
+			}
+
+			assertTrue(errors.isEmpty());
+
+			// All nodes should be deleted
+			assertEquals(0, searchNodeCommand.execute(Search.andExactType(TestOne.class.getSimpleName())).size());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private AbstractNode cascadeChain(final int length) throws FrameworkException {
+
+		return (AbstractNode) transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				AbstractNode root = createTestNode(TestOne.class.getSimpleName());
+				AbstractNode last = root;
+
+				for (int i = 1; i < length; i++) {
+
+					AbstractNode next        = createTestNode(TestOne.class.getSimpleName());
+					AbstractRelationship rel = createTestRelationship(last, next, RelType.UNDEFINED);
+
+					rel.setProperty(AbstractRelationship.cascadeDelete, Relation.DELETE_OUTGOING);
+
+					last = next;
+				}
+
+				return root;
+
+			}
+
+		});
+
+	}
+
 	private AbstractRelationship cascadeRel(final Class type1, final Class type2, final int cascadeDeleteFlag) throws FrameworkException {
 
 		return (AbstractRelationship) transactionCommand.execute(new StructrTransaction() {
@@ -0,0 +1,198 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.GetNodeByIdCommand;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.UuidCache;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the {@link GetNodeByIdCommand} and the {@link UuidCache}
+ *
+ * All tests are executed in superuser context
+ */
+public class GetNodeByIdTest extends StructrTest {
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01GetNodeById() {
+
+		try {
+
+			GetNodeByIdCommand getNodeById = Services.command(securityContext, GetNodeByIdCommand.class);
+			UuidCache uuidCache            = NodeService.getUuidCache();
+			List<AbstractNode> nodes       = createTestNodes(TestOne.class.getSimpleName(), 10);
+
+			for (AbstractNode node : nodes) {
+
+				AbstractNode result = getNodeById.execute(node.getUuid());
+
+				assertNotNull(result);
+				assertEquals(node.getId(), result.getId());
+				assertEquals(node.getId(), uuidCache.get(node.getUuid()).longValue());
+			}
+
+			long hits = uuidCache.getHits();
+
+			for (AbstractNode node : nodes) {
+
+				AbstractNode result = getNodeById.execute(node.getUuid());
+
+				assertNotNull(result);
+				assertTrue(result instanceof TestOne);
+				assertEquals(node.getId(), result.getId());
+			}
+
+			assertEquals(hits + nodes.size(), uuidCache.getHits());
+
+			assertNull(getNodeById.execute("00000000000000000000000000000000"));
+			assertNull(getNodeById.execute((String) null));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02GetDeletedNode() {
+
+		try {
+
+			final GetNodeByIdCommand getNodeById = Services.command(securityContext, GetNodeByIdCommand.class);
+			final AbstractNode node              = createTestNode(TestOne.class);
+			final String uuid                    = node.getUuid();
+
+			assertNotNull(getNodeById.execute(uuid));
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					deleteNodeCommand.execute(node);
+
+					// deleted nodes are not found inside of the transaction
+					assertNull(getNodeById.execute(uuid));
+
+					return null;
+				}
+
+			});
+
+			assertNull(getNodeById.execute(uuid));
+			assertNull(NodeService.getUuidCache().get(uuid));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03GetNodeInTransaction() {
+
+		try {
+
+			final GetNodeByIdCommand getNodeById = Services.command(securityContext, GetNodeByIdCommand.class);
+			final String uuid                    = createTestNode(TestOne.class).getUuid();
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					// the cache is not filled inside of a transaction
+					assertNotNull(getNodeById.execute(uuid));
+					assertNull(NodeService.getUuidCache().get(uuid));
+
+					return null;
+				}
+
+			});
+
+			assertNotNull(getNodeById.execute(uuid));
+			assertNotNull(NodeService.getUuidCache().get(uuid));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04GetNodesByIds() {
+
+		try {
+
+			GetNodeByIdCommand getNodeById = Services.command(securityContext, GetNodeByIdCommand.class);
+			List<AbstractNode> nodes       = createTestNodes(TestOne.class.getSimpleName(), 1500);
+			List<String> uuids             = new LinkedList<String>();
+
+			// put some of the nodes into the cache
+			for (int i = 0; i < 100; i++) {
+
+				getNodeById.execute(nodes.get(i * 10).getUuid());
+			}
+
+			for (AbstractNode node : nodes) {
+
+				uuids.add(0, node.getUuid());
+			}
+
+			uuids.add(1, uuids.get(0));
+			uuids.add(2, "00000000000000000000000000000000");
+			uuids.add(3, null);
+
+			Map<String, AbstractNode> result = getNodeById.execute(uuids);
+			Iterator<AbstractNode> it        = result.values().iterator();
+
+			assertEquals(nodes.size(), result.size());
+
+			// nodes are returned in the order of the given UUIDs
+			for (int i = nodes.size() - 1; i >= 0; i--) {
+
+				assertEquals(nodes.get(i).getId(), it.next().getId());
+			}
+
+			assertEquals(nodes.size(), NodeService.getUuidCache().size());
+			assertTrue(getNodeById.execute(new LinkedList<String>()).isEmpty());
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -28,12 +28,21 @@ import org.structr.common.error.FrameworkException;
 //~--- JDK imports ------------------------------------------------------------
 
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.Relationship;
+import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.BulkGraphOperation;
+import org.structr.core.graph.BulkOperationExecutor;
+import org.structr.core.graph.BulkSetNodePropertiesCommand;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
@@ -156,4 +165,82 @@ public class ModifyGraphObjectsTest extends StructrTest {
 
 	}
 
+	/**
+	 * Test that bulk operations process all objects of a lazy source on
+	 * several threads, and retry batches whose transaction failed
+	 */
+	public void test03BulkOperations() {
+
+		try {
+
+			final int number            = 2500;
+			List<AbstractNode> testOnes = createTestNodes(TestOne.class.getSimpleName(), number);
+			List<AbstractNode> others   = createTestNodes("UnknownTestType", 10);
+			Map<String, Object> props   = new HashMap<String, Object>();
+
+			props.put(AbstractNode.type.dbName(), TestOne.class.getSimpleName());
+			props.put(TestOne.anInt.dbName(), 42);
+
+			Services.command(securityContext, BulkSetNodePropertiesCommand.class).execute(props);
+
+			for (AbstractNode node : testOnes) {
+				assertEquals(Integer.valueOf(42), node.getProperty(TestOne.anInt));
+			}
+
+			for (AbstractNode node : others) {
+				assertFalse(node.getNode().hasProperty(TestOne.anInt.dbName()));
+			}
+
+			// the transaction of the batch that contains the failing node
+			// fails once and is retried
+			final AbstractNode failingNode = testOnes.get(number / 2);
+			final AtomicInteger failures   = new AtomicInteger(0);
+			final AtomicInteger handled    = new AtomicInteger(0);
+
+			// failures are reported on worker threads, where an assertion
+			// error would not reach the test runner
+			final AtomicReference<Throwable> transactionFailure = new AtomicReference<Throwable>();
+
+			long count = new BulkOperationExecutor<AbstractNode>(securityContext, "Test", 100, 4, 1, new BulkGraphOperation<AbstractNode>() {
+
+				@Override
+				public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
+
+					if (node.equals(failingNode) && failures.getAndIncrement() == 0) {
+						throw new IllegalStateException("Failing once");
+					}
+
+					handled.incrementAndGet();
+				}
+
+				@Override
+				public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode node) {
+
+					// fail the transaction
+					throw new RuntimeException(t);
+				}
+
+				@Override
+				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+					transactionFailure.compareAndSet(null, t);
+				}
+
+			}).execute(testOnes);
+
+			assertNull("Batch was not retried", transactionFailure.get());
+			assertEquals(number, count);
+			assertEquals(2, failures.get());
+
+			// the retried batch handles the nodes before the failing node twice
+			assertEquals(number + (number / 2) % 100, handled.get());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 }
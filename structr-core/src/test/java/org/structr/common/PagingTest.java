@@ -21,21 +21,25 @@
 
 package org.structr.common;
 
+import org.neo4j.graphdb.Node;
 import org.structr.core.property.PropertyKey;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -160,6 +164,72 @@ public class PagingTest extends StructrTest {
 
 	}
 
+	/**
+	 * Test that nodes are created lazily, i.e. that the database nodes
+	 * after the requested ones are not read at all
+	 */
+	public void test02LazyNodeCreation() {
+
+		try {
+
+			List<AbstractNode> nodes = this.createTestNodes(TestOne.class.getSimpleName(), 50);
+			final List<Node> dbNodes = new LinkedList<Node>();
+			final AtomicInteger read = new AtomicInteger(0);
+			int count                = 0;
+
+			for (AbstractNode node : nodes) {
+				dbNodes.add(node.getNode());
+			}
+
+			Iterable<Node> countingSource = new Iterable<Node>() {
+
+				@Override
+				public Iterator<Node> iterator() {
+
+					final Iterator<Node> it = dbNodes.iterator();
+
+					return new Iterator<Node>() {
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Node next() {
+							read.incrementAndGet();
+							return it.next();
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException("Not supported.");
+						}
+					};
+				}
+			};
+
+			for (AbstractNode node : new NodeFactory<AbstractNode>(securityContext).createNodesLazily(countingSource)) {
+
+				assertNotNull(node);
+
+				if (++count == 5) {
+					break;
+				}
+			}
+
+			assertEquals(5, count);
+			assertEquals(5, read.get());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 	protected void testPaging(final int pageSize, final int page, final int number, final int offset, final boolean includeDeletedAndHidden, final boolean publicOnly,
 				final List<SearchAttribute> searchAttributes, final PropertyKey sortKey, final boolean sortDesc)
 		throws FrameworkException {
@@ -30,8 +30,12 @@ import org.structr.core.entity.AbstractRelationship;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -131,4 +135,90 @@ public class PerformanceTest extends StructrTest {
 
 	}
 
+	/**
+	 * Tests throughput of node creation from several concurrent writers.
+	 * 
+	 * Each thread commits a number of small transactions, so the numbers
+	 * are dominated by the commit path. The rate is logged for 1, 2, 4 and
+	 * 8 writer threads to show how commits scale with the number of cores.
+	 * 
+	 * As with the other tests in this class, the assumed rate is very low
+	 * and only makes sure that concurrent commits work at all.
+	 */
+	public void test03PerformanceOfConcurrentNodeCreation() {
+
+		try {
+
+			final int transactionsPerThread = 50;
+			final int nodesPerTransaction   = 10;
+			DecimalFormat decimalFormat     = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+			for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+
+				final List<Throwable> errors   = Collections.synchronizedList(new LinkedList<Throwable>());
+				final AtomicInteger nodeCount  = new AtomicInteger(0);
+				final CountDownLatch startGate = new CountDownLatch(1);
+				List<Thread> threads           = new LinkedList<Thread>();
+
+				for (int i = 0; i < threadCount; i++) {
+
+					Thread writer = new Thread(new Runnable() {
+
+						@Override
+						public void run() {
+
+							try {
+
+								startGate.await();
+
+								for (int j = 0; j < transactionsPerThread; j++) {
+
+									nodeCount.addAndGet(createTestNodes("UnknownTestType", nodesPerTransaction).size());
+								}
+
+							} catch (Throwable t) {
+
+								errors.add(t);
+							}
+						}
+
+					}, "Writer" + i);
+
+					threads.add(writer);
+					writer.start();
+				}
+
+				long t0 = System.nanoTime();
+
+				startGate.countDown();
+
+				for (Thread writer : threads) {
+					writer.join();
+				}
+
+				long t1 = System.nanoTime();
+
+				assertTrue(errors.isEmpty());
+
+				int number  = threadCount * transactionsPerThread * nodesPerTransaction;
+				Double time = (t1 - t0) / 1000000000.0;
+				Double rate = number / ((t1 - t0) / 1000000000.0);
+
+				assertEquals(number, nodeCount.get());
+
+				logger.log(Level.INFO, "{0} thread(s) created {1} nodes in {2} transactions in {3} seconds ({4} per s)", new Object[] {
+					threadCount, number, threadCount * transactionsPerThread, decimalFormat.format(time), decimalFormat.format(rate)
+				});
+				assertTrue(rate > 50);
+			}
+
+		} catch (InterruptedException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 }
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Person;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+import org.structr.core.graph.search.SearchNodeCommand;
+import org.structr.core.property.PropertyKey;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for search results that are projected onto a set of property keys,
+ * see {@link org.structr.core.graph.NodeFactory#createProjection}.
+ */
+public class ProjectionTest extends StructrTest {
+
+	private static final Set<PropertyKey> uuidOnly = Collections.<PropertyKey>singleton(AbstractNode.uuid);
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01ProjectionMatchesNodes() {
+
+		try {
+
+			createTestNodes(TestOne.class.getSimpleName(), 25);
+
+			assertProjection(searchNodeCommand, false, Integer.MAX_VALUE, 1);
+			assertProjection(searchNodeCommand, false, 10, 1);
+			assertProjection(searchNodeCommand, false, 10, 3);
+			assertProjection(searchNodeCommand, false, 10, -1);
+			assertProjection(searchNodeCommand, false, 10, 4);
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02ProjectionChecksAccess() {
+
+		try {
+
+			final List<AbstractNode> nodes = createTestNodes(TestOne.class.getSimpleName(), 20);
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					for (int i = 0; i < 5; i++) {
+
+						nodes.get(i).setProperty(AbstractNode.visibleToPublicUsers, true);
+						nodes.get(i + 5).setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+						nodes.get(i + 10).setProperty(AbstractNode.hidden, true);
+					}
+
+					return null;
+				}
+
+			});
+
+			SecurityContext userContext = SecurityContext.getInstance((Person) createTestNode(Person.class), AccessMode.Frontend);
+			SearchNodeCommand search    = Services.command(userContext, SearchNodeCommand.class);
+
+			assertEquals(15, assertProjection(searchNodeCommand, false, Integer.MAX_VALUE, 1));
+			assertEquals(5, assertProjection(searchNodeCommand, true, Integer.MAX_VALUE, 1));
+			assertEquals(10, assertProjection(search, false, Integer.MAX_VALUE, 1));
+			assertEquals(5, assertProjection(search, true, Integer.MAX_VALUE, 1));
+			assertEquals(4, assertProjection(search, false, 4, 2));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private int assertProjection(final SearchNodeCommand search, final boolean publicOnly, final int pageSize, final int page) throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(TestOne.class.getSimpleName()));
+
+		Result nodes      = search.execute(false, publicOnly, searchAttributes, null, false, pageSize, page, null, null);
+		Result projection = search.execute(false, publicOnly, searchAttributes, null, false, pageSize, page, null, null, uuidOnly);
+
+		assertEquals(nodes.size(), projection.size());
+		assertEquals(nodes.getRawResultCount(), projection.getRawResultCount());
+
+		for (int i = 0; i < nodes.size(); i++) {
+
+			GraphObject obj = projection.get(i);
+
+			assertTrue(obj instanceof GraphObjectMap);
+			assertEquals(nodes.get(i).getUuid(), obj.getUuid());
+		}
+
+		return projection.size();
+	}
+}
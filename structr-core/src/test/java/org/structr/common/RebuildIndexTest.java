@@ -0,0 +1,265 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.agent.RebuildIndexAgent;
+import org.structr.core.agent.RebuildIndexTask;
+import org.structr.core.agent.ReturnValue;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestEight;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.search.Search;
+import org.structr.core.graph.search.SearchAttribute;
+
+/**
+ * Test rebuilding the index with the {@link RebuildIndexAgent}.
+ *
+ * All tests are executed in superuser context
+ */
+public class RebuildIndexTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(RebuildIndexTest.class.getName());
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01RebuildIndex() {
+
+		try {
+
+			List<AbstractNode> nodes = createTestNodes(TestOne.class.getSimpleName(), 250);
+
+			context.put(Services.REBUILD_INDEX_THREADS, "4");
+			context.put(Services.REBUILD_INDEX_BATCH_SIZE, "16");
+
+			removeFromIndex(nodes);
+			assertEquals(0, countTestOneNodes());
+
+			new RebuildIndexAgent().processTask(new RebuildIndexTask());
+
+			assertEquals(250, countTestOneNodes());
+			assertFalse(RebuildIndexAgent.getCheckpointFile().exists());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test02ResumeRebuildIndex() {
+
+		try {
+
+			List<AbstractNode> nodes = createTestNodes(TestOne.class.getSimpleName(), 100);
+			long resumeId            = nodes.get(60).getId();
+			int expected             = 0;
+
+			for (AbstractNode node : nodes) {
+
+				if (node.getId() >= resumeId) {
+					expected++;
+				}
+			}
+
+			context.put(Services.REBUILD_INDEX_THREADS, "3");
+			context.put(Services.REBUILD_INDEX_BATCH_SIZE, "7");
+
+			removeFromIndex(nodes);
+
+			// simulate an interrupted rebuild
+			Properties checkpoint = new Properties();
+			OutputStream out      = new FileOutputStream(RebuildIndexAgent.getCheckpointFile());
+
+			checkpoint.setProperty("phase", "nodes");
+			checkpoint.setProperty("position", Long.toString(resumeId));
+			checkpoint.store(out, null);
+			out.close();
+
+			new RebuildIndexAgent().processTask(new RebuildIndexTask());
+
+			// only the nodes after the checkpoint are indexed again
+			assertEquals(expected, countTestOneNodes());
+			assertFalse(RebuildIndexAgent.getCheckpointFile().exists());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test03FailedBatchIsNotSkipped() {
+
+		try {
+
+			final List<AbstractNode> nodes = createTestNodes(TestEight.class.getSimpleName(), 50);
+			final AbstractNode failingNode = nodes.get(20);
+
+			context.put(Services.REBUILD_INDEX_THREADS, "2");
+			context.put(Services.REBUILD_INDEX_BATCH_SIZE, "5");
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					failingNode.setProperty(AbstractNode.name, TestEight.FAIL);
+					return null;
+				}
+
+			});
+
+			removeFromIndex(nodes);
+
+			int indexed = 0;
+
+			for (AbstractNode node : nodes) {
+
+				if (node.getId() / 5 != failingNode.getId() / 5) {
+					indexed++;
+				}
+			}
+
+			// the whole batch of the failing node is rolled back
+			assertEquals(ReturnValue.Abort, new RebuildIndexAgent().processTask(new RebuildIndexTask()));
+			assertEquals(indexed, countNodes(TestEight.class));
+			assertTrue(RebuildIndexAgent.getCheckpointFile().exists());
+
+			Properties checkpoint = new Properties();
+			InputStream in        = new FileInputStream(RebuildIndexAgent.getCheckpointFile());
+
+			checkpoint.load(in);
+			in.close();
+
+			long position = Long.parseLong(checkpoint.getProperty("position"));
+
+			assertEquals("nodes", checkpoint.getProperty("phase"));
+			assertEquals((failingNode.getId() / 5) * 5, position);
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					failingNode.setProperty(AbstractNode.name, "fixed");
+					return null;
+				}
+
+			});
+
+			removeFromIndex(nodes);
+
+			int expected = 0;
+
+			for (AbstractNode node : nodes) {
+
+				if (node.getId() >= position) {
+					expected++;
+				}
+			}
+
+			// the rebuild is resumed at the failed batch
+			assertEquals(ReturnValue.Success, new RebuildIndexAgent().processTask(new RebuildIndexTask()));
+			assertEquals(expected, countNodes(TestEight.class));
+			assertEquals(1, countNodes(TestEight.class, "fixed"));
+			assertFalse(RebuildIndexAgent.getCheckpointFile().exists());
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	private void removeFromIndex(final List<AbstractNode> nodes) throws FrameworkException {
+
+		final GraphDatabaseService graphDb = graphDbCommand.execute();
+
+		transactionCommand.execute(new StructrTransaction() {
+
+			@Override
+			public Object execute() throws FrameworkException {
+
+				for (String indexName : new String[] { "uuidAllNodes", "keywordAllNodes", "fulltextAllNodes" }) {
+
+					for (AbstractNode node : nodes) {
+
+						graphDb.index().forNodes(indexName).remove(node.getNode());
+					}
+				}
+
+				return null;
+			}
+
+		});
+	}
+
+	private int countNodes(final Class type) throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(type.getSimpleName()));
+
+		return searchNodeCommand.execute(true, false, searchAttributes).size();
+	}
+
+	private int countNodes(final Class type, final String name) throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(type.getSimpleName()));
+		searchAttributes.add(Search.andExactName(name));
+
+		return searchNodeCommand.execute(true, false, searchAttributes).size();
+	}
+
+	private int countTestOneNodes() throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactType(TestOne.class.getSimpleName()));
+
+		return searchNodeCommand.execute(true, false, searchAttributes).size();
+	}
+}
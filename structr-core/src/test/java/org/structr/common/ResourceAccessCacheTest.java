@@ -0,0 +1,144 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.ResourceAccess;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.ResourceAccessCache;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.property.PropertyMap;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the process-wide table of resource access grants.
+ *
+ * All tests are executed in superuser context
+ */
+public class ResourceAccessCacheTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(ResourceAccessCacheTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	/**
+	 * Checks that the {@link ResourceAccessCache} answers grant lookups
+	 * from a single load, hands out a new entity for every lookup, and
+	 * reflects modifications and deletions of grants.
+	 */
+	public void test01GrantLookup() {
+
+		try {
+
+			int number                 = 100;
+			ResourceAccessCache cache  = NodeService.getResourceAccessCache();
+			final ResourceAccess grant = createGrant("/Test0", 1L);
+
+			for (int i = 1; i < number; i++) {
+				createGrant("/Test" + i, 1L);
+			}
+
+			long loads = cache.getLoads();
+
+			for (int i = 0; i < 1000; i++) {
+
+				ResourceAccessCache.Grant value = cache.get("/Test" + (i % number));
+
+				assertNotNull(value);
+				assertEquals("/Test" + (i % number), value.getSignature());
+				assertTrue(value.hasFlag(1L));
+			}
+
+			assertEquals(loads + 1, cache.getLoads());
+			assertNull(cache.get("/Unknown"));
+			assertEquals(loads + 1, cache.getLoads());
+
+			// entities are not shared between callers
+			ResourceAccess first  = cache.getResourceAccess("/Test0");
+			ResourceAccess second = cache.getResourceAccess("/Test0");
+
+			assertNotNull(first);
+			assertNotSame(first, second);
+			assertEquals(grant.getId(), first.getId());
+			assertEquals(loads + 1, cache.getLoads());
+
+			// modification
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					grant.setFlag(2L);
+					return null;
+				}
+
+			});
+
+			assertEquals(3L, cache.get("/Test0").getFlags());
+			assertEquals(3L, cache.getResourceAccess("/Test0").getFlags());
+			assertEquals(loads + 2, cache.getLoads());
+
+			// deletion
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					deleteNodeCommand.execute(grant);
+					return null;
+				}
+
+			});
+
+			assertNull(cache.get("/Test0"));
+			assertNull(cache.getResourceAccess("/Test0"));
+			assertNotNull(cache.getResourceAccess("/Test1"));
+			assertEquals(loads + 3, cache.getLoads());
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	// ----- private methods -----
+	private ResourceAccess createGrant(final String signature, final long flags) throws FrameworkException {
+
+		PropertyMap props = new PropertyMap();
+
+		props.put(ResourceAccess.signature, signature);
+		props.put(ResourceAccess.flags, flags);
+
+		return (ResourceAccess) createTestNode(ResourceAccess.class.getSimpleName(), props);
+	}
+}
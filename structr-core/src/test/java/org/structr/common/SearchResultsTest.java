@@ -22,13 +22,25 @@
 package org.structr.common;
 
 import org.neo4j.graphdb.NotFoundException;
+import org.structr.common.GeoHelper.GeoCodingResult;
 
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
 import org.structr.core.Result;
+import org.structr.core.Services;
+import org.structr.core.cypher.CypherExecutionEngine;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.File;
+import org.structr.core.entity.GenericNode;
+import org.structr.core.entity.Image;
+import org.structr.core.entity.Linkable;
+import org.structr.core.entity.TestImage;
 import org.structr.core.entity.TestOne;
 import org.structr.core.entity.TestSeven;
+import org.structr.core.graph.CypherQueryCommand;
+import org.structr.core.graph.NewIndexNodeCommand;
+import org.structr.core.graph.NodeService;
 import org.structr.core.graph.StructrTransaction;
 import org.structr.core.graph.search.DistanceSearchAttribute;
 import org.structr.core.graph.search.FilterSearchAttribute;
@@ -43,8 +55,10 @@ import org.structr.core.property.StringProperty;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -314,4 +328,142 @@ public class SearchResultsTest extends StructrTest {
 
 	}
 
+	public void test07SharedCypherEngine() {
+
+		try {
+
+			List<AbstractNode> nodes     = createTestNodes(TestOne.class.getSimpleName(), 3);
+			CypherExecutionEngine engine = Services.getService(NodeService.class).getCypherEngine();
+			String query                 = "START n=node:keywordAllNodes(uuid={uuid}) RETURN n";
+
+			assertNotNull(engine);
+
+			long hits   = engine.getHits();
+			long misses = engine.getMisses();
+
+			for (AbstractNode node : nodes) {
+
+				Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+				parameters.put("uuid", node.getUuid());
+
+				List<GraphObject> result = Services.command(securityContext, CypherQueryCommand.class).execute(query, parameters);
+
+				assertEquals(1, result.size());
+				assertEquals(node.getUuid(), result.get(0).getUuid());
+			}
+
+			// one engine (and thus one plan cache) is shared by all users
+			assertSame(engine, Services.getService(NodeService.class).getCypherEngine());
+
+			// the query is planned at most once
+			assertTrue(engine.getMisses() - misses <= 1);
+			assertTrue(engine.getHits() - hits >= 2);
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test08SearchTypeAndSubtypes() {
+
+		try {
+
+			createTestNodes(File.class.getSimpleName(), 2);
+			createTestNodes(TestImage.class.getSimpleName(), 1);
+			createTestNodes(TestOne.class.getSimpleName(), 4);
+
+			final List<AbstractNode> images = createTestNodes(Image.class.getSimpleName(), 3);
+
+			// one type clause per subtype (default)
+			assertEquals(6, searchTypeAndSubtypes(File.class.getSimpleName()));
+			assertEquals(4, searchTypeAndSubtypes(Image.class.getSimpleName()));
+			assertEquals(1, searchTypeAndSubtypes(TestImage.class.getSimpleName()));
+			assertEquals(6, searchTypeAndSubtypes(Linkable.class.getSimpleName()));
+
+			// indexed type ancestry
+			context.put(Services.TYPE_ANCESTRY_SEARCH, "true");
+
+			assertEquals(6, searchTypeAndSubtypes(File.class.getSimpleName()));
+			assertEquals(4, searchTypeAndSubtypes(Image.class.getSimpleName()));
+			assertEquals(1, searchTypeAndSubtypes(TestImage.class.getSimpleName()));
+			assertEquals(6, searchTypeAndSubtypes(Linkable.class.getSimpleName()));
+
+			// the ancestry is derived from the type property, not from the class of the instance
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					GenericNode genericNode = new GenericNode();
+
+					genericNode.init(securityContext, images.get(0).getNode());
+					Services.command(securityContext, NewIndexNodeCommand.class).updateNode(genericNode);
+
+					return null;
+				}
+
+			});
+
+			assertEquals(6, searchTypeAndSubtypes(File.class.getSimpleName()));
+			assertEquals(4, searchTypeAndSubtypes(Image.class.getSimpleName()));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			context.remove(Services.TYPE_ANCESTRY_SEARCH);
+		}
+
+	}
+
+	public void test09GeoCodingCache() {
+
+		try {
+
+			context.put(Services.GEOCODING_PROVIDER, StubGeoCodingProvider.class.getName());
+			StubGeoCodingProvider.reset();
+
+			GeoCodingResult first  = GeoHelper.geocode("Hanauer Landstr. 200, 60314 Frankfurt, Germany");
+			GeoCodingResult second = GeoHelper.geocode("  hanauer landstr. 200,   60314 FRANKFURT, Germany ");
+
+			assertNotNull(first);
+			assertNotNull(second);
+			assertEquals(1, StubGeoCodingProvider.getCalls());
+			assertEquals(StubGeoCodingProvider.LATITUDE, second.getLatitude());
+			assertEquals(StubGeoCodingProvider.LONGITUDE, second.getLongitude());
+
+			// reload the persisted results
+			GeoCodingCache cache = new GeoCodingCache(GeoHelper.getCache().getFile(), 10);
+
+			assertEquals(1, cache.size());
+			assertNotNull(cache.get(GeoCodingCache.normalize("Hanauer Landstr. 200, 60314 Frankfurt, Germany")));
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		} finally {
+
+			context.remove(Services.GEOCODING_PROVIDER);
+		}
+
+	}
+
+	private int searchTypeAndSubtypes(final String type) throws FrameworkException {
+
+		List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
+
+		searchAttributes.add(Search.andExactTypeAndSubtypes(type));
+
+		return searchNodeCommand.execute(true, false, searchAttributes).size();
+	}
+
 }
@@ -0,0 +1,137 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectGSONAdapter;
+import org.structr.core.StaticValue;
+import org.structr.core.StreamingGraphObjectWriter;
+import org.structr.core.Value;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.StructrTransaction;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the JSON serialization of graph objects.
+ *
+ * All tests are executed in superuser context
+ */
+public class StreamingGraphObjectWriterTest extends StructrTest {
+
+	private static final Logger logger = Logger.getLogger(StreamingGraphObjectWriterTest.class.getName());
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	/**
+	 * Tests that the streaming serializer produces exactly the same
+	 * characters as the tree serializer with the pretty-printing Gson
+	 * instance of the servlets, including the escaping of HTML characters.
+	 */
+	public void test01TreeAndStreamingOutput() {
+
+		try {
+
+			int number                                 = 200;
+			final List<AbstractNode> nodes             = createTestNodes("TestOne", number);
+			Value<String> propertyView                 = new StaticValue<String>(PropertyView.Ui);
+			GraphObjectGSONAdapter treeAdapter         = new GraphObjectGSONAdapter(propertyView, AbstractNode.uuid);
+			StreamingGraphObjectWriter streamingWriter = new StreamingGraphObjectWriter(propertyView, AbstractNode.uuid);
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					int i = 0;
+
+					for (AbstractNode node : nodes) {
+						node.setProperty(AbstractNode.name, "<script>alert('" + (i++) + "')</script> & a=b \"c\"");
+					}
+
+					return null;
+				}
+
+			});
+
+			StringWriter treeOutput      = new StringWriter();
+			StringWriter streamingOutput = new StringWriter();
+
+			serializeTree(treeAdapter, nodes, treeOutput);
+			serializeStreaming(streamingWriter, nodes, streamingOutput);
+
+			// compare the raw output, not the parsed JSON
+			assertEquals(treeOutput.toString(), streamingOutput.toString());
+
+			assertTrue(streamingOutput.toString().contains("\\u003cscript\\u003ealert(\\u00270\\u0027)\\u003c/script\\u003e \\u0026 a\\u003db \\\"c\\\""));
+			assertFalse(streamingOutput.toString().contains("<script>"));
+
+		} catch (Throwable t) {
+
+			logger.log(Level.SEVERE, t.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	// ----- private methods -----
+	private void serializeTree(final GraphObjectGSONAdapter adapter, final List<AbstractNode> nodes, final Writer writer) {
+
+		JsonArray array = new JsonArray();
+
+		for (AbstractNode node : nodes) {
+			array.add(adapter.serialize(node, GraphObject.class, null));
+		}
+
+		new GsonBuilder().setPrettyPrinting().serializeNulls().create().toJson(array, writer);
+	}
+
+	private void serializeStreaming(final StreamingGraphObjectWriter streamingWriter, final List<AbstractNode> nodes, final Writer writer) throws IOException {
+
+		JsonWriter jsonWriter = StreamingGraphObjectWriter.createJsonWriter(writer);
+
+		jsonWriter.beginArray();
+
+		for (AbstractNode node : nodes) {
+			streamingWriter.write(jsonWriter, node);
+		}
+
+		jsonWriter.endArray();
+		jsonWriter.flush();
+	}
+}
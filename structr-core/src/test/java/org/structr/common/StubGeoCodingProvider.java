@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.common.GeoHelper.GeoCodingProvider;
+import org.structr.common.GeoHelper.GeoCodingResult;
+
+/**
+ * A geocoding provider for tests that resolves every address to the same
+ * coordinates without network access, and counts its invocations.
+ */
+public class StubGeoCodingProvider implements GeoCodingProvider {
+
+	public static final double LATITUDE  = 50.12284d;
+	public static final double LONGITUDE = 8.73923d;
+
+	private static final AtomicInteger calls = new AtomicInteger(0);
+
+	@Override
+	public GeoCodingResult geocode(final String address) {
+
+		calls.incrementAndGet();
+
+		GeoCodingResult result = new GeoCodingResult(LATITUDE, LONGITUDE);
+		result.setAddress(address);
+
+		return result;
+	}
+
+	public static int getCalls() {
+		return calls.get();
+	}
+
+	public static void reset() {
+		calls.set(0);
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.common;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.common.error.ErrorBuffer;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.PropertyValidator;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.TestOne;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.graph.StructrTransaction;
+import org.structr.core.graph.UniqueKeyCommand;
+import org.structr.core.property.PropertyMap;
+import org.structr.core.validator.GlobalPropertyUniquenessValidator;
+import org.structr.core.validator.LowercaseTypeUniquenessValidator;
+import org.structr.core.validator.TypeUniquenessValidator;
+
+//~--- classes ----------------------------------------------------------------
+
+/**
+ * Tests for the uniqueness validators and the unique key index.
+ *
+ * All tests are executed in superuser context
+ */
+public class UniquenessValidatorTest extends StructrTest {
+
+	//~--- methods --------------------------------------------------------
+
+	@Override
+	public void test00DbAvailable() {
+
+		super.test00DbAvailable();
+
+	}
+
+	public void test01TypeUniqueness() {
+
+		try {
+
+			PropertyValidator<String> validator = new TypeUniquenessValidator(TestOne.class);
+
+			// nodes that exist before the first validation
+			createNamedNode("a");
+			createNamedNode("b");
+
+			AbstractNode x = createTestNode(TestOne.class);
+			AbstractNode y = createTestNode(TestOne.class);
+
+			assertFalse(validate(validator, x, "b"));
+			assertTrue(validate(validator, x, "c"));
+			assertFalse(validate(validator, y, "c"));
+			assertTrue(validate(validator, y, "C"));
+
+			// the same node may set its value again
+			assertTrue(validate(validator, x, "c"));
+
+			// values are released when they are modified
+			assertTrue(validate(validator, x, "d"));
+			assertTrue(validate(validator, y, "c"));
+
+			// values are released when the node is deleted
+			deleteNodeCommand.execute(x);
+
+			assertTrue(validate(validator, createTestNode(TestOne.class), "d"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test02LowercaseUniqueness() {
+
+		try {
+
+			PropertyValidator<String> validator = new LowercaseTypeUniquenessValidator(NodeIndex.user, AbstractNode.name);
+			AbstractNode x                      = createTestNode(TestOne.class);
+			AbstractNode y                      = createTestNode(TestOne.class);
+
+			assertTrue(validate(validator, x, "Alice"));
+			assertFalse(validate(validator, y, "alice"));
+			assertTrue(validate(validator, y, "Bob"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test03ConcurrentReservations() {
+
+		try {
+
+			final PropertyValidator<String> validator = new TypeUniquenessValidator(TestOne.class);
+			final AtomicInteger validCount            = new AtomicInteger(0);
+			final List<Thread> threads                = new LinkedList<Thread>();
+
+			// initialize the scope
+			assertTrue(validate(validator, createTestNode(TestOne.class), "a"));
+
+			for (int i = 0; i < 4; i++) {
+
+				final AbstractNode node = createTestNode(TestOne.class);
+
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+
+							if (validate(validator, node, "b", 200)) {
+
+								validCount.incrementAndGet();
+							}
+
+						} catch (Throwable t) {}
+					}
+
+				});
+
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+
+				thread.join();
+			}
+
+			assertEquals(1, validCount.get());
+
+		} catch (Throwable t) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test04InitializationMarker() {
+
+		try {
+
+			PropertyValidator<String> validator = new TypeUniquenessValidator(TestOne.class);
+			UniqueKeyCommand uniqueKeys         = Services.command(securityContext, UniqueKeyCommand.class);
+			AbstractNode x                      = createTestNode(TestOne.class);
+
+			createNamedNode("a");
+
+			assertTrue(validate(validator, x, "x"));
+			assertTrue(waitForInitialization("TestOne.name"));
+
+			// existing values were reserved in the background
+			assertFalse(validate(validator, createTestNode(TestOne.class), "a"));
+
+			// the marker does not depend on the validated node
+			deleteNodeCommand.execute(x);
+
+			assertTrue(uniqueKeys.isInitialized("TestOne.name"));
+			assertFalse(uniqueKeys.isInitialized("TestTwo.name"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	public void test05GlobalUniquenessIsExact() {
+
+		try {
+
+			PropertyValidator<String> validator = new GlobalPropertyUniquenessValidator();
+
+			createNamedNode("Foo Bar");
+
+			// before and after the existing values are reserved
+			assertTrue(validate(validator, createTestNode(TestOne.class), "Foo"));
+			assertFalse(validate(validator, createTestNode(TestOne.class), "Foo Bar"));
+			assertTrue(waitForInitialization(AbstractNode.name.dbName()));
+			assertFalse(validate(validator, createTestNode(TestOne.class), "Foo Bar"));
+			assertTrue(validate(validator, createTestNode(TestOne.class), "foo bar"));
+			assertTrue(validate(validator, createTestNode(TestOne.class), "Bar"));
+
+		} catch (FrameworkException ex) {
+
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private boolean waitForInitialization(final String scope) {
+
+		long timeout = System.currentTimeMillis() + 10000;
+
+		while (!NodeService.getUniqueKeyIndexer().isInitialized(scope) && System.currentTimeMillis() < timeout) {
+
+			try { Thread.sleep(10); } catch (InterruptedException iex) {}
+		}
+
+		return NodeService.getUniqueKeyIndexer().isInitialized(scope);
+	}
+
+	private AbstractNode createNamedNode(final String name) throws FrameworkException {
+
+		PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.name, name);
+
+		return createTestNode(TestOne.class.getSimpleName(), props);
+	}
+
+	private boolean validate(final PropertyValidator<String> validator, final AbstractNode node, final String value) {
+
+		return validate(validator, node, value, 0);
+	}
+
+	/**
+	 * Sets and validates the name of the given node in a transaction, like
+	 * a registered validator would do. The transaction is rolled back if
+	 * the value is not valid.
+	 */
+	private boolean validate(final PropertyValidator<String> validator, final AbstractNode node, final String value, final long delay) {
+
+		try {
+
+			transactionCommand.execute(new StructrTransaction() {
+
+				@Override
+				public Object execute() throws FrameworkException {
+
+					ErrorBuffer errorBuffer = new ErrorBuffer();
+
+					node.setProperty(AbstractNode.name, value);
+
+					if (!validator.isValid(node, AbstractNode.name, value, errorBuffer)) {
+
+						throw new FrameworkException(422, errorBuffer);
+					}
+
+					try {
+
+						// keep the transaction open
+						Thread.sleep(delay);
+
+					} catch (InterruptedException iex) {}
+
+					return null;
+				}
+
+			});
+
+			return true;
+
+		} catch (FrameworkException fex) {
+
+			return false;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ * 
+ *  This file is part of structr <http://structr.org>.
+ * 
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.entity;
+
+import org.structr.core.EntityContext;
+import org.structr.core.graph.NodeService.NodeIndex;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * An entity that can not be indexed while its name is {@link #FAIL}, to
+ * test the handling of indexing errors.
+ */
+public class TestEight extends AbstractNode {
+
+	public static final String FAIL = "fail";
+
+	static {
+
+		EntityContext.registerSearchablePropertySet(TestEight.class, NodeIndex.keyword.name(), name);
+	}
+
+	@Override
+	public Object getPropertyForIndexing(final PropertyKey key) {
+
+		if (name.equals(key) && FAIL.equals(getProperty(name))) {
+			throw new IllegalStateException("Unable to index " + getUuid());
+		}
+
+		return super.getPropertyForIndexing(key);
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ * 
+ *  This file is part of structr <http://structr.org>.
+ * 
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.entity;
+
+import org.structr.common.PropertyView;
+import org.structr.common.View;
+import org.structr.core.property.IntProperty;
+import org.structr.core.property.Property;
+
+/**
+ * An entity with a name and a number in its public view, to test
+ * exports.
+ */
+public class TestNine extends AbstractNode {
+
+	public static final Property<Integer> anInt = new IntProperty("anInt");
+
+	public static final View publicView = new View(TestNine.class, PropertyView.Public,
+		name, anInt
+	);
+}
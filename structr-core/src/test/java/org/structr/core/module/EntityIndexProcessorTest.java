@@ -0,0 +1,244 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ * 
+ *  This file is part of structr <http://structr.org>.
+ * 
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.module;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests the class index written by {@link EntityIndexProcessor}, and that
+ * {@link ModuleService} reads it instead of scanning the classes.
+ *
+ * The test sources are compiled with the system Java compiler into a
+ * temporary classes directory.
+ */
+public class EntityIndexProcessorTest extends TestCase {
+
+	private static final Logger logger = Logger.getLogger(EntityIndexProcessorTest.class.getName());
+
+	private static final String PACKAGE      = "org.structr.test.index";
+	private static final String INDEXED_NODE = PACKAGE + ".IndexedNode";
+	private static final String NESTED_NODE  = PACKAGE + ".IndexedNode$Nested";
+
+	private File basePath   = null;
+	private File sourcePath = null;
+	private File classPath  = null;
+
+	@Override
+	protected void setUp() throws Exception {
+
+		basePath = File.createTempFile("structr-index-", "");
+
+		// replace temporary file with directory
+		basePath.delete();
+
+		sourcePath = new File(basePath, "src");
+		classPath  = new File(basePath, "classes");
+
+		sourcePath.mkdirs();
+		classPath.mkdirs();
+
+		writeFile(new File(sourcePath, "IndexedNode.java"), "package " + PACKAGE + ";\n"
+			+ "public class IndexedNode extends org.structr.core.entity.AbstractNode {\n"
+			+ "	public static class Nested extends org.structr.core.entity.AbstractNode {}\n"
+			+ "}\n");
+
+		writeFile(new File(sourcePath, "AbstractIndexedNode.java"), "package " + PACKAGE + ";\n"
+			+ "public abstract class AbstractIndexedNode extends org.structr.core.entity.AbstractNode {}\n");
+
+		writeFile(new File(sourcePath, "Helper.java"), "package " + PACKAGE + ";\n"
+			+ "public class Helper {}\n");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(basePath);
+	}
+
+	public void test01IndexContainsEntityClasses() throws IOException {
+
+		if (!compile("IndexedNode.java", "AbstractIndexedNode.java", "Helper.java")) {
+			return;
+		}
+
+		assertEquals(names(INDEXED_NODE, NESTED_NODE), readIndex());
+	}
+
+	public void test02IncrementalCompilationPrunesIndex() throws IOException {
+
+		// an index from an earlier compilation, with a class that is not
+		// recompiled and a class whose source was deleted
+		writeFile(new File(classPath, EntityIndexProcessor.INDEX_RESOURCE), "# existing index\n"
+			+ "org.structr.core.entity.TestOne\n"
+			+ PACKAGE + ".Deleted\n"
+			+ PACKAGE + ".Helper\n");
+
+		if (!compile("IndexedNode.java", "Helper.java")) {
+			return;
+		}
+
+		assertEquals(names(INDEXED_NODE, NESTED_NODE, "org.structr.core.entity.TestOne"), readIndex());
+	}
+
+	public void test03ModuleServiceReadsIndex() throws IOException {
+
+		if (!compile("IndexedNode.java", "AbstractIndexedNode.java", "Helper.java")) {
+			return;
+		}
+
+		// the classes directory contains four classes, but only the
+		// indexed ones are loaded
+		Set<String> classes = new ModuleService().loadResource(classPath.getAbsolutePath()).getClasses();
+
+		assertEquals(names(INDEXED_NODE, NESTED_NODE), new TreeSet<String>(classes));
+	}
+
+	public void test04MissingIndexedClassIsLogged() throws IOException {
+
+		if (!compile("IndexedNode.java")) {
+			return;
+		}
+
+		final List<LogRecord> warnings = new LinkedList<LogRecord>();
+		Logger moduleLogger            = Logger.getLogger(ModuleService.class.getName());
+		Handler handler                = new Handler() {
+
+			@Override
+			public void publish(final LogRecord record) {
+
+				if (record.getLevel() == Level.WARNING) {
+					warnings.add(record);
+				}
+			}
+
+			@Override
+			public void flush() {}
+
+			@Override
+			public void close() {}
+		};
+
+		moduleLogger.addHandler(handler);
+
+		try {
+
+			// the compiled classes are not on the class path of the test
+			new ModuleService().scanResource(classPath.getAbsolutePath());
+
+		} finally {
+
+			moduleLogger.removeHandler(handler);
+		}
+
+		Set<Object> missing = new TreeSet<Object>();
+
+		for (LogRecord record : warnings) {
+			missing.add(record.getParameters()[0]);
+		}
+
+		assertEquals(new TreeSet<Object>(names(INDEXED_NODE, NESTED_NODE)), missing);
+	}
+
+	// ----- private methods -----
+	private boolean compile(final String... sources) {
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+		if (compiler == null) {
+
+			logger.log(Level.WARNING, "No system Java compiler available, skipping test");
+			return false;
+		}
+
+		List<String> arguments = new LinkedList<String>(Arrays.asList(new String[] {
+			"-d", classPath.getAbsolutePath(),
+			"-classpath", System.getProperty("java.class.path"),
+			"-processor", EntityIndexProcessor.class.getName(),
+			"-implicit:none"
+		}));
+
+		for (String source : sources) {
+			arguments.add(new File(sourcePath, source).getAbsolutePath());
+		}
+
+		assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])));
+
+		return true;
+	}
+
+	private Set<String> readIndex() throws IOException {
+
+		Set<String> names     = new TreeSet<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(classPath, EntityIndexProcessor.INDEX_RESOURCE)), "UTF-8"));
+
+		try {
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+				if (!line.startsWith("#")) {
+					names.add(line);
+				}
+			}
+
+		} finally {
+
+			reader.close();
+		}
+
+		return names;
+	}
+
+	private Set<String> names(final String... names) {
+		return new TreeSet<String>(Arrays.asList(names));
+	}
+
+	private void writeFile(final File file, final String content) throws IOException {
+
+		file.getParentFile().mkdirs();
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+		try {
+			writer.write(content);
+
+		} finally {
+
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.rest.adapter;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+import org.structr.core.GraphObject;
+import org.structr.core.JsonOutput;
+import org.structr.core.Result;
+import org.structr.core.StreamingGraphObjectWriter;
+import org.structr.core.Value;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Serializes a {@link Result} to JSON. The result is either written to a
+ * character stream, where each graph object is written as soon as it is
+ * serialized instead of building the whole JSON tree in memory first, or
+ * returned as a JSON tree for {@link ResultGSONAdapter}.
+ *
+ * Nothing is written to the stream until the first graph object has been
+ * serialized successfully, so an error that occurs before that leaves the
+ * stream untouched and can still be reported with an error status. An
+ * error that occurs after the first graph object has been written can not
+ * be reported anymore; the response is truncated in that case.
+ */
+public class StreamingResultWriter {
+
+	private StreamingGraphObjectWriter graphObjectWriter = null;
+
+	public StreamingResultWriter(final Value<String> propertyView, final PropertyKey idProperty) {
+		this.graphObjectWriter = new StreamingGraphObjectWriter(propertyView, idProperty);
+	}
+
+	/**
+	 * Writes the given result to the given writer. The writer is flushed,
+	 * but not closed.
+	 *
+	 * @param src the result
+	 * @param out the writer
+	 * @throws IOException
+	 */
+	public void write(final Result src, final Writer out) throws IOException {
+
+		// same layout as the pretty-printing Gson instance of JsonRestServlet
+		DeferredWriter deferred = new DeferredWriter(out);
+		JsonWriter writer       = StreamingGraphObjectWriter.createJsonWriter(deferred);
+
+		write(src, JsonOutput.forWriter(writer), deferred);
+
+		deferred.release();
+		writer.flush();
+	}
+
+	/**
+	 * Returns the given result as a tree of JSON elements.
+	 *
+	 * @param src the result
+	 * @return the JSON element
+	 */
+	public JsonElement toJsonTree(final Result src) {
+
+		JsonOutput.TreeOutput output = JsonOutput.forTree();
+
+		try {
+			write(src, output, null);
+
+		} catch (IOException ioex) {
+
+			// can not happen, the tree output does no I/O
+			throw new IllegalStateException(ioex);
+		}
+
+		return output.getResult();
+	}
+
+	public StreamingGraphObjectWriter getGraphObjectWriter() {
+		return graphObjectWriter;
+	}
+
+	// ----- private methods -----
+	private void write(final Result src, final JsonOutput output, final DeferredWriter deferred) throws IOException {
+
+		long t0 = System.nanoTime();
+
+		// result fields in alphabetical order
+		List<? extends GraphObject> results = src.getResults();
+		Integer page = src.getPage();
+		Integer pageCount = src.getPageCount();
+		Integer pageSize = src.getPageSize();
+		String queryTime = src.getQueryTime();
+		Integer resultCount = src.getRawResultCount();
+		String searchString = src.getSearchString();
+		String sortKey = src.getSortKey();
+		String sortOrder = src.getSortOrder();
+		String nextPageCursor = src.getNextPageCursor();
+
+		// fail before anything is written
+		if (results != null && !results.isEmpty() && !src.isPrimitiveArray() && results.size() > 1 && !src.isCollection()) {
+			throw new IllegalStateException(src.getClass().getSimpleName() + " is not a collection resource, but result set has size " + results.size());
+		}
+
+		output.beginObject();
+
+		if(nextPageCursor != null) {
+			output.name("next_page_cursor");
+			output.value(nextPageCursor);
+		}
+
+		if(page != null) {
+			output.name("page");
+			output.value(page);
+		}
+
+		if(pageCount != null) {
+			output.name("page_count");
+			output.value(pageCount);
+		}
+
+		if(pageSize != null) {
+			output.name("page_size");
+			output.value(pageSize);
+		}
+
+		if(queryTime != null) {
+			output.name("query_time");
+			output.value(queryTime);
+		}
+
+		if(resultCount != null) {
+			output.name("result_count");
+			output.value(resultCount);
+		}
+
+		if(results != null) {
+
+			output.name("result");
+
+			if(results.isEmpty()) {
+
+				output.beginArray();
+				output.endArray();
+
+			} else if(src.isPrimitiveArray()) {
+
+				output.beginArray();
+
+				for(GraphObject graphObject : results) {
+					Object value = graphObject.getProperty(AbstractNode.uuid);	// FIXME: UUID key hard-coded, use variable in Result here!
+					if(value != null) {
+						output.value(value.toString());
+					}
+
+					release(deferred);
+				}
+
+				output.endArray();
+
+			} else if(src.isCollection()) {
+
+				// serialize list of results
+				output.beginArray();
+
+				for(GraphObject graphObject : results) {
+
+					graphObjectWriter.write(output, graphObject);
+					release(deferred);
+				}
+
+				output.endArray();
+
+			} else {
+
+				// single result
+				graphObjectWriter.write(output, results.get(0));
+			}
+		}
+
+		if(searchString != null) {
+			output.name("search_string");
+			output.value(searchString);
+		}
+
+		if(sortKey != null) {
+			output.name("sort_key");
+			output.value(sortKey);
+		}
+
+		if(sortOrder != null) {
+			output.name("sort_order");
+			output.value(sortOrder);
+		}
+
+		DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		output.name("serialization_time");
+		output.value(decimalFormat.format((System.nanoTime() - t0) / 1000000000.0));
+
+		output.endObject();
+	}
+
+	private void release(final DeferredWriter deferred) throws IOException {
+
+		if (deferred != null) {
+			deferred.release();
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Buffers everything that is written to it until {@link #release} is
+	 * called, and writes through to the underlying writer afterwards.
+	 */
+	private static class DeferredWriter extends Writer {
+
+		private StringBuilder buffer = new StringBuilder();
+		private Writer out           = null;
+
+		public DeferredWriter(final Writer out) {
+			this.out = out;
+		}
+
+		public void release() throws IOException {
+
+			if (buffer != null) {
+
+				out.write(buffer.toString());
+				buffer = null;
+			}
+		}
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len) throws IOException {
+
+			if (buffer != null) {
+
+				buffer.append(cbuf, off, len);
+
+			} else {
+
+				out.write(cbuf, off, len);
+			}
+		}
+
+		@Override
+		public void write(final String str, final int off, final int len) throws IOException {
+
+			if (buffer != null) {
+
+				buffer.append(str, off, off + len);
+
+			} else {
+
+				out.write(str, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+
+			// the buffer is kept until it is released explicitly
+			if (buffer == null) {
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			release();
+			out.close();
+		}
+	}
+}
@@ -19,6 +19,8 @@
 package org.structr.rest.resource;
 
 import org.structr.core.Result;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import org.structr.core.property.PropertyKey;
@@ -55,20 +57,22 @@ public class EntityResolverResource extends SortableResource {
 		//       in error response
 		
 		GetNodeByIdCommand searchCommand = Services.command(securityContext, GetNodeByIdCommand.class);
-		RestMethodResult result = new RestMethodResult(200);
+		RestMethodResult result          = new RestMethodResult(200);
+		List<String> ids                 = new LinkedList<String>();
 
 		for(Object o : propertySet.values()) {
 			
 			if(o instanceof String) {
 				
-				String id = (String)o;
-				
-				AbstractNode node = (AbstractNode)searchCommand.execute(id);
-				if(node != null) {
-					result.addContent(node);
-				}
+				ids.add((String)o);
 			}
 		}
+
+		// resolve all ids at once
+		for (AbstractNode node : searchCommand.execute(ids).values()) {
+
+			result.addContent(node);
+		}
 		
 		return result;
 	}
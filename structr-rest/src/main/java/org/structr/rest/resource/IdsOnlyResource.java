@@ -20,6 +20,7 @@
 package org.structr.rest.resource;
 
 import org.structr.core.Result;
+import java.util.Collections;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +29,7 @@ import org.structr.core.property.PropertyKey;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Value;
+import org.structr.core.entity.AbstractNode;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalPathException;
 
@@ -49,6 +51,12 @@ public class IdsOnlyResource extends ViewFilterResource {
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
 
 		if(wrappedResource != null) {
+
+			// only the ids are rendered, so the nodes don't need to be instantiated
+			if (wrappedResource instanceof TypeResource) {
+				((TypeResource)wrappedResource).setProjection(Collections.<PropertyKey>singleton(AbstractNode.uuid));
+			}
+
 			return wrappedResource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
 		}
 
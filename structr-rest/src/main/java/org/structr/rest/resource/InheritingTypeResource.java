@@ -120,7 +120,8 @@ public class InheritingTypeResource extends TypeResource {
 				pageSize,
 				page,
 				offsetId,
-				sortType
+				sortType,
+				projection
 			);
 
 			// TODO: SORTING: remove default sorting below
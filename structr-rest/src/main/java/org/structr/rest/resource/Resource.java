@@ -311,40 +311,12 @@ public abstract class Resource {
 
 	protected ResourceAccess findGrant() throws FrameworkException {
 
-		final SearchNodeCommand search               = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
-		final String uriPart                         = EntityContext.normalizeEntityName(this.getResourceSignature());
-		final List<SearchAttribute> searchAttributes = new LinkedList<SearchAttribute>();
-		ResourceAccess grant                         = null;
+		final String uriPart       = EntityContext.normalizeEntityName(this.getResourceSignature());
+		final ResourceAccess grant = NodeService.getResourceAccessCache().getResourceAccess(uriPart);
 
-		searchAttributes.add(Search.andExactType(ResourceAccess.class.getSimpleName()));
-		searchAttributes.add(Search.andExactProperty(ResourceAccess.signature, uriPart));
-
-		final Result result = search.execute(searchAttributes);
-
-		if (result.isEmpty()) {
+		if (grant == null) {
 
 			logger.log(Level.FINE, "No resource access object found for {0}", uriPart);
-
-		} else {
-
-			final AbstractNode node = (AbstractNode) result.get(0);
-
-			if (node instanceof ResourceAccess) {
-
-				grant = (ResourceAccess) node;
-
-			} else {
-
-				logger.log(Level.SEVERE, "Grant for URI {0} has wrong type!", new Object[] { uriPart, node.getClass().getName() });
-
-			}
-
-			if (result.size() > 1) {
-
-				logger.log(Level.SEVERE, "Found {0} grants for URI {1}!", new Object[] { result.size(), uriPart });
-
-			}
-
 		}
 
 		return grant;
@@ -409,6 +381,15 @@ public abstract class Resource {
 		if (request != null &&!request.getParameterMap().isEmpty() && StringUtils.isNotBlank(distance)) {
 
 			final Double dist				= Double.parseDouble(distance);
+			final String latitude			= request.getParameter(Search.LATITUDE_SEARCH_KEYWORD);
+			final String longitude			= request.getParameter(Search.LONGITUDE_SEARCH_KEYWORD);
+
+			// explicit coordinates don't need geocoding
+			if (StringUtils.isNotBlank(latitude) && StringUtils.isNotBlank(longitude)) {
+
+				return new DistanceSearchAttribute(Double.parseDouble(latitude), Double.parseDouble(longitude), dist, SearchOperator.AND);
+			}
+
 			final StringBuilder searchKey	= new StringBuilder();
 			final Enumeration names			= request.getParameterNames();
 
@@ -417,6 +398,8 @@ public abstract class Resource {
 				final String name = (String) names.nextElement();
 
 				if (!name.equals(Search.DISTANCE_SEARCH_KEYWORD)
+					&& !name.equals(Search.LATITUDE_SEARCH_KEYWORD)
+					&& !name.equals(Search.LONGITUDE_SEARCH_KEYWORD)
 					&& !name.equals(JsonRestServlet.REQUEST_PARAMETER_LOOSE_SEARCH)
 					&& !name.equals(JsonRestServlet.REQUEST_PARAMETER_PAGE_SIZE)
 					&& !name.equals(JsonRestServlet.REQUEST_PARAMETER_PAGE_NUMBER)
@@ -69,9 +69,10 @@ public class TypeResource extends SortableResource {
 
 	//~--- fields ---------------------------------------------------------
 
-	protected Class entityClass          = null;
-	protected String rawType             = null;
-	protected HttpServletRequest request = null;
+	protected Class entityClass           = null;
+	protected String rawType              = null;
+	protected HttpServletRequest request  = null;
+	protected Set<PropertyKey> projection = null;
 
 	//~--- methods --------------------------------------------------------
 
@@ -101,6 +102,16 @@ public class TypeResource extends SortableResource {
 
 	}
 
+	/**
+	 * Restricts the results of {@link #doGet} to the values of the given
+	 * property keys, see {@link SearchNodeCommand}.
+	 *
+	 * @param projection the property keys, or null for complete results
+	 */
+	public void setProjection(final Set<PropertyKey> projection) {
+		this.projection = projection;
+	}
+
 	@Override
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
 
@@ -188,7 +199,8 @@ public class TypeResource extends SortableResource {
 				pageSize,
 				page,
 				offsetId,
-				sortType
+				sortType,
+				sortFinalResults ? null : projection
 			);
 			
 			if (sortFinalResults) {
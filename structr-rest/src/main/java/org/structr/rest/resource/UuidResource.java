@@ -28,9 +28,9 @@ import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.GetNodeByIdCommand;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
-import org.structr.core.graph.search.SearchNodeCommand;
 import org.structr.core.graph.search.SearchRelationshipCommand;
 import org.structr.rest.exception.NotFoundException;
 
@@ -111,41 +111,19 @@ public class UuidResource extends FilterableResource {
 
 	public AbstractNode getNode() throws FrameworkException {
 
-		List<SearchAttribute> attrs = new LinkedList<SearchAttribute>();
-
-		attrs.add(Search.andExactUuid(uuid));
-
-		Result results    = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class).execute(attrs);
-		int size          = results.size();
-		AbstractNode node = null;
+		AbstractNode node = Services.command(SecurityContext.getSuperUserInstance(), GetNodeByIdCommand.class).execute(uuid);
 
-		switch (size) {
-
-			case 0 :
-				throw new NotFoundException();
-
-			case 1 :
-				
-				node = (AbstractNode) results.get(0);
-				
-				if (!securityContext.isReadable(node, true, false)) {
-					throw new NotAllowedException();
-				}
-				
-				node.setSecurityContext(securityContext);
-				
-				return node;
+		if (node == null) {
+			throw new NotFoundException();
+		}
 
-			default :
-				logger.log(Level.WARNING, "Got more than one result for UUID {0}, this is very likely to be a UUID collision!", uuid);
+		if (!securityContext.isReadable(node, true, false)) {
+			throw new NotAllowedException();
+		}
 
-				node = (AbstractNode)results.get(0);
-				
-				node.setSecurityContext(securityContext);
-				
-				return node;
+		node.setSecurityContext(securityContext);
 
-		}
+		return node;
 
 	}
 
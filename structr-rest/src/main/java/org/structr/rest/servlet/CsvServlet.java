@@ -26,17 +26,17 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 
-import org.apache.commons.lang.StringUtils;
-
 import org.structr.common.AccessMode;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.CsvGraphObjectWriter;
 import org.structr.core.EntityContext;
 import org.structr.core.GraphObject;
 import org.structr.core.JsonInput;
 import org.structr.core.JsonInputGSONAdapter;
 import org.structr.core.Result;
+import org.structr.core.StaticValue;
 import org.structr.core.Value;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.RelationshipMapping;
@@ -51,7 +51,7 @@ import org.structr.rest.resource.Resource;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.io.IOException;
+import java.io.BufferedWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 
@@ -81,8 +81,12 @@ public class CsvServlet extends HttpServlet {
 
 	private static final Logger logger = Logger.getLogger(CsvServlet.class.getName());
 
+	/** Size of the output buffer in characters */
+	private static final int BUFFER_SIZE = 65536;
+
 	//~--- fields ---------------------------------------------------------
 
+	private CsvGraphObjectWriter csvWriter                      = null;
 	private Gson gson                                           = null;
 	private JsonInputGSONAdapter jsonInputAdapter               = null;
 	private Writer logWriter                                    = null;
@@ -123,6 +127,7 @@ public class CsvServlet extends HttpServlet {
 		// initialize adapters
 		this.resultGsonAdapter = new ResultGSONAdapter(propertyView, defaultIdProperty);
 		this.jsonInputAdapter  = new JsonInputGSONAdapter(propertyView, defaultIdProperty);
+		this.csvWriter         = new CsvGraphObjectWriter(new StaticValue<String>(defaultPropertyView));
 
 		// create GSON serializer
 		this.gson = new GsonBuilder().setPrettyPrinting().serializeNulls().registerTypeHierarchyAdapter(FrameworkException.class,
@@ -199,11 +204,13 @@ public class CsvServlet extends HttpServlet {
 
 				result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
 
-				Writer writer = response.getWriter();
+				// rows are written through a buffer which is flushed only
+				// when it is full, not after each row. The resource returns
+				// a complete page, so large exports must be paged.
+				Writer writer = new BufferedWriter(response.getWriter(), BUFFER_SIZE);
 
-				// gson.toJson(result, writer);
-				writeCsv(result, writer);
 				response.setStatus(HttpServletResponse.SC_OK);
+				csvWriter.write(writer, (List<GraphObject>) result.getResults());
 				writer.append("\n");    // useful newline
 				writer.flush();
 				writer.close();
@@ -290,63 +297,6 @@ public class CsvServlet extends HttpServlet {
 
 	}
 
-	/**
-	 * Write list of objects to output
-	 *
-	 * @param result
-	 * @param out
-	 * @throws IOException
-	 */
-	private void writeCsv(final Result result, Writer out) throws IOException {
-
-		List<GraphObject> list = result.getResults();
-		boolean headerWritten  = false;
-
-		for (GraphObject obj : list) {
-
-			// Write column headers
-			if (!headerWritten) {
-
-				StringBuilder row = new StringBuilder();
-
-				for (PropertyKey key : obj.getPropertyKeys(defaultPropertyView)) {
-
-					row.append("\"").append(key.dbName()).append("\",");
-				}
-
-				// remove last ,
-				row.deleteCharAt(row.lastIndexOf(","));
-				out.append(row).append("\n");
-
-				// flush each line
-				out.flush();
-
-				headerWritten = true;
-
-			}
-
-			StringBuilder row = new StringBuilder();
-
-			for (PropertyKey key : obj.getPropertyKeys(defaultPropertyView)) {
-
-				Object value = obj.getProperty(key);
-
-				row.append("\"").append((value != null
-							 ? StringUtils.replace(value.toString(), "\"", "\\\"")    // escaping for CSV
-							 : "")).append("\",");
-
-			}
-
-			// remove last ,
-			row.deleteCharAt(row.lastIndexOf(","));
-			out.append(row).append("\n");
-
-			// flush each line
-			out.flush();
-		}
-
-	}
-
 	//~--- get methods ----------------------------------------------------
 
 	private SecurityContext getSecurityContext(HttpServletRequest request, HttpServletResponse response) {
@@ -39,6 +39,7 @@ import org.structr.rest.ResourceProvider;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.adapter.FrameworkExceptionGSONAdapter;
 import org.structr.rest.adapter.ResultGSONAdapter;
+import org.structr.rest.adapter.StreamingResultWriter;
 import org.structr.rest.resource.PagingHelper;
 import org.structr.rest.resource.Resource;
 import org.structr.core.Result;
@@ -99,6 +100,7 @@ public class JsonRestServlet extends HttpServlet {
 	private JsonInputGSONAdapter jsonInputAdapter               = null;
 	private Value<String> propertyView                          = null;
 	private ResultGSONAdapter resultGsonAdapter                 = null;
+	private StreamingResultWriter resultWriter                  = null;
 	private ResourceProvider resourceProvider                   = null;
 
 	public JsonRestServlet(final ResourceProvider resourceProvider, final String defaultPropertyView, final PropertyKey<String> idProperty) {
@@ -124,6 +126,7 @@ public class JsonRestServlet extends HttpServlet {
 
 		// initialize adapters
 		this.resultGsonAdapter  = new ResultGSONAdapter(propertyView, defaultIdProperty);
+		this.resultWriter       = new StreamingResultWriter(propertyView, defaultIdProperty);
 		this.jsonInputAdapter = new JsonInputGSONAdapter(propertyView, defaultIdProperty);
 
 		// create GSON serializer
@@ -302,10 +305,12 @@ public class JsonRestServlet extends HttpServlet {
 
 				result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
 
+				// status must be set before the response is streamed
+				response.setStatus(HttpServletResponse.SC_OK);
+
 				Writer writer = response.getWriter();
 
-				gson.toJson(result, writer);
-				response.setStatus(HttpServletResponse.SC_OK);
+				resultWriter.write(result, writer);
 				writer.append("\n");    // useful newline
 
 			} else {
@@ -0,0 +1,68 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ * Tests the raw output of GET requests.
+ */
+public class JsonOutputTest extends StructrRestTest {
+
+	/**
+	 * HTML characters in string values must be escaped as unicode
+	 * sequences in collection and entity responses.
+	 */
+	public void test01HtmlCharactersAreEscaped() {
+
+		String location = RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { \"name\" : \"<b>'x'</b> & a=b\" } ")
+		.expect()
+			.statusCode(201)
+		.when()
+			.post("/test_ones")
+			.getHeader("Location");
+
+		String escaped = "\"name\": \"\\u003cb\\u003e\\u0027x\\u0027\\u003c/b\\u003e \\u0026 a\\u003db\"";
+
+		String collection = RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+		.when()
+			.get("/test_ones")
+			.asString();
+
+		assertTrue(collection.contains(escaped));
+		assertFalse(collection.contains("<b>"));
+
+		String entity = RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+		.when()
+			.get("/test_ones/" + getUuidFromLocation(location))
+			.asString();
+
+		assertTrue(entity.contains(escaped));
+		assertFalse(entity.contains("<b>"));
+	}
+}
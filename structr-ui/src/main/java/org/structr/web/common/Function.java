@@ -22,30 +22,13 @@
 package org.structr.web.common;
 
 /**
+ * A function that can be called in templates. Functions are shared by
+ * all renderings, so they must not keep state, everything they need is
+ * passed in the {@link TemplateContext}.
  *
  * @author Christian Morgner
  */
 public abstract class Function<S, T> {
 
-	protected ThreadLocal<String> dataId = new ThreadLocal<String>();
-	protected ThreadLocal<String> pageId = new ThreadLocal<String>();
-
-	//~--- methods --------------------------------------------------------
-
-	public abstract T apply(S[] sources);
-
-	//~--- set methods ----------------------------------------------------
-
-	public void setDataId(String dataIdString) {
-
-		dataId.set(dataIdString);
-
-	}
-
-	public void setPageId(String pageIdString) {
-
-		pageId.set(pageIdString);
-
-	}
-
+	public abstract T apply(TemplateContext context, S[] sources);
 }
@@ -0,0 +1,344 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.structr.common.BoundedCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.ErrorBuffer;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.EntityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Bounded cache of rendered pages and components, used by
+ * {@link org.structr.web.servlet.HtmlServlet}.
+ *
+ * Every entry records the UUIDs of the nodes it was rendered from (see
+ * {@link RenderContext}). The cache is registered as a transaction
+ * listener in {@link EntityContext} and drops all entries that depend on a
+ * node when the node, one of its properties or one of its relationships
+ * is created, modified or deleted.
+ */
+public class RenderCache implements StructrTransactionListener {
+
+	private final ConcurrentMap<String, Set<String>> dependents    = new ConcurrentHashMap<String, Set<String>>();
+	private final Map<Long, Set<String>> transactions              = new ConcurrentHashMap<Long, Set<String>>();
+	private final AtomicLong generation                            = new AtomicLong(0);
+	private BoundedCache<String, Fragment> cache                   = null;
+
+	public RenderCache(final int maxSize) {
+
+		this.cache = new BoundedCache<String, Fragment>("Render cache", maxSize) {
+
+			@Override
+			protected void onEviction(final String key, final Fragment fragment) {
+				unregister(key, fragment.dependencies);
+			}
+		};
+	}
+
+	public Fragment get(final String key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Stores the given rendering, unless a node was modified since the
+	 * given generation was obtained. Callers must obtain the generation
+	 * <b>before</b> they start rendering.
+	 *
+	 * @param key the key
+	 * @param content the rendered content
+	 * @param dependencies the UUIDs of the nodes the content was rendered from
+	 * @param expectedGeneration the generation at the start of rendering
+	 */
+	public void put(final String key, final String content, final Set<String> dependencies, final long expectedGeneration) {
+
+		if (generation.get() != expectedGeneration) {
+			return;
+		}
+
+		Fragment fragment = new Fragment(content, new HashSet<String>(dependencies));
+
+		for (String uuid : fragment.dependencies) {
+			register(key, uuid);
+		}
+
+		cache.put(key, fragment);
+
+		// re-check, invalidation may have happened in between
+		if (generation.get() != expectedGeneration) {
+			remove(key);
+		}
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Drops all entries that depend on the node with the given UUID.
+	 *
+	 * @param uuid the UUID
+	 */
+	public void invalidate(final String uuid) {
+
+		generation.incrementAndGet();
+
+		Set<String> keys = dependents.remove(uuid);
+
+		if (keys != null) {
+
+			for (String key : keys) {
+				remove(key);
+			}
+		}
+	}
+
+	public void clear() {
+
+		generation.incrementAndGet();
+
+		cache.clear();
+		dependents.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void begin(final SecurityContext securityContext, final long transactionKey) {
+		transactions.put(transactionKey, Collections.synchronizedSet(new HashSet<String>()));
+	}
+
+	@Override
+	public void commit(final SecurityContext securityContext, final long transactionKey) {
+
+		Set<String> uuids = transactions.remove(transactionKey);
+
+		// renderings that were started before the commit may have
+		// read the old values, so the nodes are invalidated again
+		if (uuids != null) {
+
+			synchronized (uuids) {
+
+				for (String uuid : uuids) {
+					invalidate(uuid);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void rollback(final SecurityContext securityContext, final long transactionKey) {
+		transactions.remove(transactionKey);
+	}
+
+	@Override
+	public boolean propertyModified(final SecurityContext securityContext, final long transactionKey, final ErrorBuffer errorBuffer, final GraphObject graphObject, final PropertyKey key, final Object oldValue, final Object newValue) {
+
+		modified(transactionKey, graphObject, null);
+
+		return true;
+	}
+
+	@Override
+	public boolean propertyRemoved(final SecurityContext securityContext, final long transactionKey, final ErrorBuffer errorBuffer, final GraphObject graphObject, final PropertyKey key, final Object oldValue) {
+
+		modified(transactionKey, graphObject, null);
+
+		return true;
+	}
+
+	@Override
+	public boolean graphObjectCreated(final SecurityContext securityContext, final long transactionKey, final ErrorBuffer errorBuffer, final GraphObject graphObject) throws FrameworkException {
+
+		modified(transactionKey, graphObject, null);
+
+		return true;
+	}
+
+	@Override
+	public boolean graphObjectModified(final SecurityContext securityContext, final long transactionKey, final ErrorBuffer errorBuffer, final GraphObject graphObject) throws FrameworkException {
+
+		modified(transactionKey, graphObject, null);
+
+		return true;
+	}
+
+	@Override
+	public boolean graphObjectDeleted(final SecurityContext securityContext, final long transactionKey, final ErrorBuffer errorBuffer, final GraphObject graphObject, final PropertyMap properties) throws FrameworkException {
+
+		modified(transactionKey, graphObject, properties);
+
+		return true;
+	}
+
+	// ----- private methods -----
+	private void modified(final long transactionKey, final GraphObject graphObject, final PropertyMap properties) {
+
+		if (graphObject instanceof AbstractRelationship) {
+
+			// do not access nodes of relationships, they may be deleted
+			AbstractRelationship relationship = (AbstractRelationship) graphObject;
+			String startNodeId                = relationship.getCachedStartNodeId();
+			String endNodeId                  = relationship.getCachedEndNodeId();
+
+			if (startNodeId != null && endNodeId != null) {
+
+				modified(transactionKey, startNodeId);
+				modified(transactionKey, endNodeId);
+
+			} else {
+
+				clear();
+			}
+
+		} else if (graphObject != null) {
+
+			String uuid = properties != null ? properties.get(AbstractNode.uuid) : graphObject.getUuid();
+
+			if (uuid != null) {
+
+				modified(transactionKey, uuid);
+
+			} else {
+
+				clear();
+			}
+		}
+	}
+
+	private void modified(final long transactionKey, final String uuid) {
+
+		Set<String> uuids = transactions.get(transactionKey);
+
+		if (uuids != null) {
+			uuids.add(uuid);
+		}
+
+		invalidate(uuid);
+	}
+
+	private void remove(final String key) {
+
+		Fragment fragment = cache.remove(key);
+
+		if (fragment != null) {
+			unregister(key, fragment.dependencies);
+		}
+	}
+
+	private void unregister(final String key, final Set<String> uuids) {
+
+		for (String uuid : uuids) {
+
+			Set<String> keys = dependents.get(uuid);
+
+			if (keys != null) {
+
+				synchronized (keys) {
+
+					keys.remove(key);
+
+					if (keys.isEmpty()) {
+						dependents.remove(uuid, keys);
+					}
+				}
+			}
+		}
+	}
+
+	private void register(final String key, final String uuid) {
+
+		while (true) {
+
+			Set<String> keys = dependents.get(uuid);
+
+			if (keys == null) {
+
+				Set<String> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+				keys = dependents.putIfAbsent(uuid, newKeys);
+
+				if (keys == null) {
+					keys = newKeys;
+				}
+			}
+
+			// the set may have been dropped by unregister() in the meantime
+			synchronized (keys) {
+
+				if (dependents.get(uuid) == keys) {
+
+					keys.add(key);
+					return;
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	public static class Fragment {
+
+		private Set<String> dependencies = null;
+		private String content           = null;
+
+		public Fragment(final String content, final Set<String> dependencies) {
+
+			this.dependencies = dependencies;
+			this.content      = content;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public Set<String> getDependencies() {
+			return dependencies;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import org.structr.core.GraphObject;
+
+/**
+ * Collects the dependencies of the page or component that is currently
+ * being rendered by the calling thread, for the {@link RenderCache}.
+ *
+ * Rendering a cacheable subtree opens a frame, which records the UUIDs of
+ * all nodes whose properties or relationships were used to render the
+ * subtree. Frames are nested: when a frame is closed, its dependencies
+ * are added to the enclosing frame, and a subtree that can not be cached
+ * makes all enclosing subtrees uncacheable.
+ *
+ * All methods are no-ops when no render context has been started for the
+ * calling thread.
+ */
+public class RenderContext {
+
+	private static final ThreadLocal<RenderContext> contexts = new ThreadLocal<RenderContext>();
+
+	private LinkedList<Frame> frames = new LinkedList<Frame>();
+	private String requestKey        = null;
+
+	private RenderContext(final String requestKey) {
+		this.requestKey = requestKey;
+	}
+
+	/**
+	 * Starts a render context for the calling thread.
+	 *
+	 * @param requestKey the part of the cache key that is derived from the request
+	 */
+	public static void start(final String requestKey) {
+		contexts.set(new RenderContext(requestKey));
+	}
+
+	public static void finish() {
+		contexts.remove();
+	}
+
+	public static boolean isActive() {
+		return contexts.get() != null;
+	}
+
+	public static String getRequestKey() {
+
+		RenderContext context = contexts.get();
+
+		return context != null ? context.requestKey : null;
+	}
+
+	public static void begin() {
+
+		RenderContext context = contexts.get();
+
+		if (context != null) {
+			context.frames.push(new Frame());
+		}
+	}
+
+	public static Frame end() {
+
+		RenderContext context = contexts.get();
+
+		if (context != null && !context.frames.isEmpty()) {
+
+			Frame frame  = context.frames.pop();
+			Frame parent = context.frames.peek();
+
+			if (parent != null) {
+
+				parent.dependencies.addAll(frame.dependencies);
+				parent.cacheable &= frame.cacheable;
+			}
+
+			return frame;
+		}
+
+		return null;
+	}
+
+	public static void dependsOn(final GraphObject obj) {
+
+		if (obj != null) {
+			dependsOn(obj.getUuid());
+		}
+	}
+
+	/**
+	 * Records a dependency of the subtree that is currently being rendered.
+	 * A dependency without UUID can not be tracked, so it makes the subtree
+	 * uncacheable.
+	 *
+	 * @param uuid the UUID of the node
+	 */
+	public static void dependsOn(final String uuid) {
+
+		Frame frame = currentFrame();
+
+		if (frame != null) {
+
+			if (uuid != null) {
+
+				frame.dependencies.add(uuid);
+
+			} else {
+
+				frame.cacheable = false;
+			}
+		}
+	}
+
+	public static void dependsOn(final Collection<String> uuids) {
+
+		Frame frame = currentFrame();
+
+		if (frame != null) {
+			frame.dependencies.addAll(uuids);
+		}
+	}
+
+	/**
+	 * Marks the subtree that is currently being rendered as uncacheable,
+	 * e.g. because its output depends on a query.
+	 */
+	public static void uncacheable() {
+
+		Frame frame = currentFrame();
+
+		if (frame != null) {
+			frame.cacheable = false;
+		}
+	}
+
+	// ----- private methods -----
+	private static Frame currentFrame() {
+
+		RenderContext context = contexts.get();
+
+		return context != null ? context.frames.peek() : null;
+	}
+
+	// ----- nested classes -----
+	public static class Frame {
+
+		private Set<String> dependencies = new HashSet<String>();
+		private boolean cacheable        = true;
+
+		public Set<String> getDependencies() {
+			return dependencies;
+		}
+
+		public boolean isCacheable() {
+			return cacheable;
+		}
+	}
+}
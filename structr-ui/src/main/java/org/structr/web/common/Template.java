@@ -0,0 +1,164 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.common;
+
+import java.util.List;
+import org.structr.common.error.FrameworkException;
+import org.structr.web.entity.html.HtmlElement;
+
+/**
+ * A compiled template, i.e. a string with <code>${...}</code> expressions.
+ *
+ * Templates are created by a {@link TemplateCompiler}. They are immutable,
+ * all state of an evaluation is passed in a {@link TemplateContext}.
+ */
+public class Template {
+
+	private Segment[] segments = null;
+
+	Template(final List<Segment> segments) {
+		this.segments = segments.toArray(new Segment[segments.size()]);
+	}
+
+	public String evaluate(final TemplateContext context) throws FrameworkException {
+
+		if (segments.length == 1) {
+			return segments[0].evaluate(context);
+		}
+
+		StringBuilder buf = new StringBuilder();
+
+		for (Segment segment : segments) {
+			buf.append(segment.evaluate(context));
+		}
+
+		return buf.toString();
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A part of a template, i.e. literal text or an expression.
+	 */
+	static abstract class Segment {
+
+		public abstract String evaluate(final TemplateContext context) throws FrameworkException;
+	}
+
+	static class Text extends Segment {
+
+		private String text = null;
+
+		public Text(final String text) {
+			this.text = text;
+		}
+
+		@Override
+		public String evaluate(final TemplateContext context) {
+			return text;
+		}
+	}
+
+	/**
+	 * A <code>${...}</code> expression. Expressions that evaluate to null
+	 * are rendered as they are.
+	 */
+	static class Substitution extends Segment {
+
+		private Expression expression = null;
+		private String source         = null;
+
+		public Substitution(final String source, final Expression expression) {
+
+			this.expression = expression;
+			this.source     = source;
+		}
+
+		@Override
+		public String evaluate(final TemplateContext context) throws FrameworkException {
+
+			String value = expression.evaluate(context);
+
+			return value != null ? value : source;
+		}
+	}
+
+	public static abstract class Expression {
+
+		public abstract String evaluate(final TemplateContext context) throws FrameworkException;
+	}
+
+	static class Constant extends Expression {
+
+		private String value = null;
+
+		public Constant(final String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String evaluate(final TemplateContext context) {
+			return value;
+		}
+	}
+
+	/**
+	 * A property reference like <code>page.name</code>, see
+	 * {@link HtmlElement#getReferencedProperty}.
+	 */
+	static class Reference extends Expression {
+
+		private String key = null;
+
+		public Reference(final String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String evaluate(final TemplateContext context) throws FrameworkException {
+
+			return HtmlElement.convertValueForHtml(HtmlElement.getReferencedProperty(context.getSecurityContext(), context.getPage(), context.getStartNode(), context.getPageId(),
+				context.getComponentId(), context.getViewComponent(), key));
+		}
+	}
+
+	static class Call extends Expression {
+
+		private Function<String, String> function = null;
+		private Expression[] parameters           = null;
+
+		public Call(final Function<String, String> function, final List<Expression> parameters) {
+
+			this.parameters = parameters.toArray(new Expression[parameters.size()]);
+			this.function   = function;
+		}
+
+		@Override
+		public String evaluate(final TemplateContext context) throws FrameworkException {
+
+			String[] values = new String[parameters.length];
+
+			for (int i = 0; i < parameters.length; i++) {
+				values[i] = parameters[i].evaluate(context);
+			}
+
+			return function.apply(context, values);
+		}
+	}
+}
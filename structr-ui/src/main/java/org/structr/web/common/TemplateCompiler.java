@@ -0,0 +1,259 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.common;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+import org.structr.common.BoundedCache;
+import org.structr.web.common.Template.Call;
+import org.structr.web.common.Template.Constant;
+import org.structr.web.common.Template.Expression;
+import org.structr.web.common.Template.Reference;
+import org.structr.web.common.Template.Segment;
+import org.structr.web.common.Template.Substitution;
+import org.structr.web.common.Template.Text;
+
+/**
+ * Compiles template strings into {@link Template}s.
+ *
+ * Every template string is parsed only once, compiled templates are kept
+ * in a bounded cache keyed by their source text.
+ */
+public class TemplateCompiler {
+
+	private static final Pattern functionPattern = Pattern.compile("([a-zA-Z0-9_]+)\\((.+)\\)");
+	private static final Pattern templatePattern = Pattern.compile("\\$\\{[^}]*\\}");
+
+	private Map<String, Function<String, String>> functions = null;
+	private BoundedCache<String, Template> cache             = null;
+
+	/**
+	 * Creates a new compiler.
+	 *
+	 * @param functions the functions that can be called in templates
+	 * @param maxSize the maximum number of cached templates
+	 */
+	public TemplateCompiler(final Map<String, Function<String, String>> functions, final int maxSize) {
+
+		this.cache     = new BoundedCache<String, Template>("Template cache", maxSize);
+		this.functions = functions;
+	}
+
+	public Template compile(final String source) {
+
+		Template template = cache.get(source);
+
+		if (template == null) {
+
+			template = parseTemplate(source);
+			cache.put(source, template);
+		}
+
+		return template;
+	}
+
+	/**
+	 * Compiles the contents of a single <code>${...}</code> expression.
+	 *
+	 * @param source the expression
+	 * @return the compiled expression
+	 */
+	public Expression compileExpression(final String source) {
+
+		Matcher matcher = functionPattern.matcher(source);
+
+		if (matcher.matches()) {
+
+			Function<String, String> function = functions.get(matcher.group(1));
+			String parameter                  = matcher.group(2);
+
+			if (function != null) {
+
+				List<Expression> parameters = new LinkedList<Expression>();
+
+				if (parameter.contains(",")) {
+
+					// collect results from comma-separated function parameter
+					for (String part : split(parameter)) {
+						parameters.add(compileExpression(StringUtils.strip(part)));
+					}
+
+				} else {
+
+					parameters.add(compileExpression(StringUtils.strip(parameter)));
+				}
+
+				return new Call(function, parameters);
+			}
+		}
+
+		// if any of the following conditions match, the literal source value is returned
+		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
+
+			// return numeric value
+			return new Constant(source);
+
+		} else if (source.startsWith("\"") && source.endsWith("\"")) {
+
+			return new Constant(source.substring(1, source.length() - 1));
+
+		} else if (source.startsWith("'") && source.endsWith("'")) {
+
+			return new Constant(source.substring(1, source.length() - 1));
+		}
+
+		// return property key
+		return new Reference(source);
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+
+	/**
+	 * Splits the given function parameter at top-level commas.
+	 *
+	 * @param source the function parameter
+	 * @return the parameters
+	 */
+	public static String[] split(final String source) {
+
+		ArrayList<String> tokens   = new ArrayList<String>(20);
+		boolean inDoubleQuotes     = false;
+		boolean inSingleQuotes     = false;
+		int len                    = source.length();
+		int level                  = 0;
+		StringBuilder currentToken = new StringBuilder(len);
+
+		for (int i = 0; i < len; i++) {
+
+			char c = source.charAt(i);
+
+			// do not strip away separators in nested functions!
+			if ((level != 0) || (c != ',')) {
+
+				currentToken.append(c);
+			}
+
+			switch (c) {
+
+				case '(' :
+					level++;
+
+					break;
+
+				case ')' :
+					level--;
+
+					break;
+
+				case '"' :
+					if (inDoubleQuotes) {
+
+						inDoubleQuotes = false;
+
+						level--;
+
+					} else {
+
+						inDoubleQuotes = true;
+
+						level++;
+
+					}
+
+					break;
+
+				case '\'' :
+					if (inSingleQuotes) {
+
+						inSingleQuotes = false;
+
+						level--;
+
+					} else {
+
+						inSingleQuotes = true;
+
+						level++;
+
+					}
+
+					break;
+
+				case ',' :
+					if (level == 0) {
+
+						tokens.add(currentToken.toString().trim());
+						currentToken.setLength(0);
+
+					}
+
+					break;
+
+			}
+
+		}
+
+		if (currentToken.length() > 0) {
+
+			tokens.add(currentToken.toString().trim());
+		}
+
+		return tokens.toArray(new String[0]);
+	}
+
+	// ----- private methods -----
+	private Template parseTemplate(final String source) {
+
+		List<Segment> segments = new LinkedList<Segment>();
+		Matcher matcher        = templatePattern.matcher(source);
+		int position           = 0;
+
+		while (matcher.find()) {
+
+			String group = matcher.group();
+
+			if (matcher.start() > position) {
+				segments.add(new Text(source.substring(position, matcher.start())));
+			}
+
+			segments.add(new Substitution(group, compileExpression(group.substring(2, group.length() - 1))));
+
+			position = matcher.end();
+		}
+
+		if (position < source.length() || segments.isEmpty()) {
+			segments.add(new Text(source.substring(position)));
+		}
+
+		return new Template(segments);
+	}
+}
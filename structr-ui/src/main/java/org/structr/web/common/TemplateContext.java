@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner, structr <structr@structr.org>
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as
+ *  published by the Free Software Foundation, either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.web.common;
+
+import org.structr.common.SecurityContext;
+import org.structr.core.entity.AbstractNode;
+
+/**
+ * The state of a single template evaluation: the node whose template is
+ * evaluated, and the page, component and data node it is rendered for.
+ *
+ * A new context is created for every evaluation, so that compiled
+ * {@link Template}s and {@link Function}s can be shared by concurrent
+ * renderings.
+ */
+public class TemplateContext {
+
+	private SecurityContext securityContext = null;
+	private AbstractNode viewComponent      = null;
+	private AbstractNode startNode          = null;
+	private AbstractNode page               = null;
+	private String componentId              = null;
+	private String pageId                   = null;
+
+	public TemplateContext(final SecurityContext securityContext, final AbstractNode page, final AbstractNode startNode, final String pageId, final String componentId, final AbstractNode viewComponent) {
+
+		this.securityContext = securityContext;
+		this.viewComponent   = viewComponent;
+		this.componentId     = componentId;
+		this.startNode       = startNode;
+		this.pageId          = pageId;
+		this.page            = page;
+	}
+
+	public SecurityContext getSecurityContext() {
+		return securityContext;
+	}
+
+	public AbstractNode getPage() {
+		return page;
+	}
+
+	public AbstractNode getStartNode() {
+		return startNode;
+	}
+
+	public String getPageId() {
+		return pageId;
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public AbstractNode getViewComponent() {
+		return viewComponent;
+	}
+
+	/**
+	 * Returns the UUID of the data node, or null if the template is not
+	 * rendered for a data node.
+	 *
+	 * @return the UUID of the data node
+	 */
+	public String getDataId() {
+		return viewComponent != null ? viewComponent.getProperty(AbstractNode.uuid) : null;
+	}
+}
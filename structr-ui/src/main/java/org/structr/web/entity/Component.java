@@ -38,6 +38,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.DeleteNodeCommand;
 import org.structr.core.graph.NodeService;
+import org.structr.web.common.RenderContext;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -313,6 +314,9 @@ public class Component extends AbstractNode implements Element {
 
 			if ((pageId == null) || ((pageId != null) && rel.hasProperty(pageId)) || rel.hasProperty("*")) {
 
+				// children that are skipped here may become visible later
+				RenderContext.dependsOn(abstractRelationship.getCachedEndNodeId());
+
 				AbstractNode endNode = abstractRelationship.getEndNode();
 
 				if (endNode == null || (endNode instanceof Component && !isVisible(request, endNode, abstractRelationship, componentId))) {
@@ -35,20 +35,19 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.web.common.Function;
-import org.structr.web.common.ThreadLocalMatcher;
+import org.structr.web.common.TemplateCompiler;
+import org.structr.web.common.TemplateContext;
 import org.structr.web.entity.Element;
 import org.structr.web.entity.Page;
 import org.structr.web.servlet.HtmlServlet;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang.StringEscapeUtils;
@@ -59,6 +58,7 @@ import org.structr.core.property.StringProperty;
 import org.structr.core.property.CollectionProperty;
 import org.structr.web.common.HtmlProperty;
 import org.structr.web.common.PageHelper;
+import org.structr.web.common.RenderContext;
 import org.structr.web.entity.Component;
 import org.structr.web.entity.PageElement;
 import org.structr.web.entity.RemoteView;
@@ -185,8 +185,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 	);
 	
 	private static final java.util.Map<String, Function<String, String>> functions = new LinkedHashMap<String, Function<String, String>>();
-	private static final ThreadLocalMatcher threadLocalFunctionMatcher             = new ThreadLocalMatcher("([a-zA-Z0-9_]+)\\((.+)\\)");
-	private static final ThreadLocalMatcher threadLocalTemplateMatcher             = new ThreadLocalMatcher("\\$\\{[^}]*\\}");
+	private static final TemplateCompiler templateCompiler                         = new TemplateCompiler(functions, 10000);
 
 	//~--- static initializers --------------------------------------------
 
@@ -198,7 +197,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("md5", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				return ((s != null) && (s.length > 0) && (s[0] != null))
 				       ? DigestUtils.md5Hex(s[0])
@@ -210,7 +209,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("upper", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				return ((s != null) && (s.length > 0) && (s[0] != null))
 				       ? s[0].toUpperCase()
@@ -222,7 +221,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("lower", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				return ((s != null) && (s.length > 0) && (s[0] != null))
 				       ? s[0].toLowerCase()
@@ -234,7 +233,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("capitalize", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				return ((s != null) && (s.length > 0) && (s[0] != null))
 				       ? StringUtils.capitalize(s[0])
@@ -246,7 +245,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("if", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				if (s.length < 3) {
 
@@ -267,7 +266,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("equal", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				logger.log(Level.FINE, "Length: {0}", s.length);
 
@@ -288,7 +287,7 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("add", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				int result = 0;
 
@@ -314,15 +313,15 @@ public abstract class HtmlElement extends PageElement implements Element {
 		functions.put("active", new Function<String, String>() {
 
 			@Override
-			public String apply(String[] s) {
+			public String apply(TemplateContext context, String[] s) {
 
 				if (s.length == 0) {
 
 					return "";
 				}
 
-				String data = this.dataId.get();
-				String page = this.pageId.get();
+				String data = context.getDataId();
+				String page = context.getPageId();
 
 				if (data != null && page != null) {
 
@@ -374,189 +373,26 @@ public abstract class HtmlElement extends PageElement implements Element {
 	public static String replaceVariables(SecurityContext securityContext, AbstractNode page, AbstractNode startNode, String pageId, String componentId, AbstractNode viewComponent,
 		String rawValue) throws FrameworkException {
 
-		String value = null;
-
-		if ((rawValue != null) && (rawValue instanceof String)) {
-
-			value = (String) rawValue;
-
-			// re-use matcher from previous calls
-			Matcher matcher = threadLocalTemplateMatcher.get();
-
-			matcher.reset(value);
-
-			while (matcher.find()) {
-
-				String group  = matcher.group();
-				String source = group.substring(2, group.length() - 1);
-
-				// fetch referenced property
-				String partValue = extractFunctions(securityContext, page, startNode, pageId, componentId, viewComponent, source);
-
-				if (partValue != null) {
-
-					value = value.replace(group, partValue);
-				}
-
-			}
+		if ((rawValue == null) || (rawValue.indexOf("${") < 0)) {
 
+			return rawValue;
 		}
 
-		return value;
+		// templates are parsed only once, see TemplateCompiler
+		return templateCompiler.compile(rawValue).evaluate(new TemplateContext(securityContext, page, startNode, pageId, componentId, viewComponent));
 
 	}
 
 	public static String extractFunctions(SecurityContext securityContext, AbstractNode page, AbstractNode startNode, String pageId, String componentId, AbstractNode viewComponent,
 		String source) throws FrameworkException {
 
-		// re-use matcher from previous calls
-		Matcher functionMatcher = threadLocalFunctionMatcher.get();
-
-		functionMatcher.reset(source);
-
-		if (functionMatcher.matches()) {
-
-			String viewComponentId            = viewComponent != null
-				? viewComponent.getProperty(AbstractNode.uuid)
-				: null;
-			String functionGroup              = functionMatcher.group(1);
-			String parameter                  = functionMatcher.group(2);
-			String functionName               = functionGroup.substring(0, functionGroup.length());
-			Function<String, String> function = functions.get(functionName);
-
-			if (function != null) {
-
-				// store thread "state" in function
-				function.setDataId(viewComponentId);
-				function.setPageId(pageId);
-
-				if (parameter.contains(",")) {
-
-					String[] parameters = split(parameter);
-					String[] results    = new String[parameters.length];
-
-					// collect results from comma-separated function parameter
-					for (int i = 0; i < parameters.length; i++) {
-
-						results[i] = extractFunctions(securityContext, page, startNode, pageId, componentId, viewComponent, StringUtils.strip(parameters[i]));
-					}
-
-					return function.apply(results);
-
-				} else {
-
-					String result = extractFunctions(securityContext, page, startNode, pageId, componentId, viewComponent, StringUtils.strip(parameter));
-
-					return function.apply(new String[] { result });
-
-				}
-			}
-
-		}
-
-		// if any of the following conditions match, the literal source value is returned
-		if (StringUtils.isNotBlank(source) && StringUtils.isNumeric(source)) {
+		return templateCompiler.compileExpression(source).evaluate(new TemplateContext(securityContext, page, startNode, pageId, componentId, viewComponent));
 
-			// return numeric value
-			return source;
-		} else if (source.startsWith("\"") && source.endsWith("\"")) {
-
-			return source.substring(1, source.length() - 1);
-		} else if (source.startsWith("'") && source.endsWith("'")) {
-
-			return source.substring(1, source.length() - 1);
-		} else {
-
-			// return property key
-			return convertValueForHtml(getReferencedProperty(securityContext, page, startNode, pageId, componentId, viewComponent, source));
-		}
 	}
 
 	public static String[] split(String source) {
 
-		ArrayList<String> tokens   = new ArrayList<String>(20);
-		boolean inDoubleQuotes     = false;
-		boolean inSingleQuotes     = false;
-		int len                    = source.length();
-		int level                  = 0;
-		StringBuilder currentToken = new StringBuilder(len);
-
-		for (int i = 0; i < len; i++) {
-
-			char c = source.charAt(i);
-
-			// do not strip away separators in nested functions!
-			if ((level != 0) || (c != ',')) {
-
-				currentToken.append(c);
-			}
-
-			switch (c) {
-
-				case '(' :
-					level++;
-
-					break;
-
-				case ')' :
-					level--;
-
-					break;
-
-				case '"' :
-					if (inDoubleQuotes) {
-
-						inDoubleQuotes = false;
-
-						level--;
-
-					} else {
-
-						inDoubleQuotes = true;
-
-						level++;
-
-					}
-
-					break;
-
-				case '\'' :
-					if (inSingleQuotes) {
-
-						inSingleQuotes = false;
-
-						level--;
-
-					} else {
-
-						inSingleQuotes = true;
-
-						level++;
-
-					}
-
-					break;
-
-				case ',' :
-					if (level == 0) {
-
-						tokens.add(currentToken.toString().trim());
-						currentToken.setLength(0);
-
-					}
-
-					break;
-
-			}
-
-		}
-
-		if (currentToken.length() > 0) {
-
-			tokens.add(currentToken.toString().trim());
-		}
-
-		return tokens.toArray(new String[0]);
+		return TemplateCompiler.split(source);
 
 	}
 
@@ -586,6 +422,9 @@ public abstract class HtmlElement extends PageElement implements Element {
 
 			String part = parts[i];
 
+			// rendered content depends on every node on the path
+			RenderContext.dependsOn(node);
+
 			// special keyword "request"
 			if ("request".equals(part.toLowerCase())) {
 
@@ -702,6 +541,8 @@ public abstract class HtmlElement extends PageElement implements Element {
 			// special keyword "result_size"
 			if ("result_size".equals(part.toLowerCase())) {
 
+				RenderContext.uncacheable();
+
 				Set<Page> pages = HtmlServlet.getResultPages(securityContext, (Page) page);
 
 				if (!pages.isEmpty()) {
@@ -716,6 +557,8 @@ public abstract class HtmlElement extends PageElement implements Element {
 			// special keyword "rest_result"
 			if ("rest_result".equals(part.toLowerCase())) {
 
+				RenderContext.uncacheable();
+
 				HttpServletRequest request = securityContext.getRequest();
 
 				if (request != null) {
@@ -730,6 +573,8 @@ public abstract class HtmlElement extends PageElement implements Element {
 
 		if (node != null) {
 
+			RenderContext.dependsOn(node);
+
 			return node.getProperty(referenceKeyProperty);
 		}
 
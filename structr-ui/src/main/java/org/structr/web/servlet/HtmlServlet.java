@@ -57,6 +57,7 @@ import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
@@ -64,6 +65,8 @@ import org.structr.core.graph.search.SearchAttributeGroup;
 import org.structr.core.graph.search.SearchNodeCommand;
 import org.structr.core.graph.search.SearchOperator;
 import org.structr.web.auth.HttpAuthenticator;
+import org.structr.web.common.RenderCache;
+import org.structr.web.common.RenderContext;
 import org.structr.web.common.ThreadLocalMatcher;
 import org.structr.web.entity.*;
 import org.structr.web.entity.Component;
@@ -117,6 +120,9 @@ public class HtmlServlet extends HttpServlet {
 	public static final String REDIRECT = "redirect";
 	public static final String LAST_GET_URL = "lastGetUrl";
 	public static final String POSSIBLE_ENTRY_POINTS = "possibleEntryPoints";
+
+	// longer line prefixes are not part of the render cache key, see getContent()
+	private static final int MAX_CACHED_LINE_PREFIX = 256;
 	
 	public static final DecimalFormat decimalFormat     = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
 	
@@ -182,6 +188,7 @@ public class HtmlServlet extends HttpServlet {
 
 	private boolean edit;
 	private Gson gson;
+	private RenderCache renderCache;
 
 	//~--- methods --------------------------------------------------------
 
@@ -238,10 +245,33 @@ public class HtmlServlet extends HttpServlet {
 	public void init() {
 		
 		 searchNodesAsSuperuser = Services.command(SecurityContext.getSuperUserInstance(), SearchNodeCommand.class);
+
+		int renderCacheSize = 1000;
+
+		try {
+			renderCacheSize = Integer.parseInt(Services.getConfigurationValue(Services.HTML_RENDER_CACHE_SIZE, "1000"));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.HTML_RENDER_CACHE_SIZE);
+		}
+
+		if (renderCacheSize > 0) {
+
+			renderCache = new RenderCache(renderCacheSize);
+			EntityContext.registerTransactionListener(renderCache);
+		}
 	}
 
 	@Override
-	public void destroy() {}
+	public void destroy() {
+
+		if (renderCache != null) {
+
+			EntityContext.unregisterTransactionListener(renderCache);
+			renderCache.clear();
+		}
+	}
 
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws UnsupportedEncodingException {
@@ -454,8 +484,19 @@ public class HtmlServlet extends HttpServlet {
 					out.close();
 
 				} else {
-					
-					getContent(securityContext, uuid, null, buffer, page, page, 0, false, searchFor, attrs, null, null);
+
+					// rendered pages and components are cached unless the page is edited or shows a REST response
+					if (renderCache != null && !edit && !dontCache) {
+						RenderContext.start(getRequestKey(securityContext, request));
+					}
+
+					try {
+						getContent(securityContext, uuid, null, buffer, page, page, 0, false, searchFor, attrs, null, null);
+
+					} finally {
+
+						RenderContext.finish();
+					}
 
 					String content = buffer.toString();
 					double end     = System.nanoTime();
@@ -847,11 +888,105 @@ public class HtmlServlet extends HttpServlet {
 		return indent.toString();
 	}
 
+	/**
+	 * Returns the part of the render cache key that identifies the request:
+	 * the path, all request parameters and the user.
+	 */
+	private static String getRequestKey(final SecurityContext securityContext, final HttpServletRequest request) {
+
+		StringBuilder key                  = new StringBuilder();
+		Map<String, String[]> parameterMap = new TreeMap<String, String[]>(request.getParameterMap());
+		Principal user                     = securityContext.getUser();
+
+		key.append(request.getPathInfo());
+
+		for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+
+			key.append(entry.getKey()).append("=").append(Arrays.toString(entry.getValue())).append("&");
+		}
+
+		key.append(user != null ? user.getUuid() : "anonymous");
+
+		return key.toString();
+	}
+
+	private static String getCacheKey(final String pageId, final String componentId, final AbstractNode startNode, final int depth, final boolean inBody, final String searchClass,
+				final AbstractNode viewComponent, final Condition condition, final String linePrefix) {
+
+		StringBuilder key = new StringBuilder();
+
+		key.append(RenderContext.getRequestKey()).append("/");
+		key.append(pageId).append("/");
+		key.append(componentId).append("/");
+		key.append(startNode.getUuid()).append("/");
+		key.append(viewComponent != null ? viewComponent.getUuid() : null).append("/");
+		key.append(condition != null ? condition.getUuid() : null).append("/");
+		key.append(depth).append("/");
+		key.append(inBody).append("/");
+		key.append(searchClass).append("/");
+		key.append(linePrefix);
+
+		return key.toString();
+	}
+
 	//~--- get methods ----------------------------------------------------
 
+	/**
+	 * Renders the given node and its children, using the render cache for
+	 * pages and components.
+	 *
+	 * Rendering a node may remove whitespace from the end of the current
+	 * line of the buffer, so the cache key contains the current line, and
+	 * a rendering is only cached if it left everything in front of it
+	 * unchanged.
+	 */
 	private void getContent(SecurityContext securityContext, final String pageId, final String componentId, final StringBuilder buffer, final AbstractNode page, final AbstractNode startNode,
 				int depth, boolean inBody, final String searchClass, final List<NodeAttribute> attrs, final AbstractNode viewComponent, final Condition condition) throws FrameworkException {
 
+		int lineStart = Math.max(0, buffer.lastIndexOf("\n"));
+
+		if (renderCache == null || !RenderContext.isActive() || !(startNode instanceof Page || startNode instanceof Component) || buffer.length() - lineStart > MAX_CACHED_LINE_PREFIX) {
+
+			renderContent(securityContext, pageId, componentId, buffer, page, startNode, depth, inBody, searchClass, attrs, viewComponent, condition);
+			return;
+		}
+
+		String linePrefix             = buffer.substring(lineStart);
+		String key                    = getCacheKey(pageId, componentId, startNode, depth, inBody, searchClass, viewComponent, condition, linePrefix);
+		RenderCache.Fragment fragment = renderCache.get(key);
+
+		if (fragment != null) {
+
+			buffer.append(fragment.getContent());
+			RenderContext.dependsOn(fragment.getDependencies());
+
+			return;
+		}
+
+		// obtain generation before rendering, see RenderCache
+		long generation           = renderCache.getGeneration();
+		int start                 = buffer.length();
+		RenderContext.Frame frame = null;
+
+		RenderContext.begin();
+
+		try {
+			renderContent(securityContext, pageId, componentId, buffer, page, startNode, depth, inBody, searchClass, attrs, viewComponent, condition);
+
+		} finally {
+
+			frame = RenderContext.end();
+		}
+
+		if (frame != null && frame.isCacheable() && buffer.length() >= start && linePrefix.equals(buffer.substring(lineStart, start))) {
+
+			renderCache.put(key, buffer.substring(start), frame.getDependencies(), generation);
+		}
+	}
+
+	private void renderContent(SecurityContext securityContext, final String pageId, final String componentId, final StringBuilder buffer, final AbstractNode page, final AbstractNode startNode,
+				int depth, boolean inBody, final String searchClass, final List<NodeAttribute> attrs, final AbstractNode viewComponent, final Condition condition) throws FrameworkException {
+
 		String localComponentId    = componentId;
 		String content             = null;
 		String tag                 = null;
@@ -893,6 +1028,8 @@ public class HtmlServlet extends HttpServlet {
 			String id   = startNode.getUuid();
 			tag = startNode.getProperty(Element.tag);
 
+			RenderContext.dependsOn(startNode);
+
 			if (startNode instanceof Component && searchClass != null) {
 			
 				// If a search class is given, respect search attributes
@@ -1053,6 +1190,9 @@ public class HtmlServlet extends HttpServlet {
 
 			if (startNode instanceof SearchResultView) {
 
+				// search results are not tracked by the render cache
+				RenderContext.uncacheable();
+
 				double startSearchResultView     = System.nanoTime();
 
 				String searchString = (String) request.getParameter("search");
@@ -1089,6 +1229,9 @@ public class HtmlServlet extends HttpServlet {
 
 			} else if (startNode instanceof View) {
 
+				// query results are not tracked by the render cache
+				RenderContext.uncacheable();
+
 				double startView     = System.nanoTime();
 				
 				// fetch query results
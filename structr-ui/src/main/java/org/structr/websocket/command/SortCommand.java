@@ -60,9 +60,11 @@ public class SortCommand extends AbstractCommand {
 
 		if (node != null) {
 
-			for (String id : nodeData.keySet()) {
+			Map<String, AbstractNode> nodesToSort = getNodes(nodeData.keySet());
 
-				AbstractNode nodeToSort          = getNode(id);
+			for (String id : nodesToSort.keySet()) {
+
+				AbstractNode nodeToSort          = nodesToSort.get(id);
 				Long pos                         = Long.parseLong((String) nodeData.get(id));
 				List<AbstractRelationship> rels  = nodeToSort.getRelationships(RelType.CONTAINS, Direction.INCOMING);
 				PropertyKey<Long> pageIdProperty = new LongProperty(pageId);
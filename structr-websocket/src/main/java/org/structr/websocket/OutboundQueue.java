@@ -0,0 +1,280 @@
+/*
+ *  Copyright (C) 2010-2013 Axel Morgner
+ *
+ *  This file is part of structr <http://structr.org>.
+ *
+ *  structr is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  structr is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.structr.websocket;
+
+import com.google.gson.Gson;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jetty.websocket.WebSocket.Connection;
+import org.structr.core.property.PropertyKey;
+import org.structr.websocket.message.WebSocketMessage;
+
+/**
+ * Bounded queue of outgoing messages of a single {@link StructrWebSocket}.
+ *
+ * Messages are sent by a writer thread, so that a slow client delays
+ * neither other clients nor the thread that broadcasts the message. At
+ * most one writer thread drains a queue at any time, so messages are
+ * sent in the order they were added.
+ *
+ * When a broadcast message does not fit into the queue, the configured
+ * {@link OverflowPolicy} applies. Replies to the client's own requests
+ * are always added.
+ */
+public class OutboundQueue {
+
+	private static final Logger logger = Logger.getLogger(OutboundQueue.class.getName());
+
+	public enum OverflowPolicy {
+
+		/** discard the new message */
+		drop,
+
+		/** merge the new message into a queued update of the same entity, or discard it */
+		coalesce,
+
+		/** disconnect the client, which has to reload its state */
+		disconnect
+	}
+
+	private final LinkedList<Entry> entries = new LinkedList<Entry>();
+	private final AtomicLong dropped        = new AtomicLong(0);
+	private OverflowPolicy policy           = null;
+	private Connection connection           = null;
+	private Executor executor               = null;
+	private boolean draining                = false;
+	private boolean closed                  = false;
+	private int capacity                    = 0;
+	private Gson gson                       = null;
+
+	public OutboundQueue(final Connection connection, final Gson gson, final Executor executor, final int capacity, final OverflowPolicy policy) {
+
+		this.connection = connection;
+		this.capacity   = capacity;
+		this.executor   = executor;
+		this.policy     = policy;
+		this.gson       = gson;
+	}
+
+	/**
+	 * Adds a broadcast message, applying the overflow policy if the queue
+	 * is full.
+	 *
+	 * @param entry the message
+	 */
+	public void add(final Entry entry) {
+
+		boolean disconnect = false;
+		boolean overflow   = false;
+
+		synchronized (this) {
+
+			if (closed) {
+				return;
+			}
+
+			if (entries.size() < capacity) {
+
+				entries.add(entry);
+				schedule();
+
+			} else {
+
+				overflow = true;
+
+				switch (policy) {
+
+					case coalesce:
+						if (!coalesce(entry)) {
+							dropped.incrementAndGet();
+						}
+						break;
+
+					case disconnect:
+						entries.clear();
+						closed     = true;
+						disconnect = true;
+						break;
+
+					default:
+						dropped.incrementAndGet();
+						break;
+				}
+			}
+		}
+
+		if (disconnect) {
+
+			logger.log(Level.WARNING, "Outbound queue of client full, disconnecting.");
+			connection.disconnect();
+
+		} else if (overflow) {
+
+			logger.log(Level.FINE, "Outbound queue of client full, {0} messages dropped so far.", dropped.get());
+		}
+	}
+
+	/**
+	 * Adds a reply to a request of the client, regardless of the size of
+	 * the queue.
+	 *
+	 * @param message the serialized message
+	 */
+	public synchronized void addReply(final String message) {
+
+		if (!closed) {
+
+			entries.add(new Entry(null, message));
+			schedule();
+		}
+	}
+
+	/**
+	 * Discards all queued messages, called when the connection is closed.
+	 */
+	public synchronized void close() {
+
+		entries.clear();
+		closed = true;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	// ----- private methods -----
+	private boolean coalesce(final Entry entry) {
+
+		WebSocketMessage message = entry.message;
+
+		if (!SynchronizationController.isUpdate(message)) {
+			return false;
+		}
+
+		// find the most recent queued update of the same entity
+		for (ListIterator<Entry> it = entries.listIterator(entries.size()); it.hasPrevious();) {
+
+			Entry queued = it.previous();
+
+			if (SynchronizationController.isUpdate(queued.message) && message.getId().equals(queued.message.getId())) {
+
+				// queued messages may be shared with other clients
+				WebSocketMessage merged = queued.message.copy();
+
+				merged.setNodeData(new LinkedHashMap<String, Object>(queued.message.getNodeData()));
+				merged.setRelData(new LinkedHashMap<String, Object>(queued.message.getRelData()));
+				merged.setModifiedProperties(new LinkedHashSet<PropertyKey>(queued.message.getModifiedProperties()));
+				merged.setRemovedProperties(new LinkedHashSet<PropertyKey>(queued.message.getRemovedProperties()));
+
+				SynchronizationController.merge(merged, message);
+
+				it.set(new Entry(merged, null));
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void schedule() {
+
+		if (!draining) {
+
+			draining = true;
+
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+	}
+
+	private void drain() {
+
+		while (true) {
+
+			Entry entry = null;
+
+			synchronized (this) {
+
+				entry = entries.poll();
+
+				if (entry == null || closed) {
+
+					draining = false;
+					return;
+				}
+			}
+
+			try {
+
+				connection.sendMessage(entry.getJson(gson));
+
+			} catch (org.eclipse.jetty.io.EofException eof) {
+
+				logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Error sending message to client.", t);
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A message and its serialized form. Entries can be shared by the
+	 * queues of all clients that see the same message.
+	 */
+	public static class Entry {
+
+		private WebSocketMessage message = null;
+		private String json              = null;
+
+		public Entry(final WebSocketMessage message, final String json) {
+
+			this.message = message;
+			this.json    = json;
+		}
+
+		private String getJson(final Gson gson) {
+
+			if (json == null) {
+				json = gson.toJson(message, WebSocketMessage.class);
+			}
+
+			return json;
+		}
+	}
+}
@@ -109,6 +109,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 	private Gson gson                                = null;
 	private PropertyKey idProperty                   = null;
 	private HttpServletRequest request               = null;
+	private OutboundQueue outboundQueue              = null;
 	private SecurityContext securityContext          = null;
 	private SynchronizationController syncController = null;
 	private String token                             = null;
@@ -134,8 +135,9 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 		logger.log(Level.INFO, "New connection with protocol {0}", connection.getProtocol());
 
-		this.connection = connection;
-		this.token      = null;
+		this.outboundQueue = syncController.createOutboundQueue(connection);
+		this.connection    = connection;
+		this.token         = null;
 
 		syncController.registerClient(this);
 		connection.setMaxTextMessageSize(1024 * 1024 * 1024);
@@ -152,6 +154,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 		this.connection = null;
 
 		syncController.unregisterClient(this);
+		outboundQueue.close();
 
 		// flush and close open uploads
 		for (FileUploadHandler upload : uploads.values()) {
@@ -264,7 +267,7 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 				logger.log(Level.FINE, "############################################################ SENDING \n{0}", msg);
 
 				// }
-				connection.sendMessage(msg);
+				outboundQueue.addReply(msg);
 
 			} else {
 
@@ -390,6 +393,12 @@ public class StructrWebSocket implements WebSocket.OnTextMessage {
 
 	}
 
+	public OutboundQueue getOutboundQueue() {
+
+		return outboundQueue;
+
+	}
+
 	public HttpServletRequest getRequest() {
 
 		return request;
@@ -29,6 +29,7 @@ import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
@@ -37,6 +38,11 @@ import org.structr.websocket.message.WebSocketMessage;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.error.FrameworkException;
@@ -58,16 +64,47 @@ public class SynchronizationController implements StructrTransactionListener {
 
 	private Set<StructrWebSocket> clients                     = null;
 	private Gson gson                                         = null;
-	private Map<Long, List<WebSocketMessage>> messageStackMap = new LinkedHashMap<Long, List<WebSocketMessage>>();
-	private List<WebSocketMessage> messageStack;
+	private Map<Long, List<WebSocketMessage>> messageStackMap = new ConcurrentHashMap<Long, List<WebSocketMessage>>();
+	private OutboundQueue.OverflowPolicy overflowPolicy       = OutboundQueue.OverflowPolicy.disconnect;
+	private ExecutorService writers                           = null;
+	private int queueSize                                     = 1000;
 
 	//~--- constructors ---------------------------------------------------
 
 	public SynchronizationController(Gson gson) {
 
-		this.clients = new LinkedHashSet<StructrWebSocket>();
+		this.clients = new CopyOnWriteArraySet<StructrWebSocket>();
 		this.gson    = gson;
 
+		// writer threads are created on demand, so that a blocked client does not delay other clients
+		this.writers = Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "WebSocketWriter");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		try {
+			queueSize = Integer.parseInt(Services.getConfigurationValue(Services.WEBSOCKET_QUEUE_SIZE, "1000"));
+
+		} catch (NumberFormatException nfex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.WEBSOCKET_QUEUE_SIZE);
+		}
+
+		try {
+			overflowPolicy = OutboundQueue.OverflowPolicy.valueOf(Services.getConfigurationValue(Services.WEBSOCKET_OVERFLOW_POLICY, "disconnect"));
+
+		} catch (IllegalArgumentException iaex) {
+
+			logger.log(Level.WARNING, "Invalid value for {0}, using default", Services.WEBSOCKET_OVERFLOW_POLICY);
+		}
+
 	}
 
 	//~--- methods --------------------------------------------------------
@@ -84,6 +121,50 @@ public class SynchronizationController implements StructrTransactionListener {
 
 	}
 
+	/**
+	 * Creates the outbound queue of a new client connection.
+	 *
+	 * @param connection the connection
+	 * @return the queue
+	 */
+	public OutboundQueue createOutboundQueue(final Connection connection) {
+		return new OutboundQueue(connection, gson, writers, queueSize, overflowPolicy);
+	}
+
+	public void shutdown() {
+		writers.shutdownNow();
+	}
+
+	// ----- package-private static methods -----
+	/**
+	 * Returns whether the given message is an update of the properties of
+	 * a single entity, which can be merged with other updates of the
+	 * same entity.
+	 */
+	static boolean isUpdate(final WebSocketMessage message) {
+		return message != null && "UPDATE".equals(message.getCommand()) && message.getId() != null && message.getResult() == null;
+	}
+
+	/**
+	 * Merges the given update into an earlier update of the same entity.
+	 */
+	static void merge(final WebSocketMessage update, final WebSocketMessage message) {
+
+		update.getNodeData().putAll(message.getNodeData());
+		update.getRelData().putAll(message.getRelData());
+
+		// later modifications win over earlier removals and vice versa
+		update.getRemovedProperties().removeAll(message.getModifiedProperties());
+		update.getModifiedProperties().addAll(message.getModifiedProperties());
+
+		update.getModifiedProperties().removeAll(message.getRemovedProperties());
+		update.getRemovedProperties().addAll(message.getRemovedProperties());
+
+		for (PropertyKey removedKey : message.getRemovedProperties()) {
+			update.getNodeData().remove(removedKey.jsonName());
+		}
+	}
+
 	// ----- private methods -----
 	private void broadcast(final WebSocketMessage webSocketData) {
 
@@ -92,52 +173,86 @@ public class SynchronizationController implements StructrTransactionListener {
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		String message;
+		List<? extends GraphObject> result = webSocketData.getResult();
+		boolean filterResult               = (result != null) && (result.size() > 0)
+			&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"));
+
+		// the message is serialized once for all clients that see the same result
+		Map<List<String>, OutboundQueue.Entry> entries = new HashMap<List<String>, OutboundQueue.Entry>();
 
-		// create message
 		for (StructrWebSocket socket : clients) {
 
-			Connection socketConnection = socket.getConnection();
+			OutboundQueue queue = socket.getOutboundQueue();
 
-			if ((socketConnection != null) && socket.isAuthenticated()) {
+			if ((queue != null) && socket.isAuthenticated()) {
 
-				List<? extends GraphObject> result = webSocketData.getResult();
+				WebSocketMessage clientData = webSocketData;
+				List<String> visibleIds     = Collections.emptyList();
 
-				if ((result != null) && (result.size() > 0)
-					&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"))) {
+				if (filterResult) {
 
-					WebSocketMessage clientData     = webSocketData.copy();
-					SecurityContext securityContext = socket.getSecurityContext();
+					List<? extends GraphObject> filteredResult = filter(socket.getSecurityContext(), result);
 
-					clientData.setResult(filter(securityContext, result));
+					visibleIds = new ArrayList<String>(filteredResult.size());
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
+					for (GraphObject obj : filteredResult) {
+						visibleIds.add(obj.getUuid());
+					}
 
-				} else {
+					if (!entries.containsKey(visibleIds)) {
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
+						clientData = webSocketData.copy();
+						clientData.setResult(filteredResult);
+					}
 				}
 
-				logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
+				OutboundQueue.Entry entry = entries.get(visibleIds);
 
-				try {
+				if (entry == null) {
 
-					socketConnection.sendMessage(message);
+					String message = gson.toJson(clientData, WebSocketMessage.class);
 
-				} catch (org.eclipse.jetty.io.EofException eof) {
+					logger.log(Level.FINE, "############################################################ SENDING \n{0}", message);
 
-					logger.log(Level.FINE, "EofException irgnored, may occour on SSL connections.", eof);
+					entry = new OutboundQueue.Entry(clientData, message);
+					entries.put(visibleIds, entry);
+				}
 
-				} catch (Throwable t) {
+				queue.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Merges all UPDATE messages for the same entity into the first one,
+	 * so that a transaction that modifies several properties of an entity
+	 * results in a single message per client.
+	 */
+	private List<WebSocketMessage> coalesce(final List<WebSocketMessage> messages) {
+
+		Map<String, WebSocketMessage> updates = new LinkedHashMap<String, WebSocketMessage>();
+		List<WebSocketMessage> coalesced      = new LinkedList<WebSocketMessage>();
+
+		for (WebSocketMessage message : messages) {
+
+			if (isUpdate(message)) {
 
-					logger.log(Level.WARNING, "Error sending message to client.", t);
+				String id               = message.getId();
+				WebSocketMessage update = updates.get(id);
 
+				if (update != null) {
+
+					merge(update, message);
+					continue;
 				}
 
+				updates.put(id, message);
 			}
 
+			coalesced.add(message);
 		}
 
+		return coalesced;
 	}
 
 	private List<? extends GraphObject> filter(final SecurityContext securityContext, final List<? extends GraphObject> all) {
@@ -161,19 +276,17 @@ public class SynchronizationController implements StructrTransactionListener {
 	@Override
 	public void begin(SecurityContext securityContext, long transactionKey) {
 
-		messageStack = new LinkedList<WebSocketMessage>();
-
-		messageStackMap.put(transactionKey, messageStack);
+		messageStackMap.put(transactionKey, new LinkedList<WebSocketMessage>());
 	}
 
 	@Override
 	public void commit(SecurityContext securityContext, long transactionKey) {
 
-		messageStack = messageStackMap.get(transactionKey);
+		List<WebSocketMessage> messageStack = messageStackMap.remove(transactionKey);
 
 		if (messageStack != null) {
 
-			for (WebSocketMessage message : messageStack) {
+			for (WebSocketMessage message : coalesce(messageStack)) {
 
 				broadcast(message);
 			}
@@ -183,8 +296,6 @@ public class SynchronizationController implements StructrTransactionListener {
 			logger.log(Level.WARNING, "No message found for transaction key {0}", transactionKey);
 		}
 
-		messageStackMap.remove(transactionKey);
-
 	}
 
 	@Override
@@ -197,7 +308,7 @@ public class SynchronizationController implements StructrTransactionListener {
 	@Override
 	public boolean propertyModified(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject, PropertyKey key, Object oldValue, Object newValue) {
 
-		messageStack = messageStackMap.get(transactionKey);
+		List<WebSocketMessage> messageStack = messageStackMap.get(transactionKey);
 
 		WebSocketMessage message = new WebSocketMessage();
 
@@ -256,7 +367,7 @@ public class SynchronizationController implements StructrTransactionListener {
 	@Override
 	public boolean propertyRemoved(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject, PropertyKey key, Object oldValue) {
 
-		messageStack = messageStackMap.get(transactionKey);
+		List<WebSocketMessage> messageStack = messageStackMap.get(transactionKey);
 
 		WebSocketMessage message = new WebSocketMessage();
 
@@ -298,7 +409,7 @@ public class SynchronizationController implements StructrTransactionListener {
 	@Override
 	public boolean graphObjectCreated(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject graphObject) {
 
-		messageStack = messageStackMap.get(transactionKey);
+		List<WebSocketMessage> messageStack = messageStackMap.get(transactionKey);
 
 		AbstractRelationship relationship;
 
@@ -372,7 +483,7 @@ public class SynchronizationController implements StructrTransactionListener {
 	@Override
 	public boolean graphObjectDeleted(SecurityContext securityContext, long transactionKey, ErrorBuffer errorBuffer, GraphObject obj, PropertyMap properties) {
 
-		messageStack = messageStackMap.get(transactionKey);
+		List<WebSocketMessage> messageStack = messageStackMap.get(transactionKey);
 
 		AbstractRelationship relationship;
 
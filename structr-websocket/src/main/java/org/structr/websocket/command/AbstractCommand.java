@@ -30,6 +30,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.FindNodeCommand;
 import org.structr.core.graph.FindRelationshipCommand;
+import org.structr.core.graph.GetNodeByIdCommand;
 import org.structr.core.graph.search.Search;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SearchNodeCommand;
@@ -39,8 +40,12 @@ import org.structr.websocket.message.WebSocketMessage;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.core.property.PropertyKey;
@@ -130,6 +135,44 @@ public abstract class AbstractCommand {
 		return null;
 	}
 
+	/**
+	 * Returns the nodes to which the given ids refer to, keyed by id,
+	 * in the order of the given ids. Ids of nodes that were not found or
+	 * are not readable are left out.
+	 *
+	 * @return the nodes
+	 */
+	public Map<String, AbstractNode> getNodes(final Collection<String> ids) {
+
+		final SecurityContext securityContext = getWebSocket().getSecurityContext();
+
+		if (idProperty == null) {
+
+			try {
+
+				return Services.command(securityContext, GetNodeByIdCommand.class).execute(ids);
+
+			} catch (FrameworkException fex) {
+				logger.log(Level.WARNING, "Unable to get nodes", fex);
+			}
+
+			return Collections.emptyMap();
+		}
+
+		Map<String, AbstractNode> nodes = new LinkedHashMap<String, AbstractNode>();
+
+		for (String id : ids) {
+
+			AbstractNode node = getNode(id);
+			if (node != null) {
+
+				nodes.put(id, node);
+			}
+		}
+
+		return nodes;
+	}
+
 	/**
 	 * Returns the relationship to which the uuid parameter
 	 * of this command refers to.
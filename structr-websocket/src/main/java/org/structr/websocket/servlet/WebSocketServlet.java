@@ -111,7 +111,9 @@ public class WebSocketServlet extends HttpServlet {
 
 	@Override
 	public void destroy() {
+
 		EntityContext.unregisterTransactionListener(syncController);
+		syncController.shutdown();
 	}
 
 	@Override